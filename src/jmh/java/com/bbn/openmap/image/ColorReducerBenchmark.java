@@ -0,0 +1,115 @@
+package com.bbn.openmap.image;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bbn.openmap.layer.shape.ShapeLayer;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Compares the ColorReducer with the PaletteQuantizer used by the PNG8 and GIF
+ * formatters, on a rendered map image with a few colors and on a noisy
+ * gradient with many more than 256. The fixed reducer uses a palette of the
+ * map colors, like a palette set in the formatter properties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ColorReducerBenchmark {
+
+    @Param("share/data/shape/cntry02/cntry02.shp")
+    public String shapeFile;
+
+    @Param({
+        "map",
+        "gradient"
+    })
+    public String image;
+
+    @Param({
+        "1024",
+        "2048"
+    })
+    public int size;
+
+    @Param({
+        "ColorReducer",
+        "PaletteQuantizer",
+        "PaletteQuantizerSingleThread",
+        "PaletteQuantizerFixed"
+    })
+    public String reducer;
+
+    protected BufferedImage bi;
+    protected PaletteQuantizer quantizer;
+
+    @Setup
+    public void setup() {
+        bi = new BufferedImage(size, size * 3 / 4, BufferedImage.TYPE_INT_ARGB);
+        if ("map".equals(image)) {
+            Properties props = new Properties();
+            props.setProperty("shape." + ShapeLayer.shapeFileProperty, shapeFile);
+            props.setProperty("shape.lineColor", "ff000000");
+            props.setProperty("shape.fillColor", "ffbdde83");
+            ShapeLayer layer = new ShapeLayer();
+            layer.setProperties("shape", props);
+
+            Projection proj = new Mercator(new LatLonPoint.Double(20, 0), 120000000f, bi.getWidth(), bi.getHeight());
+            Graphics g = bi.createGraphics();
+            layer.renderDataForProjection(proj, g);
+            g.dispose();
+        } else {
+            Random random = new Random(5);
+            for (int y = 0; y < bi.getHeight(); y++) {
+                for (int x = 0; x < bi.getWidth(); x++) {
+                    int r = x * 255 / bi.getWidth();
+                    int g = y * 255 / bi.getHeight();
+                    bi.setRGB(x, y, 0xff000000 | (r << 16) | (g << 8) | random.nextInt(64));
+                }
+            }
+        }
+
+        quantizer = new PaletteQuantizer();
+        if ("PaletteQuantizerSingleThread".equals(reducer)) {
+            quantizer.setNumThreads(1);
+        } else if ("PaletteQuantizerFixed".equals(reducer)) {
+            quantizer.setPalette(PaletteQuantizer.parsePalette("00000000 ff000000 ffbdde83 ffffffff"));
+        }
+    }
+
+    @Benchmark
+    public BufferedImage reduce24() {
+        if ("ColorReducer".equals(reducer)) {
+            return ColorReducer.reduce24(bi, 256);
+        }
+        return quantizer.reduce24(bi, 256);
+    }
+
+    @Benchmark
+    public BufferedImage reduce32() {
+        if ("ColorReducer".equals(reducer)) {
+            return ColorReducer.reduce32(bi, 256);
+        }
+        return quantizer.reduce32(bi, 256);
+    }
+}
@@ -0,0 +1,107 @@
+package com.bbn.openmap.image;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.layer.shape.ShapeLayer;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Measures the ImageServer creating a map image from a shape layer, and each
+ * image formatter encoding an already rendered map image. The shape file is
+ * the country file shipped in share/data, use -p shapeFile=... to measure
+ * another one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageServerBenchmark {
+
+    public final static int WIDTH = 1024;
+    public final static int HEIGHT = 768;
+
+    @Param("share/data/shape/cntry02/cntry02.shp")
+    public String shapeFile;
+
+    @Param({
+        "PNG32",
+        "PNG8",
+        "GIF",
+        "GIFImageIO"
+    })
+    public String format;
+
+    protected ImageServer imageServer;
+    protected ImageFormatter formatter;
+    protected Projection proj;
+    protected BufferedImage image;
+
+    @Setup
+    public void setup() {
+        formatter = createFormatter(format);
+
+        Properties props = new Properties();
+        props.setProperty("shape." + ShapeLayer.shapeFileProperty, shapeFile);
+        props.setProperty("shape.lineColor", "ff000000");
+        props.setProperty("shape.fillColor", "ffbdde83");
+        ShapeLayer layer = new ShapeLayer();
+        layer.setProperties("shape", props);
+
+        imageServer = new ImageServer(new Layer[] {
+            layer
+        }, formatter);
+        proj = new Mercator(new LatLonPoint.Double(20, 0), 120000000f, WIDTH, HEIGHT);
+
+        // The image the formatters are measured with.
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics g = image.createGraphics();
+        layer.renderDataForProjection(proj, g);
+        g.dispose();
+    }
+
+    /**
+     * Create one of the formatters measured here.
+     */
+    public static ImageFormatter createFormatter(String name) {
+        if ("PNG32".equals(name)) {
+            return new PNG32ImageFormatter();
+        } else if ("PNG8".equals(name)) {
+            return new PNG8ImageFormatter();
+        } else if ("GIF".equals(name)) {
+            return new AcmeGifFormatter();
+        } else if ("GIFImageIO".equals(name)) {
+            return new GIFImageIOFormatter();
+        }
+        throw new IllegalArgumentException("Unknown format: " + name);
+    }
+
+    @Benchmark
+    public byte[] createImage() {
+        return imageServer.createImage(proj);
+    }
+
+    @Benchmark
+    public byte[] formatImage() {
+        return formatter.formatImage(image);
+    }
+}
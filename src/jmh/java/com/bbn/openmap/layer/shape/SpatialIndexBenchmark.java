@@ -0,0 +1,72 @@
+package com.bbn.openmap.layer.shape;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures SpatialIndex.locateRecords for random query boxes, with and without
+ * the R-tree. The shape file is the country file shipped in share/data, use
+ * -p shapeFile=... to measure another one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+
+    public final static int NUM_QUERIES = 256;
+
+    @Param("share/data/shape/cntry02/cntry02.shp")
+    public String shapeFile;
+
+    @Param({
+        "false",
+        "true"
+    })
+    public boolean useRTree;
+
+    protected SpatialIndex spatialIndex;
+    protected double[] queries;
+    protected int next;
+
+    @Setup
+    public void setup() throws Exception {
+        spatialIndex = new SpatialIndex(shapeFile);
+        spatialIndex.setUseRTree(useRTree);
+
+        // Boxes from a couple of degrees up to a quarter of the world wide.
+        Random random = new Random(1);
+        queries = new double[NUM_QUERIES * 4];
+        for (int i = 0; i < queries.length; i += 4) {
+            double width = 2 + random.nextDouble() * 88;
+            double height = width / 2;
+            double xmin = random.nextDouble() * (360 - width) - 180;
+            double ymin = random.nextDouble() * (180 - height) - 90;
+            queries[i] = xmin;
+            queries[i + 1] = ymin;
+            queries[i + 2] = xmin + width;
+            queries[i + 3] = ymin + height;
+        }
+    }
+
+    @Benchmark
+    public ESRIRecord[] locateRecords() throws Exception {
+        int i = next;
+        next = (next + 4) % queries.length;
+        return spatialIndex.locateRecords(queries[i], queries[i + 1], queries[i + 2], queries[i + 3]);
+    }
+}
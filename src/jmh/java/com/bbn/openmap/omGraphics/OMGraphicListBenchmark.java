@@ -0,0 +1,104 @@
+package com.bbn.openmap.omGraphics;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Measures generating and rendering an OMGraphicList full of small OMPolys,
+ * the way layers with lots of features use them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+    "-Xmx4g",
+    "-Djava.awt.headless=true"
+})
+public class OMGraphicListBenchmark {
+
+    public final static int WIDTH = 1024;
+    public final static int HEIGHT = 768;
+
+    @Param({
+        "10000",
+        "100000",
+        "1000000"
+    })
+    public int count;
+
+    protected OMGraphicList list;
+    protected Projection proj;
+    protected BufferedImage image;
+    protected Graphics2D graphics;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        list = new OMGraphicList();
+        for (int i = 0; i < count; i++) {
+            double lat = random.nextDouble() * 140 - 70;
+            double lon = random.nextDouble() * 360 - 180;
+            double size = 0.1 + random.nextDouble();
+            double[] llpts = new double[] {
+                lat,
+                lon,
+                lat + size,
+                lon,
+                lat + size,
+                lon + size,
+                lat,
+                lon + size,
+                lat,
+                lon
+            };
+            OMPoly poly = new OMPoly(llpts, OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT);
+            poly.setLinePaint(Color.black);
+            poly.setFillPaint(Color.orange);
+            list.add(poly);
+        }
+
+        proj = new Mercator(new LatLonPoint.Double(0, 0), 150000000f, WIDTH, HEIGHT);
+        list.generate(proj);
+
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public boolean generate() {
+        return list.generate(proj);
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        list.render(graphics);
+        return image;
+    }
+}
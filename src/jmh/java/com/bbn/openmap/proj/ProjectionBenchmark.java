@@ -0,0 +1,118 @@
+package com.bbn.openmap.proj;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Measures the time to forward and inverse project a point with each of the
+ * commonly used projections. The reported times are per point.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    public final static int NUM_POINTS = 10000;
+
+    @Param({
+        "Mercator",
+        "LLXY",
+        "CADRG",
+        "Orthographic",
+        "LambertConformal",
+        "UTM"
+    })
+    public String projection;
+
+    protected GeoProj proj;
+    protected double[] llpts;
+    protected float[] xs;
+    protected float[] ys;
+    protected Point2D point;
+    protected LatLonPoint llp;
+
+    @Setup
+    public void setup() {
+        proj = createProjection(projection, new LatLonPoint.Double(40, -75), 10000000f, 1024, 768);
+
+        // Points scattered over the view, the same ones for every run.
+        Random random = new Random(1);
+        llpts = new double[NUM_POINTS * 2];
+        for (int i = 0; i < llpts.length; i += 2) {
+            llpts[i] = 30 + random.nextDouble() * 20;
+            llpts[i + 1] = -90 + random.nextDouble() * 30;
+        }
+
+        xs = new float[NUM_POINTS];
+        ys = new float[NUM_POINTS];
+        proj.forwardArray(llpts, 0, xs, ys, 0, NUM_POINTS);
+        point = new Point2D.Double();
+        llp = new LatLonPoint.Double();
+    }
+
+    /**
+     * Create one of the projections measured here.
+     *
+     * @param name the projection name, UTM for zone 18 north.
+     */
+    public static GeoProj createProjection(String name, LatLonPoint center, float scale, int width, int height) {
+        if ("Mercator".equals(name)) {
+            return new Mercator(center, scale, width, height);
+        } else if ("LLXY".equals(name)) {
+            return new LLXY(center, scale, width, height);
+        } else if ("CADRG".equals(name)) {
+            return new CADRG(center, scale, width, height);
+        } else if ("Orthographic".equals(name)) {
+            return new Orthographic(center, scale, width, height);
+        } else if ("LambertConformal".equals(name)) {
+            return new LambertConformal(center, scale, width, height, -75, 33, 45, 40, 0, 0, Ellipsoid.WGS_84);
+        } else if ("UTM".equals(name)) {
+            return new UTMProjection(center, scale, width, height, 18, true, Ellipsoid.WGS_84);
+        }
+        throw new IllegalArgumentException("Unknown projection: " + name);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public void forward(Blackhole bh) {
+        for (int j = 0; j < llpts.length; j += 2) {
+            bh.consume(proj.forward(llpts[j], llpts[j + 1], point));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public void forwardArray(Blackhole bh) {
+        proj.forwardArray(llpts, 0, xs, ys, 0, NUM_POINTS);
+        bh.consume(xs);
+        bh.consume(ys);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_POINTS)
+    public void inverse(Blackhole bh) {
+        for (int i = 0; i < NUM_POINTS; i++) {
+            bh.consume(proj.inverse(xs[i], ys[i], llp));
+        }
+    }
+}
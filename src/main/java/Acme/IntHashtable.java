@@ -358,11 +358,12 @@ class IntHashtableEnumerator
    public Object nextElement() {
       if (entry == null)
          while ((index-- > 0) && ((entry = table[index]) == null))
-            if (entry != null) {
-               IntHashtableEntry e = entry;
-               entry = e.next;
-               return keys ? new Integer(e.key) : e.value;
-            }
+            ;
+      if (entry != null) {
+         IntHashtableEntry e = entry;
+         entry = e.next;
+         return keys ? new Integer(e.key) : e.value;
+      }
       throw new NoSuchElementException("IntHashtableEnumerator");
    }
 }
\ No newline at end of file
@@ -67,6 +67,7 @@ import com.bbn.openmap.event.ProjectionListener;
 import com.bbn.openmap.event.ProjectionSupport;
 import com.bbn.openmap.event.ZoomEvent;
 import com.bbn.openmap.event.ZoomListener;
+import com.bbn.openmap.layer.metrics.LayerMetrics;
 import com.bbn.openmap.proj.Mercator;
 import com.bbn.openmap.proj.Proj;
 import com.bbn.openmap.proj.Projection;
@@ -945,6 +946,7 @@ public class MapBean
     */
    public void paintChildren(Graphics g, Rectangle clip) {
 
+      long start = System.nanoTime();
       g = getMapBeanRepaintPolicy().modifyGraphicsForPainting(g);
 
       if (clip != null) {
@@ -971,6 +973,7 @@ public class MapBean
 
       // border gets overwritten accidentally, so redraw it now
       paintBorder(g);
+      LayerMetrics.rendered(LayerMetrics.MAP_BEAN, System.nanoTime() - start);
    }
 
    public Graphics getGraphics() {
@@ -66,6 +66,11 @@ import com.bbn.openmap.util.PropUtils;
  * created for different zoom levels. You can run this class as an application.
  * With the -create option, it will create a sample properties file to
  * demonstrate what properties are needed to run it.
+ * <p>
+ * Setting the threads property to more than one creates the tiles with a
+ * {@link MapTileSeeder}, with each thread using its own copy of the layers.
+ * The checkpoint property names a file used to keep track of finished tiles,
+ * so an interrupted run can be resumed.
  * 
  * @author dietrick
  */
@@ -74,10 +79,26 @@ public class MapTileMaker
 
     public final static String ROOT_DIRECTORY_PROPERTY = "rootDir";
     public final static String ZOOM_LEVELS_PROPERTY = "zoomLevels";
+    /** Number of threads creating tiles, see {@link MapTileSeeder}. */
+    public final static String THREADS_PROPERTY = "threads";
+    /** File for keeping track of finished tiles, to resume seeding. */
+    public final static String CHECKPOINT_PROPERTY = "checkpoint";
+    /** Seconds between progress reports when creating tiles. */
+    public final static String PROGRESS_INTERVAL_PROPERTY = "progressInterval";
 
     protected String rootDir;
     protected List<ZoomLevelMaker> zoomLevels;
     protected MapTileCoordinateTransform mtcTransform = new OSMMapTileCoordinateTransform();
+    protected int numThreads = 1;
+    protected String checkpointFile;
+    protected int progressInterval = (int) (MapTileSeeder.DEFAULT_PROGRESS_INTERVAL / 1000);
+
+    /**
+     * The properties this MapTileMaker was configured with, used to create
+     * copies of the layers for each thread.
+     */
+    protected Properties configProperties;
+    protected String configPrefix;
 
     /**
      * Empty constructor that expects to be configured later.
@@ -129,9 +150,14 @@ public class MapTileMaker
     @SuppressWarnings("unchecked")
     public void setProperties(String prefix, Properties props) {
         super.setProperties(prefix, props);
+        configPrefix = prefix;
+        configProperties = props;
         prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
         rootDir = props.getProperty(prefix + ROOT_DIRECTORY_PROPERTY, rootDir);
+        numThreads = PropUtils.intFromProperties(props, prefix + THREADS_PROPERTY, numThreads);
+        checkpointFile = props.getProperty(prefix + CHECKPOINT_PROPERTY, checkpointFile);
+        progressInterval = PropUtils.intFromProperties(props, prefix + PROGRESS_INTERVAL_PROPERTY, progressInterval);
         List<ZoomLevelMaker> zoomLevels =
                 (List<ZoomLevelMaker>) PropUtils.objectsFromProperties(props, prefix + ZOOM_LEVELS_PROPERTY,
                                                                        ComponentFactory.ClassNameProperty);
@@ -142,6 +168,9 @@ public class MapTileMaker
         props = super.getProperties(props);
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + ROOT_DIRECTORY_PROPERTY, PropUtils.unnull(rootDir));
+        props.put(prefix + THREADS_PROPERTY, Integer.toString(numThreads));
+        props.put(prefix + CHECKPOINT_PROPERTY, PropUtils.unnull(checkpointFile));
+        props.put(prefix + PROGRESS_INTERVAL_PROPERTY, Integer.toString(progressInterval));
 
         StringBuffer buf = new StringBuffer();
         for (ZoomLevelMaker zfi : getZoomLevels()) {
@@ -161,6 +190,15 @@ public class MapTileMaker
         PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class,
                                       ROOT_DIRECTORY_PROPERTY, "Tile Directory", "Root directory for holding tile files.",
                                       "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class,
+                                      THREADS_PROPERTY, "Threads", "Number of threads creating tiles.", null);
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class,
+                                      CHECKPOINT_PROPERTY, "Checkpoint File",
+                                      "File keeping track of finished tiles, so tile creation can be resumed.",
+                                      "com.bbn.openmap.util.propertyEditor.FilePropertyEditor");
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class,
+                                      PROGRESS_INTERVAL_PROPERTY, "Progress Interval",
+                                      "Seconds between progress reports when creating tiles with threads.", null);
         return props;
     }
 
@@ -242,6 +280,23 @@ public class MapTileMaker
      */
     public void makeTiles() {
 
+        if (numThreads > 1 || checkpointFile != null) {
+            MapTileSeeder seeder = new MapTileSeeder(this, numThreads);
+            if (checkpointFile != null) {
+                seeder.setCheckpointFile(new File(checkpointFile));
+            }
+            seeder.setProgressInterval(progressInterval * 1000L);
+            try {
+                seeder.seed();
+            } catch (IOException ioe) {
+                logger.error("Caught IOException creating tiles: " + ioe.getMessage());
+            } catch (InterruptedException ie) {
+                logger.info("interrupted, stopped creating tiles");
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         if (rootDir != null) {
             File rd = new File(rootDir);
             if (!rd.exists()) {
@@ -370,6 +425,34 @@ public class MapTileMaker
         logger.info("done writing tiles");
     }
 
+    /**
+     * Create a MapTileMaker with its own set of layers, configured like this
+     * one, so tiles can be created on another thread. The layers are created
+     * from the properties this MapTileMaker was configured with.
+     * 
+     * @return MapTileMaker, or null if this MapTileMaker wasn't configured
+     *         with properties.
+     */
+    protected MapTileMaker createWorker() {
+        if (configProperties == null) {
+            return null;
+        }
+
+        // Layers are allowed to modify the properties they are given.
+        Properties props = new Properties();
+        props.putAll(configProperties);
+
+        MapTileMaker worker = new MapTileMaker();
+        worker.setProperties(configPrefix, props);
+        worker.setRootDir(getRootDir());
+        worker.setFormatter(getFormatter());
+        worker.setBackground(getBackground());
+        worker.setTransparent(getTransparent());
+        worker.setDoAntiAliasing(getDoAntiAliasing());
+        worker.mtcTransform = mtcTransform;
+        return worker;
+    }
+
     public String getRootDir() {
         return rootDir;
     }
@@ -389,6 +472,42 @@ public class MapTileMaker
         this.zoomLevels = zoomLevels;
     }
 
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads number of threads creating tiles in makeTiles.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * @param checkpointFile path of the file keeping track of finished tiles,
+     *        so makeTiles can pick up where it left off. Null for no
+     *        checkpoints.
+     */
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @param progressInterval seconds between progress reports when creating
+     *        tiles with threads.
+     */
+    public void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
     public void createDefaultZoomLevels(int maxZoomLevel) {
         Layer[] layers = getLayers();
         List<ZoomLevelMaker> zoomLevels = getZoomLevels();
@@ -488,6 +607,9 @@ public class MapTileMaker
 
         ap.add("properties", "The properties file to use for image tiles.", 1);
         ap.add("create", "Create a sample properties file at a path", 1);
+        ap.add("threads", "Number of threads creating tiles.", 1);
+        ap.add("checkpoint", "File keeping track of finished tiles, to resume tile creation.", 1);
+        ap.add("progressInterval", "Seconds between progress reports when creating tiles with threads.", 1);
 
         if (!ap.parse(args)) {
             ap.printUsage();
@@ -509,6 +631,20 @@ public class MapTileMaker
                 props.load(inputStream);
 
                 MapTileMaker tim = new MapTileMaker(props);
+
+                String[] threadsArg = ap.getArgValues("threads");
+                if (threadsArg != null) {
+                    tim.setNumThreads(Integer.parseInt(threadsArg[0]));
+                }
+                String[] checkpointArg = ap.getArgValues("checkpoint");
+                if (checkpointArg != null) {
+                    tim.setCheckpointFile(checkpointArg[0]);
+                }
+                String[] progressIntervalArg = ap.getArgValues("progressInterval");
+                if (progressIntervalArg != null) {
+                    tim.setProgressInterval(Integer.parseInt(progressIntervalArg[0]));
+                }
+
                 tim.makeTiles();
 
             } catch (MalformedURLException murle) {
@@ -0,0 +1,197 @@
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.proj.Projection;
+
+/**
+ * Loads the tiles around the current view into the cache of a
+ * StandardMapTileFactory in the background, so they are ready when the map is
+ * panned or zoomed. After a view has been served, the ring of tiles around it
+ * is loaded, then the tiles for the same area at the next lower and higher
+ * zoom levels.
+ * <p>
+ * A fixed number of threads load the tiles. Any prefetching still going on is
+ * cancelled when the factory is asked for tiles for a new view, so the
+ * prefetch threads don't compete with the tiles that are actually needed.
+ */
+public class MapTilePrefetcher {
+
+    public static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.dataAccess.mapTile.MapTilePrefetcher");
+
+    /** The default number of threads loading tiles. */
+    public final static int DEFAULT_NUM_THREADS = 2;
+    /** The highest zoom level prefetched. */
+    public final static int MAX_ZOOM_LEVEL = 20;
+
+    protected final StandardMapTileFactory factory;
+    protected final int numThreads;
+    protected ThreadPoolExecutor executor;
+    protected final List<Future<?>> running = new ArrayList<Future<?>>();
+    protected final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * @param factory the factory to load tiles for.
+     * @param numThreads the number of threads loading tiles.
+     */
+    public MapTilePrefetcher(StandardMapTileFactory factory, int numThreads) {
+        this.factory = factory;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Start loading the tiles around a view, cancelling any prefetching for the
+     * previous view.
+     *
+     * @param uvleft left uv tile coordinate of the view.
+     * @param uvright uv tile coordinate right of the view.
+     * @param uvup top uv tile coordinate of the view.
+     * @param uvbottom uv tile coordinate below the view.
+     * @param zoomLevel the zoom level of the view.
+     * @param proj the projection of the view.
+     * @param maxTiles the maximum number of tiles to load, so tiles for the
+     *        current view aren't pushed out of the cache.
+     */
+    public synchronized void prefetch(int uvleft, int uvright, int uvup, int uvbottom, final int zoomLevel,
+                                      final Projection proj, int maxTiles) {
+        cancel();
+        if (maxTiles <= 0) {
+            return;
+        }
+
+        List<Tile> wanted = new ArrayList<Tile>();
+        int left = Math.min(uvleft, uvright);
+        int right = Math.max(uvleft, uvright);
+        int up = Math.min(uvup, uvbottom);
+        int bottom = Math.max(uvup, uvbottom);
+
+        // The ring around the view.
+        for (int x = left - 1; x <= right; x++) {
+            for (int y = up - 1; y <= bottom; y++) {
+                if (x == left - 1 || x == right || y == up - 1 || y == bottom) {
+                    add(wanted, x, y, zoomLevel, maxTiles);
+                }
+            }
+        }
+
+        // Zooming out, a quarter as many tiles cover the view.
+        if (zoomLevel > 1) {
+            for (int x = left >> 1; x < (right + 1) >> 1; x++) {
+                for (int y = up >> 1; y < (bottom + 1) >> 1; y++) {
+                    add(wanted, x, y, zoomLevel - 1, maxTiles);
+                }
+            }
+        }
+
+        // Zooming in on the center, the view is covered by the middle half of
+        // the tiles, in each direction, at the next zoom level.
+        if (zoomLevel < MAX_ZOOM_LEVEL) {
+            int cx = left + right;
+            int cy = up + bottom;
+            int halfWidth = right - left;
+            int halfHeight = bottom - up;
+            for (int x = cx - halfWidth / 2; x < cx + (halfWidth + 1) / 2; x++) {
+                for (int y = cy - halfHeight / 2; y < cy + (halfHeight + 1) / 2; y++) {
+                    add(wanted, x, y, zoomLevel + 1, maxTiles);
+                }
+            }
+        }
+
+        if (wanted.isEmpty()) {
+            return;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("prefetching " + wanted.size() + " tiles around zoom level " + zoomLevel);
+        }
+
+        final Queue<Tile> tiles = new ConcurrentLinkedQueue<Tile>(wanted);
+        final int gen = generation.get();
+        for (int i = 0; i < numThreads; i++) {
+            running.add(getExecutor().submit(new Runnable() {
+                public void run() {
+                    Tile tile;
+                    while (gen == generation.get() && !Thread.currentThread().isInterrupted()
+                            && (tile = tiles.poll()) != null) {
+                        try {
+                            factory.prefetchTile(tile.x, tile.y, tile.zoomLevel, proj);
+                        } catch (RuntimeException re) {
+                            logger.debug("problem prefetching tile " + tile.zoomLevel + "|" + tile.x + "|" + tile.y
+                                    + ": " + re.getMessage());
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    private void add(List<Tile> tiles, int x, int y, int zoomLevel, int maxTiles) {
+        int edgeTileCount = 1 << zoomLevel;
+        if (tiles.size() < maxTiles && x >= 0 && y >= 0 && x < edgeTileCount && y < edgeTileCount) {
+            tiles.add(new Tile(x, y, zoomLevel));
+        }
+    }
+
+    /**
+     * Stop loading tiles for the last view.
+     */
+    public synchronized void cancel() {
+        generation.incrementAndGet();
+        for (Future<?> future : running) {
+            future.cancel(true);
+        }
+        running.clear();
+    }
+
+    /**
+     * Cancel any prefetching and let the threads go.
+     */
+    public synchronized void shutdown() {
+        cancel();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    protected ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "MapTilePrefetcher");
+                            thread.setDaemon(true);
+                            thread.setPriority(Thread.MIN_PRIORITY);
+                            return thread;
+                        }
+                    });
+            // Don't hold on to threads for factories that aren't being used.
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    protected static class Tile {
+        final int x;
+        final int y;
+        final int zoomLevel;
+
+        Tile(int x, int y, int zoomLevel) {
+            this.x = x;
+            this.y = y;
+            this.zoomLevel = zoomLevel;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.layer.imageTile.MapTileLayer;
+import com.bbn.openmap.omGraphics.OMColor;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Proj;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Creates the tiles for a MapTileMaker with several threads. The tiles for
+ * each zoom level, and for each level of its range, are split up into columns
+ * that are handed out to a set of workers. Every worker has its own
+ * MapTileMaker with its own layers, created from the properties of the
+ * original MapTileMaker, so layers are never used by two threads at the same
+ * time. If the MapTileMaker wasn't configured with properties, its layers
+ * can't be copied and only one worker is used.
+ * <p>
+ * The columns that have been finished can be written to a checkpoint file. If
+ * the seeding is stopped, running it again with the same checkpoint file and
+ * configuration skips the columns already done. The checkpoint file is deleted
+ * when all tiles have been written without errors.
+ * <p>
+ * The number of tiles written and the tiles/second rate are logged while the
+ * workers are running.
+ */
+public class MapTileSeeder {
+
+    public static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.dataAccess.mapTile.MapTileSeeder");
+
+    /** Default time between progress reports, in milliseconds. */
+    public final static long DEFAULT_PROGRESS_INTERVAL = 30000;
+
+    protected MapTileMaker mapTileMaker;
+    protected int numThreads;
+    protected File checkpointFile;
+    protected long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+    protected Set<String> finished = Collections.synchronizedSet(new HashSet<String>());
+    protected PrintWriter checkpointWriter;
+    protected final AtomicLong tileCount = new AtomicLong();
+    protected final AtomicBoolean errors = new AtomicBoolean();
+    protected long startTime;
+
+    /**
+     * @param mapTileMaker the configured MapTileMaker, with root directory,
+     *        formatter and zoom levels set.
+     * @param numThreads the number of workers creating tiles.
+     */
+    public MapTileSeeder(MapTileMaker mapTileMaker, int numThreads) {
+        this.mapTileMaker = mapTileMaker;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param checkpointFile file to keep track of finished columns in, null for
+     *        no checkpoints.
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * @param progressInterval milliseconds between progress reports.
+     */
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = Math.max(1, progressInterval);
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * @return the number of tiles written so far.
+     */
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    /**
+     * Create all the tiles for the zoom levels of the MapTileMaker.
+     *
+     * @throws IOException if the checkpoint file can't be read or written.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     *         for the workers, the workers are stopped.
+     */
+    public void seed()
+            throws IOException, InterruptedException {
+
+        String rootDir = mapTileMaker.getRootDir();
+        if (rootDir != null) {
+            File rd = new File(rootDir);
+            if (!rd.exists()) {
+                rd.mkdirs();
+            }
+        }
+
+        readCheckpoint();
+
+        List<Worker> workers = createWorkers();
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        startTime = System.currentTimeMillis();
+        tileCount.set(0);
+        errors.set(false);
+
+        try {
+            MapTileCoordinateTransform mtcTransform = mapTileMaker.mtcTransform;
+            for (ZoomLevelMaker zfi : mapTileMaker.getZoomLevels()) {
+                logger.info("writing zoom level " + zfi.getName() + " tiles...");
+                int zoomLevel = zfi.getZoomLevel();
+
+                Queue<Column> columns = new ConcurrentLinkedQueue<Column>();
+                for (Rectangle2D bounds : zfi.getUVBounds(mtcTransform, zoomLevel)) {
+                    addColumns(columns, zfi, null, zoomLevel, bounds);
+                }
+                runPhase(executor, workers, columns);
+
+                // The range tiles are created from the tiles one zoom level
+                // up, so each level has to be finished before the next one
+                // is started.
+                int range = zfi.getRange();
+                for (int rangeZoomLevel = zoomLevel - 1; rangeZoomLevel >= range && range < zoomLevel; rangeZoomLevel--) {
+                    ZoomLevelInfo rangeZFI = new ZoomLevelInfo();
+                    rangeZFI.setZoomLevel(rangeZoomLevel);
+
+                    columns = new ConcurrentLinkedQueue<Column>();
+                    for (Rectangle2D rawBounds : zfi.getBounds()) {
+                        Rectangle2D bounds = rangeZFI.getUVBounds(rawBounds, mtcTransform, rangeZoomLevel);
+                        addColumns(columns, zfi, rangeZFI, rangeZoomLevel, bounds);
+                    }
+                    runPhase(executor, workers, columns);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            closeCheckpoint();
+        }
+
+        reportProgress();
+        if (checkpointFile != null && !errors.get()) {
+            checkpointFile.delete();
+        }
+        logger.info("done writing tiles");
+    }
+
+    /**
+     * Create the workers, each with its own copy of the layers if possible.
+     */
+    protected List<Worker> createWorkers() {
+        List<Worker> workers = new ArrayList<Worker>();
+        if (numThreads == 1) {
+            workers.add(new Worker(mapTileMaker));
+            return workers;
+        }
+
+        for (int i = 0; i < numThreads; i++) {
+            MapTileMaker workerMaker = mapTileMaker.createWorker();
+            if (workerMaker == null) {
+                logger.warn("MapTileMaker wasn't configured with properties, can't copy layers for " + numThreads
+                        + " workers, using one");
+                workers.clear();
+                workers.add(new Worker(mapTileMaker));
+                break;
+            }
+            workers.add(new Worker(workerMaker));
+        }
+        return workers;
+    }
+
+    /**
+     * Add the columns of tiles covered by the bounds, skipping those in the
+     * checkpoint file.
+     */
+    protected void addColumns(Queue<Column> columns, ZoomLevelMaker zfi, ZoomLevelInfo rangeZFI, int zoomLevel,
+                              Rectangle2D bounds) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(" creating tiles " + bounds);
+        }
+        int startx = (int) bounds.getX();
+        int starty = (int) bounds.getY();
+        int xofflimit = (int) bounds.getWidth();
+        int yofflimit = (int) bounds.getHeight();
+
+        for (int xoff = 0; xoff < xofflimit; xoff++) {
+            Column column = new Column(zfi, rangeZFI, zoomLevel, startx + xoff, starty, yofflimit);
+            if (!finished.contains(column.getKey())) {
+                columns.add(column);
+            }
+        }
+    }
+
+    /**
+     * Hand the columns to the workers and wait for them to be done, reporting
+     * progress along the way.
+     */
+    protected void runPhase(ExecutorService executor, List<Worker> workers, final Queue<Column> columns)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final Worker worker : workers) {
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    Column column;
+                    while ((column = columns.poll()) != null && !Thread.currentThread().isInterrupted()) {
+                        worker.makeColumn(column);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get(progressInterval, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException te) {
+                    reportProgress();
+                } catch (ExecutionException ee) {
+                    errors.set(true);
+                    logger.error("tile worker failed", ee.getCause());
+                    break;
+                }
+            }
+        }
+    }
+
+    protected void reportProgress() {
+        long tiles = tileCount.get();
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        double rate = (seconds > 0) ? tiles / seconds : 0;
+        logger.info("wrote " + tiles + " tiles in " + (long) seconds + " seconds, "
+                + String.format("%.1f", rate) + " tiles/second");
+    }
+
+    protected void readCheckpoint()
+            throws IOException {
+        finished.clear();
+        if (checkpointFile == null) {
+            return;
+        }
+
+        if (checkpointFile.exists()) {
+            BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.length() > 0) {
+                        finished.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            logger.info("resuming from " + checkpointFile + ", " + finished.size() + " columns already done");
+        }
+
+        checkpointWriter = new PrintWriter(new FileWriter(checkpointFile, true));
+    }
+
+    protected synchronized void checkpoint(Column column) {
+        finished.add(column.getKey());
+        if (checkpointWriter != null) {
+            checkpointWriter.println(column.getKey());
+            checkpointWriter.flush();
+        }
+    }
+
+    protected synchronized void closeCheckpoint() {
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+            checkpointWriter = null;
+        }
+    }
+
+    /**
+     * A column of tiles, the unit of work handed to a worker.
+     */
+    protected static class Column {
+        final ZoomLevelMaker zfi;
+        /** Set if the column is part of the range of the zfi. */
+        final ZoomLevelInfo rangeZFI;
+        final int zoomLevel;
+        final int x;
+        final int starty;
+        final int height;
+
+        Column(ZoomLevelMaker zfi, ZoomLevelInfo rangeZFI, int zoomLevel, int x, int starty, int height) {
+            this.zfi = zfi;
+            this.rangeZFI = rangeZFI;
+            this.zoomLevel = zoomLevel;
+            this.x = x;
+            this.starty = starty;
+            this.height = height;
+        }
+
+        String getKey() {
+            return (rangeZFI == null ? "tiles " : "range ") + zfi.getZoomLevel() + " " + zoomLevel + " " + x + " "
+                    + starty + " " + height;
+        }
+    }
+
+    /**
+     * Creates tiles with its own MapTileMaker and projection.
+     */
+    protected class Worker {
+        final MapTileMaker maker;
+        final Proj proj = new Mercator(new LatLonPoint.Double(), 10000, MapTileMaker.TILE_SIZE, MapTileMaker.TILE_SIZE);
+        MapTileLayer tileLayer;
+        List<Layer> subLayers;
+
+        Worker(MapTileMaker maker) {
+            this.maker = maker;
+        }
+
+        /**
+         * Get the layer that draws the tiles that have already been written,
+         * for creating the range tiles.
+         */
+        MapTileLayer getTileLayer() {
+            if (tileLayer == null) {
+                tileLayer = new MapTileLayer();
+                StandardMapTileFactory tileFactory = new StandardMapTileFactory();
+                tileFactory.setRootDir(maker.getRootDir());
+                tileFactory.setFileExt(maker.getFormatter().getFormatLabel());
+                tileLayer.setTileFactory(tileFactory);
+                subLayers = new ArrayList<Layer>();
+                subLayers.add(tileLayer);
+            }
+            return tileLayer;
+        }
+
+        void makeColumn(Column column) {
+            String rootDir = maker.getRootDir();
+            String parentDirPath = null;
+            boolean ok = true;
+
+            for (int yoff = 0; yoff < column.height; yoff++) {
+                int x = column.x;
+                int y = column.starty + yoff;
+
+                if (parentDirPath == null) {
+                    parentDirPath = (column.rangeZFI == null ? column.zfi : column.rangeZFI).formatParentDirectoryName(rootDir, x, y);
+                    File parentDir = new File(parentDirPath);
+                    if (!parentDir.exists()) {
+                        parentDir.mkdirs();
+                    }
+                }
+
+                try {
+                    String outputFile;
+                    if (column.rangeZFI == null) {
+                        outputFile = makeTile(column.zfi, x, y);
+                    } else {
+                        // Create new tiles from the tiles one zoom level up
+                        getTileLayer().setZoomLevel(column.zoomLevel + 1);
+                        byte[] imageBytes = maker.makeTile(x, y, column.zoomLevel, subLayers, proj, OMColor.clear);
+                        String filePath = column.rangeZFI.formatImageFilePath(rootDir, x, y);
+                        outputFile = maker.writeImageFile(imageBytes, filePath, true);
+                    }
+                    tileCount.incrementAndGet();
+
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("wrote: " + outputFile);
+                    }
+                } catch (IOException ioe) {
+                    ok = false;
+                    errors.set(true);
+                    logger.error("Caught IOException writing " + x + ", " + y + ", " + column.zfi);
+                }
+            }
+
+            if (ok) {
+                checkpoint(column);
+            }
+        }
+
+        String makeTile(ZoomLevelMaker zfi, int x, int y)
+                throws IOException {
+            List<Layer> layerList = zfi.getLayerList();
+            if (layerList != null) {
+                // The zoom level has its own layer objects, shared by all the
+                // workers.
+                synchronized (layerList) {
+                    return maker.makeTileFile(x, y, zfi, proj);
+                }
+            }
+            return maker.makeTileFile(x, y, zfi, proj);
+        }
+    }
+}
@@ -91,7 +91,7 @@ public class ServerMapTileFactory
         String localLoc = null;
 
         if (localCacheDir != null && zoomLevelInfo != null) {
-            localLoc = zoomLevelInfo.formatImageFilePath(localCacheDir, x, y) + fileExt;
+            localLoc = createZoomLevelInfo(zoomLevel).formatImageFilePath(localCacheDir, x, y) + fileExt;
             /**
              * If a local cache is defined, then the cache will always use the
              * string for the local file as the key.
@@ -143,7 +143,7 @@ public class ServerMapTileFactory
 
             String localLoc = null;
             if (localCacheDir != null && zoomLevelInfo != null) {
-                localLoc = zoomLevelInfo.formatImageFilePath(localCacheDir, x, y) + fileExt;
+                localLoc = createZoomLevelInfo(zoomLevel).formatImageFilePath(localCacheDir, x, y) + fileExt;
 
                 CacheObject localVersion = super.load(localLoc, x, y, zoomLevel, proj);
 
@@ -61,7 +61,7 @@ import com.bbn.openmap.util.ClasspathHacker;
 import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.DataBounds;
 import com.bbn.openmap.util.PropUtils;
-import com.bbn.openmap.util.cacheHandler.CacheHandler;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
 
 /**
@@ -87,12 +87,16 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * tileImagePreparer=com.bbn.openmap.dataAccess.mapTile.StandardImagePreparer
  * # or
  * tileImagePreparer=com.bbn.openmap.dataAccess.mapTile.GreyscaleImagePreparer
+ * # load the tiles around the view, and above and below its zoom level, in the background (false is default)
+ * prefetch=true
+ * # number of threads loading tiles in the background (2 is default)
+ * prefetchThreads=2
  * </pre>
  *
  * @author dietrick
  */
 public class StandardMapTileFactory
-    extends CacheHandler
+    extends ConcurrentCacheHandler
     implements MapTileFactory, PropertyConsumer {
     protected String prefix = null;
     protected final static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory");
@@ -105,6 +109,8 @@ public class StandardMapTileFactory
     public final static String ZOOM_LEVEL_INFO_PROPERTY = "zoomLevelInfo";
     public final static String ZOOM_LEVEL_TILE_SIZE_PROPERTY = "zoomLevelTileSize";
     public final static String TILE_IMAGE_PREPARER_PROPERTY = "tileImagePreparer";
+    public final static String PREFETCH_PROPERTY = "prefetch";
+    public final static String PREFETCH_THREADS_PROPERTY = "prefetchThreads";
     /**
      * Inserted into properties loaded via tiles.omp, so that the
      * EmptyTileHandler can know where the tile set is located, in case it needs
@@ -126,6 +132,17 @@ public class StandardMapTileFactory
     protected boolean verbose = false;
     protected int zoomLevelTileSize = 350;
     protected TileImagePreparer tileImagePreparer;
+    /**
+     * Flag to load the tiles around the current view in the background.
+     */
+    protected boolean prefetch = false;
+    protected int prefetchThreads = MapTilePrefetcher.DEFAULT_NUM_THREADS;
+    protected MapTilePrefetcher prefetcher;
+    /**
+     * Set while a prefetch thread is loading a tile, so no empty tiles get
+     * created off the thread fetching tiles for the view.
+     */
+    protected final static ThreadLocal<Boolean> prefetching = new ThreadLocal<Boolean>();
     /**
      * A component that is painting the tiles to the screen. If this component
      * is set on this tile factory, it will be told to repaint the OMGraphicList
@@ -167,6 +184,9 @@ public class StandardMapTileFactory
      * Tell the factory to clean up resources.
      */
     public void reset() {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
         clear();
     }
 
@@ -377,10 +397,15 @@ public class StandardMapTileFactory
      * @param y the uv y coordinate of the tile
      * @param zoomLevel the zoom level for the tile
      * @param proj the projection being used for the map.
-     * @return CacheObject, or null if the empty tile should be blank.
+     * @return CacheObject, or null if the empty tile should be blank, or if
+     *         called while prefetching tiles.
      */
     public CacheObject getEmptyTile(Object key, int x, int y, int zoomLevel, Projection proj) {
 
+        if (prefetching.get() != null) {
+            return null;
+        }
+
         getTileImagePreparer().prepareForEmptyTile(this);
 
         EmptyTileHandler empTileHandler = getEmptyTileHandler();
@@ -453,6 +478,12 @@ public class StandardMapTileFactory
      */
     public OMGraphicList getTiles(Projection proj, int zoomLevel, OMGraphicList list) {
 
+        // Tiles for the last view aren't needed anymore, get the tiles for
+        // this one first.
+        if (prefetcher != null) {
+            prefetcher.cancel();
+        }
+
         if (fileExt == null || rootDir == null) {
             logger.error("No path to tile files provided (" + rootDir + "), or file extension (" + fileExt +
                 ") not specified");
@@ -521,6 +552,12 @@ public class StandardMapTileFactory
 
             if (!dateline) {
                 getTiles(uvleft, uvright, uvup, uvbottom, zoomLevelInfo, proj, list);
+
+                if (prefetch && !Thread.currentThread().isInterrupted()) {
+                    // Leave room in the cache for the tiles in view.
+                    int inView = Math.abs(uvright - uvleft) * Math.abs(uvbottom - uvup);
+                    getPrefetcher().prefetch(uvleft, uvright, uvup, uvbottom, zoomLevel, proj, getCacheSize() - inView);
+                }
             } else {
                 logger.debug("handling DATELINE");
                 getTiles(uvleft, (int) Math.pow(2, zoomLevel), uvup, uvbottom, zoomLevelInfo, proj, list);
@@ -722,6 +759,105 @@ public class StandardMapTileFactory
         }
     }
 
+    /**
+     * Load a tile into the cache, if it isn't there already, without adding it
+     * to a list. Called by the MapTilePrefetcher, on its own threads.
+     * <p>
+     * Missing tiles are skipped, getEmptyTile returns null on the prefetch
+     * threads. The EmptyTileHandler and TileImagePreparer aren't thread safe
+     * (the ShpFileEmptyTileHandler renders with a shared layer and projection,
+     * for instance), so empty tiles are only created by the thread fetching
+     * tiles for the view.
+     *
+     * @param x the x uv coordinate of the tile
+     * @param y the y uv coordinate of the tile
+     * @param zoomLevel the zoomLevel of the tile
+     * @param proj the current projection.
+     */
+    protected void prefetchTile(int x, int y, int zoomLevel, Projection proj) {
+        String imagePath = createZoomLevelInfo(zoomLevel).formatImageFilePath(rootDir, x, y) + fileExt;
+        if (getFromCache(imagePath, x, y, zoomLevel) != null) {
+            return;
+        }
+
+        CacheObject ret;
+        prefetching.set(Boolean.TRUE);
+        try {
+            ret = load(imagePath, x, y, zoomLevel, proj);
+        } finally {
+            prefetching.remove();
+        }
+
+        if (ret != null) {
+            replaceLeastUsed(ret);
+        }
+    }
+
+    /**
+     * Create a ZoomLevelInfo like the one used by this factory, for a specific
+     * zoom level. The zoomLevelInfo of the factory is set for the current view,
+     * this one can be used for other zoom levels while the view changes.
+     *
+     * @param zoomLevel the zoom level.
+     * @return ZoomLevelInfo set to the zoom level.
+     */
+    protected ZoomLevelInfo createZoomLevelInfo(int zoomLevel) {
+        ZoomLevelInfo zli = null;
+        if (zoomLevelInfo != null && !ZoomLevelInfo.class.equals(zoomLevelInfo.getClass())) {
+            Object obj = ComponentFactory.create(zoomLevelInfo.getClass().getName());
+            if (obj instanceof ZoomLevelInfo) {
+                zli = (ZoomLevelInfo) obj;
+            }
+        }
+        if (zli == null) {
+            zli = new ZoomLevelInfo();
+        }
+        zli.setZoomLevel(zoomLevel);
+        return zli;
+    }
+
+    /**
+     * Get the prefetcher used to load tiles in the background, creating it if
+     * needed.
+     */
+    protected synchronized MapTilePrefetcher getPrefetcher() {
+        if (prefetcher == null) {
+            prefetcher = new MapTilePrefetcher(this, prefetchThreads);
+        }
+        return prefetcher;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * @param prefetch true to load the tiles around the view, and for the same
+     *        area above and below its zoom level, in the background.
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+        if (!prefetch && prefetcher != null) {
+            prefetcher.cancel();
+        }
+    }
+
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    /**
+     * @param prefetchThreads the number of threads loading tiles in the
+     *        background.
+     */
+    public synchronized void setPrefetchThreads(int prefetchThreads) {
+        if (prefetchThreads != this.prefetchThreads && prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+        this.prefetchThreads = prefetchThreads;
+    }
+
     /**
      * Handles going to the cache, getting the cache to load the tile, and then
      * manage the resulting OMRaster tile. Adds the tile to the list after
@@ -866,6 +1002,8 @@ public class StandardMapTileFactory
         }
 
         getList.put(prefix + ZOOM_LEVEL_TILE_SIZE_PROPERTY, Integer.toString(zoomLevelTileSize));
+        getList.put(prefix + PREFETCH_PROPERTY, Boolean.toString(prefetch));
+        getList.put(prefix + PREFETCH_THREADS_PROPERTY, Integer.toString(prefetchThreads));
         TileImagePreparer tip = getTileImagePreparer();
         if (!(tip instanceof StandardImagePreparer)) {
             getList.put(prefix + TILE_IMAGE_PREPARER_PROPERTY, tip.getClass().getName());
@@ -890,6 +1028,12 @@ public class StandardMapTileFactory
             ZOOM_LEVEL_TILE_SIZE_PROPERTY, "Zoom Level Tile Size",
             "The maximum pixel size of a tile before switching to a higher zoom level (350 is default)",
             null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+            PREFETCH_PROPERTY, "Prefetch Tiles",
+            "Load the tiles around the view, and for the zoom levels above and below, in the background",
+            "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class,
+            PREFETCH_THREADS_PROPERTY, "Prefetch Threads", "Number of threads loading tiles in the background", null);
         return list;
     }
 
@@ -956,6 +1100,8 @@ public class StandardMapTileFactory
 
         zoomLevelTileSize = PropUtils.intFromProperties(setList, prefix + ZOOM_LEVEL_TILE_SIZE_PROPERTY,
             zoomLevelTileSize);
+        setPrefetchThreads(PropUtils.intFromProperties(setList, prefix + PREFETCH_THREADS_PROPERTY, prefetchThreads));
+        setPrefetch(PropUtils.booleanFromProperties(setList, prefix + PREFETCH_PROPERTY, prefetch));
     }
 
     public void setPropertyPrefix(String prefix) {
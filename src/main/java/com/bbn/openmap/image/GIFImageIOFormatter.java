@@ -19,24 +19,50 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Properties;
 
 import javax.imageio.ImageIO;
 
 import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.PropUtils;
 import com.bbn.openmap.util.http.HttpConnection;
 
 public class GIFImageIOFormatter extends ImageIOFormatter {
 
+    protected PaletteQuantizer quantizer = new PaletteQuantizer();
+
     public GIFImageIOFormatter() {
         setFormatName("gif");
     }
 
+    public void setProperties(String prefix, Properties props) {
+        prefix = PropUtils.getScopedPropertyPrefix(prefix);
+        String palette = props.getProperty(prefix + PaletteQuantizer.PaletteProperty);
+        if (palette != null) {
+            quantizer.setPalette(PaletteQuantizer.parsePalette(palette));
+        }
+    }
+
     public ImageFormatter makeClone() {
-        return new GIFImageIOFormatter();
+        GIFImageIOFormatter formatter = new GIFImageIOFormatter();
+        formatter.setQuantizer(getQuantizer());
+        return formatter;
+    }
+
+    public PaletteQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * Set the PaletteQuantizer reducing the colors of the images. Clones of
+     * this formatter share it.
+     */
+    public void setQuantizer(PaletteQuantizer quantizer) {
+        this.quantizer = quantizer;
     }
 
     public byte[] formatImage(BufferedImage bi) {
-        BufferedImage reducedImage = ColorReducer.reduce24(bi, 256);
+        BufferedImage reducedImage = quantizer.reduce24(bi, 256);
         try {
             ByteArrayOutputStream byo = new ByteArrayOutputStream();
             ImageIO.write(reducedImage, getFormatName(), byo);
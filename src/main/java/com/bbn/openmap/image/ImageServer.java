@@ -28,16 +28,29 @@ import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -82,6 +95,18 @@ import com.bbn.openmap.util.PropUtils;
  * though, where each image could be generated in it's own thread. That code is
  * not written - maybe someday.
  * <P>
+ * The layers of one image can be rendered at the same time, though, by setting
+ * the layerThreads property. Each layer is then rendered into its own image by
+ * a pool of threads, and the layer images are painted onto the map in layer
+ * order. Layers that aren't done within layerTimeout milliseconds are left out
+ * of the image, so one slow layer can't hold up the response.
+ * <P>
+ * A render that timed out can't be stopped, layers don't check for interrupts
+ * in renderDataForProjection, so it keeps a layer thread until it is done.
+ * Until then, that layer is left out of new images instead of being rendered
+ * again on a second thread at the same time. This also keeps a stuck layer
+ * from taking more than one of the layer threads.
+ * <P>
  * <code><pre>
  *                 
  *                  
@@ -100,6 +125,10 @@ import com.bbn.openmap.util.PropUtils;
  *                    formatter1.class=&lt;classname of formatter 1&gt;
  *                    # Add other formatter1 properties
  *                    formatter2.class=&lt;classname of formatter 2&gt;
+ *                    # Optional, number of threads rendering layers at the same time
+ *                    imageServer.layerThreads=4
+ *                    # Optional, milliseconds to wait for the layers (30000 by default)
+ *                    imageServer.layerTimeout=10000
  *                    
  *                   
  *                  
@@ -149,9 +178,40 @@ public class ImageServer
      */
     public static final String BackgroundProperty = "background";
 
+    /**
+     * Property for the number of threads rendering the layers of an image at
+     * the same time. 0 or 1 renders the layers one after another.
+     */
+    public static final String LayerThreadsProperty = "layerThreads";
+
+    /**
+     * Property for the number of milliseconds to wait for the layers of an
+     * image when they are rendered by several threads. Layers that aren't done
+     * in time are left out of the image. 0 waits as long as it takes.
+     */
+    public static final String LayerTimeoutProperty = "layerTimeout";
+
+    /** The default number of milliseconds to wait for the layers of an image. */
+    public static final long DEFAULT_LAYER_TIMEOUT = 30000;
+
     /** Flag to do graphics and text anti-aliasing on the map image. */
     protected boolean doAntiAliasing = false;
 
+    /** The number of threads rendering layers, 0 or 1 for none. */
+    protected int layerThreads = 0;
+
+    /** Milliseconds to wait for the layers of an image, 0 for no limit. */
+    protected long layerTimeout = DEFAULT_LAYER_TIMEOUT;
+
+    /** The threads rendering layers, created when first needed. */
+    protected ThreadPoolExecutor layerExecutor;
+
+    /**
+     * Layers whose render timed out and is still running on a layer thread.
+     * They are left out of images until the render is done.
+     */
+    protected final Set<Layer> stuckLayers = Collections.newSetFromMap(new IdentityHashMap<Layer, Boolean>());
+
     /**
      * A place to hold on to a property prefix in case one is used. Useful for
      * ImageServer properties files where more than one image server is defined.
@@ -228,6 +288,35 @@ public class ImageServer
         return doAntiAliasing;
     }
 
+    /**
+     * Set the number of threads rendering the layers of an image at the same
+     * time. 0 or 1 renders the layers one after another, on the thread
+     * creating the image.
+     */
+    public synchronized void setLayerThreads(int layerThreads) {
+        if (layerThreads != this.layerThreads && layerExecutor != null) {
+            layerExecutor.shutdown();
+            layerExecutor = null;
+        }
+        this.layerThreads = layerThreads;
+    }
+
+    public int getLayerThreads() {
+        return layerThreads;
+    }
+
+    /**
+     * Set the number of milliseconds to wait for the layers of an image when
+     * they are rendered by several threads, 0 to wait as long as it takes.
+     */
+    public void setLayerTimeout(long layerTimeout) {
+        this.layerTimeout = layerTimeout;
+    }
+
+    public long getLayerTimeout() {
+        return layerTimeout;
+    }
+
     /**
      * Set the layers used on the NEXT request that is processed. Will not
      * affect any image currently being created.
@@ -361,6 +450,7 @@ public class ImageServer
         ((Proj) proj).drawBackground((Graphics2D) graphics, background);
 
         if (showLayers != null) {
+            List<Layer> paintOrder = new ArrayList<Layer>();
             int size = showLayers.size();
             for (int j = size - 1; j >= 0; j--) {
                 for (int i = layers.length - 1; i >= 0; i--) {
@@ -377,13 +467,14 @@ public class ImageServer
                     }
 
                     if (layerName.equals(prefix)) {
-                        layer.renderDataForProjection(proj, graphics);
+                        paintOrder.add(layer);
                         if (logger.isDebugEnabled()) {
                             logger.debug("image request adding layer graphics from : " + layer.getName());
                         }
                     }
                 }
             }
+            renderLayers(proj, graphics, paintOrder);
         } else if (logger.isDebugEnabled()) {
             logger.debug("no layers available for image");
         }
@@ -422,17 +513,19 @@ public class ImageServer
         ((Proj) proj).drawBackground((Graphics2D) graphics, background);
 
         if (layers != null && !layers.isEmpty()) {
+            List<Layer> paintOrder = new ArrayList<Layer>(layers.size());
             for (int i = layers.size() - 1; i >= 0; i--) {
                 Layer layer = layers.get(i);
 
                 if (layer != null) {
-                    layer.renderDataForProjection(proj, graphics);
+                    paintOrder.add(layer);
 
                     if (logger.isDebugEnabled()) {
                         logger.debug("image request adding layer graphics from : " + layer.getName());
                     }
                 }
             }
+            renderLayers(proj, graphics, paintOrder);
 
         } else if (logger.isDebugEnabled()) {
             logger.debug("no layers available for image");
@@ -522,19 +615,21 @@ public class ImageServer
         }
 
         if (layers != null) {
+            List<Layer> paintOrder = new ArrayList<Layer>(layers.length);
             for (int i = layers.length - 1; i >= 0; i--) {
                 if ((includedLayerMask & (0x00000001 << i)) != 0) {
                     if (logger.isDebugEnabled()) {
                         logger.debug("image request adding layer graphics from : " + layers[i].getName());
                     }
 
-                    layers[i].renderDataForProjection(proj, graphics);
+                    paintOrder.add(layers[i]);
                 } else {
                     if (logger.isDebugEnabled()) {
                         logger.debug("skipping layer graphics from : " + layers[i].getName());
                     }
                 }
             }
+            renderLayers(proj, graphics, paintOrder);
         } else {
             if (logger.isDebugEnabled()) {
                 logger.debug("no layers available");
@@ -546,6 +641,165 @@ public class ImageServer
         return formattedImage;
     }
 
+    /**
+     * Have the layers paint themselves into the image, one after another or on
+     * the layer threads, depending on the layerThreads setting.
+     * 
+     * @param proj projection of map.
+     * @param graphics the Graphics of the image.
+     * @param paintOrder the layers to paint, bottom layer first.
+     */
+    protected void renderLayers(Projection proj, Graphics graphics, List<Layer> paintOrder) {
+        if (layerThreads <= 1 || paintOrder.isEmpty()) {
+            for (Layer layer : paintOrder) {
+                layer.renderDataForProjection(proj, graphics);
+            }
+            return;
+        }
+
+        int width = proj.getWidth();
+        int height = proj.getHeight();
+        ThreadPoolExecutor executor = getLayerExecutor();
+        List<LayerRender> renders = new ArrayList<LayerRender>(paintOrder.size());
+
+        for (Layer layer : paintOrder) {
+            if (isStuck(layer)) {
+                logger.warn("layer " + layer.getName() + " is still busy with an earlier image, leaving it out of the image");
+                continue;
+            }
+            // Each layer gets its own copy, in case one changes it.
+            LayerRender render = new LayerRender(layer, proj.makeClone(), width, height);
+            render.future = executor.submit(render);
+            renders.add(render);
+        }
+
+        // Paint the layer images in order as they become ready, all of them
+        // sharing the same deadline.
+        long deadline = System.currentTimeMillis() + layerTimeout;
+        for (int i = 0; i < renders.size(); i++) {
+            LayerRender render = renders.get(i);
+            try {
+                BufferedImage image;
+                if (layerTimeout > 0) {
+                    long wait = Math.max(0, deadline - System.currentTimeMillis());
+                    image = render.future.get(wait, TimeUnit.MILLISECONDS);
+                } else {
+                    image = render.future.get();
+                }
+                graphics.drawImage(image, 0, 0, null);
+            } catch (TimeoutException te) {
+                render.abandon();
+                logger.warn("layer " + render.layer.getName() + " not ready after " + layerTimeout
+                        + " ms, leaving it out of the image");
+            } catch (ExecutionException ee) {
+                logger.warn("problem rendering layer " + render.layer.getName() + ": " + ee.getCause());
+            } catch (InterruptedException ie) {
+                for (int j = i; j < renders.size(); j++) {
+                    renders.get(j).abandon();
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if a render of the layer timed out earlier and is still
+     *         running on a layer thread.
+     */
+    protected boolean isStuck(Layer layer) {
+        synchronized (stuckLayers) {
+            return stuckLayers.contains(layer);
+        }
+    }
+
+    /**
+     * Renders one layer into its own image on a layer thread, and keeps track
+     * of whether it has started and finished so an abandoned render can mark
+     * the layer as stuck until it's done.
+     */
+    protected class LayerRender
+            implements Callable<BufferedImage> {
+        final Layer layer;
+        final Projection proj;
+        final int width;
+        final int height;
+        Future<BufferedImage> future;
+        // Guarded by stuckLayers.
+        boolean started;
+        boolean finished;
+        boolean abandoned;
+
+        LayerRender(Layer layer, Projection proj, int width, int height) {
+            this.layer = layer;
+            this.proj = proj;
+            this.width = width;
+            this.height = height;
+        }
+
+        public BufferedImage call() {
+            synchronized (stuckLayers) {
+                if (abandoned) {
+                    return null;
+                }
+                started = true;
+            }
+            try {
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = image.createGraphics();
+                try {
+                    g.setClip(0, 0, width, height);
+                    if (doAntiAliasing) {
+                        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    }
+                    layer.renderDataForProjection(proj, g);
+                } finally {
+                    g.dispose();
+                }
+                return image;
+            } finally {
+                synchronized (stuckLayers) {
+                    finished = true;
+                    stuckLayers.remove(layer);
+                }
+            }
+        }
+
+        /**
+         * Give up on the render. If it hasn't started it never will, if it's
+         * running the layer is stuck until the render returns.
+         */
+        void abandon() {
+            synchronized (stuckLayers) {
+                abandoned = true;
+                future.cancel(true);
+                if (started && !finished) {
+                    stuckLayers.add(layer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the threads rendering layers, creating them if needed.
+     */
+    protected synchronized ThreadPoolExecutor getLayerExecutor() {
+        if (layerExecutor == null) {
+            layerExecutor = new ThreadPoolExecutor(layerThreads, layerThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ImageServer layer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Let the threads go when no images are being made.
+            layerExecutor.allowCoreThreadTimeOut(true);
+        }
+        return layerExecutor;
+    }
+
     /**
      * Create a java.awt.Graphics to use for an image. The Graphics will affect
      * the image contained within the ImageFormatter.
@@ -632,6 +886,8 @@ public class ImageServer
         layers = getLayers(props, instantiatedLayers);
         formatter = getFormatters(props);
         doAntiAliasing = PropUtils.booleanFromProperties(props, prefix + AntiAliasingProperty, false);
+        setLayerThreads(PropUtils.intFromProperties(props, prefix + LayerThreadsProperty, layerThreads));
+        layerTimeout = PropUtils.longFromProperties(props, prefix + LayerTimeoutProperty, layerTimeout);
 
         background = getBackground(props, prefix + BackgroundProperty);
     }
@@ -719,6 +975,8 @@ public class ImageServer
         props.put(prefix + ImageFormattersProperty, buf.toString().trim());
 
         props.put(prefix + AntiAliasingProperty, Boolean.toString(doAntiAliasing));
+        props.put(prefix + LayerThreadsProperty, Integer.toString(layerThreads));
+        props.put(prefix + LayerTimeoutProperty, Long.toString(layerTimeout));
 
         if (background instanceof Color) {
             String colorString = Integer.toHexString(((Color) background).getRGB());
@@ -739,6 +997,8 @@ public class ImageServer
         list.put(ImageServerLayersProperty, "A list of marker names (space-separated) for layer definitions");
         list.put(ImageFormattersProperty, "A list of marker names (space-separated) for ImageFormatter definitions");
         list.put(AntiAliasingProperty, "Whether to use anti-aliasing for the image");
+        list.put(LayerThreadsProperty, "The number of threads rendering layers at the same time, 0 for none");
+        list.put(LayerTimeoutProperty, "Milliseconds to wait for the layers when rendered by threads, 0 for no limit");
         return list;
     }
 
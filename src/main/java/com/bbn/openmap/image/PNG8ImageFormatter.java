@@ -4,24 +4,36 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Properties;
 
 import javax.imageio.ImageIO;
 
 import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.PropUtils;
 import com.bbn.openmap.util.http.HttpConnection;
 
 public class PNG8ImageFormatter extends ImageIOFormatter {
 
+    protected PaletteQuantizer quantizer = new PaletteQuantizer();
+
     public PNG8ImageFormatter() {
         setFormatName("png");
     }
 
+    public void setProperties(String prefix, Properties props) {
+        prefix = PropUtils.getScopedPropertyPrefix(prefix);
+        String palette = props.getProperty(prefix + PaletteQuantizer.PaletteProperty);
+        if (palette != null) {
+            quantizer.setPalette(PaletteQuantizer.parsePalette(palette));
+        }
+    }
+
     public byte[] formatImage(BufferedImage bi) {
         BufferedImage reducedImage = null;
         if (bi.getColorModel().hasAlpha()) {
-			reducedImage = ColorReducer.reduce32(bi, 256);
+			reducedImage = quantizer.reduce32(bi, 256);
 		} else {
-			reducedImage = ColorReducer.reduce24(bi, 256);
+			reducedImage = quantizer.reduce24(bi, 256);
 		}
         try {
             ByteArrayOutputStream byo = new ByteArrayOutputStream();
@@ -38,7 +50,21 @@ public class PNG8ImageFormatter extends ImageIOFormatter {
     }
 
     public ImageFormatter makeClone() {
-        return new PNG8ImageFormatter();
+        PNG8ImageFormatter formatter = new PNG8ImageFormatter();
+        formatter.setQuantizer(getQuantizer());
+        return formatter;
+    }
+
+    public PaletteQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * Set the PaletteQuantizer reducing the colors of the images. Clones of
+     * this formatter share it.
+     */
+    public void setQuantizer(PaletteQuantizer quantizer) {
+        this.quantizer = quantizer;
     }
 
     public Collection<String> getContentTypes() {
@@ -0,0 +1,769 @@
+package com.bbn.openmap.image;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.omGraphics.OMColor;
+import com.bbn.openmap.util.PropUtils;
+
+import doppelt.Quantize32;
+
+/**
+ * Reduces the colors of an image to an 8 bit palette, like the ColorReducer,
+ * for the PNG8 and GIF formatters. The pixels are read straight from the
+ * DataBufferInt of INT_ARGB and INT_RGB images, and the colors of the image
+ * are counted first. If there aren't more colors than fit in the palette, as
+ * is usual for map images, they become the palette. Otherwise the palette is
+ * found with the oct tree of doppelt.Quantize32, classifying the counted
+ * colors instead of every pixel. Photo-like images with more than
+ * MAX_COUNTED_COLORS colors are counted by oct tree cell instead, with their
+ * color totals, which gives the same palette as counting every color.
+ * <p>
+ * A fixed palette can be set for a map whose colors are known ahead of time.
+ * The pixels are then given the closest palette color, without counting the
+ * colors or calculating a palette. Large images are counted and assigned on
+ * several threads. A PaletteQuantizer doesn't change while reducing images,
+ * so one can be shared by formatters on different threads.
+ */
+public class PaletteQuantizer {
+
+    public static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.image.PaletteQuantizer");
+
+    /**
+     * Formatter property for a fixed palette, a space separated list of hex
+     * ARGB colors. If the colors of the map are known, the palette doesn't
+     * have to be figured out for every image.
+     */
+    public static final String PaletteProperty = "palette";
+
+    /**
+     * The default number of pixels an image needs before it is split up among
+     * threads.
+     */
+    public final static int DEFAULT_PARALLEL_THRESHOLD = 512 * 512;
+
+    /**
+     * The most colors counted one by one. Images with more colors are counted
+     * by the oct tree cell the colors fall in.
+     */
+    public final static int MAX_COUNTED_COLORS = 1 << 16;
+
+    /**
+     * Threads shared by all PaletteQuantizers for reducing parts of images.
+     */
+    protected static ThreadPoolExecutor quantizeExecutor;
+
+    /**
+     * Fixed palette of ARGB colors, null to calculate a palette for each
+     * image.
+     */
+    protected int[] palette;
+
+    protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+    protected int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    public PaletteQuantizer() {
+    }
+
+    /**
+     * Create a PaletteQuantizer with a fixed palette.
+     *
+     * @param palette ARGB colors.
+     */
+    public PaletteQuantizer(int[] palette) {
+        setPalette(palette);
+    }
+
+    /**
+     * Reduce a 24 bit image to the given number of colors. Supports fully
+     * transparent pixels, but not partially transparent pixels. The first
+     * palette entry is transparent, the rest are opaque.
+     *
+     * @param bi the image
+     * @param colors number of palette entries, 256 at most.
+     * @return BufferedImage with reduced colors.
+     */
+    public BufferedImage reduce24(BufferedImage bi, int colors) {
+        return reduce(bi, colors, false);
+    }
+
+    /**
+     * Reduce a 32 bit image to the given number of colors. Supports partially
+     * transparent pixels.
+     *
+     * @param bi the image
+     * @param colors number of palette entries, 256 at most.
+     * @return BufferedImage with reduced colors.
+     */
+    public BufferedImage reduce32(BufferedImage bi, int colors) {
+        return reduce(bi, colors, true);
+    }
+
+    protected BufferedImage reduce(BufferedImage bi, int colors, boolean keepAlpha) {
+        final int width = bi.getWidth();
+        final int height = bi.getHeight();
+        final int[] pixels = getPixels(bi);
+        final boolean hasAlpha = bi.getColorModel().hasAlpha();
+        final boolean alpha = keepAlpha;
+
+        // Split into rows for the threads.
+        int parts = (numThreads > 1 && pixels.length >= parallelThreshold) ? Math.min(numThreads, height) : 1;
+        final int[] partStart = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            partStart[i] = (int) ((long) height * i / parts) * width;
+        }
+
+        // The palette indexes of the colors, or of the oct tree cells if
+        // there are too many colors. With a fixed palette there's nothing to
+        // count, the pixels are given the closest palette color as they come.
+        final ColorTable table;
+        final int cellDepth;
+        final int[] colorMap;
+        final int offset = alpha ? 0 : 1;
+        if (palette != null) {
+            table = null;
+            cellDepth = 0;
+            colorMap = fixedColorMap(colors - offset, offset, alpha);
+            if (!alpha) {
+                colorMap[0] = OMColor.clear.getRGB();
+            }
+        } else {
+            // Count the colors, a part gives up if it finds too many.
+            List<ColorTable> tables = runParts(parts, new Part<ColorTable>() {
+                public ColorTable run(int part) {
+                    ColorTable table = new ColorTable();
+                    int count = 0;
+                    int last = 0;
+                    for (int i = partStart[part]; i < partStart[part + 1]; i++) {
+                        int key = colorKey(pixels[i], hasAlpha, alpha);
+                        // Runs of the same color are common
+                        if (key == last && count > 0) {
+                            count++;
+                            continue;
+                        }
+                        if (count > 0) {
+                            table.add(last, count);
+                            if (table.size() > MAX_COUNTED_COLORS) {
+                                return null;
+                            }
+                        }
+                        last = key;
+                        count = 1;
+                    }
+                    if (count > 0) {
+                        table.add(last, count);
+                    }
+                    return table;
+                }
+            });
+
+            ColorTable counted = tables.get(0);
+            for (int i = 1; i < tables.size() && counted != null; i++) {
+                if (tables.get(i) == null) {
+                    counted = null;
+                } else {
+                    counted.addAll(tables.get(i));
+                }
+            }
+
+            if (counted != null && counted.size() <= MAX_COUNTED_COLORS) {
+                table = counted;
+                cellDepth = 0;
+                colorMap = createPalette(table, colors, alpha);
+            } else {
+                cellDepth = Quantize32.Cube.treeDepth(keepAlpha ? colors : colors - 1);
+                List<CellTable> cellTables = runParts(parts, new Part<CellTable>() {
+                    public CellTable run(int part) {
+                        CellTable cells = new CellTable();
+                        int count = 0;
+                        int last = 0;
+                        for (int i = partStart[part]; i < partStart[part + 1]; i++) {
+                            int key = colorKey(pixels[i], hasAlpha, alpha);
+                            if (key == last && count > 0) {
+                                count++;
+                                continue;
+                            }
+                            if (count > 0) {
+                                cells.add(last, count, cellDepth);
+                            }
+                            last = key;
+                            count = 1;
+                        }
+                        if (count > 0) {
+                            cells.add(last, count, cellDepth);
+                        }
+                        return cells;
+                    }
+                });
+
+                CellTable cells = cellTables.get(0);
+                for (int i = 1; i < cellTables.size(); i++) {
+                    cells.addAll(cellTables.get(i));
+                }
+                table = cells;
+                colorMap = createCellPalette(cells, colors, alpha);
+            }
+        }
+
+        // ImageIO (at least on Mac) does not like to *read* png images with
+        // only a single color in the color index
+        int mapSize = alpha ? Math.max(colorMap.length, 2) : colors;
+
+        byte[] r = new byte[mapSize];
+        byte[] g = new byte[mapSize];
+        byte[] b = new byte[mapSize];
+        byte[] a = new byte[mapSize];
+
+        // For reduce24, need to have full(256) size array to get rid of ugly
+        // rare errors msg from GIFImageWriter. We also need the *first* entry
+        // to be transparent. reduce32 extra colors can not be clear as ArcGIS
+        // does not handle PNG with multiple clear entries in the color index.
+        Color fill = alpha ? OMColor.green : OMColor.clear;
+        Arrays.fill(r, (byte) fill.getRed());
+        Arrays.fill(g, (byte) fill.getGreen());
+        Arrays.fill(b, (byte) fill.getBlue());
+        Arrays.fill(a, (byte) fill.getAlpha());
+
+        for (int i = 0; i < colorMap.length; i++) {
+            int argb = colorMap[i];
+            a[i] = (byte) (argb >>> 24);
+            r[i] = (byte) (argb >>> 16);
+            g[i] = (byte) (argb >>> 8);
+            b[i] = (byte) argb;
+        }
+
+        IndexColorModel colorModel = new IndexColorModel(8, mapSize, r, g, b, a);
+        BufferedImage reducedImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        final byte[] indexes = ((DataBufferByte) reducedImage.getRaster().getDataBuffer()).getData();
+
+        runParts(parts, new Part<Object>() {
+            public Object run(int part) {
+                // Colors already matched to the fixed palette
+                ColorTable found = table == null ? new ColorTable() : null;
+                int last = 0;
+                byte index = 0;
+                boolean first = true;
+                for (int i = partStart[part]; i < partStart[part + 1]; i++) {
+                    int key = colorKey(pixels[i], hasAlpha, alpha);
+                    if (first || key != last) {
+                        if (table != null) {
+                            index = (byte) table.get(cellDepth == 0 ? key : cellKey(key, cellDepth));
+                        } else if (key == 0 && !alpha) {
+                            index = 0;
+                        } else {
+                            int match = found.get(key);
+                            if (match < 0) {
+                                match = closest(key, colorMap, offset);
+                                if (found.size() >= MAX_COUNTED_COLORS) {
+                                    found = new ColorTable();
+                                }
+                                found.add(key, match + 1);
+                            }
+                            index = (byte) match;
+                        }
+                        last = key;
+                        first = false;
+                    }
+                    indexes[i] = index;
+                }
+                return null;
+            }
+        });
+
+        return reducedImage;
+    }
+
+    /**
+     * The color a pixel is counted as. For 24 bit images transparent pixels
+     * are all the same, and the rest are opaque. For 32 bit images all clear
+     * pixels are the same.
+     */
+    protected static int colorKey(int pixel, boolean hasAlpha, boolean keepAlpha) {
+        if (!hasAlpha) {
+            return pixel | 0xff000000;
+        }
+        if (keepAlpha) {
+            return (pixel >>> 24) == 0 ? 0 : pixel;
+        }
+        return (pixel >>> 24) < 128 ? 0 : pixel | 0xff000000;
+    }
+
+    /**
+     * Figure out the palette for the counted colors, and replace the counts in
+     * the table with palette indexes.
+     *
+     * @param table the colors and their counts.
+     * @param colors the number of palette entries.
+     * @param keepAlpha false for the first entry to be transparent and the
+     *        rest opaque.
+     * @return ARGB palette.
+     */
+    protected int[] createPalette(ColorTable table, int colors, boolean keepAlpha) {
+        // reduce24 saves the first entry for transparent pixels.
+        int offset = keepAlpha ? 0 : 1;
+        int available = colors - offset;
+
+        int numColors = table.size();
+        int[] keys = new int[numColors];
+        int[] counts = new int[numColors];
+        int n = 0;
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.counts[i] != 0 && (keepAlpha || table.keys[i] != 0)) {
+                keys[n] = table.keys[i];
+                counts[n++] = table.counts[i];
+            }
+        }
+
+        int[] colorMap;
+        int[] indexes = new int[n];
+
+        if (n <= available) {
+            // The colors fit as they are
+            colorMap = new int[n + offset];
+            for (int i = 0; i < n; i++) {
+                colorMap[i + offset] = keys[i];
+                indexes[i] = i + offset;
+            }
+        } else {
+            Quantize32.Cube cube = new Quantize32.Cube(available);
+            for (int i = 0; i < n; i++) {
+                cube.classify(keys[i], counts[i]);
+            }
+            cube.reduction();
+            int[] cubeColors = cube.colormap();
+            colorMap = new int[cubeColors.length + offset];
+            System.arraycopy(cubeColors, 0, colorMap, offset, cubeColors.length);
+            for (int i = 0; i < n; i++) {
+                indexes[i] = cube.colorNumber(keys[i]) + offset;
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(n + " colors in image, " + (colorMap.length - offset) + " in palette");
+        }
+
+        if (!keepAlpha) {
+            colorMap[0] = OMColor.clear.getRGB();
+            table.put(0, 0);
+        }
+        for (int i = 0; i < n; i++) {
+            table.put(keys[i], indexes[i]);
+        }
+
+        return colorMap;
+    }
+
+    /**
+     * The oct tree cell of a color, the leaf it ends up in for a tree of the
+     * given depth. A node sends values above its middle to the upper child,
+     * so the cell is the top bits of each channel value less one.
+     */
+    protected static int cellKey(int key, int depth) {
+        int shift = 8 - depth;
+        int cell = 0;
+        for (int s = 24; s >= 0; s -= 8) {
+            int c = (key >>> s) & 0xff;
+            cell = (cell << depth) | ((c == 0 ? 0 : c - 1) >> shift);
+        }
+        return cell;
+    }
+
+    /**
+     * Figure out the palette for the counted oct tree cells, and replace the
+     * counts in the table with palette indexes. Each cell is classified as
+     * the average of its colors, which lands in the cell.
+     *
+     * @param cells the cells and their counts.
+     * @param colors the number of palette entries.
+     * @param keepAlpha false for the first entry to be transparent and the
+     *        rest opaque.
+     * @return ARGB palette.
+     */
+    protected int[] createCellPalette(CellTable cells, int colors, boolean keepAlpha) {
+        int offset = keepAlpha ? 0 : 1;
+        int available = colors - offset;
+
+        int[] slots = new int[cells.size()];
+        int[] averages = new int[cells.size()];
+        int n = 0;
+        for (int i = 0; i < cells.keys.length; i++) {
+            if (cells.counts[i] != 0 && (keepAlpha || cells.keys[i] != 0)) {
+                slots[n] = i;
+                averages[n++] = cells.average(i);
+            }
+        }
+
+        int[] indexes = new int[n];
+
+        Quantize32.Cube cube = new Quantize32.Cube(available);
+        for (int i = 0; i < n; i++) {
+            int t = slots[i] * 4;
+            cube.classify(averages[i], cells.counts[slots[i]], cells.totals[t], cells.totals[t + 1], cells.totals[t + 2], cells.totals[t + 3]);
+        }
+        cube.reduction();
+        int[] cubeColors = cube.colormap();
+        int[] colorMap = new int[cubeColors.length + offset];
+        System.arraycopy(cubeColors, 0, colorMap, offset, cubeColors.length);
+        for (int i = 0; i < n; i++) {
+            indexes[i] = cube.colorNumber(averages[i]) + offset;
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(n + " color cells in image, " + (colorMap.length - offset) + " colors in palette");
+        }
+
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = cells.keys[slots[i]];
+        }
+        if (!keepAlpha) {
+            colorMap[0] = OMColor.clear.getRGB();
+            cells.put(0, 0);
+        }
+        for (int i = 0; i < n; i++) {
+            cells.put(keys[i], indexes[i]);
+        }
+
+        return colorMap;
+    }
+
+    /**
+     * The fixed palette as a color map, opaque unless alpha is kept.
+     */
+    protected int[] fixedColorMap(int available, int offset, boolean keepAlpha) {
+        int[] colorMap = new int[Math.min(palette.length, available) + offset];
+        for (int i = 0; i < colorMap.length - offset; i++) {
+            colorMap[i + offset] = keepAlpha ? palette[i] : palette[i] | 0xff000000;
+        }
+        return colorMap;
+    }
+
+    /**
+     * Find the palette entry closest to a color.
+     */
+    protected static int closest(int argb, int[] colorMap, int offset) {
+        int a = argb >>> 24;
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        int best = offset;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = offset; i < colorMap.length; i++) {
+            int c = colorMap[i];
+            int da = a - (c >>> 24);
+            int dr = r - ((c >> 16) & 0xff);
+            int dg = g - ((c >> 8) & 0xff);
+            int db = b - (c & 0xff);
+            int distance = da * da + dr * dr + dg * dg + db * db;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the ARGB pixels of an image. For INT_ARGB and INT_RGB images these
+     * are the image's own pixels, not a copy, INT_RGB pixels don't have their
+     * alpha set.
+     */
+    public static int[] getPixels(BufferedImage bi) {
+        int type = bi.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && bi.getRaster().getDataBuffer() instanceof DataBufferInt
+                && bi.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && bi.getRaster().getParent() == null) {
+            DataBufferInt dataBuffer = (DataBufferInt) bi.getRaster().getDataBuffer();
+            SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) bi.getSampleModel();
+            if (dataBuffer.getNumBanks() == 1 && dataBuffer.getOffset() == 0
+                    && sampleModel.getScanlineStride() == bi.getWidth()) {
+                return dataBuffer.getData();
+            }
+        }
+        int width = bi.getWidth();
+        return bi.getRGB(0, 0, width, bi.getHeight(), null, 0, width);
+    }
+
+    /**
+     * Parse a palette from a space separated list of hex ARGB colors.
+     */
+    public static int[] parsePalette(String colorList) {
+        Vector<String> colors = PropUtils.parseSpacedMarkers(colorList);
+        int[] palette = new int[colors.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = PropUtils.parseColor(colors.get(i), true).getRGB();
+        }
+        return palette;
+    }
+
+    public int[] getPalette() {
+        return palette;
+    }
+
+    /**
+     * Set a fixed palette to use for every image, instead of calculating one
+     * for each image.
+     *
+     * @param palette ARGB colors, null to calculate the palette for each
+     *        image.
+     */
+    public void setPalette(int[] palette) {
+        this.palette = (palette != null && palette.length > 0) ? palette.clone() : null;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads an image can be split up among, 1 to reduce
+     * images on the calling thread.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Set the number of pixels an image needs before it is split up among
+     * threads.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Something done to one part of an image.
+     */
+    protected interface Part<T> {
+        T run(int part);
+    }
+
+    /**
+     * Run the parts of an image, the first on this thread and the rest on the
+     * shared threads.
+     *
+     * @return the results of the parts, in order.
+     */
+    protected <T> List<T> runParts(int parts, final Part<T> part) {
+        List<T> results = new ArrayList<T>(parts);
+        if (parts <= 1) {
+            results.add(part.run(0));
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<Future<T>>(parts - 1);
+        ThreadPoolExecutor executor = getQuantizeExecutor();
+        for (int i = 1; i < parts; i++) {
+            final int p = i;
+            futures.add(executor.submit(new Callable<T>() {
+                public T call() {
+                    return part.run(p);
+                }
+            }));
+        }
+        results.add(part.run(0));
+
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException ie) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("interrupted reducing image colors", ie);
+        }
+        return results;
+    }
+
+    /**
+     * Get the threads shared for reducing images, creating them if needed.
+     */
+    protected static synchronized ThreadPoolExecutor getQuantizeExecutor() {
+        if (quantizeExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            quantizeExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "PaletteQuantizer");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Let the threads go when no images are being made.
+            quantizeExecutor.allowCoreThreadTimeOut(true);
+        }
+        return quantizeExecutor;
+    }
+
+    /**
+     * An open addressing hash table of colors, holding their pixel counts
+     * and then their palette indexes. A count of zero marks an empty slot, so
+     * palette indexes are stored plus one.
+     */
+    protected static class ColorTable {
+        int[] keys = new int[1024];
+        int[] counts = new int[1024];
+        int size;
+
+        int slot(int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int i = (hash ^ (hash >>> 16)) & mask;
+            while (counts[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        void add(int key, int count) {
+            int i = slot(key);
+            if (counts[i] == 0) {
+                keys[i] = key;
+                counts[i] = count;
+                if (++size * 2 > keys.length) {
+                    grow();
+                }
+            } else {
+                counts[i] += count;
+            }
+        }
+
+        void addAll(ColorTable other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.keys[i], other.counts[i]);
+                }
+            }
+        }
+
+        /** Set the palette index of a color that's in the table. */
+        void put(int key, int index) {
+            int i = slot(key);
+            if (counts[i] != 0) {
+                counts[i] = index + 1;
+            }
+        }
+
+        /** Get the palette index of a color, after put. */
+        int get(int key) {
+            return counts[slot(key)] - 1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int j = slot(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    counts[j] = oldCounts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * A ColorTable of oct tree cells, with the channel totals of the colors
+     * counted in each cell.
+     */
+    protected static class CellTable extends ColorTable {
+        long[] totals = new long[keys.length * 4];
+
+        /** Count a color in its cell. */
+        void add(int argb, int count, int depth) {
+            add(cellKey(argb, depth), count, (long) (argb >>> 24) * count, (long) ((argb >> 16) & 0xff) * count,
+                    (long) ((argb >> 8) & 0xff) * count, (long) (argb & 0xff) * count);
+        }
+
+        void add(int key, int count, long alpha, long red, long green, long blue) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int i = slot(key);
+            if (counts[i] == 0) {
+                keys[i] = key;
+                size++;
+            }
+            counts[i] += count;
+            int t = i * 4;
+            totals[t] += alpha;
+            totals[t + 1] += red;
+            totals[t + 2] += green;
+            totals[t + 3] += blue;
+        }
+
+        void addAll(CellTable other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.counts[i] != 0) {
+                    int t = i * 4;
+                    add(other.keys[i], other.counts[i], other.totals[t], other.totals[t + 1], other.totals[t + 2], other.totals[t + 3]);
+                }
+            }
+        }
+
+        /** The average ARGB color of the colors counted in a slot. */
+        int average(int slot) {
+            long count = counts[slot];
+            int argb = 0;
+            for (int t = slot * 4; t < slot * 4 + 4; t++) {
+                argb = (argb << 8) | (int) ((totals[t] + count / 2) / count);
+            }
+            return argb;
+        }
+
+        void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            long[] oldTotals = totals;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldCounts.length * 2];
+            totals = new long[keys.length * 4];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int j = slot(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    counts[j] = oldCounts[i];
+                    System.arraycopy(oldTotals, i * 4, totals, j * 4, 4);
+                }
+            }
+        }
+    }
+}
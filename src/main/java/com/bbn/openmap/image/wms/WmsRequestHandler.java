@@ -664,6 +664,15 @@ public class WmsRequestHandler
         parameters.topLayerPropertyPrefixes.clear();
         parameters.layerNames.clear();
 
+        // The handler may be reused from a pool, so nested layers turned on
+        // by an earlier request must be turned off again. Only the ones
+        // named in this request are turned on below.
+        for (IWmsLayer wmsLayer : wmsLayers) {
+            if (wmsLayer instanceof IWmsNestedLayer) {
+                ((IWmsNestedLayer) wmsLayer).setIsActive(false);
+            }
+        }
+
         /*
          * The order of layers, because the WMS should first render layer at the
          * bottom, the second tablet you any longer, etc. imageserver rendering
@@ -31,7 +31,8 @@ import com.bbn.openmap.MoreMath;
 /**
  * This class extends the BinaryFile class, doing buffered reads on the
  * underlying input file. The buffer size is not modifiable after construction,
- * and the buffer management isn't the greatest.
+ * and the buffer management isn't the greatest. If the file is memory mapped,
+ * the buffer is bypassed and reads go straight to the mapping.
  */
 public class BinaryBufferedFile extends BinaryFile {
     /** Where reads get buffered */
@@ -190,6 +191,9 @@ public class BinaryBufferedFile extends BinaryFile {
     }
 
     public long skipBytes(long n) throws IOException {
+        if (getMappedReader() != null) {
+            return super.skipBytes(n);
+        }
         if (n < bytesinbuffer) {
             bytesinbuffer -= n;
             curptr += n;
@@ -204,10 +208,17 @@ public class BinaryBufferedFile extends BinaryFile {
     }
 
     public long getFilePointer() throws IOException {
+        if (getMappedReader() != null) {
+            return super.getFilePointer();
+        }
         return (firstbyteoffset + curptr);
     }
 
     public void seek(long pos) throws IOException {
+        if (getMappedReader() != null) {
+            super.seek(pos);
+            return;
+        }
         final long relpos = pos - firstbyteoffset;
         if ((relpos >= 0) && (relpos < (curptr + bytesinbuffer))) {
             final int relcur = (int) relpos - curptr;
@@ -228,6 +239,9 @@ public class BinaryBufferedFile extends BinaryFile {
 //    }
 
     public long available() throws IOException {
+        if (getMappedReader() != null) {
+            return super.available();
+        }
         return (length() - firstbyteoffset - curptr);
     }
 
@@ -244,6 +258,9 @@ public class BinaryBufferedFile extends BinaryFile {
     }
 
     public int read() throws IOException {
+        if (getMappedReader() != null) {
+            return super.read();
+        }
         try {
             if (bytesinbuffer == 0)
                 refillBuffer();
@@ -264,6 +281,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @exception IOException Any IO errors encountered in reading from the file
      */
     public int read(byte b[], int off, int len) throws IOException {
+        if (getMappedReader() != null) {
+            return super.read(b, off, len);
+        }
         int numread = 0;
         int copy;
         if (len < bytesinbuffer)
@@ -326,6 +346,9 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public byte[] readBytes(int howmany, boolean allowless)
             throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            return super.readBytes(howmany, allowless);
+        }
 
         byte foo[] = new byte[howmany];
         int gotsofar = 0;
@@ -368,6 +391,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @exception FormatException a rethrown IOException
      */
     public char readChar() throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            return super.readChar();
+        }
         try {
             int retv = read();
             if (retv == -1) {
@@ -391,6 +417,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @see #read(byte[])
      */
     public short readShort() throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            return super.readShort();
+        }
         // MSBFirst must be set when we are called
         assertSize(2);
         curptr += 2;
@@ -425,6 +454,10 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public void readShortArray(short vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            getMappedReader().readShortArray(vec, offset, len, MSBFirst);
+            return;
+        }
 
         while (len > 0) {
             int shortsleft = bytesinbuffer / 2;
@@ -460,6 +493,9 @@ public class BinaryBufferedFile extends BinaryFile {
      *            reading the bytes for the integer
      */
     public int readInteger() throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            return super.readInteger();
+        }
         // MSBFirst must be set when we are called
         assertSize(4);
         curptr += 4;
@@ -476,6 +512,10 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public void readIntegerArray(int vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            super.readIntegerArray(vec, offset, len);
+            return;
+        }
         while (len > 0) {
             int intsleft = bytesinbuffer / 4;
             if (intsleft == 0) {
@@ -513,6 +553,10 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public void readFloatArray(float vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            super.readFloatArray(vec, offset, len);
+            return;
+        }
         while (len > 0) {
             int floatsleft = bytesinbuffer / 4;
             if (floatsleft == 0) {
@@ -551,6 +595,9 @@ public class BinaryBufferedFile extends BinaryFile {
      * @see #read(byte[])
      */
     public long readLong() throws EOFException, FormatException {
+        if (getMappedReader() != null) {
+            return super.readLong();
+        }
         assertSize(8);
         curptr += 8;
         bytesinbuffer -= 8;
@@ -570,6 +617,9 @@ public class BinaryBufferedFile extends BinaryFile {
      */
     public String readFixedLengthString(int length) throws EOFException,
             FormatException {
+        if (getMappedReader() != null) {
+            return super.readFixedLengthString(length);
+        }
         String retstring;
         if (length < buffer.length) {
             assertSize(length);
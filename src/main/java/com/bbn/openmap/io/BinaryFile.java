@@ -41,13 +41,36 @@ import com.bbn.openmap.util.Debug;
  * The BinaryFile is the standard object used to access data files. It acts like
  * a RandomAccessFile, but will work on jar file contents and URLs, too. The
  * source of the data is isolated through the InputReader interface.
+ * <p>
+ * Local files are read with a FileInputReader by default. If the
+ * {@link #MappedFilesProperty} environment property is true, or
+ * {@link #setUseMappedFiles(boolean)} has been called with true, local files
+ * are memory mapped with a MappedByteBufferInputReader instead, and numbers
+ * are read straight from the mapping.
  */
 public class BinaryFile {
    private static int openCount = 0;
    private static int classCount = 0;
 
+   /**
+    * Environment property for having local files memory mapped
+    * ("openmap.MappedFiles").
+    */
+   public static final String MappedFilesProperty = Environment.OpenMapPrefix + ".MappedFiles";
+
+   /**
+    * Overrides the MappedFilesProperty if set.
+    */
+   private static Boolean useMappedFiles = null;
+
    private InputReader inputReader = null;
 
+   /**
+    * Set if the inputReader is a MappedByteBufferInputReader, for reading
+    * numbers directly from the mapping.
+    */
+   private MappedByteBufferInputReader mappedReader = null;
+
    /**
     * The byte order of the underlying file. (<code>true</code>== MSB-First ==
     * big-endian)
@@ -66,7 +89,7 @@ public class BinaryFile {
     */
    public BinaryFile(File f)
          throws IOException {
-      inputReader = new FileInputReader(f);
+      setInputReader(createFileInputReader(f));
       classCount++;
       openCount++;
    }
@@ -77,7 +100,7 @@ public class BinaryFile {
     * @param inputReader the input reader to be opened for reading
     */
    private BinaryFile(InputReader inputReader) {
-      this.inputReader = inputReader;
+      setInputReader(inputReader);
       classCount++;
       openCount++;
    }
@@ -118,7 +141,7 @@ public class BinaryFile {
          if (file != null && file.exists()) {
             // If the string represents a file, then we want to
             // use the RandomAccessFile aspect of the BinaryFile.
-            setInputReader(new FileInputReader(file));
+            setInputReader(createFileInputReader(file));
          } else {
             // see JNLP deploy tip here
             // http://java.sun.com/javase/6/docs/technotes/guides/jweb/deployment_advice.html#ClassLoader_and_Resources
@@ -163,7 +186,7 @@ public class BinaryFile {
                   if (file != null && file.exists()) {
                      // It's still a file, available directly.
                      // Access it with the RandomAccessFile
-                     setInputReader(new FileInputReader(file));
+                     setInputReader(createFileInputReader(file));
                   } else {
                      // Need to get it as a resource. Needs
                      // special handling if it's coming in a jar
@@ -223,6 +246,44 @@ public class BinaryFile {
       }
    }
 
+   /**
+    * Set whether local files should be memory mapped, overriding the
+    * MappedFilesProperty environment setting. Only affects BinaryFiles created
+    * afterwards.
+    * 
+    * @param mapped true to use MappedByteBufferInputReaders for local files.
+    */
+   public static void setUseMappedFiles(boolean mapped) {
+      useMappedFiles = Boolean.valueOf(mapped);
+   }
+
+   /**
+    * @return true if local files are memory mapped.
+    */
+   public static boolean isUseMappedFiles() {
+      Boolean mapped = useMappedFiles;
+      if (mapped != null) {
+         return mapped.booleanValue();
+      }
+      return Environment.getBoolean(MappedFilesProperty, false);
+   }
+
+   /**
+    * Create the InputReader for a local file, a MappedByteBufferInputReader if
+    * mapped files are used, a FileInputReader otherwise.
+    * 
+    * @param file the local file.
+    * @return InputReader for file.
+    * @throws IOException
+    */
+   protected static InputReader createFileInputReader(File file)
+         throws IOException {
+      if (isUseMappedFiles()) {
+         return new MappedByteBufferInputReader(file);
+      }
+      return new FileInputReader(file);
+   }
+
    /**
     * Takes a name of a file, and checks to see if it reflects an entry in a jar
     * file. (Check the filename and see if it looks like
@@ -393,6 +454,15 @@ public class BinaryFile {
          Debug.output("Setting inputReader");
       }
       inputReader = reader;
+      mappedReader = (reader instanceof MappedByteBufferInputReader) ? (MappedByteBufferInputReader) reader : null;
+   }
+
+   /**
+    * @return the MappedByteBufferInputReader used to read the file, or null if
+    *         the file isn't memory mapped.
+    */
+   protected MappedByteBufferInputReader getMappedReader() {
+      return mappedReader;
    }
 
    /**
@@ -494,6 +564,7 @@ public class BinaryFile {
          throws IOException {
       close();
       inputReader = null;
+      mappedReader = null;
    }
 
    /**
@@ -602,6 +673,9 @@ public class BinaryFile {
     */
    public short readShort()
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         return mappedReader.readShort(MSBFirst);
+      }
       // MSBFirst must be set when we are called
       return MoreMath.BuildShort(readBytes(2, false), MSBFirst);
    }
@@ -620,6 +694,11 @@ public class BinaryFile {
     */
    public short readShortData()
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         short value = mappedReader.readShort(true);
+         // check for negative values - bit 15
+         return (value < 0) ? (short) -(value & 0x7fff) : value;
+      }
       // read in the two bytes
       byte[] bytevec = readBytes(2, false);
 
@@ -661,12 +740,19 @@ public class BinaryFile {
     */
    public int readInteger()
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         return mappedReader.readInteger(MSBFirst);
+      }
       // MSBFirst must be set when we are called
       return MoreMath.BuildInteger(readBytes(4, false), MSBFirst);
    }
 
    public void readIntegerArray(int vec[], int offset, int len)
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         mappedReader.readIntegerArray(vec, offset, len, MSBFirst);
+         return;
+      }
       for (int i = 0; i < len; i++) {
          vec[offset++] = readInteger();
       }
@@ -684,6 +770,9 @@ public class BinaryFile {
     */
    public long readLong()
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         return mappedReader.readLong(MSBFirst);
+      }
       return MoreMath.BuildLong(readBytes(8, false), MSBFirst);
    }
 
@@ -704,6 +793,10 @@ public class BinaryFile {
 
    public void readFloatArray(float vec[], int offset, int len)
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         mappedReader.readFloatArray(vec, offset, len, MSBFirst);
+         return;
+      }
       for (int i = 0; i < len; i++) {
          vec[offset++] = readFloat();
       }
@@ -711,6 +804,10 @@ public class BinaryFile {
 
    public void readFloatArray(double vec[], int offset, int len)
          throws EOFException, FormatException {
+      if (mappedReader != null) {
+         mappedReader.readFloatArray(vec, offset, len, MSBFirst);
+         return;
+      }
       for (int i = 0; i < len; i++) {
          vec[offset++] = readFloat();
       }
@@ -0,0 +1,431 @@
+package com.bbn.openmap.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import com.bbn.openmap.MoreMath;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * An InputReader that memory maps a local file, so reads and seeks don't go
+ * through the file system and extra buffers. Files larger than the chunk size
+ * (1GB by default) are mapped in several chunks, since a single mapping is
+ * limited to 2GB.
+ * <p>
+ * In addition to the InputReader methods, this reader has methods to read
+ * numbers and arrays of numbers straight from the mapping in a given byte
+ * order, which the BinaryFile uses when it has one of these. Use
+ * {@link BinaryFile#setUseMappedFiles(boolean)} or the
+ * {@link BinaryFile#MappedFilesProperty} environment property to have
+ * BinaryFiles use this reader for local files.
+ * <p>
+ * The mapping is dropped on close, and recreated if the reader is used again.
+ * Note that the operating system may keep the file locked until the mapping
+ * has been garbage collected.
+ */
+public class MappedByteBufferInputReader implements InputReader {
+
+    /** The default size of each mapped chunk of the file. */
+    public final static int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Needed for input reader interface.
+     */
+    protected String name = null;
+    /**
+     * Needed for remapping files that have been closed.
+     */
+    protected String absolutePath = null;
+
+    protected final int chunkSize;
+    protected long length;
+    protected long pos = 0;
+
+    /** The mapped chunks, big-endian views. */
+    protected ByteBuffer[] msbChunks;
+    /** The same mapped chunks, little-endian views. */
+    protected ByteBuffer[] lsbChunks;
+
+    /**
+     * Map a file in chunks of the default size.
+     *
+     * @param f the file to be mapped for reading
+     * @exception IOException pass-through errors from mapping the file.
+     */
+    public MappedByteBufferInputReader(File f) throws IOException {
+        this(f, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Map a file in chunks of the default size.
+     *
+     * @param f the path to the file to be mapped for reading
+     * @exception IOException pass-through errors from mapping the file.
+     */
+    public MappedByteBufferInputReader(String f) throws IOException {
+        this(new File(f), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Map a file.
+     *
+     * @param f the file to be mapped for reading
+     * @param chunkSize the number of bytes in each mapping.
+     * @exception IOException pass-through errors from mapping the file.
+     */
+    public MappedByteBufferInputReader(File f, int chunkSize) throws IOException {
+        if (chunkSize < 8) {
+            throw new IllegalArgumentException("chunk size too small: " + chunkSize);
+        }
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedByteBufferInputReader created from " + f.getAbsolutePath());
+        }
+        this.chunkSize = chunkSize;
+        name = f.getName();
+        absolutePath = f.getAbsolutePath();
+        map();
+    }
+
+    /**
+     * Map the file. If there are too many files open, BinaryFile.closeClosable
+     * is called before trying again.
+     *
+     * @throws IOException
+     */
+    protected void map() throws IOException {
+        File f = new File(absolutePath);
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(f, "r");
+        } catch (IOException ioe) {
+            if (ioe instanceof java.io.FileNotFoundException || !f.canRead()) {
+                throw ioe;
+            }
+            BinaryFile.closeClosable();
+            raf = new RandomAccessFile(f, "r");
+        }
+
+        try {
+            FileChannel channel = raf.getChannel();
+            length = channel.size();
+            int numChunks = (int) ((length + chunkSize - 1) / chunkSize);
+            ByteBuffer[] msb = new ByteBuffer[numChunks];
+            ByteBuffer[] lsb = new ByteBuffer[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                long start = (long) i * chunkSize;
+                long size = Math.min(chunkSize, length - start);
+                msb[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size).order(ByteOrder.BIG_ENDIAN);
+                lsb[i] = msb[i].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            msbChunks = msb;
+            lsbChunks = lsb;
+        } finally {
+            // The mapping stays valid after the channel is closed.
+            raf.close();
+        }
+    }
+
+    /**
+     * Make sure the file is mapped, remapping it if it has been closed.
+     */
+    protected void checkMapped() throws IOException {
+        if (msbChunks == null) {
+            map();
+        }
+    }
+
+    /**
+     * Get the file name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the absolute path of the file.
+     */
+    public String getAbsolutePath() {
+        return absolutePath;
+    }
+
+    public long skipBytes(long n) throws IOException {
+        checkMapped();
+        long skip = Math.max(0, Math.min(n, length - pos));
+        pos += skip;
+        return skip;
+    }
+
+    public long getFilePointer() throws IOException {
+        return pos;
+    }
+
+    public void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException("Negative seek offset");
+        }
+        this.pos = pos;
+    }
+
+    public long length() throws IOException {
+        checkMapped();
+        return length;
+    }
+
+    public long available() throws IOException {
+        checkMapped();
+        return length - pos;
+    }
+
+    /**
+     * Drops the mapping. It will be recreated if the reader is used again.
+     */
+    public void close() throws IOException {
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedByteBufferInputReader.close()");
+        }
+        msbChunks = null;
+        lsbChunks = null;
+    }
+
+    public int read() throws IOException {
+        checkMapped();
+        if (pos >= length) {
+            return -1;
+        }
+        int ret = MoreMath.signedToInt(chunk(msbChunks).get(offset()));
+        pos++;
+        return ret;
+    }
+
+    public int read(byte b[], int off, int len) throws IOException {
+        checkMapped();
+        if (len == 0) {
+            return 0;
+        }
+        if (pos >= length) {
+            return -1;
+        }
+        int total = (int) Math.min(len, length - pos);
+        int remaining = total;
+        while (remaining > 0) {
+            ByteBuffer chunk = chunk(msbChunks);
+            int offset = offset();
+            int count = Math.min(remaining, chunk.limit() - offset);
+            ByteBuffer view = chunk.duplicate();
+            view.position(offset);
+            view.get(b, off, count);
+            off += count;
+            pos += count;
+            remaining -= count;
+        }
+        return total;
+    }
+
+    public int read(byte b[]) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    public byte[] readBytes(int howmany, boolean allowless) throws EOFException, FormatException {
+        try {
+            checkMapped();
+            long left = length - pos;
+            if (left < howmany) {
+                if (allowless) {
+                    howmany = (int) Math.max(0, left);
+                } else if (left > 0) {
+                    throw new FormatException("EOF while reading data");
+                } else {
+                    throw new EOFException();
+                }
+            }
+            byte[] foo = new byte[howmany];
+            read(foo, 0, howmany);
+            return foo;
+        } catch (EOFException eof) {
+            throw eof;
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: readBytes IOException: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Read a short in the given byte order.
+     */
+    public short readShort(boolean msbFirst) throws EOFException, FormatException {
+        ensure(2);
+        int offset = offset();
+        ByteBuffer chunk = chunk(msbFirst ? msbChunks : lsbChunks);
+        short ret;
+        if (offset + 2 <= chunk.limit()) {
+            ret = chunk.getShort(offset);
+            pos += 2;
+        } else {
+            ret = MoreMath.BuildShort(readBytes(2, false), msbFirst);
+        }
+        return ret;
+    }
+
+    /**
+     * Read an integer in the given byte order.
+     */
+    public int readInteger(boolean msbFirst) throws EOFException, FormatException {
+        ensure(4);
+        int offset = offset();
+        ByteBuffer chunk = chunk(msbFirst ? msbChunks : lsbChunks);
+        int ret;
+        if (offset + 4 <= chunk.limit()) {
+            ret = chunk.getInt(offset);
+            pos += 4;
+        } else {
+            ret = MoreMath.BuildInteger(readBytes(4, false), msbFirst);
+        }
+        return ret;
+    }
+
+    /**
+     * Read a long in the given byte order.
+     */
+    public long readLong(boolean msbFirst) throws EOFException, FormatException {
+        ensure(8);
+        int offset = offset();
+        ByteBuffer chunk = chunk(msbFirst ? msbChunks : lsbChunks);
+        long ret;
+        if (offset + 8 <= chunk.limit()) {
+            ret = chunk.getLong(offset);
+            pos += 8;
+        } else {
+            ret = MoreMath.BuildLong(readBytes(8, false), msbFirst);
+        }
+        return ret;
+    }
+
+    /**
+     * Read an array of shorts in the given byte order.
+     */
+    public void readShortArray(short vec[], int offset, int len, boolean msbFirst) throws EOFException, FormatException {
+        ensure(2L * len);
+        ByteBuffer[] chunks = msbFirst ? msbChunks : lsbChunks;
+        while (len > 0) {
+            ByteBuffer chunk = chunk(chunks);
+            int cursor = offset();
+            int count = Math.min(len, (chunk.limit() - cursor) / 2);
+            if (count == 0) {
+                // Short split between chunks.
+                vec[offset++] = readShort(msbFirst);
+                len--;
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                vec[offset++] = chunk.getShort(cursor);
+                cursor += 2;
+            }
+            pos += 2L * count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Read an array of integers in the given byte order.
+     */
+    public void readIntegerArray(int vec[], int offset, int len, boolean msbFirst) throws EOFException, FormatException {
+        ensure(4L * len);
+        ByteBuffer[] chunks = msbFirst ? msbChunks : lsbChunks;
+        while (len > 0) {
+            ByteBuffer chunk = chunk(chunks);
+            int cursor = offset();
+            int count = Math.min(len, (chunk.limit() - cursor) / 4);
+            if (count == 0) {
+                // Integer split between chunks.
+                vec[offset++] = readInteger(msbFirst);
+                len--;
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                vec[offset++] = chunk.getInt(cursor);
+                cursor += 4;
+            }
+            pos += 4L * count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Read an array of floats in the given byte order.
+     */
+    public void readFloatArray(float vec[], int offset, int len, boolean msbFirst) throws EOFException, FormatException {
+        ensure(4L * len);
+        ByteBuffer[] chunks = msbFirst ? msbChunks : lsbChunks;
+        while (len > 0) {
+            ByteBuffer chunk = chunk(chunks);
+            int cursor = offset();
+            int count = Math.min(len, (chunk.limit() - cursor) / 4);
+            if (count == 0) {
+                vec[offset++] = Float.intBitsToFloat(readInteger(msbFirst));
+                len--;
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                vec[offset++] = chunk.getFloat(cursor);
+                cursor += 4;
+            }
+            pos += 4L * count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Read an array of floats in the given byte order into doubles.
+     */
+    public void readFloatArray(double vec[], int offset, int len, boolean msbFirst) throws EOFException, FormatException {
+        ensure(4L * len);
+        ByteBuffer[] chunks = msbFirst ? msbChunks : lsbChunks;
+        while (len > 0) {
+            ByteBuffer chunk = chunk(chunks);
+            int cursor = offset();
+            int count = Math.min(len, (chunk.limit() - cursor) / 4);
+            if (count == 0) {
+                vec[offset++] = Float.intBitsToFloat(readInteger(msbFirst));
+                len--;
+                continue;
+            }
+            for (int i = 0; i < count; i++) {
+                vec[offset++] = chunk.getFloat(cursor);
+                cursor += 4;
+            }
+            pos += 4L * count;
+            len -= count;
+        }
+    }
+
+    /**
+     * Check that there are enough bytes left for a read, throwing the same
+     * exceptions as BinaryFile if there aren't.
+     */
+    private void ensure(long numBytes) throws EOFException, FormatException {
+        try {
+            checkMapped();
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: can't map " + absolutePath + ": " + ioe.getMessage());
+        }
+        long left = length - pos;
+        if (left < numBytes) {
+            if (left > 0) {
+                throw new FormatException("EOF while reading data");
+            }
+            throw new EOFException();
+        }
+    }
+
+    private ByteBuffer chunk(ByteBuffer[] chunks) {
+        return chunks[(int) (pos / chunkSize)];
+    }
+
+    private int offset() {
+        return (int) (pos % chunkSize);
+    }
+}
@@ -110,6 +110,7 @@ import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import com.bbn.openmap.util.Debug;
 
@@ -119,6 +120,10 @@ import com.bbn.openmap.util.Debug;
  * and width of the sections. isClear() returns 1 if the space is clear, and
  * setTaken returns true if the space was clear and the space is now marked
  * taken.
+ * <P>
+ * The sections are kept one bit each, packed into longs a row at a time, so
+ * the space for an object is checked and marked 64 sections at a time. The
+ * matrix is cleared and reused by create() if the dimensions haven't changed.
  */
 public class DeclutterMatrix {
 
@@ -136,8 +141,15 @@ public class DeclutterMatrix {
     protected int x_pix_interval = 1;
     /** The number of vertical pixels per matrix cell */
     protected int y_pix_interval = 1;
-    /** The matrix itself, width x height. */
-    protected boolean[][] matrix = new boolean[0][0];
+    /**
+     * The matrix itself, height rows of wordsPerRow longs. The cell at
+     * horizontal index x is bit (x &amp; 63) of long (x &gt;&gt; 6) in its row.
+     */
+    protected long[] matrix = new long[0];
+    /** The number of longs in each row of the matrix. */
+    protected int wordsPerRow = 0;
+    /** Reused by getColumnsTaken(). */
+    protected long[] columnsTaken = new long[0];
     /**
      * The maximum index for the horizontal locations within the matrix.
      */
@@ -326,7 +338,7 @@ public class DeclutterMatrix {
             if (objYIndex >= 0) {
                 yStart = objYIndex;
             } else {
-                objYIndex = 0;
+                yStart = 0;
                 partial = true;
             }
             // And horizontal starting index
@@ -469,14 +481,21 @@ public class DeclutterMatrix {
     }
 
     /**
-     * Allocate the matrix.
+     * Allocate the matrix, or clear it if it's already the right size.
      * 
      * @return true if successful, and if the height and width settings were
      *         valid (>0).
      */
     public boolean create() {
         if ((height > 0) && (width > 0)) {
-            matrix = new boolean[maxx + 1][maxy + 1];
+            int rows = Math.max(maxy + 1, 0);
+            int words = Math.max(maxx + 64, 0) >> 6;
+            if (matrix != null && wordsPerRow == words && matrix.length == rows * words) {
+                Arrays.fill(matrix, 0L);
+            } else {
+                matrix = new long[rows * words];
+                wordsPerRow = words;
+            }
             needToRecreate = false;
             return true;
         }
@@ -520,41 +539,22 @@ public class DeclutterMatrix {
         // limits for the matrix search below, and not worry about
         // dealing with funky index values.
 
-        boolean notClear = false;
-
-        // Since we have the matrix index limits, have two loops, the
-        // first to check for the open cells, the other to mark the
-        // cells as occupied. The second loop only gets run if the
-        // markAsTaken flag is set by the caller.
-        for (int taken = 0; taken < 2; taken++) {
-
-            // Check to see if the horizontal indexes are on the
-            // matrix - i should be at least greater than zero here,
-            // as should j.
-            for (int i = indexes.xStart; i <= indexes.xEnd; i++) {
-
-                // Check for loop - the first loop is to see if
-                // the spaces are open.
-                if (taken == 0) {
-                    notClear = isMatrixLocationTaken(i,
-                            indexes.yStart,
-                            indexes.yEnd - indexes.yStart + 1);
-                    if (notClear) {
-                        return false;
-                    }
-                } else {
-                    // The second loop is to mark the cells as
-                    // taken
-                    setTaken(i, indexes.yStart, indexes.yEnd - indexes.yStart
-                            + 1);
-                }
+        int xStart = Math.max(indexes.xStart, 0);
+        int xEnd = Math.min(indexes.xEnd, maxx);
+        int yStart = Math.max(indexes.yStart, 0);
+        int yEnd = Math.min(indexes.yEnd, maxy);
+
+        // Check all of the rows for the open cells first, and then mark the
+        // cells as occupied if the markAsTaken flag is set by the caller.
+        for (int j = yStart; j <= yEnd; j++) {
+            if (isRowSpanTaken(j, xStart, xEnd)) {
+                return false;
             }
+        }
 
-            // This will prevent the second loop from occurring if it's
-            // not supposed to - the caller just wanted to check the
-            // spaces, rather than check and mark.
-            if (!markAsTaken) {
-                return true;
+        if (markAsTaken) {
+            for (int j = yStart; j <= yEnd; j++) {
+                setRowSpanTaken(j, xStart, xEnd);
             }
         }
         return true;
@@ -572,13 +572,21 @@ public class DeclutterMatrix {
     protected boolean isMatrixLocationTaken(int horizontalIndex,
                                             int verticalIndex,
                                             int numCellsToCheck) {
-        try {
-            for (int i = numCellsToCheck - 1; i >= 0; i--) {
-                if (matrix[horizontalIndex][verticalIndex + i]) {
-                    return true;
-                }
+        if (horizontalIndex < 0 || horizontalIndex > maxx) {
+            return allowPartials;
+        }
+
+        int start = Math.max(verticalIndex, 0);
+        int end = Math.min(verticalIndex + numCellsToCheck - 1, maxy);
+        int word = horizontalIndex >> 6;
+        long bit = 1L << (horizontalIndex & 63);
+        for (int j = end; j >= start; j--) {
+            if ((matrix[j * wordsPerRow + word] & bit) != 0) {
+                return true;
             }
-        } catch (ArrayIndexOutOfBoundsException aioobe) {
+        }
+
+        if (start != verticalIndex || end != verticalIndex + numCellsToCheck - 1) {
             return allowPartials;
         }
         return false;
@@ -593,12 +601,83 @@ public class DeclutterMatrix {
      */
     protected void setTaken(int horizontalIndex, int verticalIndex,
                             int numCellsToMark) {
-        try {
-            for (int i = numCellsToMark - 1; i >= 0; i--) {
-                matrix[horizontalIndex][verticalIndex + i] = true;
+        if (horizontalIndex < 0 || horizontalIndex > maxx) {
+            return;
+        }
+
+        int start = Math.max(verticalIndex, 0);
+        int end = Math.min(verticalIndex + numCellsToMark - 1, maxy);
+        int word = horizontalIndex >> 6;
+        long bit = 1L << (horizontalIndex & 63);
+        for (int j = start; j <= end; j++) {
+            matrix[j * wordsPerRow + word] |= bit;
+        }
+    }
+
+    /**
+     * Check a horizontal span of a matrix row to see if any of it has been
+     * taken, a long at a time. The indexes must be on the matrix.
+     * 
+     * @param verticalIndex the row to check.
+     * @param xStart the first horizontal index to check.
+     * @param xEnd the last horizontal index to check, inclusive.
+     * @return true if any cell is taken.
+     */
+    protected boolean isRowSpanTaken(int verticalIndex, int xStart, int xEnd) {
+        if (xEnd < xStart) {
+            return false;
+        }
+
+        int row = verticalIndex * wordsPerRow;
+        int firstWord = row + (xStart >> 6);
+        int lastWord = row + (xEnd >> 6);
+        long firstMask = -1L << (xStart & 63);
+        long lastMask = -1L >>> (63 - (xEnd & 63));
+
+        if (firstWord == lastWord) {
+            return (matrix[firstWord] & firstMask & lastMask) != 0;
+        }
+
+        if ((matrix[firstWord] & firstMask) != 0) {
+            return true;
+        }
+        for (int w = firstWord + 1; w < lastWord; w++) {
+            if (matrix[w] != 0) {
+                return true;
             }
-        } catch (ArrayIndexOutOfBoundsException aioobe) {
         }
+        return (matrix[lastWord] & lastMask) != 0;
+    }
+
+    /**
+     * Mark a horizontal span of a matrix row as taken, a long at a time. The
+     * indexes must be on the matrix.
+     * 
+     * @param verticalIndex the row to mark.
+     * @param xStart the first horizontal index to mark.
+     * @param xEnd the last horizontal index to mark, inclusive.
+     */
+    protected void setRowSpanTaken(int verticalIndex, int xStart, int xEnd) {
+        if (xEnd < xStart) {
+            return;
+        }
+
+        int row = verticalIndex * wordsPerRow;
+        int firstWord = row + (xStart >> 6);
+        int lastWord = row + (xEnd >> 6);
+        long firstMask = -1L << (xStart & 63);
+        long lastMask = -1L >>> (63 - (xEnd & 63));
+
+        if (firstWord == lastWord) {
+            matrix[firstWord] |= firstMask & lastMask;
+            return;
+        }
+
+        matrix[firstWord] |= firstMask;
+        for (int w = firstWord + 1; w < lastWord; w++) {
+            matrix[w] = -1L;
+        }
+        matrix[lastWord] |= lastMask;
     }
 
     /**
@@ -618,8 +697,10 @@ public class DeclutterMatrix {
             return allowPartials;
         }
 
-        for (int i = indexes.xStart; i < indexes.xEnd; i++) {
-            setTaken(i, indexes.yStart, indexes.yEnd - indexes.yStart + 1);
+        int yStart = Math.max(indexes.yStart, 0);
+        int yEnd = Math.min(indexes.yEnd, maxy);
+        for (int j = yStart; j <= yEnd; j++) {
+            setRowSpanTaken(j, Math.max(indexes.xStart, 0), Math.min(indexes.xEnd - 1, maxx));
         }
         return true;
     }
@@ -925,63 +1006,123 @@ public class DeclutterMatrix {
         // available...
 
         // We're going to test the right, and then work our way left
-        // until the original spot is the rightmost spot.
-        int leftMostIndex = indexes.origXIndex - indexes.origIndexLength;
+        // until the original spot is the rightmost spot. The rightmost run
+        // of clear columns as long as the object is the space we want.
+        // Columns off the right of the matrix are never clear, so the run
+        // has to end on the matrix.
+        int length = indexes.origIndexLength;
+        int leftMostIndex = indexes.origXIndex - length;
+        int top = Math.min(indexes.origXIndex + length, maxx);
+
+        // The rows checked are the same for every column, so the taken cells
+        // of all of them are collected once, a long at a time.
+        int firstColumn = Math.max(leftMostIndex + 1, 0) & ~63;
+        long[] columns = null;
+        if (top >= firstColumn) {
+            columns = getColumnsTaken(indexes.yStart,
+                    indexes.yEnd,
+                    firstColumn,
+                    top);
+        }
 
-        // Start by keeping track of clear vertical cells. If we get
-        // a run of them that equals the origIndexLength, then we have
-        // space right there.
-        int count = 0;
-        int currentXIndex = indexes.origXIndex + indexes.origIndexLength;
+        while (top - length >= leftMostIndex) {
+            int start = top - length + 1;
+            int taken = getHighestTakenColumn(columns,
+                    firstColumn,
+                    start,
+                    top);
+
+            if (taken < start) {
+                // Found a space big enough for the text.
+                point.x = start * x_pix_interval;
+                point.y = yPoint;
+
+                indexes.set(start, indexes.origYIndex);
+                indexes.xStart = start;
+                setTaken(indexes);
+                Debug.message("declutterdetail", "Decluttering: found a spot");
+                return point;
+            }
 
-        while (count < indexes.origIndexLength && currentXIndex > leftMostIndex) {
+            // The run has to be left of the taken column.
+            top = taken - 1;
+        }
 
-            if (!indexes.set(currentXIndex, indexes.origYIndex)) {
-                // Still off the matrix
-                count = 0;
-                currentXIndex--;
-                continue;
-            }
+        // Ran out of space.
+        return null;
+    }
 
-            if (currentXIndex >= 0 && currentXIndex <= maxx) {
-                if (!isMatrixLocationTaken(currentXIndex,
-                        indexes.yStart,
-                        indexes.yEnd - indexes.yStart + 1)) {
-                    count++; // clear column
-                } else {
-                    count = 0; // Start counting again
+    /**
+     * Find the rightmost column in a range that isn't clear for an object.
+     * Columns left of the matrix are clear if partials are allowed and the
+     * object would still be partly on the matrix.
+     * 
+     * @param columnsTaken the taken columns on the matrix, from
+     *        getColumnsTaken().
+     * @param firstColumn the first column in columnsTaken.
+     * @param start the leftmost column to check.
+     * @param end the rightmost column to check, on or left of the matrix.
+     * @return the rightmost column in the range that isn't clear, or less
+     *         than start if they are all clear.
+     */
+    protected int getHighestTakenColumn(long[] columnsTaken, int firstColumn,
+                                        int start, int end) {
+        if (end >= 0) {
+            int from = end - firstColumn;
+            int downTo = Math.max(start, 0) - firstColumn;
+            int w = from >> 6;
+            int lastWord = downTo >> 6;
+            long word = columnsTaken[w] & (-1L >>> (63 - (from & 63)));
+            while (true) {
+                if (w == lastWord) {
+                    word &= -1L << (downTo & 63);
                 }
-            } else {
-                // If we are off the matrix, check and see if we want
-                // to consider those space as open autmatically.
-                if (allowPartials) {
-                    count++;
-                } else {
-                    // This will not, Because it makes it look like
-                    // we ran out of space.
-                    count = 0;
+                if (word != 0) {
+                    return firstColumn + (w << 6) + 63
+                            - Long.numberOfLeadingZeros(word);
                 }
+                if (--w < lastWord) {
+                    break;
+                }
+                word = columnsTaken[w];
             }
+        }
 
-            if (count < indexes.origIndexLength) {
-                currentXIndex--;
-            }
-
+        if (start < 0) {
+            int taken = allowPartials ? -indexes.origIndexLength - 1 : -1;
+            return Math.min(taken, end);
         }
+        return start - 1;
+    }
 
-        // So, either we ran out of space, or we found a space big
-        // enough for the text.
-        if (count >= indexes.origIndexLength) {
-            point.x = currentXIndex * x_pix_interval;
-            point.y = yPoint;
+    /**
+     * Collect the taken cells of a set of rows, so a column is taken if any
+     * cell in any of the rows is taken.
+     * 
+     * @param yStart the first row.
+     * @param yEnd the last row, inclusive.
+     * @param xStart the first column, a multiple of 64.
+     * @param xEnd the last column, inclusive.
+     * @return the columns from xStart, one bit each, in an array that is
+     *         reused by the next call.
+     */
+    protected long[] getColumnsTaken(int yStart, int yEnd, int xStart, int xEnd) {
+        int firstWord = xStart >> 6;
+        int words = (xEnd >> 6) - firstWord + 1;
+        long[] columns = columnsTaken;
+        if (columns.length < words) {
+            columns = columnsTaken = new long[words];
+        }
 
-            indexes.xStart = currentXIndex;
-            setTaken(indexes);
-            Debug.message("declutterdetail", "Decluttering: found a spot");
-            return point;
+        int row = yStart * wordsPerRow + firstWord;
+        System.arraycopy(matrix, row, columns, 0, words);
+        for (int j = yStart + 1; j <= yEnd; j++) {
+            row += wordsPerRow;
+            for (int w = 0; w < words; w++) {
+                columns[w] |= matrix[row + w];
+            }
         }
-        // Ran out of space.
-        return null;
+        return columns;
     }
 
     private static java.awt.Graphics2D workingGraphics = null;
@@ -0,0 +1,649 @@
+package com.bbn.openmap.layer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.LayerHandler;
+import com.bbn.openmap.OMComponent;
+import com.bbn.openmap.event.LayerEvent;
+import com.bbn.openmap.event.LayerListener;
+import com.bbn.openmap.event.LayerStatusEvent;
+import com.bbn.openmap.layer.metrics.LayerMetrics;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * The LayerPrepareScheduler runs the prepare() method of all of the
+ * OMGraphicHandlerLayers in an application, instead of each layer launching its
+ * own LayerWorker for every projection change. Add it to the MapHandler, by
+ * listing it in the openmap.components property, and it finds the layers
+ * through the LayerHandler. A layer's doPrepare() then asks the scheduler to
+ * prepare the layer.
+ * <P>
+ *
+ * A request waits until debounceDelay milliseconds pass without another
+ * request for the layer, so a drag or a series of zooms only prepares the layer
+ * once, but no longer than maxDelay milliseconds after the first one so the map
+ * keeps up with a long drag. Requests for a layer that is waiting are folded
+ * into one, and since prepare() uses the layer's projection when it runs, it's
+ * always the latest one. A request for a layer that is being prepared cancels
+ * that prepare() if the layer is interruptable, and the layer is prepared again
+ * after it finishes. Lists from a prepare() that has been replaced by a newer
+ * request are thrown away.
+ * <P>
+ *
+ * At most maxConcurrent layers are prepared at a time. Visible layers go first,
+ * then the layers that have been quicker to prepare, then the ones that have
+ * been waiting the longest. The number of requests, how long they waited and
+ * how long prepare() took are kept for each layer, see getStatistics().
+ *
+ * <pre>
+ *
+ *     openmap.components=... prepareScheduler
+ *     prepareScheduler.class=com.bbn.openmap.layer.LayerPrepareScheduler
+ *     prepareScheduler.maxConcurrent=4
+ *     prepareScheduler.debounceDelay=50
+ *     prepareScheduler.maxDelay=250
+ *
+ * </pre>
+ */
+public class LayerPrepareScheduler
+      extends OMComponent
+      implements LayerListener {
+
+   public static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.layer.LayerPrepareScheduler");
+
+   /** The most layers prepared at once. "maxConcurrent" */
+   public final static String MaxConcurrentProperty = "maxConcurrent";
+   /**
+    * Milliseconds a request waits for another request for the layer.
+    * "debounceDelay"
+    */
+   public final static String DebounceDelayProperty = "debounceDelay";
+   /** The most milliseconds a request is held back. "maxDelay" */
+   public final static String MaxDelayProperty = "maxDelay";
+
+   public final static long DEFAULT_DEBOUNCE_DELAY = 50;
+   public final static long DEFAULT_MAX_DELAY = 250;
+
+   protected int maxConcurrent = Math.max(2, Runtime.getRuntime().availableProcessors());
+   protected long debounceDelay = DEFAULT_DEBOUNCE_DELAY;
+   protected long maxDelay = DEFAULT_MAX_DELAY;
+
+   /** The layers, also the lock for the scheduling state. */
+   protected final Map<OMGraphicHandlerLayer, Entry> entries = new LinkedHashMap<OMGraphicHandlerLayer, Entry>();
+   /** The number of layers being prepared. */
+   protected int running;
+   /** Starts prepare() calls when they are due, started when needed. */
+   protected Thread dispatcher;
+   protected ThreadPoolExecutor executor;
+
+   protected LayerHandler layerHandler;
+
+   public LayerPrepareScheduler() {
+   }
+
+   /**
+    * Ask for a layer to be prepared. Called from the layer's doPrepare().
+    */
+   public void schedule(OMGraphicHandlerLayer layer) {
+      synchronized (entries) {
+         Entry entry = entries.get(layer);
+         if (entry == null) {
+            entry = new Entry(layer);
+            entries.put(layer, entry);
+         }
+
+         long now = System.currentTimeMillis();
+         entry.stats.requests++;
+         if (entry.queued) {
+            entry.stats.coalesced++;
+         } else {
+            entry.queued = true;
+            entry.firstRequest = now;
+         }
+         entry.lastRequest = now;
+
+         if (entry.running && !entry.cancelled && layer.isInterruptable()) {
+            entry.cancelled = true;
+            entry.stats.cancelled++;
+         }
+
+         if (dispatcher == null) {
+            dispatcher = new Thread(new Runnable() {
+               public void run() {
+                  dispatch();
+               }
+            }, "LayerPrepareScheduler");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+         }
+         entries.notifyAll();
+      }
+   }
+
+   /**
+    * Whether a layer is waiting to be prepared, or being prepared.
+    */
+   public boolean isWorking(OMGraphicHandlerLayer layer) {
+      synchronized (entries) {
+         Entry entry = entries.get(layer);
+         return entry != null && (entry.queued || entry.running);
+      }
+   }
+
+   /**
+    * Whether the prepare() running for a layer should stop, because there's a
+    * newer request for it.
+    */
+   public boolean isCancelled(OMGraphicHandlerLayer layer) {
+      synchronized (entries) {
+         Entry entry = entries.get(layer);
+         return entry != null && entry.running && entry.cancelled;
+      }
+   }
+
+   /**
+    * Stop scheduling a layer. It will be prepared if it's waiting, but the
+    * list won't be given to the layer.
+    */
+   public void remove(OMGraphicHandlerLayer layer) {
+      synchronized (entries) {
+         entries.remove(layer);
+      }
+   }
+
+   /**
+    * Starts prepare() calls for the layers that are due, until the most that
+    * can run at a time are running, and then waits until another one is due
+    * or one finishes.
+    */
+   protected void dispatch() {
+      synchronized (entries) {
+         while (dispatcher == Thread.currentThread()) {
+            long now = System.currentTimeMillis();
+            // 0 waits until notified.
+            long wait = 0;
+
+            while (running < maxConcurrent) {
+               Entry next = null;
+               for (Entry entry : entries.values()) {
+                  if (!entry.queued || entry.running) {
+                     continue;
+                  }
+                  long due = Math.min(entry.lastRequest + debounceDelay, entry.firstRequest + maxDelay);
+                  if (due > now) {
+                     wait = (wait == 0) ? due - now : Math.min(wait, due - now);
+                  } else if (next == null || goesBefore(entry, next)) {
+                     next = entry;
+                  }
+               }
+
+               if (next == null) {
+                  break;
+               }
+               start(next, now);
+            }
+
+            try {
+               entries.wait(wait);
+            } catch (InterruptedException ie) {
+               return;
+            }
+         }
+      }
+   }
+
+   /**
+    * Whether one waiting layer should be prepared before another.
+    */
+   protected boolean goesBefore(Entry entry, Entry other) {
+      boolean visible = entry.layer.isVisible();
+      if (visible != other.layer.isVisible()) {
+         return visible;
+      }
+      long time = entry.stats.getAveragePrepareTime();
+      long otherTime = other.stats.getAveragePrepareTime();
+      if (time != otherTime) {
+         return time < otherTime;
+      }
+      return entry.firstRequest < other.firstRequest;
+   }
+
+   /**
+    * Start preparing a layer, called while holding the entries lock.
+    */
+   protected void start(final Entry entry, long now) {
+      entry.queued = false;
+      entry.running = true;
+      entry.cancelled = false;
+      final int generation = ++entry.generation;
+
+      long waited = now - entry.firstRequest;
+      entry.stats.prepares++;
+      entry.stats.totalQueueTime += waited;
+      entry.stats.maxQueueTime = Math.max(entry.stats.maxQueueTime, waited);
+
+      running++;
+      getExecutor().execute(new Runnable() {
+         public void run() {
+            prepare(entry, generation);
+         }
+      });
+   }
+
+   /**
+    * Call prepare() on a layer and give it the list, unless there's a newer
+    * request for it.
+    */
+   protected void prepare(Entry entry, int generation) {
+      OMGraphicHandlerLayer layer = entry.layer;
+      layer.fireStatusUpdate(LayerStatusEvent.START_WORKING);
+
+      long start = System.currentTimeMillis();
+      long startNanos = System.nanoTime();
+      OMGraphicList list = null;
+      try {
+         layer.startProgress();
+         list = layer.getRenderPolicy().prepare();
+      } catch (OutOfMemoryError e) {
+         logger.debug(layer.getName() + " layer ran out of memory, attempting to recover...");
+      } catch (Exception e) {
+         logger.info(layer.getName() + " layer problem preparing: " + e.getClass().getName() + ", " + e.getMessage(), e);
+      }
+      long time = System.currentTimeMillis() - start;
+      LayerMetrics.prepared(layer, System.nanoTime() - startNanos, list == null ? -1 : list.size(), layer.isCancelled());
+
+      if (logger.isDebugEnabled()) {
+         logger.debug(layer.getName() + " prepared " + (list == null ? "null list " : (list.size() + " graphics ")) + "in "
+               + time + " ms");
+      }
+
+      boolean current;
+      synchronized (entries) {
+         entry.stats.totalPrepareTime += time;
+         entry.stats.maxPrepareTime = Math.max(entry.stats.maxPrepareTime, time);
+         entry.running = false;
+         running--;
+         // Throw the list away if the layer has been asked for a newer one.
+         current = !entry.queued && entries.get(layer) == entry;
+         if (!current) {
+            entry.stats.discarded++;
+         }
+         entries.notifyAll();
+      }
+
+      if (current) {
+         synchronized (entry) {
+            // Make sure an older list can't replace a newer one.
+            if (entry.generation == generation) {
+               layer.finishProgress();
+               layer.getProjectionChangePolicy().workerComplete(list);
+               layer.repaint();
+               layer.fireStatusUpdate(LayerStatusEvent.FINISH_WORKING);
+            }
+         }
+      }
+   }
+
+   /**
+    * Get the threads preparing layers, creating them if needed.
+    */
+   protected synchronized ThreadPoolExecutor getExecutor() {
+      if (executor == null) {
+         executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+               new ThreadFactory() {
+                  public Thread newThread(Runnable r) {
+                     Thread thread = new Thread(r, "LayerPrepareScheduler prepare");
+                     thread.setDaemon(true);
+                     return thread;
+                  }
+               });
+         // Let the threads go when the map isn't changing.
+         executor.allowCoreThreadTimeOut(true);
+      }
+      return executor;
+   }
+
+   /**
+    * Get the statistics for a layer.
+    *
+    * @return a copy of the statistics, null if the layer hasn't been
+    *         scheduled.
+    */
+   public Statistics getStatistics(OMGraphicHandlerLayer layer) {
+      synchronized (entries) {
+         Entry entry = entries.get(layer);
+         if (entry == null) {
+            return null;
+         }
+         Statistics stats = new Statistics(entry.stats);
+         stats.queued = entry.queued;
+         stats.running = entry.running;
+         return stats;
+      }
+   }
+
+   /**
+    * Get the statistics for all the scheduled layers.
+    *
+    * @return copies of the statistics, by layer, in the order the layers were
+    *         first scheduled.
+    */
+   public Map<OMGraphicHandlerLayer, Statistics> getStatistics() {
+      Map<OMGraphicHandlerLayer, Statistics> ret = new LinkedHashMap<OMGraphicHandlerLayer, Statistics>();
+      synchronized (entries) {
+         for (OMGraphicHandlerLayer layer : entries.keySet()) {
+            ret.put(layer, getStatistics(layer));
+         }
+      }
+      return ret;
+   }
+
+   /**
+    * Reset the statistics for all the layers.
+    */
+   public void resetStatistics() {
+      synchronized (entries) {
+         for (Entry entry : entries.values()) {
+            entry.stats = new Statistics();
+         }
+      }
+   }
+
+   /**
+    * The number of layers being prepared.
+    */
+   public int getRunningCount() {
+      synchronized (entries) {
+         return running;
+      }
+   }
+
+   /**
+    * The number of layers waiting to be prepared.
+    */
+   public int getQueuedCount() {
+      int count = 0;
+      synchronized (entries) {
+         for (Entry entry : entries.values()) {
+            if (entry.queued) {
+               count++;
+            }
+         }
+      }
+      return count;
+   }
+
+   /**
+    * LayerListener method, the scheduler takes over all of the
+    * OMGraphicHandlerLayers in the LayerHandler that don't have another
+    * scheduler.
+    */
+   public void setLayers(LayerEvent evt) {
+      if (evt.getType() != LayerEvent.ALL) {
+         return;
+      }
+
+      List<OMGraphicHandlerLayer> layers = new ArrayList<OMGraphicHandlerLayer>();
+      for (Layer layer : evt.getLayers()) {
+         if (layer instanceof OMGraphicHandlerLayer) {
+            OMGraphicHandlerLayer omghl = (OMGraphicHandlerLayer) layer;
+            if (omghl.getPrepareScheduler() == null) {
+               omghl.setPrepareScheduler(this);
+            }
+            layers.add(omghl);
+         }
+      }
+
+      // Let go of the layers that are gone.
+      List<OMGraphicHandlerLayer> removed = new ArrayList<OMGraphicHandlerLayer>();
+      synchronized (entries) {
+         for (Iterator<OMGraphicHandlerLayer> it = entries.keySet().iterator(); it.hasNext();) {
+            OMGraphicHandlerLayer layer = it.next();
+            if (!layers.contains(layer)) {
+               removed.add(layer);
+            }
+         }
+      }
+      for (OMGraphicHandlerLayer layer : removed) {
+         if (layer.getPrepareScheduler() == this) {
+            layer.setPrepareScheduler(null);
+         }
+         remove(layer);
+      }
+   }
+
+   public void findAndInit(Object obj) {
+      if (obj instanceof LayerHandler && layerHandler == null) {
+         layerHandler = (LayerHandler) obj;
+         layerHandler.addLayerListener(this);
+      }
+   }
+
+   public void findAndUndo(Object obj) {
+      if (obj == layerHandler) {
+         layerHandler.removeLayerListener(this);
+         layerHandler = null;
+      }
+   }
+
+   /**
+    * Stop the scheduler thread. Layers that are waiting won't be prepared
+    * until the next request.
+    */
+   public void dispose() {
+      synchronized (entries) {
+         dispatcher = null;
+         entries.notifyAll();
+      }
+      synchronized (this) {
+         if (executor != null) {
+            executor.shutdown();
+            executor = null;
+         }
+      }
+   }
+
+   public void setProperties(String prefix, Properties props) {
+      super.setProperties(prefix, props);
+      prefix = PropUtils.getScopedPropertyPrefix(prefix);
+
+      setMaxConcurrent(PropUtils.intFromProperties(props, prefix + MaxConcurrentProperty, maxConcurrent));
+      debounceDelay = PropUtils.longFromProperties(props, prefix + DebounceDelayProperty, debounceDelay);
+      maxDelay = PropUtils.longFromProperties(props, prefix + MaxDelayProperty, maxDelay);
+   }
+
+   public Properties getProperties(Properties props) {
+      props = super.getProperties(props);
+      String prefix = PropUtils.getScopedPropertyPrefix(this);
+      props.put(prefix + MaxConcurrentProperty, Integer.toString(maxConcurrent));
+      props.put(prefix + DebounceDelayProperty, Long.toString(debounceDelay));
+      props.put(prefix + MaxDelayProperty, Long.toString(maxDelay));
+      return props;
+   }
+
+   public Properties getPropertyInfo(Properties props) {
+      props = super.getPropertyInfo(props);
+      props.put(MaxConcurrentProperty, "The most layers prepared at the same time.");
+      props.put(DebounceDelayProperty, "Milliseconds to wait for the projection to stop changing before preparing a layer.");
+      props.put(MaxDelayProperty, "The most milliseconds to hold back preparing a layer while the projection keeps changing.");
+      return props;
+   }
+
+   public int getMaxConcurrent() {
+      return maxConcurrent;
+   }
+
+   /**
+    * Set the most layers prepared at the same time.
+    */
+   public void setMaxConcurrent(int maxConcurrent) {
+      maxConcurrent = Math.max(1, maxConcurrent);
+      synchronized (this) {
+         if (executor != null) {
+            if (maxConcurrent > executor.getMaximumPoolSize()) {
+               executor.setMaximumPoolSize(maxConcurrent);
+               executor.setCorePoolSize(maxConcurrent);
+            } else {
+               executor.setCorePoolSize(maxConcurrent);
+               executor.setMaximumPoolSize(maxConcurrent);
+            }
+         }
+      }
+      synchronized (entries) {
+         this.maxConcurrent = maxConcurrent;
+         entries.notifyAll();
+      }
+   }
+
+   public long getDebounceDelay() {
+      return debounceDelay;
+   }
+
+   /**
+    * Set the milliseconds to wait for another request for a layer before
+    * preparing it.
+    */
+   public void setDebounceDelay(long debounceDelay) {
+      this.debounceDelay = debounceDelay;
+   }
+
+   public long getMaxDelay() {
+      return maxDelay;
+   }
+
+   /**
+    * Set the most milliseconds to hold back preparing a layer while requests
+    * keep coming.
+    */
+   public void setMaxDelay(long maxDelay) {
+      this.maxDelay = maxDelay;
+   }
+
+   /**
+    * The scheduling state of a layer.
+    */
+   protected static class Entry {
+      final OMGraphicHandlerLayer layer;
+      /** A request is waiting. */
+      boolean queued;
+      /** prepare() is running. */
+      boolean running;
+      /** The running prepare() has been replaced by a newer request. */
+      boolean cancelled;
+      /** Times of the first and last waiting requests. */
+      long firstRequest;
+      long lastRequest;
+      /** Counts the prepare() calls started. */
+      volatile int generation;
+      Statistics stats = new Statistics();
+
+      Entry(OMGraphicHandlerLayer layer) {
+         this.layer = layer;
+      }
+   }
+
+   /**
+    * The requests and prepare() calls for a layer.
+    */
+   public static class Statistics {
+      long requests;
+      long coalesced;
+      long prepares;
+      long cancelled;
+      long discarded;
+      long totalQueueTime;
+      long maxQueueTime;
+      long totalPrepareTime;
+      long maxPrepareTime;
+      boolean queued;
+      boolean running;
+
+      public Statistics() {
+      }
+
+      public Statistics(Statistics stats) {
+         requests = stats.requests;
+         coalesced = stats.coalesced;
+         prepares = stats.prepares;
+         cancelled = stats.cancelled;
+         discarded = stats.discarded;
+         totalQueueTime = stats.totalQueueTime;
+         maxQueueTime = stats.maxQueueTime;
+         totalPrepareTime = stats.totalPrepareTime;
+         maxPrepareTime = stats.maxPrepareTime;
+      }
+
+      /** The number of doPrepare() calls. */
+      public long getRequestCount() {
+         return requests;
+      }
+
+      /** The number of requests folded into one that was already waiting. */
+      public long getCoalescedCount() {
+         return coalesced;
+      }
+
+      /** The number of prepare() calls started. */
+      public long getPrepareCount() {
+         return prepares;
+      }
+
+      /** The number of prepare() calls cancelled by a newer request. */
+      public long getCancelledCount() {
+         return cancelled;
+      }
+
+      /** The number of lists thrown away because of a newer request. */
+      public long getDiscardedCount() {
+         return discarded;
+      }
+
+      /** Average milliseconds from a request to its prepare() call. */
+      public long getAverageQueueTime() {
+         return prepares == 0 ? 0 : totalQueueTime / prepares;
+      }
+
+      public long getMaxQueueTime() {
+         return maxQueueTime;
+      }
+
+      /** Average milliseconds of the prepare() calls. */
+      public long getAveragePrepareTime() {
+         return prepares == 0 ? 0 : totalPrepareTime / prepares;
+      }
+
+      public long getMaxPrepareTime() {
+         return maxPrepareTime;
+      }
+
+      /** Whether a request was waiting when the statistics were copied. */
+      public boolean isQueued() {
+         return queued;
+      }
+
+      /** Whether prepare() was running when the statistics were copied. */
+      public boolean isRunning() {
+         return running;
+      }
+
+      public String toString() {
+         return "requests " + requests + ", coalesced " + coalesced + ", prepared " + prepares + ", cancelled " + cancelled
+               + ", discarded " + discarded + ", queue ms avg " + getAverageQueueTime() + " max " + maxQueueTime
+               + ", prepare ms avg " + getAveragePrepareTime() + " max " + maxPrepareTime;
+      }
+   }
+}
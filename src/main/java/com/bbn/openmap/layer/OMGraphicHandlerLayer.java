@@ -49,6 +49,7 @@ import com.bbn.openmap.event.LayerStatusEvent;
 import com.bbn.openmap.event.MapMouseEvent;
 import com.bbn.openmap.event.MapMouseListener;
 import com.bbn.openmap.event.ProjectionEvent;
+import com.bbn.openmap.layer.metrics.LayerMetrics;
 import com.bbn.openmap.layer.policy.ProjectionChangePolicy;
 import com.bbn.openmap.layer.policy.RenderPolicy;
 import com.bbn.openmap.layer.policy.StandardPCPolicy;
@@ -67,6 +68,7 @@ import com.bbn.openmap.util.ISwingWorker;
 import com.bbn.openmap.util.PaletteHelper;
 import com.bbn.openmap.util.PooledSwingWorker;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.cacheHandler.CacheStatistics;
 
 /**
  * The OMGraphicHandlerLayer is a layer that provides OMGraphicHandler support.
@@ -222,6 +224,12 @@ public class OMGraphicHandlerLayer
     * servers. The default setting is, however, true.
     */
    public final static String InterruptableProperty = "interruptable";
+   /**
+    * The property for the least number of milliseconds between repaints for
+    * graphics published from prepare() before it returns. 100 by default, a
+    * negative number turns off painting published graphics.
+    */
+   public final static String ProgressIntervalProperty = "progressInterval";
 
    /**
     * Filter support that can be used to manage OMGraphics.
@@ -254,6 +262,12 @@ public class OMGraphicHandlerLayer
     */
    protected ISwingWorker<OMGraphicList> layerWorkerQueue;
 
+   /**
+    * The scheduler that calls prepare() for doPrepare(), instead of a
+    * LayerWorker. Set by a LayerPrepareScheduler in the MapHandler.
+    */
+   protected LayerPrepareScheduler prepareScheduler;
+
    protected String[] mouseModeIDs = null;
 
    /**
@@ -272,6 +286,28 @@ public class OMGraphicHandlerLayer
     */
    protected boolean interruptable = true;
 
+   /**
+    * The least number of milliseconds between repaints for published graphics.
+    */
+   protected long progressInterval = 100;
+
+   /**
+    * The graphics published by the running prepare(), painted until the list
+    * it returns is set. Null if nothing has been published.
+    */
+   protected volatile OMGraphicList progressList;
+
+   /**
+    * The projection the running prepare() is working on, published graphics
+    * are ignored once the layer's projection is different.
+    */
+   protected Projection progressProjection;
+
+   /** When the layer was last repainted for published graphics. */
+   protected long lastProgressRepaint;
+
+   protected final Object PROGRESS_LOCK = new Object();
+
    /**
     * Sets the interruptible flag
     */
@@ -288,6 +324,30 @@ public class OMGraphicHandlerLayer
       return interruptable;
    }
 
+   /**
+    * Set the least number of milliseconds between repaints for graphics
+    * published from prepare(). A negative number turns off painting published
+    * graphics.
+    */
+   public void setProgressInterval(long interval) {
+      progressInterval = interval;
+   }
+
+   public long getProgressInterval() {
+      return progressInterval;
+   }
+
+   /**
+    * The statistics of the cache the layer gets its data from, picked up by
+    * the LayerMetrics after each prepare(). Layers with a cache should
+    * override this method.
+    * 
+    * @return CacheStatistics, null if the layer doesn't have a cache.
+    */
+   public CacheStatistics getCacheStatistics() {
+      return null;
+   }
+
    // OMGraphicHandler methods, deferred to FilterSupport...
 
    /**
@@ -499,11 +559,34 @@ public class OMGraphicHandlerLayer
       return new LayerWorker();
    }
 
+   /**
+    * Get the LayerPrepareScheduler calling prepare() for doPrepare(), null if
+    * the layer uses its own LayerWorker.
+    */
+   public LayerPrepareScheduler getPrepareScheduler() {
+      return prepareScheduler;
+   }
+
+   /**
+    * Set the LayerPrepareScheduler calling prepare() for doPrepare(). Usually
+    * set by the scheduler when it finds the layer. If null, the layer uses its
+    * own LayerWorker.
+    */
+   public void setPrepareScheduler(LayerPrepareScheduler scheduler) {
+      synchronized (LAYERWORKER_LOCK) {
+         if (prepareScheduler != null && prepareScheduler != scheduler) {
+            prepareScheduler.remove(this);
+         }
+         prepareScheduler = scheduler;
+      }
+   }
+
    /**
     * Overrides Layer.dispose(), makes sure the OMGraphicList is cleared.
     */
    public void dispose() {
        super.dispose();
+       setPrepareScheduler(null);
        setList(null);
    }
    
@@ -528,7 +611,10 @@ public class OMGraphicHandlerLayer
          return;
       } else if (!proj.equals(getProjection())) {
          setProjection(proj.makeClone());
-         setList(getRenderPolicy().prepare());
+         long start = System.nanoTime();
+         OMGraphicList list = getRenderPolicy().prepare();
+         LayerMetrics.prepared(this, System.nanoTime() - start, list == null ? -1 : list.size(), false);
+         setList(list);
       }
       paint(g);
    }
@@ -539,7 +625,9 @@ public class OMGraphicHandlerLayer
     * @param g java.awt.Graphics object to render OMGraphics into.
     */
    public void paint(Graphics g) {
+      long start = System.nanoTime();
       getRenderPolicy().paint(g);
+      LayerMetrics.rendered(this, System.nanoTime() - start);
    }
 
    /**
@@ -559,6 +647,11 @@ public class OMGraphicHandlerLayer
          // necessary, regardless of whether a new thread is kicked off or not.
          getRenderPolicy().prePrepare();
 
+         if (prepareScheduler != null) {
+            prepareScheduler.schedule(this);
+            return;
+         }
+
          if (isWorking()) {
             if (logger.isDebugEnabled()) {
                logger.debug(getName() + " layer already working in prepare(), canceling");
@@ -598,7 +691,7 @@ public class OMGraphicHandlerLayer
          // doPrepare() calls come in, we need to ignore all of the requests
          // that have come it after the first one that canceled the
          // LayerWorker in the first place.
-         return (layerWorker != null);
+         return (layerWorker != null) || (prepareScheduler != null && prepareScheduler.isWorking(this));
       }
    }
 
@@ -643,7 +736,9 @@ public class OMGraphicHandlerLayer
       // if the layer hasn't been added to the MapBean
       // the projection could be null.
       if (currentList != null && proj != null) {
+         long start = System.nanoTime();
          currentList.generate(proj);
+         LayerMetrics.generated(this, System.nanoTime() - start);
       }
 
       return currentList;
@@ -658,7 +753,10 @@ public class OMGraphicHandlerLayer
     */
    public void setCancelled(boolean set) {
       synchronized (LAYERWORKER_LOCK) {
-         if (set && !isCancelled() && layerWorkerQueue == null) {
+         if (set && prepareScheduler != null) {
+            // Cancels the running prepare() and asks for another.
+            prepareScheduler.schedule(this);
+         } else if (set && !isCancelled() && layerWorkerQueue == null) {
             layerWorkerQueue = createLayerWorker();
             interrupt();// if the layerWorker is busy, stop it.
          }
@@ -668,7 +766,91 @@ public class OMGraphicHandlerLayer
    /** Check to see if the canceled flag has been set. */
    public boolean isCancelled() {
       synchronized (LAYERWORKER_LOCK) {
-         return layerWorker != null && layerWorker.isInterrupted();
+         return (layerWorker != null && layerWorker.isInterrupted())
+               || (prepareScheduler != null && prepareScheduler.isCancelled(this));
+      }
+   }
+
+   /**
+    * Called from prepare() to have graphics painted before prepare() returns,
+    * so the map starts filling in while a big layer is still working. The
+    * graphics should already be generated for the projection prepare() is
+    * working on, and should also be on the list prepare() returns, which
+    * replaces all of the published graphics when it gets set. Ignored if
+    * prepare() has been cancelled or the projection has changed. The layer is
+    * repainted at most every progressInterval milliseconds.
+    *
+    * @param graphic an OMGraphic or OMGraphicList to add to the graphics
+    *        painted for the running prepare().
+    */
+   public void publish(OMGraphic graphic) {
+      if (graphic == null || progressInterval < 0 || isCancelled()) {
+         return;
+      }
+
+      boolean repaint = false;
+      synchronized (PROGRESS_LOCK) {
+         if (progressProjection == null || !progressProjection.equals(getProjection())) {
+            return;
+         }
+
+         if (progressList == null) {
+            progressList = new OMGraphicList();
+         }
+         progressList.add(graphic);
+
+         long now = System.currentTimeMillis();
+         if (now - lastProgressRepaint >= progressInterval) {
+            lastProgressRepaint = now;
+            repaint = true;
+         }
+      }
+
+      if (repaint) {
+         repaint();
+      }
+   }
+
+   /**
+    * The graphics published by the running prepare(), for the RenderPolicy to
+    * paint in place of the list until prepare() returns.
+    *
+    * @return OMGraphicList, or null if nothing has been published for the
+    *         current projection.
+    */
+   public OMGraphicList getProgressList() {
+      OMGraphicList list = progressList;
+      if (list != null) {
+         synchronized (PROGRESS_LOCK) {
+            if (progressProjection == null || !progressProjection.equals(getProjection())) {
+               return null;
+            }
+         }
+      }
+      return list;
+   }
+
+   /**
+    * Called before prepare() is called from a worker thread, clears out the
+    * graphics published by an earlier prepare() and lets publish() accept
+    * graphics for the current projection.
+    */
+   protected void startProgress() {
+      synchronized (PROGRESS_LOCK) {
+         progressList = null;
+         progressProjection = getProjection();
+         lastProgressRepaint = 0;
+      }
+   }
+
+   /**
+    * Called when the list from prepare() is set, the published graphics aren't
+    * needed anymore.
+    */
+   protected void finishProgress() {
+      synchronized (PROGRESS_LOCK) {
+         progressList = null;
+         progressProjection = null;
       }
    }
 
@@ -694,6 +876,7 @@ public class OMGraphicHandlerLayer
             setLayerWorker(null);
 
             if (!worker.isInterrupted()) {
+               finishProgress();
                getProjectionChangePolicy().workerComplete(list);
                repaint();
             }
@@ -722,12 +905,14 @@ public class OMGraphicHandlerLayer
 
          try {
 
-            long start = System.currentTimeMillis();
+            long start = System.nanoTime();
+            startProgress();
             OMGraphicList list = getRenderPolicy().prepare();
-            long stop = System.currentTimeMillis();
+            long time = System.nanoTime() - start;
+            LayerMetrics.prepared(OMGraphicHandlerLayer.this, time, list == null ? -1 : list.size(), isCancelled());
             if (logger.isDebugEnabled()) {
                logger.debug(getName() + "|LayerWorker.construct(): fetched "
-                     + (list == null ? "null list " : (list.size() + " graphics ")) + "in " + (double) ((stop - start) / 1000d)
+                     + (list == null ? "null list " : (list.size() + " graphics ")) + "in " + (time / 1000000000d)
                      + " seconds");
             }
             return list;
@@ -908,6 +1093,8 @@ public class OMGraphicHandlerLayer
       setTransparency(PropUtils.floatFromProperties(props, realPrefix + TransparencyProperty, getTransparency()));
 
       setInterruptable(PropUtils.booleanFromProperties(props, realPrefix + InterruptableProperty, isInterruptable()));
+
+      setProgressInterval(PropUtils.longFromProperties(props, realPrefix + ProgressIntervalProperty, getProgressInterval()));
    }
 
    /**
@@ -981,6 +1168,8 @@ public class OMGraphicHandlerLayer
 
       props.put(prefix + InterruptableProperty, Boolean.toString(isInterruptable()));
 
+      props.put(prefix + ProgressIntervalProperty, Long.toString(getProgressInterval()));
+
       return props;
    }
 
@@ -1054,6 +1243,9 @@ public class OMGraphicHandlerLayer
                                     "Flat to set whether the layer should immediately stop performing current work when the projection changes.",
                                     "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 
+      PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, ProgressIntervalProperty, "Progress interval",
+                                    "Milliseconds between repaints for graphics available before the layer is done working, negative to turn off.", null);
+
       return list;
    }
 
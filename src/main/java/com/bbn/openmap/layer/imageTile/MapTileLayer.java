@@ -39,6 +39,8 @@ import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.cacheHandler.CacheStatistics;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 
 /**
  * A Layer that uses a MapTileFactory to display information (tiles) on the map.
@@ -231,6 +233,16 @@ public class MapTileLayer
         return tileFactory;
     }
 
+    /**
+     * @return the statistics of the tile factory's cache, if it keeps them.
+     */
+    public CacheStatistics getCacheStatistics() {
+        if (tileFactory instanceof ConcurrentCacheHandler) {
+            return ((ConcurrentCacheHandler) tileFactory).getStatistics();
+        }
+        return null;
+    }
+
     public void setTileFactory(MapTileFactory tileFactory) {
         logger.debug("setting tile factory to: " + tileFactory.getClass().getName());
         // This allows for general faster response, but causes the map to jump
@@ -122,6 +122,12 @@ public abstract class Location
     protected int declutterLimit = DECLUTTER_LOCALLY;
     /** Set whether you want this location label decluttered. */
     protected boolean allowDecluttering = true;
+    /**
+     * The order the label gets placed in the declutter matrix by the
+     * LocationLayer, higher priority labels are placed first and get the
+     * spaces closest to their locations.
+     */
+    protected int declutterPriority = 0;
     /**
      * The horizontal pixel distance you want to place the text away from the
      * actual location - to put space between the graphic.
@@ -458,6 +464,21 @@ public abstract class Location
         return allowDecluttering;
     }
 
+    /**
+     * Set the priority of the label for decluttering. Labels with a higher
+     * priority are placed first. The default is 0.
+     */
+    public void setDeclutterPriority(int priority) {
+        declutterPriority = priority;
+    }
+
+    /**
+     * Get the priority of the label for decluttering.
+     */
+    public int getDeclutterPriority() {
+        return declutterPriority;
+    }
+
     /**
      * Set the pixel distance that the label will be moved to the right, to
      * clear space for the graphic marking the location.
@@ -490,11 +511,22 @@ public abstract class Location
         // Call generate(proj) first, to get the original position
         // set. Then, declutter the text.
         boolean ret = generate(proj);
+        declutter(proj, declutterMatrix);
+        return ret;
+    }
 
+    /**
+     * Use the declutter matrix to place the label in a spot so that it
+     * doesn't intersect with other labels. generate(proj) has to be called
+     * first.
+     * 
+     * @param proj projection of the map.
+     * @param declutterMatrix DeclutterMatrix for the map.
+     */
+    public void declutter(Projection proj, DeclutterMatrix declutterMatrix) {
         if (declutterMatrix != null && label != null && allowDecluttering) {
             declutterLabel(declutterMatrix, proj);
         }
-        return ret;
     }
 
     /**
@@ -28,6 +28,9 @@ import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Properties;
 import java.util.StringTokenizer;
@@ -125,6 +128,17 @@ public class LocationLayer
     public static final String AllowPartialsProperty = "allowPartials";
     public static final String LocationHandlerListProperty = "locationHandlers";
 
+    /**
+     * Orders Locations by declutter priority, highest first.
+     */
+    public static final Comparator<Location> DECLUTTER_PRIORITY_COMPARATOR = new Comparator<Location>() {
+        public int compare(Location loc1, Location loc2) {
+            int p1 = loc1.getDeclutterPriority();
+            int p2 = loc2.getDeclutterPriority();
+            return p1 > p2 ? -1 : (p1 == p2 ? 0 : 1);
+        }
+    };
+
     /**
      * The default constructor for the Layer. All of the attributes are set to
      * their default values.
@@ -278,13 +292,22 @@ public class LocationLayer
             // being recalled if the projection has changed, then
             // we need to force a re-projection of all of them
             // because the screen position has changed.
+            List<Location> locations = new ArrayList<Location>();
             for (OMGraphic thingy : omGraphicList) {
+                thingy.generate(projection);
                 if (useDeclutterMatrix && thingy instanceof Location) {
-                    Location loc = (Location) thingy;
-                    loc.generate(projection, declutterMatrix);
-                } else {
-                    thingy.generate(projection);
+                    locations.add((Location) thingy);
+                }
+            }
+
+            // Then place the labels, highest priority first. The sort keeps
+            // the list order for labels with the same priority.
+            Collections.sort(locations, DECLUTTER_PRIORITY_COMPARATOR);
+            for (Location loc : locations) {
+                if (isCancelled()) {
+                    return null;
                 }
+                loc.declutter(projection, declutterMatrix);
             }
         } else if (Debug.debugging("basic")) {
             Debug.output(getName() + "|LocationLayer.prepare(): finished with null graphics list");
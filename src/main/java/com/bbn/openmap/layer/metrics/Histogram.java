@@ -0,0 +1,133 @@
+package com.bbn.openmap.layer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of times, counted in buckets that double in size, so it takes
+ * the same small amount of memory no matter how many times are recorded. Bucket
+ * n holds the times from 2^(n-1) up to 2^n microseconds. Times can be recorded
+ * from any thread without locking.
+ */
+public class Histogram {
+
+   /** Bucket 0 is less than a microsecond, the last is over half an hour. */
+   public final static int NUM_BUCKETS = 32;
+
+   protected final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+   protected final AtomicLong count = new AtomicLong();
+   protected final AtomicLong total = new AtomicLong();
+   protected final AtomicLong max = new AtomicLong();
+
+   /**
+    * Record a time.
+    *
+    * @param nanos the time in nanoseconds.
+    */
+   public void record(long nanos) {
+      if (nanos < 0) {
+         nanos = 0;
+      }
+      buckets.incrementAndGet(getBucket(nanos / 1000));
+      count.incrementAndGet();
+      total.addAndGet(nanos);
+
+      long current = max.get();
+      while (nanos > current && !max.compareAndSet(current, nanos)) {
+         current = max.get();
+      }
+   }
+
+   /**
+    * @param micros a time in microseconds.
+    * @return the bucket the time goes in.
+    */
+   protected static int getBucket(long micros) {
+      int bucket = 64 - Long.numberOfLeadingZeros(micros);
+      return Math.min(bucket, NUM_BUCKETS - 1);
+   }
+
+   /**
+    * @return the number of times recorded.
+    */
+   public long getCount() {
+      return count.get();
+   }
+
+   /**
+    * @return the sum of the times recorded, in nanoseconds.
+    */
+   public long getTotal() {
+      return total.get();
+   }
+
+   /**
+    * @return the longest time recorded, in nanoseconds.
+    */
+   public long getMax() {
+      return max.get();
+   }
+
+   /**
+    * @return the average time recorded in milliseconds, 0 if nothing has been
+    *         recorded.
+    */
+   public double getMeanMillis() {
+      long c = count.get();
+      return c == 0 ? 0 : total.get() / 1000000d / c;
+   }
+
+   /**
+    * Get a time that the given fraction of the recorded times are under. The
+    * answer is the top of the bucket the percentile falls in, so it can be up
+    * to twice the real value, but never more than the max.
+    *
+    * @param percentile between 0 and 1, .95 for the 95th percentile.
+    * @return milliseconds, 0 if nothing has been recorded.
+    */
+   public double getPercentileMillis(double percentile) {
+      long c = count.get();
+      if (c == 0) {
+         return 0;
+      }
+
+      long wanted = (long) Math.ceil(c * percentile);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+         seen += buckets.get(i);
+         if (seen >= wanted) {
+            long topNanos = i == 0 ? 1000 : (1L << i) * 1000;
+            return Math.min(topNanos, max.get()) / 1000000d;
+         }
+      }
+      return max.get() / 1000000d;
+   }
+
+   /**
+    * @return a copy of the bucket counts.
+    */
+   public long[] getBuckets() {
+      long[] ret = new long[NUM_BUCKETS];
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+         ret[i] = buckets.get(i);
+      }
+      return ret;
+   }
+
+   /**
+    * Forget all of the recorded times.
+    */
+   public void reset() {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+         buckets.set(i, 0);
+      }
+      count.set(0);
+      total.set(0);
+      max.set(0);
+   }
+
+   public String toString() {
+      return "Histogram[count=" + getCount() + ", mean=" + getMeanMillis() + "ms, 95%=" + getPercentileMillis(.95)
+            + "ms, max=" + (getMax() / 1000000d) + "ms]";
+   }
+}
@@ -0,0 +1,267 @@
+package com.bbn.openmap.layer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
+
+/**
+ * Keeps timings and counts for each layer: how long prepare() takes and how
+ * many graphics it returns, how often it gets cancelled, how long generating
+ * and rendering take, and how the layer's cache is doing. The
+ * OMGraphicHandlerLayer, LayerPrepareScheduler and MapBean record here as they
+ * work, so it's the same for the Swing application and the ImageServer/WMS,
+ * and the rendering of the whole map is kept under {@link #MAP_BEAN}.
+ * <P>
+ * Each layer instance gets its own LayerStats, so layers that share a name
+ * aren't mixed up. The stats are named after the layer, with " #2", " #3"
+ * and so on added for the second and later layers with the same name, and
+ * are forgotten when the layer is.
+ * <P>
+ * The numbers can be read from {@link #getStats(Layer)}, passed on as they're
+ * recorded to {@link LayerMetricsListener}s, or watched over JMX. The
+ * LayerStats are registered as MBeans named
+ * <code>com.bbn.openmap:type=LayerMetrics,name=&lt;stats name&gt;</code> after
+ * {@link #registerMBeans()} is called, or from the start if the
+ * <code>com.bbn.openmap.layer.metrics.jmx</code> system property is true.
+ */
+public class LayerMetrics {
+
+   public static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.layer.metrics.LayerMetrics");
+
+   /** The system property that turns on the JMX MBeans at startup. */
+   public final static String JMXProperty = "com.bbn.openmap.layer.metrics.jmx";
+   /** The domain and type of the MBean names. */
+   public final static String MBeanPrefix = "com.bbn.openmap:type=LayerMetrics,name=";
+   /** The name the MapBean's rendering is recorded under. */
+   public final static String MAP_BEAN = "MapBean";
+
+   /** Stats kept under a name, like the MapBean's. */
+   protected final static ConcurrentMap<String, LayerStats> stats = new ConcurrentHashMap<String, LayerStats>();
+   /** Stats kept for each layer, synchronized on itself. */
+   protected final static Map<Layer, LayerStats> layerStats = new WeakHashMap<Layer, LayerStats>();
+   /** The names given to layer stats, so each is named differently. */
+   protected final static Set<String> layerStatsNames = new HashSet<String>();
+   protected final static List<LayerMetricsListener> listeners = new CopyOnWriteArrayList<LayerMetricsListener>();
+
+   protected static volatile boolean enabled = true;
+   protected static volatile boolean registerMBeans = Boolean.getBoolean(JMXProperty);
+
+   /**
+    * Turn recording on or off, it's on by default.
+    */
+   public static void setEnabled(boolean set) {
+      enabled = set;
+   }
+
+   public static boolean isEnabled() {
+      return enabled;
+   }
+
+   public static void addListener(LayerMetricsListener listener) {
+      listeners.add(listener);
+   }
+
+   public static void removeListener(LayerMetricsListener listener) {
+      listeners.remove(listener);
+   }
+
+   /**
+    * Get the stats kept under a name, creating them if needed. These are
+    * separate from the stats of layers, see {@link #getStats(Layer)}.
+    *
+    * @param name the name, like {@link #MAP_BEAN}.
+    * @return LayerStats
+    */
+   public static LayerStats getStats(String name) {
+      if (name == null) {
+         name = "";
+      }
+      LayerStats ls = stats.get(name);
+      if (ls == null) {
+         LayerStats newStats = new LayerStats(name);
+         ls = stats.putIfAbsent(name, newStats);
+         if (ls == null) {
+            ls = newStats;
+            if (registerMBeans) {
+               register(ls);
+            }
+         }
+      }
+      return ls;
+   }
+
+   /**
+    * Get the stats for a layer, creating them if needed. They are named after
+    * the layer when they're created.
+    */
+   public static LayerStats getStats(Layer layer) {
+      LayerStats ls;
+      synchronized (layerStats) {
+         ls = layerStats.get(layer);
+         if (ls != null) {
+            return ls;
+         }
+         String name = layer.getName();
+         if (name == null) {
+            name = layer.getClass().getSimpleName();
+         }
+         String statsName = name;
+         for (int n = 2; stats.containsKey(statsName) || !layerStatsNames.add(statsName); n++) {
+            statsName = name + " #" + n;
+         }
+         ls = new LayerStats(statsName);
+         layerStats.put(layer, ls);
+      }
+      if (registerMBeans) {
+         register(ls);
+      }
+      return ls;
+   }
+
+   /**
+    * @return all of the stats being kept.
+    */
+   public static Collection<LayerStats> getAllStats() {
+      List<LayerStats> all = new ArrayList<LayerStats>(stats.values());
+      synchronized (layerStats) {
+         all.addAll(layerStats.values());
+      }
+      return all;
+   }
+
+   /**
+    * Record a layer's prepare(). The layer's cache statistics are picked up
+    * now, too.
+    *
+    * @param layer the layer.
+    * @param nanos how long prepare() took.
+    * @param graphicCount the number of graphics on the returned list, -1 for a
+    *        null list.
+    * @param cancelled true if the layer was cancelled while preparing.
+    */
+   public static void prepared(Layer layer, long nanos, int graphicCount, boolean cancelled) {
+      if (!enabled) {
+         return;
+      }
+      LayerStats ls = getStats(layer);
+      ls.prepared(nanos, graphicCount, cancelled);
+      if (layer instanceof OMGraphicHandlerLayer) {
+         ls.setCacheStatistics(((OMGraphicHandlerLayer) layer).getCacheStatistics());
+      }
+      for (LayerMetricsListener listener : listeners) {
+         listener.prepared(ls, nanos, graphicCount, cancelled);
+      }
+   }
+
+   /**
+    * Record the generation of a layer's graphics.
+    */
+   public static void generated(Layer layer, long nanos) {
+      if (!enabled) {
+         return;
+      }
+      LayerStats ls = getStats(layer);
+      ls.generateTimes.record(nanos);
+      for (LayerMetricsListener listener : listeners) {
+         listener.generated(ls, nanos);
+      }
+   }
+
+   /**
+    * Record the rendering of a layer.
+    */
+   public static void rendered(Layer layer, long nanos) {
+      if (enabled) {
+         rendered(getStats(layer), nanos);
+      }
+   }
+
+   /**
+    * Record a rendering under a name, like {@link #MAP_BEAN}.
+    */
+   public static void rendered(String name, long nanos) {
+      if (enabled) {
+         rendered(getStats(name), nanos);
+      }
+   }
+
+   protected static void rendered(LayerStats ls, long nanos) {
+      ls.renderTimes.record(nanos);
+      for (LayerMetricsListener listener : listeners) {
+         listener.rendered(ls, nanos);
+      }
+   }
+
+   /**
+    * Clear all of the recorded numbers.
+    */
+   public static void reset() {
+      for (LayerStats ls : getAllStats()) {
+         ls.reset();
+      }
+   }
+
+   /**
+    * Register the stats with the platform MBeanServer, now and as they are
+    * created.
+    */
+   public static void registerMBeans() {
+      registerMBeans = true;
+      for (LayerStats ls : getAllStats()) {
+         register(ls);
+      }
+   }
+
+   /**
+    * Remove all of the stats from the platform MBeanServer, and stop
+    * registering new ones.
+    */
+   public static void unregisterMBeans() {
+      registerMBeans = false;
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      for (LayerStats ls : getAllStats()) {
+         try {
+            ObjectName name = getObjectName(ls);
+            if (server.isRegistered(name)) {
+               server.unregisterMBean(name);
+            }
+         } catch (Exception e) {
+            logger.debug("couldn't unregister " + ls.getLayerName() + ": " + e.getMessage());
+         }
+      }
+   }
+
+   protected static void register(LayerStats ls) {
+      try {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = getObjectName(ls);
+         if (!server.isRegistered(name)) {
+            server.registerMBean(ls, name);
+         }
+      } catch (Exception e) {
+         logger.warn("couldn't register metrics for " + ls.getLayerName() + ": " + e.getMessage());
+      }
+   }
+
+   protected static ObjectName getObjectName(LayerStats ls)
+         throws Exception {
+      return new ObjectName(MBeanPrefix + ObjectName.quote(ls.getLayerName()));
+   }
+}
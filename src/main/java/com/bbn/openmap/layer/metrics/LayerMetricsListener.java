@@ -0,0 +1,30 @@
+package com.bbn.openmap.layer.metrics;
+
+/**
+ * Hears about each measurement {@link LayerMetrics} records, to send them on
+ * to some other monitoring system. Called on the thread doing the work, so
+ * implementations should be quick.
+ */
+public interface LayerMetricsListener {
+
+   /**
+    * A layer's prepare() finished.
+    *
+    * @param stats the layer's stats, already updated.
+    * @param nanos how long prepare() took.
+    * @param graphicCount the number of graphics on the returned list, -1 for a
+    *        null list.
+    * @param cancelled true if the prepare was cancelled.
+    */
+   void prepared(LayerStats stats, long nanos, int graphicCount, boolean cancelled);
+
+   /**
+    * A layer's graphics were generated for a projection.
+    */
+   void generated(LayerStats stats, long nanos);
+
+   /**
+    * A layer, or the whole MapBean, was rendered.
+    */
+   void rendered(LayerStats stats, long nanos);
+}
@@ -0,0 +1,159 @@
+package com.bbn.openmap.layer.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bbn.openmap.util.cacheHandler.CacheStatistics;
+
+/**
+ * The timings and counts recorded for one layer, kept by {@link LayerMetrics}.
+ * Times are given in milliseconds.
+ */
+public class LayerStats
+      implements LayerStatsMBean {
+
+   protected final String layerName;
+
+   protected final Histogram prepareTimes = new Histogram();
+   protected final Histogram generateTimes = new Histogram();
+   protected final Histogram renderTimes = new Histogram();
+
+   protected final AtomicLong cancelled = new AtomicLong();
+   protected final AtomicLong graphics = new AtomicLong();
+   protected volatile long lastGraphicCount;
+
+   /** The last statistics from the layer's cache, may be null. */
+   protected volatile CacheStatistics cacheStatistics;
+
+   public LayerStats(String layerName) {
+      this.layerName = layerName;
+   }
+
+   public String getLayerName() {
+      return layerName;
+   }
+
+   public Histogram getPrepareTimes() {
+      return prepareTimes;
+   }
+
+   public Histogram getGenerateTimes() {
+      return generateTimes;
+   }
+
+   public Histogram getRenderTimes() {
+      return renderTimes;
+   }
+
+   protected void prepared(long nanos, int graphicCount, boolean wasCancelled) {
+      prepareTimes.record(nanos);
+      if (wasCancelled) {
+         cancelled.incrementAndGet();
+      } else if (graphicCount >= 0) {
+         graphics.addAndGet(graphicCount);
+         lastGraphicCount = graphicCount;
+      }
+   }
+
+   public long getPrepareCount() {
+      return prepareTimes.getCount();
+   }
+
+   public long getCancelledCount() {
+      return cancelled.get();
+   }
+
+   public double getMeanPrepareTime() {
+      return prepareTimes.getMeanMillis();
+   }
+
+   public double getPrepareTime95() {
+      return prepareTimes.getPercentileMillis(.95);
+   }
+
+   public double getMaxPrepareTime() {
+      return prepareTimes.getMax() / 1000000d;
+   }
+
+   public long getLastGraphicCount() {
+      return lastGraphicCount;
+   }
+
+   /**
+    * @return the average number of graphics on the lists prepare() returned,
+    *         not counting cancelled prepares.
+    */
+   public double getMeanGraphicCount() {
+      long finished = prepareTimes.getCount() - cancelled.get();
+      return finished <= 0 ? 0 : (double) graphics.get() / finished;
+   }
+
+   public long getGenerateCount() {
+      return generateTimes.getCount();
+   }
+
+   public double getMeanGenerateTime() {
+      return generateTimes.getMeanMillis();
+   }
+
+   public double getGenerateTime95() {
+      return generateTimes.getPercentileMillis(.95);
+   }
+
+   public long getRenderCount() {
+      return renderTimes.getCount();
+   }
+
+   public double getMeanRenderTime() {
+      return renderTimes.getMeanMillis();
+   }
+
+   public double getRenderTime95() {
+      return renderTimes.getPercentileMillis(.95);
+   }
+
+   public double getMaxRenderTime() {
+      return renderTimes.getMax() / 1000000d;
+   }
+
+   public CacheStatistics getCacheStatistics() {
+      return cacheStatistics;
+   }
+
+   public void setCacheStatistics(CacheStatistics cacheStatistics) {
+      this.cacheStatistics = cacheStatistics;
+   }
+
+   public long getCacheHitCount() {
+      CacheStatistics cs = cacheStatistics;
+      return cs == null ? 0 : cs.getHitCount();
+   }
+
+   public long getCacheMissCount() {
+      CacheStatistics cs = cacheStatistics;
+      return cs == null ? 0 : cs.getMissCount();
+   }
+
+   /**
+    * @return the hit rate of the layer's cache, -1 if the layer doesn't have
+    *         one.
+    */
+   public double getCacheHitRate() {
+      CacheStatistics cs = cacheStatistics;
+      return cs == null ? -1 : cs.getHitRate();
+   }
+
+   public void reset() {
+      prepareTimes.reset();
+      generateTimes.reset();
+      renderTimes.reset();
+      cancelled.set(0);
+      graphics.set(0);
+      lastGraphicCount = 0;
+   }
+
+   public String toString() {
+      return "LayerStats[" + layerName + ": prepare " + prepareTimes + ", cancelled=" + cancelled + ", graphics="
+            + lastGraphicCount + ", generate " + generateTimes + ", render " + renderTimes
+            + (cacheStatistics != null ? ", " + cacheStatistics : "") + "]";
+   }
+}
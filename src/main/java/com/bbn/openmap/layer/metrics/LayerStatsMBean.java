@@ -0,0 +1,45 @@
+package com.bbn.openmap.layer.metrics;
+
+/**
+ * The JMX view of a layer's {@link LayerStats}. Times are in milliseconds.
+ */
+public interface LayerStatsMBean {
+
+   String getLayerName();
+
+   long getPrepareCount();
+
+   long getCancelledCount();
+
+   double getMeanPrepareTime();
+
+   double getPrepareTime95();
+
+   double getMaxPrepareTime();
+
+   long getLastGraphicCount();
+
+   double getMeanGraphicCount();
+
+   long getGenerateCount();
+
+   double getMeanGenerateTime();
+
+   double getGenerateTime95();
+
+   long getRenderCount();
+
+   double getMeanRenderTime();
+
+   double getRenderTime95();
+
+   double getMaxRenderTime();
+
+   long getCacheHitCount();
+
+   long getCacheMissCount();
+
+   double getCacheHitRate();
+
+   void reset();
+}
@@ -117,8 +117,15 @@ public class BufferedImageRenderPolicy
         Projection proj = layer.getProjection();
         Graphics2D g2 = (Graphics2D) g.create();
         OMRaster bufferedImage = getBuffer();
+        OMGraphicList progress = layer.getProgressList();
 
-        if (bufferedImage == null && list != null && layer.isProjectionOK(proj)) {
+        if (progress != null && layer.isProjectionOK(proj)) {
+            // prepare() is still working, render what it has published so far
+            // without buffering it.
+            setCompositeOnGraphics(g2);
+            super.setRenderingHints(g2);
+            progress.render(g2);
+        } else if (bufferedImage == null && list != null && layer.isProjectionOK(proj)) {
 
             bufferedImage = createAndPaintImageBuffer(list, proj);
             setBuffer(bufferedImage);
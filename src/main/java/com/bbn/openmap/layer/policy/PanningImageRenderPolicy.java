@@ -119,6 +119,16 @@ public class PanningImageRenderPolicy extends RenderingHintsRenderPolicy {
 
         if (layer.isProjectionOK(proj)) {
 
+            OMGraphicList progress = layer.getProgressList();
+            if (progress != null) {
+                // prepare() is still working, render what it has published so
+                // far without buffering it.
+                setCompositeOnGraphics(g2);
+                super.setRenderingHints(g);
+                progress.render(g);
+                return;
+            }
+
             if (getBuffer() == null) {
                 // Not sure how we get here, but it's here just in case so that
                 // the list might get painted if it exists and the buffered
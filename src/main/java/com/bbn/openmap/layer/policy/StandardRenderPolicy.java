@@ -116,11 +116,15 @@ public class StandardRenderPolicy
 
    /**
     * Assumes that the OMGraphicList to be rendered is set on the
-    * OMGraphicHandlerLayer, available via setList().
+    * OMGraphicHandlerLayer, available via setList(). While prepare() is
+    * running, the graphics it has published so far are rendered instead.
     */
    public void paint(Graphics g) {
       if (layer != null) {
-         OMGraphicList list = layer.getList();
+         OMGraphicList list = layer.getProgressList();
+         if (list == null) {
+            list = layer.getList();
+         }
          Projection proj = layer.getProjection();
          if (list != null && layer.isProjectionOK(proj)) {
             if (proj != null) {
@@ -40,7 +40,13 @@ package com.bbn.openmap.layer.rpf;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
@@ -62,6 +68,7 @@ public class RpfCacheHandler {
     /* # CHUM descriptor string */
     public final static int MAX_DESC_LEN = 512;
     public static final int DEFAULT_SUBFRAMEBUFFER = 5;
+    public static final int DEFAULT_PREFETCH_BUFFER = 1;
 
     /* DKS fix chum description problem : */
     /** subframe status constant. */
@@ -115,6 +122,12 @@ public class RpfCacheHandler {
      */
     protected int subframeBuffer = DEFAULT_SUBFRAMEBUFFER;
 
+    /**
+     * The number of subframes around the edges of the map to decompress ahead
+     * of time, so they're ready when the map is panned.
+     */
+    protected int prefetchBuffer = DEFAULT_PREFETCH_BUFFER;
+
     /**
      * Used in setCache to see if new coverage is needed with a projection
      * change.
@@ -374,6 +387,8 @@ public class RpfCacheHandler {
             omGraphics = new OMGraphicList();
         }
 
+        decodeSubframes();
+
         for (int subx = start.x; subx <= end.x; subx++) {
             for (int suby = start.y; suby <= end.y; suby++) {
 
@@ -411,6 +426,109 @@ public class RpfCacheHandler {
         return omGraphics;
     }
 
+    /**
+     * Decompress the subframes needed for the map that aren't in the subframe
+     * cache on the RpfDecodedSubframeCache threads, so getCached() finds them
+     * already decompressed. The subframes just outside the map are queued up
+     * to be decompressed, too, without waiting for them. Only done for a local
+     * RpfFrameCacheHandler that keeps decompressed subframes.
+     */
+    protected void decodeSubframes() {
+        if (!goodData || !(frameProvider instanceof RpfFrameCacheHandler) || coverageBoxes == null || coverageBoxes.isEmpty()
+                || ((RpfFrameCacheHandler) frameProvider).getDecodedCache() == null) {
+            return;
+        }
+
+        RpfCoverageBox box = coverageBoxes.elementAt(0);
+        boolean direct = getViewAttributes().colorModel == OMRasterObject.COLORMODEL_DIRECT;
+
+        // Grouped by frame, so a frame gets read once, [frame x, frame y] ->
+        // subframes
+        Map<Point, List<Point>> needed = new LinkedHashMap<Point, List<Point>>();
+        Map<Point, List<Point>> ahead = new LinkedHashMap<Point, List<Point>>();
+
+        for (int subx = start.x - prefetchBuffer; subx <= end.x + prefetchBuffer; subx++) {
+            for (int suby = start.y - prefetchBuffer; suby <= end.y + prefetchBuffer; suby++) {
+                if (subx < 0 || suby < 0) {
+                    continue;
+                }
+                boolean onMap = subx >= start.x && subx <= end.x && suby >= start.y && suby <= end.y;
+                if (onMap && isCached(subx, suby)) {
+                    continue;
+                }
+                Map<Point, List<Point>> group = onMap ? needed : ahead;
+                Point frame = new Point(subx / 6, suby / 6);
+                List<Point> subframes = group.get(frame);
+                if (subframes == null) {
+                    subframes = new ArrayList<Point>();
+                    group.put(frame, subframes);
+                }
+                subframes.add(new Point(subx, suby));
+            }
+        }
+
+        // Read each frame with its first subframe, then do the rest of the
+        // subframes with the frames in the frame cache.
+        List<Callable<Object>> first = new ArrayList<Callable<Object>>();
+        List<Callable<Object>> rest = new ArrayList<Callable<Object>>();
+        for (List<Point> subframes : needed.values()) {
+            first.add(createDecodeTask(box, subframes.subList(0, 1), direct));
+            for (Point subframe : subframes.subList(1, subframes.size())) {
+                rest.add(createDecodeTask(box, Collections.singletonList(subframe), direct));
+            }
+        }
+        RpfDecodedSubframeCache.decode(first);
+        RpfDecodedSubframeCache.decode(rest);
+
+        List<Callable<Object>> prefetch = new ArrayList<Callable<Object>>();
+        for (List<Point> subframes : ahead.values()) {
+            prefetch.add(createDecodeTask(box, subframes, direct));
+        }
+        RpfDecodedSubframeCache.prefetch(prefetch);
+    }
+
+    /**
+     * Create a task that gets subframes from the frame provider, which
+     * decompresses them into its RpfDecodedSubframeCache.
+     */
+    protected Callable<Object> createDecodeTask(final RpfCoverageBox box, final List<Point> subframes, final boolean direct) {
+        final RpfFrameProvider provider = frameProvider;
+        return new Callable<Object>() {
+            public Object call() {
+                for (Point subframe : subframes) {
+                    if (direct) {
+                        provider.getSubframeData(box.tocNumber, box.entryNumber, subframe.x, subframe.y);
+                    } else {
+                        provider.getRawSubframeData(box.tocNumber, box.entryNumber, subframe.x, subframe.y);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @return true if the subframe cache has the subframe, or knows there isn't
+     *         one.
+     */
+    protected boolean isCached(int cbx, int cby) {
+        int x = cbx + subframeBuffer;
+        int y = cby + subframeBuffer;
+        if (subframeIndex == null || y < 0 || x < 0 || y >= subframeIndex.length || x >= subframeIndex[0].length) {
+            return false;
+        }
+        int index = subframeIndex[y][x];
+        return index == NOT_PRESENT || (index >= 0 && cache != null && cache.subframe[index].version == subframeVersion[y][x]);
+    }
+
+    public void setPrefetchBuffer(int prefetchBuffer) {
+        this.prefetchBuffer = prefetchBuffer;
+    }
+
+    public int getPrefetchBuffer() {
+        return prefetchBuffer;
+    }
+
     /**
      * Resets the indicators in the subframe cache, so that none of the current
      * contents will be used - they'll have to be loaded with data first. The
@@ -0,0 +1,292 @@
+package com.bbn.openmap.layer.rpf;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.cacheHandler.CacheObject;
+import com.bbn.openmap.util.cacheHandler.CacheWeigher;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
+
+/**
+ * A cache of decompressed subframes, the int[] pixels of direct color
+ * subframes and the RpfIndexedImageData of indexed ones, limited by the number
+ * of bytes they take up. The RpfFrameCacheHandler checks here before
+ * decompressing a subframe, so a subframe that was on the map a little while
+ * ago doesn't need its frame read or decompressed again. One shared cache is
+ * used by all of the RPF layers, unless they're given their own. Each entry
+ * remembers the RpfFrameCacheHandler that put it, so a handler resetting its
+ * cache only drops its own subframes.
+ * <P>
+ * The threads that decompress subframes for the RpfCacheHandlers are kept here
+ * too, see {@link #decode(List)}.
+ */
+public class RpfDecodedSubframeCache
+      extends ConcurrentCacheHandler {
+
+   /** The default limit for the shared cache, 64MB. */
+   public final static long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+   /**
+    * The most subframes held, the byte budget is usually the limit that
+    * matters.
+    */
+   public final static int MAX_SUBFRAMES = 4096;
+
+   protected static RpfDecodedSubframeCache shared;
+   protected static ThreadPoolExecutor decodeExecutor;
+
+   /**
+    * Create a cache with a byte budget.
+    *
+    * @param byteBudget the most bytes of decompressed pixels to hold.
+    */
+   public RpfDecodedSubframeCache(long byteBudget) {
+      super(MAX_SUBFRAMES);
+      setByteBudget(byteBudget);
+   }
+
+   /**
+    * Get the cache shared by the RPF layers, creating it if needed.
+    */
+   public static synchronized RpfDecodedSubframeCache getShared() {
+      if (shared == null) {
+         shared = new RpfDecodedSubframeCache(DEFAULT_BYTE_BUDGET);
+      }
+      return shared;
+   }
+
+   /**
+    * Change the number of bytes of decompressed pixels the cache can hold.
+    * Drops all of the current entries.
+    */
+   public void setByteBudget(long byteBudget) {
+      setWeightLimit(byteBudget, new CacheWeigher() {
+         public long weigh(CacheObject co) {
+            return getByteCount(co.obj);
+         }
+      });
+   }
+
+   public long getByteBudget() {
+      return getWeightLimit();
+   }
+
+   /**
+    * @return the approximate number of bytes used by a decompressed subframe.
+    */
+   protected static long getByteCount(Object data) {
+      if (data instanceof int[]) {
+         return ((int[]) data).length * 4L;
+      } else if (data instanceof RpfIndexedImageData) {
+         RpfIndexedImageData riid = (RpfIndexedImageData) data;
+         return (riid.imageData != null ? riid.imageData.length : 0) + (riid.colortable != null ? riid.colortable.length * 32L : 0);
+      }
+      return 0;
+   }
+
+   /**
+    * Get a decompressed subframe.
+    *
+    * @param key from createKey().
+    * @return int[] or RpfIndexedImageData, null if it isn't in the cache.
+    */
+   public Object getDecoded(Object key) {
+      CacheObject co = searchCache(key);
+      return co != null ? co.obj : null;
+   }
+
+   /**
+    * Add a decompressed subframe.
+    *
+    * @param key from createKey().
+    * @param data int[] or RpfIndexedImageData.
+    */
+   public void putDecoded(Object key, Object data) {
+      putDecoded(key, data, null);
+   }
+
+   /**
+    * Add a decompressed subframe for an owner.
+    *
+    * @param key from createKey().
+    * @param data int[] or RpfIndexedImageData.
+    * @param owner what decompressed the subframe, usually an
+    *        RpfFrameCacheHandler, for removeOwnedBy().
+    */
+   public void putDecoded(Object key, Object data, Object owner) {
+      if (data != null) {
+         replaceLeastUsed(new DecodedObject(key, data, owner));
+      }
+   }
+
+   /**
+    * Remove the subframes put by an owner, leaving the ones other owners put.
+    *
+    * @param owner the owner given to putDecoded().
+    */
+   public void removeOwnedBy(Object owner) {
+      for (Iterator<CacheObject> it = listIterator(); it.hasNext();) {
+         CacheObject co = it.next();
+         if (co instanceof DecodedObject && ((DecodedObject) co).owner == owner) {
+            remove(co);
+         }
+      }
+   }
+
+   /**
+    * The decompressed subframes are put in the cache by the
+    * RpfFrameCacheHandler, nothing is loaded here.
+    */
+   public CacheObject load(Object key) {
+      return null;
+   }
+
+   /**
+    * Create the key for a subframe. The colors of a decompressed subframe
+    * depend on the opaqueness and number of colors, so they're part of the
+    * key.
+    *
+    * @param framePath the path of the subframe's frame file.
+    * @param x the horizontal subframe index in the frame.
+    * @param y the vertical subframe index in the frame.
+    * @param direct true for int[] pixels, false for indexed data.
+    * @param opaqueness the opaqueness of the colors.
+    * @param numColors the number of colors.
+    * @return key
+    */
+   public static Object createKey(String framePath, int x, int y, boolean direct, int opaqueness, int numColors) {
+      return new SubframeKey(framePath, x % 6, y % 6, direct, opaqueness, numColors);
+   }
+
+   /**
+    * Run decoding tasks on the shared decoding threads and wait for them to
+    * finish. A task that fails is reported, and the others are still waited
+    * for. If the calling thread is interrupted, the tasks that haven't started
+    * are cancelled and the running ones are left to finish and fill the cache.
+    *
+    * @param tasks the tasks to run.
+    */
+   public static void decode(List<Callable<Object>> tasks) {
+      if (tasks.isEmpty()) {
+         return;
+      }
+      ThreadPoolExecutor executor = getDecodeExecutor();
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(tasks.size());
+      for (Callable<Object> task : tasks) {
+         futures.add(executor.submit(task));
+      }
+
+      for (Future<Object> future : futures) {
+         try {
+            future.get();
+         } catch (InterruptedException ie) {
+            for (Future<Object> unfinished : futures) {
+               unfinished.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            return;
+         } catch (ExecutionException ee) {
+            Debug.error("RpfDecodedSubframeCache: problem decoding subframe: " + ee.getCause());
+         }
+      }
+   }
+
+   /**
+    * Run decoding tasks on the shared decoding threads without waiting for
+    * them, for subframes that might be needed soon. Tasks are dropped if the
+    * threads already have plenty of work queued up.
+    *
+    * @param tasks the tasks to run.
+    */
+   public static void prefetch(List<Callable<Object>> tasks) {
+      ThreadPoolExecutor executor = getDecodeExecutor();
+      for (Callable<Object> task : tasks) {
+         if (executor.getQueue().size() >= executor.getMaximumPoolSize() * 16) {
+            break;
+         }
+         executor.submit(task);
+      }
+   }
+
+   /**
+    * Get the threads that decompress subframes, creating them if needed.
+    */
+   protected static synchronized ThreadPoolExecutor getDecodeExecutor() {
+      if (decodeExecutor == null) {
+         int threads = Runtime.getRuntime().availableProcessors();
+         decodeExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "RpfSubframeDecoder");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         // Let the threads go when the map isn't changing.
+         decodeExecutor.allowCoreThreadTimeOut(true);
+      }
+      return decodeExecutor;
+   }
+
+   /**
+    * A decompressed subframe and the owner that put it in the cache.
+    */
+   protected static class DecodedObject
+         extends CacheObject {
+      final Object owner;
+
+      DecodedObject(Object key, Object data, Object owner) {
+         super(key, data);
+         this.owner = owner;
+      }
+   }
+
+   protected static class SubframeKey {
+      final String framePath;
+      final int x;
+      final int y;
+      final boolean direct;
+      final int opaqueness;
+      final int numColors;
+      final int hash;
+
+      SubframeKey(String framePath, int x, int y, boolean direct, int opaqueness, int numColors) {
+         this.framePath = framePath;
+         this.x = x;
+         this.y = y;
+         this.direct = direct;
+         this.opaqueness = opaqueness;
+         this.numColors = numColors;
+
+         int h = framePath.hashCode();
+         h = 31 * h + x * 6 + y;
+         h = 31 * h + (direct ? 1 : 0);
+         h = 31 * h + opaqueness;
+         hash = 31 * h + numColors;
+      }
+
+      public int hashCode() {
+         return hash;
+      }
+
+      public boolean equals(Object obj) {
+         if (!(obj instanceof SubframeKey)) {
+            return false;
+         }
+         SubframeKey key = (SubframeKey) obj;
+         return hash == key.hash && x == key.x && y == key.y && direct == key.direct && opaqueness == key.opaqueness
+               && numColors == key.numColors && framePath.equals(key.framePath);
+      }
+
+      public String toString() {
+         return framePath + "[" + x + "," + y + (direct ? ",direct" : ",indexed") + "]";
+      }
+   }
+}
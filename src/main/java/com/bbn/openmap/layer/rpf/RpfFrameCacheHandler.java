@@ -34,7 +34,7 @@ import java.util.Vector;
 
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.Debug;
-import com.bbn.openmap.util.cacheHandler.CacheHandler;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
 
 /**
@@ -45,7 +45,7 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * that acts like one.
  */
 public class RpfFrameCacheHandler
-      extends CacheHandler
+      extends ConcurrentCacheHandler
       implements RpfFrameProvider {
 
    /* Default frame cache size. */
@@ -61,6 +61,8 @@ public class RpfFrameCacheHandler
    protected RpfTocHandler[] tocs;
    /** View and display attributes for the data. */
    protected RpfViewAttributes viewAttributes = new RpfViewAttributes();
+   /** Decompressed subframes, shared with the other RPF layers by default. */
+   protected RpfDecodedSubframeCache decodedCache = RpfDecodedSubframeCache.getShared();
 
    /**
     * The default constructor.
@@ -137,8 +139,10 @@ public class RpfFrameCacheHandler
 
          // Check the tochandlers for differences, and reload them
          // if necessary.
-         if (toc.hasChanged())
+         if (toc.hasChanged()) {
             toc.reload();
+            resetCache();
+         }
          if (!toc.isValid())
             continue;
 
@@ -278,8 +282,10 @@ public class RpfFrameCacheHandler
          
          // Check the toc handlers for differences, and reload them
          // if necessary.
-         if (toc.hasChanged())
+         if (toc.hasChanged()) {
             toc.reload();
+            resetCache();
+         }
 
          if (!toc.isValid())
             continue;
@@ -462,22 +468,10 @@ public class RpfFrameCacheHandler
     */
    public String getSubframeAttributes(int tocNumber, int entryNumber, int x, int y) {
 
-      if (!tocs[tocNumber].isValid())
+      RpfFrameEntry frameEntry = getFrameEntry(tocNumber, entryNumber, x, y);
+      if (frameEntry == null)
          return null;
 
-      RpfTocEntry entry = tocs[tocNumber].entries[entryNumber];
-
-      /* If beyond the image boundary, forget it */
-      if (y < 0 || x < 0 || entry == null || y >= entry.vertFrames * 6 || x >= entry.horizFrames * 6) {
-
-         return null;
-      }
-
-      if (!entry.isFramesLoaded()) {
-         tocs[tocNumber].loadFrameInformation(entry);
-      }
-      RpfFrameEntry frameEntry = entry.getFrame(y / 6, x / 6);
-
       /* Get the right frame from the frame cache */
       RpfFrame frame = (RpfFrame) get(frameEntry);
 
@@ -487,7 +481,36 @@ public class RpfFrameCacheHandler
       /*
        * This should never fail, since all subframes should be present
        */
-      return frame.getReport(x, y, frameEntry, entry.Cib);
+      return frame.getReport(x, y, frameEntry, tocs[tocNumber].entries[entryNumber].Cib);
+   }
+
+   /**
+    * Find the frame for a subframe, loading the frame information for the
+    * entry if it hasn't been yet. The frame information is read from the
+    * A.TOC file, so only one thread does that at a time for each
+    * RpfTocHandler.
+    * 
+    * @return RpfFrameEntry, or null if the subframe isn't in the entry.
+    */
+   protected RpfFrameEntry getFrameEntry(int tocNumber, int entryNumber, int x, int y) {
+      RpfTocHandler toc = tocs[tocNumber];
+      synchronized (toc) {
+         if (!toc.isValid()) {
+            return null;
+         }
+
+         RpfTocEntry entry = toc.entries[entryNumber];
+
+         /* If beyond the image boundary, forget it */
+         if (y < 0 || x < 0 || entry == null || y >= entry.vertFrames * 6 || x >= entry.horizFrames * 6) {
+            return null;
+         }
+
+         if (!entry.isFramesLoaded()) {
+            toc.loadFrameInformation(entry);
+         }
+         return entry.getFrame(y / 6, x / 6);
+      }
    }
 
    /**
@@ -509,21 +532,20 @@ public class RpfFrameCacheHandler
     */
    public int[] getSubframeData(int tocNumber, int entryNumber, int x, int y) {
 
-      if (!tocs[tocNumber].isValid()) {
-         return null;
-      }
-
-      RpfTocEntry entry = tocs[tocNumber].entries[entryNumber];
-
-      /* If beyond the image boundary, forget it */
-      if (y < 0 || x < 0 || entry == null || y >= entry.vertFrames * 6 || x >= entry.horizFrames * 6) {
+      RpfFrameEntry frameEntry = getFrameEntry(tocNumber, entryNumber, x, y);
+      if (frameEntry == null) {
          return null;
       }
 
-      if (!entry.isFramesLoaded()) {
-         tocs[tocNumber].loadFrameInformation(entry);
+      Object key = null;
+      RpfDecodedSubframeCache decoded = decodedCache;
+      if (decoded != null && frameEntry.framePath != null) {
+         key = createDecodedKey(frameEntry, x, y, true);
+         int[] pixels = (int[]) decoded.getDecoded(key);
+         if (pixels != null) {
+            return pixels;
+         }
       }
-      RpfFrameEntry frameEntry = entry.getFrame(y / 6, x / 6);
 
       /* Get the right frame from the frame cache */
       RpfFrame frame = (RpfFrame) get(frameEntry);
@@ -532,30 +554,34 @@ public class RpfFrameCacheHandler
          return null;
       }
 
-      checkColortable(frame, frameEntry, entry, tocNumber, entryNumber);
+      RpfColortable ct = getColortable(frame, frameEntry, tocs[tocNumber].entries[entryNumber], tocNumber, entryNumber);
 
       /*
        * This should never fail, since all subframes should be present
        */
-      return frame.decompressSubframe(x, y, colortable);
+      int[] pixels = frame.decompressSubframe(x, y, ct);
+      if (key != null) {
+         decoded.putDecoded(key, pixels, this);
+      }
+      return pixels;
    }
 
    public RpfIndexedImageData getRawSubframeData(int tocNumber, int entryNumber, int x, int y) {
-      if (!tocs[tocNumber].isValid()) {
-         return null;
-      }
-
-      RpfTocEntry entry = tocs[tocNumber].entries[entryNumber];
-
-      /* If beyond the image boundary, forget it */
-      if (y < 0 || x < 0 || entry == null || y >= entry.vertFrames * 6 || x >= entry.horizFrames * 6) {
 
+      RpfFrameEntry frameEntry = getFrameEntry(tocNumber, entryNumber, x, y);
+      if (frameEntry == null) {
          return null;
       }
-      if (!entry.isFramesLoaded()) {
-         tocs[tocNumber].loadFrameInformation(entry);
+
+      Object key = null;
+      RpfDecodedSubframeCache decoded = decodedCache;
+      if (decoded != null && frameEntry.framePath != null) {
+         key = createDecodedKey(frameEntry, x, y, false);
+         RpfIndexedImageData riid = (RpfIndexedImageData) decoded.getDecoded(key);
+         if (riid != null) {
+            return riid;
+         }
       }
-      RpfFrameEntry frameEntry = entry.getFrame(y / 6, x / 6);
 
       /* Get the right frame from the frame cache */
       RpfFrame frame = (RpfFrame) get(frameEntry);
@@ -563,14 +589,51 @@ public class RpfFrameCacheHandler
       if (frame == null)
          return null;
 
-      checkColortable(frame, frameEntry, entry, tocNumber, entryNumber);
+      RpfColortable ct = getColortable(frame, frameEntry, tocs[tocNumber].entries[entryNumber], tocNumber, entryNumber);
 
       RpfIndexedImageData riid = new RpfIndexedImageData();
       riid.imageData = frame.decompressSubframe(x, y);
-      riid.colortable = colortable.colors;
+      riid.colortable = ct.colors;
+      if (key != null && riid.imageData != null) {
+         decoded.putDecoded(key, riid, this);
+      }
       return riid;
    }
 
+   protected Object createDecodedKey(RpfFrameEntry frameEntry, int x, int y, boolean direct) {
+      RpfViewAttributes va = viewAttributes;
+      return RpfDecodedSubframeCache.createKey(frameEntry.framePath, x, y, direct, va != null ? va.opaqueness : 255,
+                                               va != null ? va.numberOfColors : RpfColortable.CADRG_COLORS);
+   }
+
+   /**
+    * Set up the colortable for a frame with checkColortable, and return a copy
+    * of it that won't change if another thread sets up the colortable for a
+    * different frame while the copy is being used.
+    */
+   protected synchronized RpfColortable getColortable(RpfFrame frame, RpfFrameEntry frameEntry, RpfTocEntry entry, int tocNumber,
+                                                      int entryNumber) {
+      checkColortable(frame, frameEntry, entry, tocNumber, entryNumber);
+      RpfColortable ct = new RpfColortable();
+      ct.setFrom(colortable);
+      if (colortable.colors != null) {
+         ct.colors = colortable.colors.clone();
+      }
+      return ct;
+   }
+
+   /**
+    * Set the cache of decompressed subframes, null to not keep them. The
+    * shared RpfDecodedSubframeCache is used by default.
+    */
+   public void setDecodedCache(RpfDecodedSubframeCache decodedCache) {
+      this.decodedCache = decodedCache;
+   }
+
+   public RpfDecodedSubframeCache getDecodedCache() {
+      return decodedCache;
+   }
+
    /**
     * Take a bunch of stuff that has already been calculated, and then figure
     * out if a new colortable is needed. If it is, load it up with info. Called
@@ -697,10 +760,14 @@ public class RpfFrameCacheHandler
 
    /**
     * CacheHandler method. Need to clear memory, get gc moving, and ready for
-    * new objects
+    * new objects. Only the decompressed subframes this handler put in the
+    * decoded cache are dropped, the cache is shared with other layers.
     */
    public void resetCache() {
       super.resetCache();
+      if (decodedCache != null) {
+         decodedCache.removeOwnedBy(this);
+      }
       Debug.message("rpf", "RpfFrameCacheHandler: reset frame cache.");
    }
 
@@ -51,6 +51,8 @@ import com.bbn.openmap.proj.EqualArc;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.PropUtils;
 import com.bbn.openmap.util.cacheHandler.CacheHandler;
+import com.bbn.openmap.util.cacheHandler.CacheStatistics;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 
 /**
  * The RpfLayer fills the screen with RPF data. There is also a tool available
@@ -514,6 +516,16 @@ public class RpfLayer
         return frameProvider;
     }
 
+    /**
+     * @return the statistics of the frame provider's cache, if it keeps them.
+     */
+    public CacheStatistics getCacheStatistics() {
+        if (frameProvider instanceof ConcurrentCacheHandler) {
+            return ((ConcurrentCacheHandler) frameProvider).getStatistics();
+        }
+        return null;
+    }
+
     /**
      * Returns the Vector containing RpfCoverageBoxes that was returned from the
      * RpfFrameProvider as a result of the last setCache call. These provide
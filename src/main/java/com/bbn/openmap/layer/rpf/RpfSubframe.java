@@ -165,10 +165,14 @@ public class RpfSubframe {
 
         protected void setTransparent(int opaqueness) {
             if (pixels != null) {
+                // The pixels may be held by the RpfDecodedSubframeCache, so
+                // change a copy.
+                int[] newPixels = new int[pixels.length];
                 for (int i = 0; i < pixels.length; i++) {
-                    pixels[i] = (0x00FFFFFF & pixels[i]) | (opaqueness << 24);
+                    newPixels[i] = (0x00FFFFFF & pixels[i]) | (opaqueness << 24);
                 }
-                // image = null; ??
+                pixels = newPixels;
+                image = null;
             }
         }
 
@@ -90,7 +90,10 @@ public class RpfTocHandler {
     protected int indexRecordLength; // ushort, frame file index record
     // length
     protected long currencyTime;
+    protected long tocFileLength;
     protected boolean valid = false;
+    /** Spatial index of the entries, null if the A.TOC couldn't be read. */
+    protected RpfTocIndex index;
     /**
      * Set by the RpfFrameProvider, and used to track down this particular TOC
      * to get to the frames offered by it's coverages.
@@ -205,24 +208,29 @@ public class RpfTocHandler {
     /**
      * A way to check if the status of the A.TOC file is different, in case
      * another one has taken its place. Handy if the A.TOC is on a CDROM drive
-     * and the disk has been swapped. Not valid anymore, with the advent of the
-     * new BinaryFile, where the file information may not be available.
+     * and the disk has been swapped, or it's been rewritten by MakeToc. Only
+     * works for A.TOC files on the local file system, the file information
+     * isn't available for ones read from URLs or jar files.
      */
     public boolean hasChanged() {
-        // File tmpFile = getTocFile(dir);
-        // if (tmpFile == null) {
-        // return valid;
-        // }
-        // if (tmpFile.lastModified() != currencyTime && valid) {
-        // valid = false;
-        // return true;
-        // }
+        if (currencyTime == 0 || aTocFilePath == null) {
+            return false;
+        }
+        File tmpFile = new File(aTocFilePath);
+        if (tmpFile.lastModified() != currencyTime || tmpFile.length() != tocFileLength) {
+            valid = false;
+            return true;
+        }
         return false;
     }
 
     /** Re-read the A.TOC file in the parent directory. */
     public boolean reload() {
-        return loadFile(dir);
+        if (dir == null) {
+            return false;
+        }
+        valid = loadFile(dir.endsWith("/") ? dir.substring(0, dir.length() - 1) : dir);
+        return valid;
     }
 
     /** Read the file and load its parameters into this object. */
@@ -252,13 +260,25 @@ public class RpfTocHandler {
 
             dir = parentDir + "/";
 
-            // With the new BinaryFile, we can't get to this
-            // info, because we aren't using File objects anymore.
-            // currencyTime = file.lastModified();
+            // The file information is only available for local files, not
+            // ones read from URLs.
+            File tocFile = new File(aTocFilePath);
+            if (tocFile.isFile()) {
+                currencyTime = tocFile.lastModified();
+                tocFileLength = tocFile.length();
+            } else {
+                tocFile = null;
+                currencyTime = 0;
+            }
 
+            index = null;
             if (!parseToc(binFile)) {
                 ret = false;
                 Debug.error("RpfTocHandler: loadFile(): error parsing A.TOC file!!");
+            } else if (tocFile != null) {
+                index = RpfTocIndex.load(tocFile, entries);
+            } else {
+                index = RpfTocIndex.create(entries);
             }
 
             aTocByteOrder = binFile.byteOrder();
@@ -849,7 +869,12 @@ public class RpfTocHandler {
 
         String chartSeries;
 
-        for (int i = 0; i < numBoundaries; i++) {
+        // Only the entries the index finds can have any coverage.
+        int[] candidates = getCandidateEntries(ullat, ullon, lrlat, lrlon);
+        int count = candidates != null ? candidates.length : numBoundaries;
+
+        for (int c = 0; c < count; c++) {
+            int i = candidates != null ? candidates[c] : c;
 
             // Try to get the boundary rectangle with the most
             // coverage, so reset the entry for this particular query.
@@ -936,7 +961,13 @@ public class RpfTocHandler {
         int zone = getASCIIZone(ullat, cadrg.getZone());
         char okZones[] = getOkZones(ullat, lrlat, (char) zone);
 
-        for (RpfTocEntry currentEntry : entries) {
+        // Entries that don't cover any of the box are never picked, so only
+        // the ones the index finds are checked, in their A.TOC order.
+        int[] candidates = getCandidateEntries(ullat, ullon, lrlat, lrlon);
+        int count = candidates != null ? candidates.length : entries.length;
+
+        for (int c = 0; c < count; c++) {
+            RpfTocEntry currentEntry = entries[candidates != null ? candidates[c] : c];
 
             if (DEBUG_RPFTOCDETAIL) {
                 Debug.output("********************");
@@ -1075,6 +1106,20 @@ public class RpfTocHandler {
         return coverageEntries;
     }
 
+    /**
+     * Ask the spatial index for the entries that might cover a box.
+     *
+     * @return the entry indexes in ascending order, or null if all of the
+     *         entries need to be checked.
+     */
+    protected int[] getCandidateEntries(float ullat, float ullon, float lrlat, float lrlon) {
+        RpfTocIndex idx = index;
+        if (idx == null || idx.size() != entries.length) {
+            return null;
+        }
+        return idx.search(ullat, ullon, lrlat, lrlon);
+    }
+
     public static char[] getOkZones(float ullat, float lrlat, char zone) {
         // allow a maximum of 3 additional zones in either direction
         char[] okZones = new char[7];
@@ -0,0 +1,233 @@
+package com.bbn.openmap.layer.rpf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.PackedRTree;
+
+/**
+ * A spatial index over the boundary rectangles of an A.TOC file, so the
+ * RpfTocHandler only has to look at the entries near a query instead of all of
+ * them. Every frame of an RpfTocEntry shares its chart series, zone and scale
+ * and sits on the entry's frame grid, so the entry extents are what get
+ * indexed, padded by a subframe on each side. The series, zone and scale
+ * checks are still made by the RpfTocHandler on the entries the index finds.
+ * <P>
+ * By default the index is just kept in memory, nothing is written to the RPF
+ * data directories. If an index directory is set, with setIndexDir() or the
+ * com.bbn.openmap.layer.rpf.tocIndexDir system property, the index is saved
+ * there along with the length and modification time of the A.TOC it was made
+ * from. It's read back through a memory mapped buffer the next time the A.TOC
+ * is loaded, and recreated if the A.TOC has changed since.
+ */
+public class RpfTocIndex {
+
+    /** Added to the index file names. */
+    public final static String INDEX_FILE_SUFFIX = ".idx";
+    /** The system property for the directory to save indexes in. */
+    public final static String IndexDirProperty = "com.bbn.openmap.layer.rpf.tocIndexDir";
+
+    protected final static int MAGIC = 0x52504649; // RPFI
+    protected final static int VERSION = 1;
+    protected final static int HEADER_LENGTH = 28;
+
+    /** Where indexes are saved, null to keep them in memory. */
+    protected static File indexDir;
+
+    static {
+        String dir = System.getProperty(IndexDirProperty);
+        if (dir != null && dir.length() > 0) {
+            indexDir = new File(dir);
+        }
+    }
+
+    protected final PackedRTree tree;
+
+    protected RpfTocIndex(PackedRTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Create an index for the entries, without saving it.
+     *
+     * @param entries the entries of an A.TOC file.
+     * @return RpfTocIndex
+     */
+    public static RpfTocIndex create(RpfTocEntry[] entries) {
+        int n = entries.length;
+        double[] xmin = new double[n];
+        double[] ymin = new double[n];
+        double[] xmax = new double[n];
+        double[] ymax = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            RpfCoverageBox box = entries[i].coverage;
+            double latPad = Math.abs(box.subframeLatInterval);
+            double lonPad = Math.abs(box.subframeLonInterval);
+
+            ymin[i] = Math.min(box.nw_lat, box.se_lat) - latPad;
+            ymax[i] = Math.max(box.nw_lat, box.se_lat) + latPad;
+            if (box.nw_lon <= box.se_lon) {
+                xmin[i] = box.nw_lon - lonPad;
+                xmax[i] = box.se_lon + lonPad;
+            } else {
+                // Crosses the dateline, let the handler sort it out.
+                xmin[i] = Double.NEGATIVE_INFINITY;
+                xmax[i] = Double.POSITIVE_INFINITY;
+            }
+
+            if (Double.isNaN(ymin[i] + ymax[i] + xmin[i] + xmax[i])) {
+                xmin[i] = ymin[i] = Double.NEGATIVE_INFINITY;
+                xmax[i] = ymax[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        return new RpfTocIndex(new PackedRTree(xmin, ymin, xmax, ymax));
+    }
+
+    /**
+     * Set the directory indexes are saved in, which is created if needed.
+     *
+     * @param dir the directory, null to keep indexes in memory.
+     */
+    public static synchronized void setIndexDir(File dir) {
+        indexDir = dir;
+    }
+
+    public static synchronized File getIndexDir() {
+        return indexDir;
+    }
+
+    /**
+     * Get the file an A.TOC's index is saved in, named after the absolute
+     * path of the A.TOC.
+     *
+     * @return the index file, null if indexes aren't saved.
+     */
+    public static File getIndexFile(File tocFile) {
+        File dir = getIndexDir();
+        if (dir == null) {
+            return null;
+        }
+        String path = tocFile.getAbsolutePath();
+        return new File(dir, tocFile.getName() + "-" + Integer.toHexString(path.hashCode()) + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Get the index for an A.TOC file. If an index directory is set, the
+     * saved index is read if it's still current, or a new one is created and
+     * saved if it isn't. Otherwise a new one is created.
+     *
+     * @param tocFile the A.TOC file.
+     * @param entries the entries read from the A.TOC file.
+     * @return RpfTocIndex
+     */
+    public static RpfTocIndex load(File tocFile, RpfTocEntry[] entries) {
+        File indexFile = getIndexFile(tocFile);
+        if (indexFile == null) {
+            return create(entries);
+        }
+        long tocLength = tocFile.length();
+        long tocModified = tocFile.lastModified();
+
+        if (indexFile.exists() && indexFile.lastModified() >= tocModified) {
+            try {
+                RpfTocIndex index = read(indexFile, tocLength, tocModified);
+                if (index != null && index.size() == entries.length) {
+                    return index;
+                }
+            } catch (IOException ioe) {
+                Debug.output("RpfTocIndex: couldn't read " + indexFile + ", recreating it: " + ioe.getMessage());
+            }
+        }
+
+        RpfTocIndex index = create(entries);
+        try {
+            indexFile.getParentFile().mkdirs();
+            index.write(indexFile, tocLength, tocModified);
+        } catch (IOException ioe) {
+            // The index will be recreated next time.
+            if (Debug.debugging("rpftoc")) {
+                Debug.output("RpfTocIndex: couldn't save " + indexFile + ": " + ioe.getMessage());
+            }
+            indexFile.delete();
+        }
+        return index;
+    }
+
+    /**
+     * Read a saved index through a memory mapped buffer.
+     *
+     * @return the index, or null if it was made from a different A.TOC.
+     */
+    protected static RpfTocIndex read(File indexFile, long tocLength, long tocModified)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.limit() < HEADER_LENGTH || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("not an RPF TOC index");
+            }
+            if (buf.getLong() != tocLength || buf.getLong() != tocModified) {
+                return null;
+            }
+            int size = buf.getInt();
+            PackedRTree tree = PackedRTree.read(buf);
+            return tree.size() == size ? new RpfTocIndex(tree) : null;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Save the index, with the length and modification time of the A.TOC file
+     * it was made from.
+     */
+    protected void write(File indexFile, long tocLength, long tocModified)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(tocLength);
+            out.writeLong(tocModified);
+            out.writeInt(tree.size());
+            tree.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Find the entries that might cover some of a query box. Queries that
+     * cross the dateline can't be answered by the index.
+     *
+     * @param ullat upper left latitude, in decimal degrees
+     * @param ullon upper left longitude, in decimal degrees
+     * @param lrlat lower right latitude, in decimal degrees
+     * @param lrlon lower right longitude, in decimal degrees
+     * @return the indexes of the entries in ascending order, or null if all of
+     *         the entries should be checked.
+     */
+    public int[] search(float ullat, float ullon, float lrlat, float lrlon) {
+        if (ullon > lrlon) {
+            return null;
+        }
+        return tree.search(ullon, Math.min(ullat, lrlat), lrlon, Math.max(ullat, lrlat));
+    }
+
+    /**
+     * @return the number of entries in the index.
+     */
+    public int size() {
+        return tree.size();
+    }
+}
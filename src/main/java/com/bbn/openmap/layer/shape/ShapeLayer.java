@@ -76,6 +76,8 @@ import com.bbn.openmap.util.PropUtils;
  * shapeLayer.fillColor=ff000000
  * # plus any other properties used by the DrawingAttributes object.
  * shapeLayer.pointImageURL=&amp;ltURL for image to use for point objects&amp;gt
+ * # Optional, use an in-memory R-tree for spatial index queries (default false)
+ * shapeLayer.useRTree=true
  *        
  *        
  * # Optionally, Rule marker names specified in space-separated list
@@ -134,6 +136,12 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     /** The URL of an image to use for point objects. */
     public final static String pointImageURLProperty = "pointImageURL";
 
+    /**
+     * Property to have the spatial index held in an in-memory R-tree, for
+     * large shape files.
+     */
+    public final static String useRTreeProperty = "useRTree";
+
     // Note that shadows are really in the eye of the beholder
     // The X,Y shadow offset just pushes the resulting picture in the
     // direction of the offset and draws it there. By setting the
@@ -160,6 +168,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     // For writing out to properties file later.
     String shapeFileName = null;
     String imageURLString = null;
+    boolean useRTree = false;
 
     /**
      * Initializes an empty shape layer.
@@ -216,6 +225,10 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         if (shapeFileName != null && shapeFileName.length() > 0) {
 
             spatialIndex = SpatialIndex.locateAndSetShapeData(shapeFileName);
+            useRTree = PropUtils.booleanFromProperties(props, realPrefix + useRTreeProperty, useRTree);
+            if (spatialIndex != null) {
+                spatialIndex.setUseRTree(useRTree);
+            }
             String dbfFileName = SpatialIndex.dbf(shapeFileName);
 
             try {
@@ -292,6 +305,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
 
         props.put(prefix + shadowXProperty, Integer.toString(shadowX));
         props.put(prefix + shadowYProperty, Integer.toString(shadowY));
+        props.put(prefix + useRTreeProperty, Boolean.toString(useRTree));
 
         if (drawingAttributes != null) {
             drawingAttributes.setPropertyPrefix(getPropertyPrefix());
@@ -345,7 +359,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
 
         list.put(initPropertiesProperty, shapeFileProperty + " " + " "
                 + pointImageURLProperty + " " + shadowXProperty + " " + shadowYProperty
-                + " " + dummyMarker + " " + AddToBeanContextProperty + " "
+                + " " + useRTreeProperty + " " + dummyMarker + " " + AddToBeanContextProperty + " "
                 + MinScaleProperty + " " + MaxScaleProperty);
 
         PropUtils.setI18NPropertyInfo(
@@ -384,6 +398,15 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
                                       "Vertical pixel offset for shadow image for shapes.",
                                       null);
 
+        PropUtils.setI18NPropertyInfo(
+                                      i18n,
+                                      list,
+                                      ShapeLayer.class,
+                                      useRTreeProperty,
+                                      useRTreeProperty,
+                                      "Keep the spatial index in an in-memory R-tree, faster for large shape files.",
+                                      "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+
         return list;
     }
 
@@ -473,10 +496,10 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
 
                 list = spatialIndex.getOMGraphics(ulLon, ymin, 180.0d, ymax, list,
                                                   drawingAttributes, projection,
-                                                  coordTransform);
+                                                  coordTransform, this);
                 list = spatialIndex.getOMGraphics(-180.0d, ymin, lrLon, ymax, list,
                                                   drawingAttributes, projection,
-                                                  coordTransform);
+                                                  coordTransform, this);
 
             } catch (InterruptedIOException iioe) {
                 // This means that the thread has been interrupted,
@@ -499,7 +522,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
             try {
                 list = spatialIndex.getOMGraphics(xmin, ymin, xmax, ymax, list,
                                                   drawingAttributes, projection,
-                                                  coordTransform);
+                                                  coordTransform, this);
             } catch (InterruptedIOException iioe) {
                 // This means that the thread has been interrupted,
                 // probably due to a projection change. Not a big
@@ -48,6 +48,7 @@ import com.bbn.openmap.dataAccess.shape.ShapeUtils;
 import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.BinaryFile;
 import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
 import com.bbn.openmap.omGraphics.DrawingAttributes;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
@@ -55,6 +56,7 @@ import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.GeoCoordTransformation;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.DataBounds;
+import com.bbn.openmap.util.PackedRTree;
 import com.bbn.openmap.util.PropUtils;
 
 /**
@@ -169,6 +171,9 @@ public class SpatialIndex
     /** Default size for shape record buffer. */
     public final static int DEFAULT_SHAPE_RECORD_SIZE = 50000;
 
+    /** How many OMGraphics are published to a layer at a time. */
+    public final static int PUBLISH_CHUNK_SIZE = 250;
+
     /** The shape file. */
     protected BinaryBufferedFile shp;
 
@@ -198,6 +203,18 @@ public class SpatialIndex
      */
     EsriGraphicFactory factory = new EsriGraphicFactory();
 
+    /**
+     * Flag to use an in-memory R-tree built from the entries for queries,
+     * instead of checking every entry.
+     */
+    protected boolean useRTree = false;
+
+    /**
+     * The R-tree over the entries, created the first time it's needed if
+     * useRTree is set.
+     */
+    protected PackedRTree rTree;
+
     /**
      * Opens a spatial index file for reading based on the location of the
      * provided shp file.
@@ -350,6 +367,10 @@ public class SpatialIndex
     public ESRIRecord[] locateRecords(double xmin, double ymin, double xmax, double ymax)
             throws IOException, FormatException {
 
+        if (useRTree) {
+            return locateRecordsWithRTree(xmin, ymin, xmax, ymax);
+        }
+
         boolean gatherBounds = false;
 
         if (bounds == null) {
@@ -468,6 +489,77 @@ public class SpatialIndex
 
     }
 
+    /**
+     * The locateRecords implementation used when useRTree is set. The entries
+     * are looked up in the R-tree, and the shp file is left open for the next
+     * query. Like the linear scan, the bounds of all the records are gathered
+     * if they haven't been set yet. Synchronized since the open shp file is
+     * shared between queries.
+     */
+    protected synchronized ESRIRecord[] locateRecordsWithRTree(double xmin, double ymin, double xmax, double ymax)
+            throws IOException, FormatException {
+
+        if (shpFileName == null) {
+            return null;
+        }
+
+        PackedRTree tree = getRTree(null);
+
+        if (bounds == null) {
+            bounds = new ESRIBoundingBox();
+            for (Entry entry : entries) {
+                entry.addToBounds(bounds);
+            }
+        }
+
+        if (shp == null) {
+            shp = new BinaryBufferedFile(shpFileName);
+        }
+
+        shp.seek(32);
+        shp.byteOrder(false);
+        int shapeType = shp.readInteger();
+
+        int[] hits = tree.search(xmin, ymin, xmax, ymax);
+        List<ESRIRecord> records = new ArrayList<ESRIRecord>(hits.length);
+        byte sRecord[] = new byte[DEFAULT_SHAPE_RECORD_SIZE];
+
+        for (int i = 0; i < hits.length; i++) {
+            Entry entry = entries.get(hits[i]);
+            if (!entry.intersects(xmin, ymin, xmax, ymax)) {
+                continue;
+            }
+
+            // The record header holds the content length in 16 bit words.
+            shp.seek(entry.getByteOffset() + 4);
+            shp.byteOrder(true);
+            int recordSize = (shp.readInteger() * 2) + SHAPE_RECORD_HEADER_LENGTH;
+
+            if (recordSize < 0) {
+                logger.error("SpatialIndex: supposed to read record size of " + recordSize);
+                break;
+            }
+
+            if (recordSize > sRecord.length) {
+                sRecord = new byte[recordSize];
+            }
+
+            shp.seek(entry.getByteOffset());
+            int nBytes = shp.read(sRecord, 0, recordSize);
+            if (nBytes < recordSize) {
+                logger.error("Shapefile SpatialIndex expected " + recordSize + " bytes, but got " + nBytes + " bytes instead.");
+            }
+
+            records.add(makeESRIRecord(shapeType, sRecord, 0));
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Selected " + records.size() + " of " + tree.size() + " records");
+        }
+
+        return records.toArray(new ESRIRecord[records.size()]);
+    }
+
     /**
      * The factory is used to filter and create OMGraphics from a shape file.
      * This accessor is provided in order to allow you to modify the data
@@ -512,6 +604,36 @@ public class SpatialIndex
     public OMGraphicList getOMGraphics(double xmin, double ymin, double xmax, double ymax, OMGraphicList list,
                                        DrawingAttributes drawingAttributes, Projection mapProj, GeoCoordTransformation dataProj)
             throws IOException, FormatException {
+        return getOMGraphics(xmin, ymin, xmax, ymax, list, drawingAttributes, mapProj, dataProj, null);
+    }
+
+    /**
+     * Locates OMGraphics in the shape file that intersect with the given
+     * rectangle, publishing them to a layer as they are created so they can be
+     * painted before all of them are ready.
+     * 
+     * @param xmin the smaller of the x coordinates
+     * @param ymin the smaller of the y coordinates
+     * @param xmax the larger of the x coordinates
+     * @param ymax the larger of the y coordinates
+     * @param list OMGraphicList to add OMGraphics to and return, if null one
+     *        will be created.
+     * @param drawingAttributes DrawingAttributes to set on the OMGraphics.
+     * @param mapProj the Map Projection for the OMGraphics so they can be
+     *        generated right after creation.
+     * @param dataProj for pre-projected data, a coordinate translator for the
+     *        data's projection to use to translate the coordinates to decimal
+     *        degree lat/lon. Can be null to leave the coordinates untouched.
+     * @param layer the layer to publish() the OMGraphics to, every
+     *        PUBLISH_CHUNK_SIZE of them. Can be null.
+     * @return an OMGraphicList containing OMGraphics that intersect the given
+     *         rectangle
+     * @exception IOException if something goes wrong reading the files
+     */
+    public OMGraphicList getOMGraphics(double xmin, double ymin, double xmax, double ymax, OMGraphicList list,
+                                       DrawingAttributes drawingAttributes, Projection mapProj, GeoCoordTransformation dataProj,
+                                       OMGraphicHandlerLayer layer)
+            throws IOException, FormatException {
 
         if (logger.isDebugEnabled()) {
             logger.debug("locateRecords:\n\txmin: " + xmin + "; ymin: " + ymin + "\n\txmax: " + xmax + "; ymax: " + ymax);
@@ -536,8 +658,17 @@ public class SpatialIndex
         OMGraphicList labels = new OMGraphicList();
         list.add(labels);
 
-        for (Iterator<?> it = entryIterator(dataProj); it.hasNext();) {
-            Entry entry = (Entry) it.next();
+        OMGraphicList chunk = null;
+
+        Iterator<Entry> it;
+        if (useRTree) {
+            it = new RTreeEntryIterator(getRTree(dataProj).search(xmin, ymin, xmax, ymax));
+        } else {
+            it = entryIterator(dataProj);
+        }
+
+        while (it.hasNext()) {
+            Entry entry = it.next();
 
             if (entry.intersects(xmin, ymin, xmax, ymax)) {
 
@@ -562,6 +693,17 @@ public class SpatialIndex
                             omg.generate(mapProj);
                         }
                         list.add(omg);
+
+                        if (layer != null) {
+                            if (chunk == null) {
+                                chunk = new OMGraphicList();
+                            }
+                            chunk.add(omg);
+                            if (chunk.size() >= PUBLISH_CHUNK_SIZE) {
+                                layer.publish(chunk);
+                                chunk = null;
+                            }
+                        }
                     }
 
                 } catch (IOException ioe) {
@@ -572,7 +714,13 @@ public class SpatialIndex
             }
         }
 
-        if (shp != null) {
+        if (chunk != null) {
+            layer.publish(chunk);
+        }
+
+        // With the R-tree, queries are expected to come often and only touch
+        // a few records, so the shp file is left open until close(true).
+        if (shp != null && !useRTree) {
             shp.close();
             // Not sure why we want to set this null here. It's cleaner, but a
             // new
@@ -733,6 +881,92 @@ public class SpatialIndex
         return entries.iterator();
     }
 
+    /**
+     * Set whether queries should use an in-memory R-tree over the entries.
+     * The tree is built from the entries the first time it's needed, and the
+     * shp file is kept open between queries.
+     * 
+     * @param useRTree true to use the R-tree.
+     */
+    public void setUseRTree(boolean useRTree) {
+        this.useRTree = useRTree;
+        if (!useRTree) {
+            rTree = null;
+        }
+    }
+
+    public boolean isUseRTree() {
+        return useRTree;
+    }
+
+    /**
+     * Get the R-tree over the entries, creating it if needed.
+     * 
+     * @param dataTransform GeoCoordTransform for pre-projected data, used if
+     *        the entries haven't been read yet.
+     * @return PackedRTree over the entries, item indexes match the entries
+     *         list.
+     * @throws IOException
+     * @throws FormatException
+     */
+    protected synchronized PackedRTree getRTree(GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
+        if (rTree == null || entries == null) {
+            entryIterator(dataTransform);
+            rTree = createRTree(entries);
+        }
+        return rTree;
+    }
+
+    /**
+     * Bulk load a list of entries, from the ssx file or
+     * {@link MemoryIndex#create(String)}, into an R-tree.
+     * 
+     * @param entries the entries to index.
+     * @return PackedRTree with item indexes matching the list indexes.
+     */
+    public static PackedRTree createRTree(List<Entry> entries) {
+        int n = entries.size();
+        double[] xmin = new double[n];
+        double[] ymin = new double[n];
+        double[] xmax = new double[n];
+        double[] ymax = new double[n];
+        int i = 0;
+        for (Entry entry : entries) {
+            xmin[i] = entry.xMin;
+            ymin[i] = entry.yMin;
+            xmax[i] = entry.xMax;
+            ymax[i] = entry.yMax;
+            i++;
+        }
+        return new PackedRTree(xmin, ymin, xmax, ymax);
+    }
+
+    /**
+     * Iterates over the entries found in the R-tree.
+     */
+    private class RTreeEntryIterator
+            implements Iterator<Entry> {
+        private final int[] hits;
+        private int next = 0;
+
+        RTreeEntryIterator(int[] hits) {
+            this.hits = hits;
+        }
+
+        public boolean hasNext() {
+            return next < hits.length;
+        }
+
+        public Entry next() {
+            return entries.get(hits[next++]);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     /**
      * 
      * @param bounds if not null, add min/max values to them.
@@ -1062,6 +1296,7 @@ public class SpatialIndex
             if (done && entries != null) {
                 entries.clear();
                 entries = null;
+                rTree = null;
             }
 
             return true;
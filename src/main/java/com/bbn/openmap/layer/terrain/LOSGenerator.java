@@ -26,7 +26,6 @@ import java.awt.Color;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
 
-import com.bbn.openmap.MoreMath;
 import com.bbn.openmap.dataAccess.dted.DTEDFrameCache;
 import com.bbn.openmap.event.LayerStatusEvent;
 import com.bbn.openmap.event.ProgressEvent;
@@ -36,7 +35,6 @@ import com.bbn.openmap.gui.ProgressListenerGauge;
 import com.bbn.openmap.omGraphics.OMCircle;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.omGraphics.OMRaster;
-import com.bbn.openmap.proj.Planet;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.Debug;
@@ -98,6 +96,9 @@ public class LOSGenerator implements TerrainTool {
      */
     protected boolean cancelled = false;
 
+    /** The Viewshed being computed, so it can be cancelled. */
+    protected volatile Viewshed viewshed;
+
     protected ProgressSupport progressSupport;
 
     class LOSWorker extends SwingWorker {
@@ -207,6 +208,10 @@ public class LOSGenerator implements TerrainTool {
      */
     public synchronized void setCancelled(boolean set) {
         cancelled = set;
+        Viewshed vs = viewshed;
+        if (set && vs != null) {
+            vs.cancel();
+        }
     }
 
     /** Check to see if the cancelled flag has been set. */
@@ -253,17 +258,13 @@ public class LOSGenerator implements TerrainTool {
 
     /**
      * Takes the member settings and manages the creation of the
-     * image. A large vector of slope values are created, depending on
-     * the size of the circle, and how many pixels are around it. Each
-     * entry in the vector is the value of the largest slope value in
-     * that direction. The image is created from the inside out, pixel
-     * by pixel. The slope from the pixel to the center is calculated,
-     * and then compared with the value for that direction (in the
-     * vector). If the pixel's slope is larger, the point is visible,
-     * and is colored that way. The vector is updated, and the cycle
-     * continues.
+     * image. The Viewshed does the work, sweeping out from the center
+     * on several threads over the elevations of the area. The image
+     * is put on the map right away and updated while it fills in.
+     * This isn't synchronized, so the Viewshed can be cancelled while
+     * it's working.
      */
-    public synchronized void createLOSImage() {
+    public void createLOSImage() {
         if (Debug.debugging("los")) {
             Debug.output("createLOSimage: Entered with diameter = " + LOSedge);
         }
@@ -273,101 +274,51 @@ public class LOSGenerator implements TerrainTool {
             return;
         }
 
-        int squareRadius = LOSedge / 2 + 1;
+        final int radius = LOSedge / 2;
+        final Projection proj = this.proj;
         int[] newPixels = new int[LOSedge * LOSedge];
-        float[] azimuthVals = new float[8 * (squareRadius - 1)];
-        // center point of raster
-        newPixels[((LOSedge / 2) * LOSedge) + squareRadius] = MAYBEVISIBLE;
-
-        if (Debug.debugging("los")) {
-            Debug.output("createLOSimage: size of azimuth array = "
-                    + azimuthVals.length);
-        }
 
         fireProgressUpdate(ProgressEvent.START,
                 "Building LOS Image Mask...",
                 0,
                 100);
-        int x, y;
-        boolean mark = false;
-        int markColor = colortable[INVISIBLE];
-        int range;
-        float pix_arc_interval = (float) (2 * Math.PI / azimuthVals.length);
-        //  Do this in a spiral, around the center point.
-        for (int round = 1; round < squareRadius; round++) {
-            if (Debug.debugging("los")) {
-                Debug.output("createLOSimage: round " + round);
-            }
-            y = LOScenterP.y - round;
-            x = LOScenterP.x - round;
 
-            if (round == 1) {
-                mark = true;
-                markColor = colortable[MAYBEVISIBLE];
-            }
-
-            else
-                mark = false;
-
-            if (LOSprecision == AZIMUTH) { // As of now, this is the
-                // only option
-                range = ((LOSedge * 4) - 4) / (round * 16);
-                for (; x < LOScenterP.x + round; x++)
-                    // top
-                    resolveImagePoint(x,
-                            y,
-                            newPixels,
-                            azimuthVals,
-                            range,
-                            pix_arc_interval,
-                            mark,
-                            markColor);
-                for (; y < LOScenterP.y + round; y++)
-                    // right
-                    resolveImagePoint(x,
-                            y,
-                            newPixels,
-                            azimuthVals,
-                            range,
-                            pix_arc_interval,
-                            mark,
-                            markColor);
-                for (; x > LOScenterP.x - round; x--)
-                    // bottom
-                    resolveImagePoint(x,
-                            y,
-                            newPixels,
-                            azimuthVals,
-                            range,
-                            pix_arc_interval,
-                            mark,
-                            markColor);
-                for (; y > LOScenterP.y - round; y--)
-                    // left
-                    resolveImagePoint(x,
-                            y,
-                            newPixels,
-                            azimuthVals,
-                            range,
-                            pix_arc_interval,
-                            mark,
-                            markColor);
+        final OMRaster image = new OMRaster(LOScenterLLP.getLatitude(), LOScenterLLP.getLongitude(), -radius, -radius, LOSedge, LOSedge, newPixels);
+        image.generate(proj);
+        LOSimage = image;
+        graphics.clear();
+        graphics.add(image);
+
+        Viewshed vs = new Viewshed(proj, LOScenterP, LOScenterLLP, LOScenterHeight, radius, layer.frameCache);
+        vs.setListener(new Viewshed.Listener() {
+            public void viewshedUpdated(Viewshed viewshed, int rings) {
+                int whereWeAre = (int) (100f * ((float) rings / (float) (radius + 1)));
+                fireProgressUpdate(ProgressEvent.UPDATE,
+                        "Analyzing data...",
+                        whereWeAre,
+                        100);
+                image.setNeedToRegenerate(true);
+                image.generate(proj);
+                layer.repaint();
             }
+        });
 
-            int whereWeAre = (int) (100f * ((float) round / (float) squareRadius));
-            fireProgressUpdate(ProgressEvent.UPDATE,
-                    "Analyzing data...",
-                    whereWeAre,
-                    100);
+        viewshed = vs;
+        if (isCancelled()) {
+            vs.cancel();
+        }
+        boolean complete = vs.compute(newPixels, colortable);
+        viewshed = null;
 
+        if (!complete) {
+            fireProgressUpdate(ProgressEvent.DONE, "LOS mask cancelled", 100, 100);
+            return;
         }
 
         fireProgressUpdate(ProgressEvent.UPDATE, "Creating Mask", 100, 100);
 
-        LOSimage = new OMRaster(LOScenterLLP.getLatitude(), LOScenterLLP.getLongitude(), (-1 - LOSedge / 2), (-1 - LOSedge / 2), LOSedge, LOSedge, newPixels);
-        LOSimage.generate(proj);
-        graphics.clear();
-        graphics.add(LOSimage);
+        image.setNeedToRegenerate(true);
+        image.generate(proj);
 
         fireProgressUpdate(ProgressEvent.DONE, "LOS mask complete", 100, 100);
 
@@ -376,82 +327,6 @@ public class LOSGenerator implements TerrainTool {
         }
     }
 
-    /**
-     * Calculates the color for each pixel. After is gets the slope
-     * value for that pixel, it manages the comparison to get the
-     * pixel colored correctly.
-     */
-    protected void resolveImagePoint(int x, int y, int[] newPixels,
-                                     float[] azimuthVals, int range,
-                                     float pix_arc_interval, boolean mark,
-                                     int colorForMark) {
-
-        int ox = LOScenterP.x - LOSedge / 2;
-        int oy = LOScenterP.y - LOSedge / 2;
-        int dist = TerrainLayer.numPixelsBetween(LOScenterP.x,
-                LOScenterP.y,
-                x,
-                y);
-        if (dist > (LOSedge - 1) / 2) {
-            mark = true;
-            colorForMark = INVISIBLE;
-        }
-        if (dist == (LOSedge - 1) / 2) {
-            mark = true;
-            colorForMark = MAYBEVISIBLE;
-        }
-
-        // This needs to be before the next two lines after this
-        LatLonPoint cord = proj.inverse(x, y, new LatLonPoint.Double());
-        x -= ox;
-        y -= oy;
-
-        if (Debug.debugging("losdetail")) {
-            Debug.output("resolveImagePoint x = " + x + ", y = " + y);
-        }
-
-        if (mark == true) {
-            newPixels[x + y * LOSedge] = colorForMark;
-            mark = false;
-            return;
-        }
-
-        double arc_dist = LOScenterLLP.distance(cord);
-        double arc_angle = LOScenterLLP.azimuth(cord);
-
-        double slope = calculateLOSslope(cord, arc_dist);
-
-        int index = (int) Math.round(arc_angle / pix_arc_interval);
-        int maxIndex = (LOSedge * 4) - 4; // 4 corners out for
-        // redundancy
-        if (index < 0)
-            index += maxIndex;
-        else if (index >= maxIndex)
-            index -= maxIndex;
-
-        if (Debug.debugging("losdetail")) {
-            Debug.output(" angle = " + arc_angle + ", index/maxIndex = "
-                    + index + "/" + maxIndex + ", slope = " + slope
-                    + " compared to slope[index]=" + azimuthVals[index]);
-        }
-        int color = colortable[INVISIBLE];
-        if (azimuthVals[index] < slope) {
-            for (int i = (index - range); i < index + range - 1; i++) {
-                if (i < 0)
-                    azimuthVals[maxIndex + i] = (float)slope;
-                else if (i >= maxIndex)
-                    azimuthVals[i - maxIndex] = (float)slope;
-                else
-                    azimuthVals[i] = (float)slope;
-            }
-            color = colortable[VISIBLE];
-        }
-        if (Debug.debugging("losdetail")) {
-            Debug.output(" color = " + color);
-        }
-        newPixels[x + y * LOSedge] = color;
-    }
-
     /**
      * CalculateLOSslope figures out the slope from the pixel to the
      * center, in radians. The arc_dist is in radians, and is the
@@ -468,39 +343,7 @@ public class LOSGenerator implements TerrainTool {
 
         int xyheight = frameCache.getElevation(cord.getLatitude(),
                 cord.getLongitude());
-        double ret = 0;
-        double P = Math.sin(arc_dist)
-                * (xyheight + Planet.wgs84_earthEquatorialRadiusMeters);
-
-        double xPrime = Math.cos(arc_dist)
-                * (xyheight + Planet.wgs84_earthEquatorialRadiusMeters);
-
-        double bottom;
-        double cutoff = LOScenterHeight
-                + Planet.wgs84_earthEquatorialRadiusMeters;
-
-        // Suggested changes, submitted by Mark Wigmore. Introduces
-        // use of doubles, and avoidance of PI/2 tan() calculations.
-
-        bottom = cutoff - xPrime;
-        ret = MoreMath.HALF_PI_D - Math.atan(bottom / P);
-        return ret;
-
-        // Old way...
-        //      if (xPrime < cutoff) {
-        //          bottom = cutoff - xPrime;
-        //          ret = Math.atan(P/bottom);
-
-        //      } else if (xPrime == cutoff) {
-        //          ret = MoreMath.HALF_PI_D;
-
-        //      } else if (xPrime > cutoff) {
-        //          double C = xPrime - cutoff;
-        //          double gamma = Math.atan(P/C);
-        //          ret = Math.PI - gamma;
-        //      }
-
-        //      return ret;
+        return Viewshed.calculateLOSslope(xyheight, arc_dist, LOScenterHeight);
     }
 
     /**
@@ -0,0 +1,444 @@
+package com.bbn.openmap.layer.terrain;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.bbn.openmap.MoreMath;
+import com.bbn.openmap.dataAccess.dted.DTEDFrameCache;
+import com.bbn.openmap.proj.Planet;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * A Viewshed figures out which pixels in a circle on the map can be seen from
+ * the center of the circle, for the LOSGenerator. The elevations are fetched
+ * from the DTEDFrameCache as a grid of posts covering the circle before
+ * starting, instead of being looked up pixel by pixel.
+ * <p>
+ * The pixels are swept out from the center a ring at a time, using the XDraw
+ * approximation: the highest slope along the line from the center to a pixel
+ * is interpolated from the two pixels in the ring before it that the line
+ * passes between. Those are always in the same octant of the circle, so the
+ * eight octants are swept on separate threads. The sweep can be cancelled,
+ * and a Listener is told how far along it is, so the image can be shown
+ * while it fills in.
+ */
+public class Viewshed {
+
+    /**
+     * The default number of milliseconds between updates to the Listener.
+     */
+    public final static long DEFAULT_UPDATE_INTERVAL = 250;
+
+    /**
+     * The most elevation posts fetched for each pixel of the circle. A lower
+     * DTED level is used if the area would need more.
+     */
+    public final static int MAX_POSTS_PER_PIXEL = 4;
+
+    /**
+     * Threads shared by all Viewsheds for sweeping octants.
+     */
+    protected static ThreadPoolExecutor viewshedExecutor;
+
+    /**
+     * Told about the progress of the sweep.
+     */
+    public interface Listener {
+        /**
+         * Called on the thread calling compute, while the other threads are
+         * working.
+         *
+         * @param viewshed the Viewshed being computed.
+         * @param rings the number of rings of pixels around the center that
+         *        are done.
+         */
+        void viewshedUpdated(Viewshed viewshed, int rings);
+    }
+
+    protected final Projection proj;
+    protected final Point center;
+    protected final LatLonPoint centerLLP;
+    protected final int centerHeight;
+    protected final int radius;
+    protected final DTEDFrameCache frameCache;
+
+    protected int numThreads = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+    protected long updateInterval = DEFAULT_UPDATE_INTERVAL;
+    protected Listener listener;
+    protected volatile boolean cancelled = false;
+
+    /** The elevations, null if posts are looked up one at a time. */
+    protected ElevationGrid grid;
+    /** The last ring finished by each thread. */
+    protected AtomicIntegerArray progress;
+
+    /**
+     * @param proj the projection of the map.
+     * @param center the pixel location of the viewer.
+     * @param centerLLP the location of the viewer.
+     * @param centerHeight the height of the viewer above sea level, in
+     *        meters.
+     * @param radius the radius of the circle, in pixels.
+     * @param frameCache where the elevations come from.
+     */
+    public Viewshed(Projection proj, Point center, LatLonPoint centerLLP, int centerHeight, int radius,
+            DTEDFrameCache frameCache) {
+        this.proj = proj;
+        this.center = new Point(center);
+        this.centerLLP = centerLLP;
+        this.centerHeight = centerHeight;
+        this.radius = radius;
+        this.frameCache = frameCache;
+    }
+
+    /**
+     * The width and height of the image, 2 * radius + 1.
+     */
+    public int getEdge() {
+        return 2 * radius + 1;
+    }
+
+    /**
+     * Figure out the viewshed, setting the image pixels to the colors in the
+     * colortable, indexed by LOSGenerator.VISIBLE, INVISIBLE and
+     * MAYBEVISIBLE. The pixels are set as they are figured out, so the image
+     * can be displayed while this is working.
+     *
+     * @param pixels the image pixels, getEdge() squared, with the center of
+     *        the circle in the middle.
+     * @param colortable the colors of the pixels.
+     * @return false if cancelled before it was done.
+     */
+    public boolean compute(final int[] pixels, final int[] colortable) {
+        final int edge = getEdge();
+        final float[] horizon = new float[edge * edge];
+        horizon[radius * edge + radius] = Float.NEGATIVE_INFINITY;
+        pixels[radius * edge + radius] = colortable[LOSGenerator.MAYBEVISIBLE];
+
+        if (grid == null) {
+            grid = ElevationGrid.fetch(this);
+        }
+
+        int workers = Math.max(1, Math.min(numThreads, 8));
+        progress = new AtomicIntegerArray(workers);
+        List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+        ThreadPoolExecutor executor = getViewshedExecutor();
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            final int[] octants = new int[(8 - i + workers - 1) / workers];
+            for (int j = 0; j < octants.length; j++) {
+                octants[j] = i + j * workers;
+            }
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    sweep(worker, octants, proj.makeClone(), pixels, horizon, colortable);
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get(updateInterval, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException te) {
+                        fireUpdate();
+                    }
+                }
+            }
+        } catch (ExecutionException ee) {
+            cancel();
+            Debug.error("Viewshed: problem computing line of sight: " + ee.getCause());
+            return false;
+        } catch (InterruptedException ie) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return !cancelled;
+    }
+
+    /**
+     * Sweep octants of the circle out from the center, a ring at a time.
+     * Octants are numbered 0-7, bit 0 swaps x and y, bits 1 and 2 flip them.
+     * Within an octant, a is the distance from the center along the major
+     * axis, and b along the minor axis, 0 <= b <= a. Pixels on the lines
+     * between octants are done by both, the same way.
+     */
+    protected void sweep(int worker, int[] octants, Projection proj, int[] pixels, float[] horizon,
+                         int[] colortable) {
+        int edge = getEdge();
+        int limit = (radius + 1) * (radius + 1);
+        LatLonPoint llp = new LatLonPoint.Double();
+
+        for (int a = 1; a <= radius && !cancelled; a++) {
+            for (int octant : octants) {
+                boolean swap = (octant & 1) != 0;
+                int sx = (octant & 2) != 0 ? -1 : 1;
+                int sy = (octant & 4) != 0 ? -1 : 1;
+
+                for (int b = 0; b <= a && a * a + b * b < limit; b++) {
+                    int index = index(a, b, swap, sx, sy, edge);
+                    float slope = slope(proj, index % edge - radius, index / edge - radius, llp);
+
+                    // Where the line to the center crosses the last ring.
+                    double cross = (double) b * (a - 1) / a;
+                    int b0 = (int) cross;
+                    double frac = cross - b0;
+                    float before = horizon[index(a - 1, b0, swap, sx, sy, edge)];
+                    if (frac > 0) {
+                        float next = horizon[index(a - 1, b0 + 1, swap, sx, sy, edge)];
+                        before = (float) (before * (1 - frac) + next * frac);
+                    }
+
+                    if (slope >= before) {
+                        pixels[index] = colortable[LOSGenerator.VISIBLE];
+                        horizon[index] = slope;
+                    } else {
+                        pixels[index] = colortable[LOSGenerator.INVISIBLE];
+                        horizon[index] = before;
+                    }
+                }
+            }
+            progress.set(worker, a);
+        }
+    }
+
+    /**
+     * The image index of a pixel in an octant.
+     */
+    protected int index(int a, int b, boolean swap, int sx, int sy, int edge) {
+        int dx = (swap ? b : a) * sx;
+        int dy = (swap ? a : b) * sy;
+        return (radius + dy) * edge + radius + dx;
+    }
+
+    /**
+     * The slope from the center to a pixel.
+     *
+     * @param dx pixels right of the center.
+     * @param dy pixels below the center.
+     */
+    protected float slope(Projection proj, int dx, int dy, LatLonPoint llp) {
+        proj.inverse(center.x + dx, center.y + dy, llp);
+        int height;
+        if (grid != null) {
+            height = grid.getElevation(llp.getY(), llp.getX());
+        } else {
+            // The cache isn't thread safe.
+            synchronized (frameCache) {
+                height = frameCache.getElevation(llp.getLatitude(), llp.getLongitude());
+            }
+        }
+        return (float) calculateLOSslope(height, centerLLP.distance(llp), centerHeight);
+    }
+
+    /**
+     * Figure out the slope from a point to the center, in radians. This slope
+     * calculation does take the earth's curvature into account, based on the
+     * spherical model.
+     *
+     * @param height the height of the point, in meters.
+     * @param arcDist the distance of the point from the center, in radians.
+     * @param centerHeight the height of the center, in meters.
+     */
+    public static double calculateLOSslope(int height, double arcDist, int centerHeight) {
+        double P = Math.sin(arcDist) * (height + Planet.wgs84_earthEquatorialRadiusMeters);
+        double xPrime = Math.cos(arcDist) * (height + Planet.wgs84_earthEquatorialRadiusMeters);
+        double cutoff = centerHeight + Planet.wgs84_earthEquatorialRadiusMeters;
+
+        // Suggested changes, submitted by Mark Wigmore. Introduces
+        // use of doubles, and avoidance of PI/2 tan() calculations.
+        double bottom = cutoff - xPrime;
+        return MoreMath.HALF_PI_D - Math.atan(bottom / P);
+    }
+
+    /**
+     * Tell the listener how many rings all of the threads have finished.
+     */
+    protected void fireUpdate() {
+        Listener l = listener;
+        if (l != null && !cancelled) {
+            int rings = radius;
+            for (int i = 0; i < progress.length(); i++) {
+                rings = Math.min(rings, progress.get(i));
+            }
+            l.viewshedUpdated(this, rings);
+        }
+    }
+
+    /**
+     * Stop computing, compute returns false as soon as the threads notice.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads sweeping the circle, at most 8 are used.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public long getUpdateInterval() {
+        return updateInterval;
+    }
+
+    /**
+     * Set the number of milliseconds between updates to the Listener.
+     */
+    public void setUpdateInterval(long updateInterval) {
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * Get the threads shared for computing viewsheds, creating them if needed.
+     */
+    protected static synchronized ThreadPoolExecutor getViewshedExecutor() {
+        if (viewshedExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            viewshedExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "Viewshed");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Let the threads go when no viewsheds are being computed.
+            viewshedExecutor.allowCoreThreadTimeOut(true);
+        }
+        return viewshedExecutor;
+    }
+
+    /**
+     * The elevation posts covering the circle, from
+     * DTEDFrameCache.getElevations.
+     */
+    protected static class ElevationGrid {
+
+        /** Posts per degree of latitude of DTED levels 0, 1 and 2. */
+        final static int[] POSTS_PER_DEGREE = new int[] { 120, 1200, 3600 };
+
+        /** Elevations, [lon][lat] from the lower left corner. */
+        final short[][] posts;
+        final double left;
+        final double lower;
+        final double lonSpacing;
+        final double latSpacing;
+
+        ElevationGrid(short[][] posts, double left, double lower, double right, double upper) {
+            this.posts = posts;
+            this.left = left;
+            this.lower = lower;
+            lonSpacing = (right - left) / (posts.length - 1);
+            latSpacing = (upper - lower) / (posts[0].length - 1);
+        }
+
+        /** The elevation of the post closest to a location. */
+        int getElevation(double lat, double lon) {
+            int x = (int) Math.round((lon - left) / lonSpacing);
+            int y = (int) Math.round((lat - lower) / latSpacing);
+            x = Math.max(0, Math.min(x, posts.length - 1));
+            y = Math.max(0, Math.min(y, posts[x].length - 1));
+            return posts[x][y];
+        }
+
+        /**
+         * Fetch the posts covering the circle of a Viewshed, at the highest
+         * DTED level with a frame at the center that doesn't need too many
+         * posts.
+         *
+         * @return null if the posts can't be fetched as a grid.
+         */
+        static ElevationGrid fetch(Viewshed viewshed) {
+            DTEDFrameCache cache = viewshed.frameCache;
+            Projection proj = viewshed.proj;
+            int r = viewshed.radius;
+
+            // The bounds of the square around the circle.
+            double upper = -90;
+            double lower = 90;
+            double left = 180;
+            double right = -180;
+            LatLonPoint llp = new LatLonPoint.Double();
+            for (int dy = -r; dy <= r; dy += Math.max(r, 1)) {
+                for (int dx = -r; dx <= r; dx += Math.max(r, 1)) {
+                    proj.inverse(viewshed.center.x + dx, viewshed.center.y + dy, llp);
+                    upper = Math.max(upper, llp.getY());
+                    lower = Math.min(lower, llp.getY());
+                    left = Math.min(left, llp.getX());
+                    right = Math.max(right, llp.getX());
+                }
+            }
+            if (right - left > 180) {
+                // Crosses the dateline, getElevations can't do it.
+                return null;
+            }
+
+            double area = (upper - lower) * (right - left);
+            long maxPosts = (long) MAX_POSTS_PER_PIXEL * viewshed.getEdge() * viewshed.getEdge();
+            double lat = viewshed.centerLLP.getY();
+            double lon = viewshed.centerLLP.getX();
+
+            synchronized (cache) {
+                for (int level = Math.min(cache.getHighestResLevel(), POSTS_PER_DEGREE.length - 1); level >= 0; level--) {
+                    int ppd = POSTS_PER_DEGREE[level];
+                    if ((level > 0 && area * ppd * ppd > maxPosts) || cache.get(lat, lon, level) == null) {
+                        continue;
+                    }
+
+                    short[][] posts = cache.getElevations((float) upper,
+                            (float) left,
+                            (float) lower,
+                            (float) right,
+                            level);
+                    if (posts == null || posts.length < 2 || posts[0].length < 2) {
+                        return null;
+                    }
+
+                    if (Debug.debugging("los")) {
+                        Debug.output("Viewshed: using " + posts.length + "x" + posts[0].length
+                                + " posts from DTED level " + level);
+                    }
+                    return new ElevationGrid(posts, left, lower, right, upper);
+                }
+            }
+            return null;
+        }
+    }
+}
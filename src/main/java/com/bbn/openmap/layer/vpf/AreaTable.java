@@ -52,6 +52,14 @@ public class AreaTable
    /** TilingAdapters used to retrieve edge table information */
    final private TilingAdapter edgeRightFaceAdapter, edgeLeftFaceAdapter, edgeRightEdgeAdapter, edgeLeftEdgeAdapter;
 
+   /** Reused for reading rings and edges in computeEdgePoints */
+   private DcwRowCursor ringCursor, edgeCursor;
+
+   /** Edge points worked out ahead of time for a row, see setEdgePoints */
+   private List<Object> presetRow;
+   private List<CoordFloatString> presetPoints;
+   private int presetSize;
+
    /**
     * Construct an AreaTable for a tile.
     * 
@@ -112,14 +120,27 @@ public class AreaTable
     * @return the total number of points that define the polygon
     * @exception FormatException may throw FormatExceptions
     */
-   public int computeEdgePoints(List<Object> facevec, List<CoordFloatString> allLLPoints)
+   public synchronized int computeEdgePoints(List<Object> facevec, List<CoordFloatString> allLLPoints)
          throws FormatException {
+      if (facevec == presetRow) {
+         allLLPoints.clear();
+         allLLPoints.addAll(presetPoints);
+         return presetSize;
+      }
       int ring_ptr = ((Number)facevec.get(ringIDColumn)).intValue();
-      List<Object> ring1 = new ArrayList<Object>(rings.getColumnCount());
-      rings.getRow(ring1, ring_ptr);
-      int fac_id = ((Number) ring1.get(faceIDColumn)).intValue();
+      // The ring and edge rows are read into cursors, only the coordinates
+      // of the edges that get used are copied out.
+      if (ringCursor == null) {
+         ringCursor = new DcwRowCursor(rings);
+         edgeCursor = new DcwRowCursor(edges);
+      }
+      DcwRowCursor ring1 = ringCursor;
+      if (!rings.getRow(ring1, ring_ptr)) {
+         throw new FormatException("AreaTable: no ring " + ring_ptr + " in " + rings.filename);
+      }
+      int fac_id = ring1.getInt(faceIDColumn);
 
-      int startedgeid = ((Number) ring1.get(ringStartColumn)).intValue();
+      int startedgeid = ring1.getInt(ringStartColumn);
       if (startedgeid <= 0) {
          return 0;
       }
@@ -128,10 +149,12 @@ public class AreaTable
       allLLPoints.clear();
       int polySize = 0;
       int prev_node = -1;
-      final List<Object> edge = new ArrayList<Object>(edges.getColumnCount());
+      final DcwRowCursor edge = edgeCursor;
 
       do {
-         edges.getRow(edge, nextedgeid);
+         if (!edges.getRow(edge, nextedgeid)) {
+            throw new FormatException("AreaTable: no edge " + nextedgeid + " in " + edges.filename);
+         }
          int start_node = edges.getStartNode(edge);
          int end_node = edges.getEndNode(edge);
          int rht_face = edgeRightFaceAdapter.getPrimId(edge);
@@ -146,7 +169,6 @@ public class AreaTable
          // Debug.message("dcwSpecialist",
          // "edge: " + nextedgeid + " start->end: "
          // + start_node + "->" + end_node);
-         CoordFloatString cfs = edges.getCoordinates(edge);
 
          if ((fac_id == rht_face) && (fac_id == lft_face)) {
             if (start_node == prev_node) {
@@ -161,11 +183,13 @@ public class AreaTable
          } else if (fac_id == rht_face) {
             nextedgeid = right_edge;
             prev_node = end_node;
+            CoordFloatString cfs = edges.getCoordinates(edge);
             polySize += cfs.tcount;
             allLLPoints.add(cfs);
          } else if (fac_id == lft_face) { // reverse direction
             nextedgeid = left_edge;
             prev_node = start_node;
+            CoordFloatString cfs = edges.getCoordinates(edge);
             polySize += cfs.tcount;
             cfs.tcount *= -1;// flag reverse
             allLLPoints.add(cfs);
@@ -176,6 +200,23 @@ public class AreaTable
       return polySize;
    }
 
+   /**
+    * Hand computeEdgePoints the answer for a row ahead of time, so it doesn't
+    * have to read the rings and edges again. The VPFTileBuffer works the
+    * points out on a tile thread and sets them while the warehouse is handed
+    * that row.
+    * 
+    * @param facevec the row the points are for, compared by identity, or null
+    *        to clear.
+    * @param allLLPoints the points computeEdgePoints returned for the row.
+    * @param totalSize the size computeEdgePoints returned for the row.
+    */
+   synchronized void setEdgePoints(List<Object> facevec, List<CoordFloatString> allLLPoints, int totalSize) {
+      presetRow = facevec;
+      presetPoints = allLLPoints;
+      presetSize = totalSize;
+   }
+
    /**
     * Parse the area records for this tile, calling warehouse.createArea once
     * for each record.
@@ -190,8 +231,15 @@ public class AreaTable
     */
    public void drawTile(VPFGraphicWarehouse warehouse, double dpplat, double dpplon, LatLonPoint ll1, LatLonPoint ll2) {
       try {
-         for (List<Object> area = new ArrayList<Object>(getColumnCount()); parseRow(area);) {
-            warehouse.createArea(covtable, this, area, ll1, ll2, dpplat, dpplon);
+         // Rows are only turned into lists for the areas the warehouse
+         // wants.
+         DcwRowCursor row = new DcwRowCursor(this);
+         List<Object> area = new ArrayList<Object>(getColumnCount());
+         while (parseRow(row)) {
+            if (warehouse.wantArea(covtable, this, row)) {
+               row.toList(area);
+               warehouse.createArea(covtable, this, area, ll1, ll2, dpplat, dpplon);
+            }
          }
       } catch (FormatException f) {
          System.out.println("Exception: " + f.getClass() + " " + f.getMessage());
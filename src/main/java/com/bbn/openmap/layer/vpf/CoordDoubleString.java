@@ -58,6 +58,22 @@ public class CoordDoubleString implements CoordTupleString {
         }
     }
 
+    /**
+     * Construct a CoordDoubleString from values already read.
+     * 
+     * @param tuplecount the number of tuples
+     * @param tuplesize the number of doubles in the tuple
+     * @param values the array holding the tuples, copied
+     * @param offset the index of the first value in values
+     */
+    public CoordDoubleString(int tuplecount, int tuplesize, double[] values,
+            int offset) {
+        vals = new double[tuplecount][tuplesize];
+        for (int i = 0; i < tuplecount; i++) {
+            System.arraycopy(values, offset + i * tuplesize, vals[i], 0, tuplesize);
+        }
+    }
+
     /**
      * The maximum indexable tuple value
      * 
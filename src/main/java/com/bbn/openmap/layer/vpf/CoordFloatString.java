@@ -62,6 +62,22 @@ public class CoordFloatString {
         }
     }
 
+    /**
+     * Construct a CoordFloatString from values already read.
+     * 
+     * @param tuplecount the number of tuples
+     * @param tuplesize the number of floats in the tuple
+     * @param values the array holding the tuples, copied
+     * @param offset the index of the first value in values
+     */
+    public CoordFloatString(int tuplecount, int tuplesize, double[] values,
+            int offset) {
+        tcount = tuplecount;
+        tsize = tuplesize;
+        vals = new double[tcount * tsize];
+        System.arraycopy(values, offset, vals, 0, vals.length);
+    }
+
     /**
      * The maximum indexable tuple value
      * 
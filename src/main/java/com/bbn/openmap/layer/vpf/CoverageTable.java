@@ -56,7 +56,7 @@ public class CoverageTable {
    final private Map<CoverageCharVdt, String> charvdtrec = new HashMap<CoverageCharVdt, String>();
 
    /** hack - used by EdgeTable */
-   public int cachedLineSchema[] = null;
+   public volatile int cachedLineSchema[] = null;
    /** hack - used by AreaTable */
    public int cachedAreaSchema[] = null;
    /** hack - used by TextTable */
@@ -428,10 +428,43 @@ public class CoverageTable {
          Debug.output("Drawtile for " + drawtd);
       }
 
-      TableHolder tables = new TableHolder(this);
+      TableHolder tables = createTableHolder();
       tables.drawTile(drawtd, warehouse, ll1, ll2, dpplat, dpplon);
    }
 
+   /**
+    * Create the holder for the tables of a tile that drawTile() and readTile()
+    * use.
+    */
+   protected TableHolder createTableHolder() {
+      return new TableHolder(this);
+   }
+
+   /**
+    * Read the entries of a tile into a buffer instead of sending them to the
+    * warehouse. Different tiles can be read at the same time on different
+    * threads. The buffer has to be drawn into the warehouse and closed
+    * afterward, one buffer at a time.
+    * 
+    * @return the buffer holding the tile's primitives and open tables.
+    */
+   protected VPFTileBuffer readTile(TileDirectory drawtd, VPFGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2,
+                                    float dpplat, float dpplon) {
+      if (Debug.debugging("vpf.tile")) {
+         Debug.output("Readtile for " + drawtd);
+      }
+
+      TableHolder tables = createTableHolder();
+      VPFTileBuffer buffer = new VPFTileBuffer(warehouse, tables);
+      try {
+         tables.readTile(drawtd, buffer, ll1, ll2, dpplat, dpplon);
+      } catch (RuntimeException re) {
+         tables.close();
+         throw re;
+      }
+      return buffer;
+   }
+
    /**
     * This function uses the warehouse to get a list of features, and then looks
     * in the featureList to see what feature tables handle those features. Using
@@ -560,7 +593,7 @@ public class CoverageTable {
                         libraryname = cat.libraryname;
                      }
 
-                     if (!warehouse.needToFetchTileContents(libraryname, currentFeature, currentTile)) {
+                     if (!warehouse.needToFetchTileContents(this, libraryname, currentFeature, currentTile)) {
                         if (Debug.debugging("vpf")) {
                            Debug.output("CoverageTable: Loaded Cached List for " + currentFeature + " and " + currentTile.getPath());
                         }
@@ -675,7 +708,7 @@ public class CoverageTable {
                   libraryname = cat.libraryname;
                }
 
-               if (!warehouse.needToFetchTileContents(libraryname, currentFeature, currentTile)) {
+               if (!warehouse.needToFetchTileContents(this, libraryname, currentFeature, currentTile)) {
                   if (Debug.debugging("vpf")) {
                      Debug.output("Loaded Cached List for " + currentFeature + " and " + currentTile.getPath());
                   }
@@ -853,11 +886,14 @@ public class CoverageTable {
                               libraryname = cat.libraryname;
                            }
 
-                           if (!warehouse.needToFetchTileContents(libraryname, featureName, currentTile)) {
+                           if (!warehouse.needToFetchTileContents(this, libraryname, featureName, currentTile)) {
                               if (Debug.debugging("vpf")) {
                                  Debug.output("CoverageTable: Loaded Cached List for " + featureName + " and "
                                        + currentTile.getPath());
                               }
+                              // The rest of the tile's rows are skipped with
+                              // the tables closed.
+                              oldTileID = tileID;
                               continue;
                            }
 
@@ -893,7 +929,7 @@ public class CoverageTable {
                      if (omg != null) {
                            
                         warehouse.handleInformationForOMGraphic(omg, fci, fcirow);
-                        ph.add(omg);
+                        warehouse.addFeature(ph, omg);
 
                         if (false) {
                            StringBuffer pout = new StringBuffer();
@@ -1052,267 +1088,6 @@ public class CoverageTable {
    }
 }
 
-/**
- * The TableHolder is a utility class that manages the EdgeTable, TextTable and
- * AreaTable that are needed by the CoverageTable to use the warehouse to create
- * graphics.
- */
-
-class TableHolder {
-
-   EdgeTable edg = null;
-   TextTable tft = null;
-   AreaTable aft = null;
-   NodeTable ent = null;
-   NodeTable cnt = null;
-
-   /** Used as a preallocated list to read feature tables. */
-   List<Object> primitiveVector = new ArrayList<Object>();
-   CoverageTable coverageTable;
-
-   /**
-    * Construct the TableHandler with the CoverageTable it is helping.
-    */
-   protected TableHolder(CoverageTable ct) {
-      coverageTable = ct;
-   }
-
-   /**
-    * When drawing features (CoverageTable.drawFeatures()), sets up the
-    * TableHolder tables so that the right types are used.
-    * 
-    * @param featureType from the CoverageTable, either AREA_FEATURETYPE,
-    *        EDGE_FEATURETYPE or TEXT_FEATURETYPE.
-    * @param tile the tile directory that needs to be used when fetching
-    *        graphics from the appropriate files.
-    */
-   protected void setTables(char featureType, TileDirectory tile)
-         throws FormatException {
-
-      if (featureType == CoverageTable.EDGE_FEATURETYPE) {
-         edg = new EdgeTable(coverageTable, tile);
-      }
-      if (featureType == CoverageTable.TEXT_FEATURETYPE) {
-         tft = new TextTable(coverageTable, tile);
-      }
-      if (featureType == CoverageTable.AREA_FEATURETYPE) {
-         aft = new AreaTable(coverageTable, null, tile);
-         edg = null;
-      }
-      if (featureType == CoverageTable.EPOINT_FEATURETYPE) {
-         ent = new NodeTable(coverageTable, tile, true);
-      }
-      if (featureType == CoverageTable.CPOINT_FEATURETYPE) {
-         cnt = new NodeTable(coverageTable, tile, false);
-      }
-
-      if (CoverageTable.logger.isDebugEnabled()) {
-         int activeTableCount = 0;
-         if (edg != null)
-            activeTableCount++;
-         if (tft != null)
-            activeTableCount++;
-         if (aft != null)
-            activeTableCount++;
-         if (ent != null)
-            activeTableCount++;
-         if (cnt != null)
-            activeTableCount++;
-         if (activeTableCount > 1) {
-            CoverageTable.logger.error("TableHolder has more than one feature type");
-         }
-      }
-
-   }
-
-   /**
-    * Should be called once per FeatureClassInfo, after the tables have been
-    * set. Lets the tables figure out which columns to use as an index.
-    */
-   protected void findYourself(FeatureClassInfo fci) {
-      if (aft != null) {
-         fci.findYourself(aft);
-      } else if (tft != null) {
-         fci.findYourself(tft);
-      } else if (edg != null) {
-         fci.findYourself(edg);
-      } else if (ent != null) {
-         fci.findYourself(ent);
-      }
-   }
-
-   /**
-    * Should be called once per feature, after the tables have been set
-    * (setTables()), and findYourself() has been called. The appropriate table
-    * will use the warehouse to create proper OMGraphic.
-    */
-   protected OMGraphic drawFeature(int primitiveID, VPFFeatureWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
-                                   double dpplon, String currentFeature)
-         throws FormatException {
-
-      if (aft != null || tft != null || edg != null || ent != null || cnt != null) {
-         // OK, now check to see what table is being
-         // used. if the tile is being reused, the
-         // table will be reused.
-
-         if ((aft != null) && aft.getRow(primitiveVector, primitiveID)) {
-            return aft.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
-         }
-         if ((tft != null) && tft.getRow(primitiveVector, primitiveID)) {
-            return tft.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
-         }
-         if ((ent != null) && ent.getRow(primitiveVector, primitiveID)) {
-            return ent.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
-         }
-         if ((cnt != null) && cnt.getRow(primitiveVector, primitiveID)) {
-            return cnt.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
-         }
-         if ((edg != null) && edg.getRow(primitiveVector, primitiveID)) {
-            return edg.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
-         }
-      }
-
-      return null;
-   }
-
-   /**
-    * Only call once per tile. It will parse all the needed data in the tile.
-    * Does not require setTables() or findYourself().
-    */
-   protected void drawTile(TileDirectory tile, VPFGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2, float dpplat,
-                           float dpplon) {
-
-      boolean drawedge = warehouse.drawEdgeFeatures();
-      boolean drawtext = warehouse.drawTextFeatures();
-      boolean drawarea = warehouse.drawAreaFeatures();
-      boolean drawepoint = warehouse.drawEPointFeatures();
-      boolean drawcpoint = warehouse.drawCPointFeatures();
-      close();
-
-      try {
-         if (drawedge || drawarea) {
-            edg = new EdgeTable(coverageTable, tile);
-         }
-      } catch (FormatException f) {
-         if (Debug.debugging("vpf.FormatException")) {
-            Debug.output("EdgeTable: " + f.getClass() + " " + f.getMessage());
-         }
-      }
-
-      try {
-         if (drawtext) {
-            tft = new TextTable(coverageTable, tile);
-         }
-      } catch (FormatException f) {
-         if (Debug.debugging("vpf.FormatException")) {
-            Debug.output("TextTable: " + f.getClass() + " " + f.getMessage());
-         }
-      }
-
-      try {
-         if (drawepoint) {
-            ent = new NodeTable(coverageTable, tile, true);
-         }
-      } catch (FormatException f) {
-         if (Debug.debugging("vpf.FormatException")) {
-            Debug.output("NodeTable: " + f.getClass() + " " + f.getMessage());
-         }
-      }
-
-      try {
-         if (drawcpoint) {
-            cnt = new NodeTable(coverageTable, tile, false);
-         }
-      } catch (FormatException f) {
-         if (Debug.debugging("vpf.FormatException")) {
-            Debug.output("NodeTable: " + f.getClass() + " " + f.getMessage());
-         }
-      }
-
-      try {
-         if (drawarea && (edg != null)) {
-            aft = new AreaTable(coverageTable, edg, tile);
-         }
-      } catch (FormatException f) {
-         if (Debug.debugging("vpf.FormatException")) {
-            Debug.output("AreaTable: " + f.getClass() + " " + f.getMessage());
-         }
-      }
-
-      if ((aft != null) && drawarea) {
-         for (int i = 0; i < coverageTable.areainfo.length; i++) {
-            coverageTable.areainfo[i].findYourself(aft);
-         }
-         aft.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
-      }
-      if ((tft != null) && drawtext) {
-         for (int i = 0; i < coverageTable.textinfo.length; i++) {
-            coverageTable.textinfo[i].findYourself(tft);
-         }
-         tft.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
-      }
-      if ((edg != null) && drawedge) {
-         for (int i = 0; i < coverageTable.lineinfo.length; i++) {
-            coverageTable.lineinfo[i].findYourself(edg);
-         }
-         edg.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
-      }
-      if ((ent != null) && drawepoint) {
-         for (int i = 0; i < coverageTable.epointinfo.length; i++) {
-            coverageTable.epointinfo[i].findYourself(ent);
-         }
-         ent.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
-      }
-      if ((cnt != null) && drawcpoint) {
-         for (int i = 0; i < coverageTable.cpointinfo.length; i++) {
-            coverageTable.cpointinfo[i].findYourself(cnt);
-         }
-         cnt.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
-      }
-      // if (Debug.On && Debug.debugging("vpf.tile"))
-      // Debug.output(drawtd.toString() + " " + edgecount[0] +
-      // " polys with " + edgecount[1] +
-      // " points (cumulative)\n" +
-      // drawtd.toString() + " " + textcount[0] +
-      // " texts with " + textcount[1] +
-      // " points (cumulative)\n" +
-      // drawtd.toString() + " " + areacount[0] +
-      // " areas with " + areacount[1] +
-      // " points (cumulative)");
-      close();
-   }
-
-   /**
-    * Close any of these tables that may be in use.
-    */
-   protected void close() {
-      if (Debug.debugging("vpf.tile")) {
-         Debug.output("CoverageTable closing tile tables");
-      }
-      if (edg != null) {
-         edg.close();
-      }
-      if (tft != null) {
-         tft.close();
-      }
-      if (aft != null) {
-         aft.close();
-      }
-      if (ent != null) {
-         ent.close();
-      }
-      if (cnt != null) {
-         cnt.close();
-      }
-      aft = null;
-      tft = null;
-      edg = null;
-      ent = null;
-      cnt = null;
-   }
-
-}
-
 /**
  * A utility class used to map information from a VPF feature table to its
  * associated value in an int.vdt file.
@@ -71,6 +71,27 @@ public class DcwCrossTileID {
      *            data
      */
     public DcwCrossTileID(BinaryFile in) throws FormatException, EOFException {
+        int[] keys = new int[3];
+        readKeys(in, keys);
+        currentTileKey = keys[0];
+        nextTileID = keys[1];
+        nextTileKey = keys[2];
+    }
+
+    /**
+     * Read a cross tile identifier from the input stream without creating
+     * a DcwCrossTileID.
+     * 
+     * @param in the filestream to read from
+     * @param keys set to the current tile key, next tile id and next tile
+     *        key.
+     * @exception FormatException some error was detected while
+     *            reading the info for the column.
+     * @exception EOFException EOF was encountered before reading any
+     *            data
+     */
+    static void readKeys(BinaryFile in, int[] keys) throws FormatException,
+            EOFException {
         int format;
         try {
             format = in.read();
@@ -82,9 +103,9 @@ public class DcwCrossTileID {
         }
 
         try {
-            currentTileKey = readIntegerByKey(in, format >> 6);
-            nextTileID = readIntegerByKey(in, format >> 4);
-            nextTileKey = readIntegerByKey(in, format >> 2);
+            keys[0] = readIntegerByKey(in, format >> 6);
+            keys[1] = readIntegerByKey(in, format >> 4);
+            keys[2] = readIntegerByKey(in, format >> 2);
             /*int unusedDcwKey = */readIntegerByKey(in, format);
         } catch (EOFException e) {
             throw new FormatException("DcwCrossTileID: unexpected EOD "
@@ -102,7 +123,7 @@ public class DcwCrossTileID {
      * @exception FormatException internal consistency failure
      * @exception EOFException hit end-of-file while reading data
      */
-    private int readIntegerByKey(BinaryFile in, int key)
+    private static int readIntegerByKey(BinaryFile in, int key)
             throws FormatException, EOFException {
         switch (key & 0x3) {
         case 0:
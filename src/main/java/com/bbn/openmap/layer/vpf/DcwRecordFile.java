@@ -419,6 +419,30 @@ public class DcwRecordFile {
         }
     }
 
+    /**
+     * Read the next row into a cursor, without creating objects for the
+     * fields. Repeatedly calling parseRow gets consecutive rows.
+     * 
+     * @param cursor a cursor created for this table.
+     * @return true is we read a row, false if no more rows are
+     *         available
+     * @exception FormatException an error was encountered reading the
+     *            row
+     */
+    public synchronized boolean parseRow(DcwRowCursor cursor)
+            throws FormatException {
+        try {
+            if (cursor.read(inputFile)) {
+                cursorRow++;
+                return true;
+            }
+            return false;
+        } catch (FormatException f) {
+            throw new FormatException("DcwRecordFile: parserow on table "
+                    + filename + ": " + f.getMessage());
+        }
+    }
+
     /**
      * Returns the documentation file associated with this table.
      * 
@@ -529,6 +553,25 @@ public class DcwRecordFile {
         return parseRow(retval);
     }
 
+    /**
+     * Reads the row specified by rownumber into a cursor.
+     * 
+     * @param cursor a cursor created for this table.
+     * @param rownumber the number of the row to read [1..recordCount]
+     * @return true if the row was read
+     * @exception FormatException data format errors
+     * @see #parseRow(DcwRowCursor)
+     */
+    public synchronized boolean getRow(DcwRowCursor cursor, int rownumber)
+            throws FormatException {
+        if (inputFile == null) {
+            reopen(rownumber);
+        } else {
+            seekToRow(rownumber);
+        }
+        return parseRow(cursor);
+    }
+
     /**
      * moves the input cursor to the specified row [affects subsequent
      * calls parseRow.]
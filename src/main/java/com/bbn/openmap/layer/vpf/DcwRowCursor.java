@@ -0,0 +1,421 @@
+package com.bbn.openmap.layer.vpf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A row of a DcwRecordFile, read with
+ * {@link DcwRecordFile#parseRow(DcwRowCursor)} or
+ * {@link DcwRecordFile#getRow(DcwRowCursor, int)}. The column values are kept
+ * as primitives, and coordinate strings and text are kept in buffers that are
+ * reused for every row, so reading a row doesn't create any objects once the
+ * buffers have grown big enough. The values are only good until the next row
+ * is read into the cursor; {@link #toList(List)} creates the same objects
+ * {@link DcwRecordFile#parseRow(List)} would have, for rows that need to be
+ * kept or handed to a warehouse.
+ * <P>
+ * A cursor should only be used by one thread at a time.
+ */
+public class DcwRowCursor {
+
+    protected final DcwColumnInfo[] columnInfo;
+    protected final char[] types;
+    /** Values of int and short columns, current tile key of triplets. */
+    protected final int[] ints;
+    /** Values of float and double columns. */
+    protected final double[] reals;
+    /** Next tile ids of triplets. */
+    protected final int[] nextTileIds;
+    /** Next tile keys of triplets. */
+    protected final int[] nextTileKeys;
+    /** Offset into coords or text for coordinate and text columns. */
+    protected final int[] starts;
+    /** Number of tuples of coordinate columns, bytes of text columns. */
+    protected final int[] counts;
+
+    protected double[] coords = new double[256];
+    protected int coordLength;
+    protected byte[] text = new byte[64];
+    protected int textLength;
+    protected final int[] tripletKeys = new int[3];
+
+    /**
+     * Create a cursor for a table.
+     *
+     * @param table a table that has been initialized.
+     */
+    public DcwRowCursor(DcwRecordFile table) {
+        this(table.getColumnInfo());
+    }
+
+    protected DcwRowCursor(DcwColumnInfo[] columnInfo) {
+        this.columnInfo = columnInfo;
+        int n = columnInfo.length;
+        types = new char[n];
+        for (int i = 0; i < n; i++) {
+            types[i] = columnInfo[i].getFieldType();
+        }
+        ints = new int[n];
+        reals = new double[n];
+        nextTileIds = new int[n];
+        nextTileKeys = new int[n];
+        starts = new int[n];
+        counts = new int[n];
+    }
+
+    /**
+     * Read a row from the current position of the input file.
+     *
+     * @return false if there are no more rows.
+     * @throws FormatException if the row couldn't be read.
+     */
+    protected boolean read(BinaryFile in) throws FormatException {
+        coordLength = 0;
+        textLength = 0;
+        int column = 0;
+        try {
+            for (; column < types.length; column++) {
+                readField(in, column);
+            }
+            return true;
+        } catch (EOFException e) {
+            if (column > 0) {
+                throw new FormatException("DcwRowCursor: hit EOF in column "
+                        + column);
+            }
+            try {
+                if (in.available() > 0) {
+                    throw new FormatException("DcwRowCursor: hit EOF with available = "
+                            + in.available());
+                }
+            } catch (IOException i) {
+                throw new FormatException("IOException calling available()");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Read one field, the same way DcwColumnInfo.parseField does.
+     */
+    protected void readField(BinaryFile in, int column) throws EOFException,
+            FormatException {
+        int numels = columnInfo[column].getNumberOfElements();
+
+        switch (types[column]) {
+        case DcwColumnInfo.VPF_COLUMN_TEXT:
+        case DcwColumnInfo.VPF_COLUMN_TEXTL1:
+        case DcwColumnInfo.VPF_COLUMN_TEXTL2:
+        case DcwColumnInfo.VPF_COLUMN_TEXTL3:
+            if (numels == -1) {
+                numels = in.readInteger();
+            }
+            readText(in, column, numels);
+            break;
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+            reals[column] = in.readFloat();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            reals[column] = in.readDouble();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            ints[column] = in.readShort();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_INT:
+            ints[column] = in.readInteger();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_3COORD:
+            if (numels == -1) {
+                numels = in.readInteger();
+            }
+            readCoordinates(in, column, numels);
+            break;
+        case DcwColumnInfo.VPF_COLUMN_DATE:
+            readText(in, column, 20);
+            break;
+        case DcwColumnInfo.VPF_COLUMN_NULL:
+            break;
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+            DcwCrossTileID.readKeys(in, tripletKeys);
+            ints[column] = tripletKeys[0];
+            nextTileIds[column] = tripletKeys[1];
+            nextTileKeys[column] = tripletKeys[2];
+            break;
+        default:
+            throw new FormatException("Unknown field type: " + types[column]);
+        }
+    }
+
+    protected void readText(BinaryFile in, int column, int length)
+            throws EOFException, FormatException {
+        if (textLength + length > text.length) {
+            byte[] tmp = new byte[Math.max(text.length * 2, textLength + length)];
+            System.arraycopy(text, 0, tmp, 0, textLength);
+            text = tmp;
+        }
+        starts[column] = textLength;
+        counts[column] = length;
+        int read = 0;
+        try {
+            while (read < length) {
+                int r = in.read(text, textLength + read, length - read);
+                if (r < 0) {
+                    break;
+                }
+                read += r;
+            }
+        } catch (IOException ioe) {
+            throw new FormatException(ioe.getMessage());
+        }
+        if (read < length) {
+            if (read == 0) {
+                throw new EOFException();
+            }
+            throw new FormatException("DcwRowCursor: short read of " + read
+                    + " of " + length + " bytes");
+        }
+        textLength += length;
+    }
+
+    protected void readCoordinates(BinaryFile in, int column, int tuples)
+            throws FormatException {
+        int tsize = getTupleSize(column);
+        int length = tuples * tsize;
+        if (coordLength + length > coords.length) {
+            double[] tmp = new double[Math.max(coords.length * 2, coordLength + length)];
+            System.arraycopy(coords, 0, tmp, 0, coordLength);
+            coords = tmp;
+        }
+        starts[column] = coordLength;
+        counts[column] = tuples;
+        try {
+            if (types[column] == DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD
+                    || types[column] == DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD) {
+                in.readFloatArray(coords, coordLength, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    coords[coordLength + i] = in.readDouble();
+                }
+            }
+        } catch (EOFException e) {
+            throw new FormatException("DcwRowCursor coordinate EOFException");
+        }
+        coordLength += length;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getColumnCount() {
+        return types.length;
+    }
+
+    /**
+     * @return the DcwColumnInfo field type of a column.
+     */
+    public char getFieldType(int column) {
+        return types[column];
+    }
+
+    /**
+     * Get the value of an int, short, float or double column as an int.
+     */
+    public int getInt(int column) {
+        switch (types[column]) {
+        case DcwColumnInfo.VPF_COLUMN_INT:
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            return ints[column];
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return (int) reals[column];
+        default:
+            throw new IllegalArgumentException("column " + column
+                    + " isn't a number: " + types[column]);
+        }
+    }
+
+    /**
+     * Get the value of an int, short, float or double column as a double.
+     */
+    public double getDouble(int column) {
+        switch (types[column]) {
+        case DcwColumnInfo.VPF_COLUMN_INT:
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            return ints[column];
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return reals[column];
+        default:
+            throw new IllegalArgumentException("column " + column
+                    + " isn't a number: " + types[column]);
+        }
+    }
+
+    /**
+     * Get the value of a text column, as DcwRecordFile.parseRow would have.
+     * Creates a new String.
+     */
+    public String getString(int column) {
+        Object obj = getObject(column);
+        if (obj instanceof String) {
+            return (String) obj;
+        } else if (obj instanceof byte[]) {
+            return decode(column, "ISO8859_1");
+        }
+        return String.valueOf(obj);
+    }
+
+    /** The current tile key of a triplet column. */
+    public int getCurrentTileKey(int column) {
+        return ints[column];
+    }
+
+    /** The next tile id of a triplet column. */
+    public int getNextTileId(int column) {
+        return nextTileIds[column];
+    }
+
+    /** The next tile key of a triplet column. */
+    public int getNextTileKey(int column) {
+        return nextTileKeys[column];
+    }
+
+    /**
+     * @return the number of tuples in a coordinate column.
+     */
+    public int getTupleCount(int column) {
+        return counts[column];
+    }
+
+    /**
+     * @return the number of values in each tuple of a coordinate column, 2 or
+     *         3.
+     */
+    public int getTupleSize(int column) {
+        switch (types[column]) {
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_3COORD:
+            return 3;
+        default:
+            return 2;
+        }
+    }
+
+    /**
+     * Get the buffer holding the coordinates of the row, x1,y1(,z1),x2,y2...
+     * starting at {@link #getCoordinateOffset(int)} for a column. The buffer
+     * is reused, don't hang on to it.
+     */
+    public double[] getCoordinates() {
+        return coords;
+    }
+
+    /**
+     * @return the index of the first coordinate of a column in the
+     *         coordinate buffer.
+     */
+    public int getCoordinateOffset(int column) {
+        return starts[column];
+    }
+
+    /** The x value of a tuple in a coordinate column. */
+    public double getX(int column, int tuple) {
+        return coords[starts[column] + tuple * getTupleSize(column)];
+    }
+
+    /** The y value of a tuple in a coordinate column. */
+    public double getY(int column, int tuple) {
+        return coords[starts[column] + tuple * getTupleSize(column) + 1];
+    }
+
+    /**
+     * Get the value of a column as the object DcwRecordFile.parseRow would
+     * have created for it.
+     */
+    public Object getObject(int column) {
+        int numels = columnInfo[column].getNumberOfElements();
+        boolean haveElements = (numels != -1);
+
+        switch (types[column]) {
+        case DcwColumnInfo.VPF_COLUMN_TEXT: {
+            if (counts[column] == 0) {
+                return "";
+            }
+            String s = new String(text, starts[column], counts[column]);
+            return haveElements ? s.trim() : s;
+        }
+        case DcwColumnInfo.VPF_COLUMN_TEXTL1: {
+            if (counts[column] == 0) {
+                return "";
+            }
+            String s = decode(column, "ISO8859_1");
+            if (s == null) {
+                return copyText(column);
+            }
+            return haveElements ? s.trim() : s;
+        }
+        case DcwColumnInfo.VPF_COLUMN_TEXTL2:
+        case DcwColumnInfo.VPF_COLUMN_TEXTL3:
+            return copyText(column);
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+            return Float.valueOf((float) reals[column]);
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return Double.valueOf(reals[column]);
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            return Short.valueOf((short) ints[column]);
+        case DcwColumnInfo.VPF_COLUMN_INT:
+            return Integer.valueOf(ints[column]);
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+            return new CoordFloatString(counts[column], getTupleSize(column), coords, starts[column]);
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_3COORD:
+            return new CoordDoubleString(counts[column], getTupleSize(column), coords, starts[column]);
+        case DcwColumnInfo.VPF_COLUMN_DATE:
+            return "[skipped date]";
+        case DcwColumnInfo.VPF_COLUMN_NULL:
+            return "[Null Field Type]";
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+            return new DcwCrossTileID(ints[column], nextTileIds[column], nextTileKeys[column]);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Fill a list with the objects DcwRecordFile.parseRow would have created
+     * for the row.
+     *
+     * @param retval the list, clear() is called first.
+     * @return retval
+     */
+    public List<Object> toList(List<Object> retval) {
+        retval.clear();
+        for (int i = 0; i < types.length; i++) {
+            retval.add(getObject(i));
+        }
+        return retval;
+    }
+
+    protected String decode(int column, String charset) {
+        try {
+            return new String(text, starts[column], counts[column], charset);
+        } catch (UnsupportedEncodingException uee) {
+            return null;
+        }
+    }
+
+    protected byte[] copyText(int column) {
+        byte[] ret = new byte[counts[column]];
+        System.arraycopy(text, starts[column], ret, 0, ret.length);
+        return ret;
+    }
+}
@@ -126,6 +126,50 @@ public class EdgeTable
       return (CoordFloatString) l.get(covtable.cachedLineSchema[7]);
    }
 
+   /**
+    * Get the value of the ID column
+    * 
+    * @param row the cursor holding the row
+    */
+   public final int getId(DcwRowCursor row) {
+      return row.getInt(covtable.cachedLineSchema[0]);
+   }
+
+   /**
+    * Get the value of the start_node column
+    * 
+    * @param row the cursor holding the row
+    */
+   public final int getStartNode(DcwRowCursor row) {
+      return row.getInt(covtable.cachedLineSchema[1]);
+   }
+
+   /**
+    * Get the value of the end_node column
+    * 
+    * @param row the cursor holding the row
+    */
+   public final int getEndNode(DcwRowCursor row) {
+      return row.getInt(covtable.cachedLineSchema[2]);
+   }
+
+   /**
+    * Get the index of the coordinates column, for reading the coordinates
+    * from a DcwRowCursor.
+    */
+   public final int getCoordinateColumn() {
+      return covtable.cachedLineSchema[7];
+   }
+
+   /**
+    * Copy the value of the coordinates column out of a cursor.
+    * 
+    * @param row the cursor holding the row
+    */
+   public final CoordFloatString getCoordinates(DcwRowCursor row) {
+      return (CoordFloatString) row.getObject(covtable.cachedLineSchema[7]);
+   }
+
    /**
     * get the topology level of the edge table
     * 
@@ -170,8 +214,15 @@ public class EdgeTable
 
       try {
          seekToRow(1);
-         for (List<Object> edge = new ArrayList<Object>(); parseRow(edge);) {
-            warehouse.createEdge(covtable, this, edge, ll1, ll2, dpplat, dpplon, getCoordinates(edge));
+         // Rows are only turned into lists for the edges the warehouse
+         // wants.
+         DcwRowCursor row = new DcwRowCursor(this);
+         List<Object> edge = new ArrayList<Object>(getColumnCount());
+         while (parseRow(row)) {
+            if (warehouse.wantEdge(covtable, this, row)) {
+               row.toList(edge);
+               warehouse.createEdge(covtable, this, edge, ll1, ll2, dpplat, dpplon, getCoordinates(edge));
+            }
          }
       } catch (FormatException f) {
          System.out.println("Exception: " + f.getClass() + " " + f.getMessage());
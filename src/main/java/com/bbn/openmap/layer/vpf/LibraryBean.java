@@ -22,6 +22,7 @@
 
 package com.bbn.openmap.layer.vpf;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Properties;
 
@@ -46,6 +47,9 @@ import com.bbn.openmap.util.PropUtils;
  * VMAPData.name=VMAPLEVEL0
  * # Maximum number of tiles to cache.
  * VMAPData.cacheSize=25
+ * # Optional, a directory to save cached tiles in, so they don't have to be
+ * # read from the VPF files again the next time the application starts.
+ * VMAPData.cacheDirectory=/tmp/vmapcache
  * 
  * </pre>
  * 
@@ -70,6 +74,11 @@ public class LibraryBean
    /** Maximum size of tile cache (cacheSize). */
    public static final String cacheSizeProperty = "cacheSize";
 
+   /**
+    * Directory to save the tile cache in between runs (cacheDirectory).
+    */
+   public static final String cacheDirectoryProperty = "cacheDirectory";
+
    /** the lst for the path */
    private transient LibrarySelectionTable lst = null;
 
@@ -124,6 +133,13 @@ public class LibraryBean
 
       int cacheSize = PropUtils.intFromProperties(setList, realPrefix + cacheSizeProperty, featureCache.getCacheSize());
       featureCache.resetCache(cacheSize);
+
+      String cacheDirectory = setList.getProperty(realPrefix + cacheDirectoryProperty);
+      if (cacheDirectory != null && cacheDirectory.trim().length() > 0) {
+         featureCache.setDiskCache(new VPFFeatureDiskCache(new File(cacheDirectory.trim())));
+      } else {
+         featureCache.setDiskCache(null);
+      }
    }
 
    /**
@@ -144,6 +160,8 @@ public class LibraryBean
       String prefix = PropUtils.getScopedPropertyPrefix(this);
       getList.put(prefix + nameProperty, beanName);
       getList.put(prefix + cacheSizeProperty, Integer.toString(featureCache.getCacheSize()));
+      VPFFeatureDiskCache diskCache = featureCache.getDiskCache();
+      getList.put(prefix + cacheDirectoryProperty, diskCache != null ? diskCache.getDirectory().getPath() : "");
       return getList;
    }
 
@@ -158,6 +176,8 @@ public class LibraryBean
       list.put(pathProperty, "List of VPF directories.");
       list.put(pathProperty + ScopedEditorProperty, "com.bbn.openmap.util.propertyEditor.MultiDirectoryPropertyEditor");
       list.put(cacheSizeProperty, "Maximun number of tiles to cache (25 is default).");
+      list.put(cacheDirectoryProperty, "Directory to save cached tiles in between runs (optional).");
+      list.put(cacheDirectoryProperty + ScopedEditorProperty, "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
 
       return list;
    }
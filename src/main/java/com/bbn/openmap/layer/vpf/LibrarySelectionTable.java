@@ -21,11 +21,21 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.bbn.openmap.io.BinaryFile;
 import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 
 /**
@@ -47,6 +57,14 @@ public class LibrarySelectionTable {
 
    protected int BROWSE_CUTOFF = DEFAULT_BROWSE_CUTOFF;
 
+   /**
+    * The number of tiles read at the same time by drawTile, 1 reads them one
+    * at a time on the calling thread.
+    */
+   protected int tileThreads = Runtime.getRuntime().availableProcessors();
+
+   protected static ThreadPoolExecutor tileExecutor;
+
    /**
     * the names of the VPF libraries listed in the library attribute table
     */
@@ -143,6 +161,18 @@ public class LibrarySelectionTable {
       return BROWSE_CUTOFF;
    }
 
+   /**
+    * Set the number of tiles read at the same time when drawing tiled
+    * coverages. 1 reads the tiles one at a time on the calling thread.
+    */
+   public void setTileThreads(int tileThreads) {
+      this.tileThreads = Math.max(1, tileThreads);
+   }
+
+   public int getTileThreads() {
+      return tileThreads;
+   }
+
    /**
     * add a path to LibrarySelectionTable. Adding different types of VPF
     * libraries to the same LST is likely to cause trouble. (e.g. it would be
@@ -265,6 +295,19 @@ public class LibrarySelectionTable {
      */
    public void drawTile(int scale, int screenwidth, int screenheight, String covname, VPFGraphicWarehouse warehouse,
                         LatLonPoint ll1, LatLonPoint ll2) {
+      drawTile(scale, screenwidth, screenheight, covname, warehouse, ll1, ll2, null);
+   }
+
+   /**
+    * Send the features of the tiles in the region to the warehouse. The tiles
+    * are read on several threads, see {@link #setTileThreads(int)}, and handed
+    * to the warehouse in order on the calling thread.
+    * 
+    * @param layer the layer the features are for, drawing stops when it's
+    *        cancelled. May be null.
+    */
+   public void drawTile(int scale, int screenwidth, int screenheight, String covname, VPFGraphicWarehouse warehouse,
+                        LatLonPoint ll1, LatLonPoint ll2, OMGraphicHandlerLayer layer) {
 
       if (VPFLayer.logger.isDebugEnabled()) {
          VPFLayer.logger.debug("Library selection table coverage: " + covname);
@@ -278,12 +321,12 @@ public class LibrarySelectionTable {
       // handle Dateline
       if ((scale < BROWSE_CUTOFF) && (ll1.getLongitude() > ll2.getLongitude())) {
          drawTile(scale, screenwidth, screenheight, covname, warehouse, ll1, new LatLonPoint.Float(ll2.getLatitude(),
-                                                                                                   180f - .00001f)/*
+                                                                                                   180f - .00001f), layer/*
                                                                                                                    * 180
                                                                                                                    * -
                                                                                                                    * epsilon
                                                                                                                    */);
-         drawTile(scale, screenwidth, screenheight, covname, warehouse, new LatLonPoint.Float(ll1.getLatitude(), -180f), ll2);
+         drawTile(scale, screenwidth, screenheight, covname, warehouse, new LatLonPoint.Float(ll1.getLatitude(), -180f), ll2, layer);
          return;
       }
 
@@ -299,6 +342,10 @@ public class LibrarySelectionTable {
 
       for (CoverageAttributeTable cat : CATs.values()) {
 
+         if (layer != null && layer.isCancelled()) {
+            return;
+         }
+
          if (VPFLayer.logger.isDebugEnabled()) {
             VPFLayer.logger.debug("LST: checking library: " + cat.getLibraryName());
          }
@@ -331,9 +378,7 @@ public class LibrarySelectionTable {
                }
 
                inArea++;
-               for (TileDirectory tileDirectory : tiles) {
-                  c.drawTile(tileDirectory, warehouse, ll1, ll2, dpplat, dpplon);
-               }
+               drawTiles(c, tiles, warehouse, ll1, ll2, dpplat, dpplon, layer);
             }
          }
       }
@@ -345,6 +390,101 @@ public class LibrarySelectionTable {
       }
    }
 
+   /**
+    * Draw tiles of a coverage. Up to two tiles per thread are read ahead on
+    * the tile threads into VPFTileBuffers, and the buffers are drawn into the
+    * warehouse in the order of the tile list, so the warehouse gets the same
+    * features in the same order as it would reading the tiles one at a time.
+    */
+   protected void drawTiles(CoverageTable c, List<TileDirectory> tiles, VPFGraphicWarehouse warehouse, LatLonPoint ll1,
+                            LatLonPoint ll2, float dpplat, float dpplon, OMGraphicHandlerLayer layer) {
+
+      int threads = tileThreads;
+      if (threads <= 1 || tiles.size() < 2) {
+         for (TileDirectory tileDirectory : tiles) {
+            if (layer != null && layer.isCancelled()) {
+               return;
+            }
+            c.drawTile(tileDirectory, warehouse, ll1, ll2, dpplat, dpplon);
+         }
+         return;
+      }
+
+      ThreadPoolExecutor executor = getTileExecutor();
+      LinkedList<Future<VPFTileBuffer>> pending = new LinkedList<Future<VPFTileBuffer>>();
+      Iterator<TileDirectory> it = tiles.iterator();
+      boolean cancelled = false;
+
+      while (true) {
+         while (!cancelled && it.hasNext() && pending.size() < threads * 2) {
+            pending.add(executor.submit(createTileReader(c, it.next(), warehouse, ll1, ll2, dpplat, dpplon, layer)));
+         }
+         if (pending.isEmpty()) {
+            break;
+         }
+
+         // Tiles already being read are still waited for when cancelled,
+         // so their tables get closed.
+         VPFTileBuffer buffer = null;
+         try {
+            buffer = pending.removeFirst().get();
+         } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            cancelled = true;
+         } catch (ExecutionException ee) {
+            VPFLayer.logger.warn("problem reading VPF tile: " + ee.getCause());
+         }
+
+         cancelled = cancelled || (layer != null && layer.isCancelled());
+         if (buffer != null) {
+            try {
+               if (!cancelled) {
+                  buffer.draw(warehouse);
+               }
+            } finally {
+               buffer.close();
+            }
+         }
+      }
+   }
+
+   /**
+    * Create the task that reads a tile on a tile thread.
+    */
+   protected Callable<VPFTileBuffer> createTileReader(final CoverageTable c, final TileDirectory tile,
+                                                      final VPFGraphicWarehouse warehouse, final LatLonPoint ll1,
+                                                      final LatLonPoint ll2, final float dpplat, final float dpplon,
+                                                      final OMGraphicHandlerLayer layer) {
+      return new Callable<VPFTileBuffer>() {
+         public VPFTileBuffer call() {
+            if (layer != null && layer.isCancelled()) {
+               return null;
+            }
+            return c.readTile(tile, warehouse, ll1, ll2, dpplat, dpplon);
+         }
+      };
+   }
+
+   /**
+    * Get the threads that read tiles, creating them if needed. They're shared
+    * by all LibrarySelectionTables.
+    */
+   protected static synchronized ThreadPoolExecutor getTileExecutor() {
+      if (tileExecutor == null) {
+         int threads = Runtime.getRuntime().availableProcessors();
+         tileExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+               Thread thread = new Thread(r, "VPFTileReader");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+         // Let the threads go when the map isn't changing.
+         tileExecutor.allowCoreThreadTimeOut(true);
+      }
+      return tileExecutor;
+   }
+
    /**
      *  
      */
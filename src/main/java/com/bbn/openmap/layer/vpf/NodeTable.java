@@ -94,12 +94,19 @@ public class NodeTable
       double ll2lon = ll2.getX();
 
       try {
-         for (List<Object> node = new ArrayList<Object>(); parseRow(node);) {
-            CoordFloatString coords = (CoordFloatString) node.get(coordColumn);
-            double lat = coords.getYasFloat(0);
-            double lon = coords.getXasFloat(0);
+         // Rows are only turned into lists for the warehouse if they're in
+         // the selection region.
+         DcwRowCursor row = new DcwRowCursor(this);
+         List<Object> node = new ArrayList<Object>(getColumnCount());
+         while (parseRow(row)) {
+            if (row.getTupleCount(coordColumn) == 0) {
+               continue;
+            }
+            double lat = row.getY(coordColumn, 0);
+            double lon = row.getX(coordColumn, 0);
             if ((lat > ll2lat) && (lat < ll1lat) && (lon > ll1lon) && (lon < ll2lon)) {
 
+               row.toList(node);
                warehouse.createNode(covtable, this, node, lat, lon, isEntityNode);
             }
          }
@@ -0,0 +1,364 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * The TableHolder is a utility class that manages the EdgeTable, TextTable and
+ * AreaTable that are needed by the CoverageTable to use the warehouse to create
+ * graphics.
+ */
+class TableHolder {
+
+   EdgeTable edg = null;
+   TextTable tft = null;
+   AreaTable aft = null;
+   NodeTable ent = null;
+   NodeTable cnt = null;
+
+   /** Used as a preallocated list to read feature tables. */
+   List<Object> primitiveVector = new ArrayList<Object>();
+   CoverageTable coverageTable;
+
+   /**
+    * Construct the TableHandler with the CoverageTable it is helping.
+    */
+   protected TableHolder(CoverageTable ct) {
+      coverageTable = ct;
+   }
+
+   /**
+    * When drawing features (CoverageTable.drawFeatures()), sets up the
+    * TableHolder tables so that the right types are used.
+    * 
+    * @param featureType from the CoverageTable, either AREA_FEATURETYPE,
+    *        EDGE_FEATURETYPE or TEXT_FEATURETYPE.
+    * @param tile the tile directory that needs to be used when fetching
+    *        graphics from the appropriate files.
+    */
+   protected void setTables(char featureType, TileDirectory tile)
+         throws FormatException {
+
+      if (featureType == CoverageTable.EDGE_FEATURETYPE) {
+         edg = new EdgeTable(coverageTable, tile);
+      }
+      if (featureType == CoverageTable.TEXT_FEATURETYPE) {
+         tft = new TextTable(coverageTable, tile);
+      }
+      if (featureType == CoverageTable.AREA_FEATURETYPE) {
+         aft = new AreaTable(coverageTable, null, tile);
+         edg = null;
+      }
+      if (featureType == CoverageTable.EPOINT_FEATURETYPE) {
+         ent = new NodeTable(coverageTable, tile, true);
+      }
+      if (featureType == CoverageTable.CPOINT_FEATURETYPE) {
+         cnt = new NodeTable(coverageTable, tile, false);
+      }
+
+      if (CoverageTable.logger.isDebugEnabled()) {
+         int activeTableCount = 0;
+         if (edg != null)
+            activeTableCount++;
+         if (tft != null)
+            activeTableCount++;
+         if (aft != null)
+            activeTableCount++;
+         if (ent != null)
+            activeTableCount++;
+         if (cnt != null)
+            activeTableCount++;
+         if (activeTableCount > 1) {
+            CoverageTable.logger.error("TableHolder has more than one feature type");
+         }
+      }
+
+   }
+
+   /**
+    * Should be called once per FeatureClassInfo, after the tables have been
+    * set. Lets the tables figure out which columns to use as an index.
+    */
+   protected void findYourself(FeatureClassInfo fci) {
+      if (aft != null) {
+         fci.findYourself(aft);
+      } else if (tft != null) {
+         fci.findYourself(tft);
+      } else if (edg != null) {
+         fci.findYourself(edg);
+      } else if (ent != null) {
+         fci.findYourself(ent);
+      }
+   }
+
+   /**
+    * Should be called once per feature, after the tables have been set
+    * (setTables()), and findYourself() has been called. The appropriate table
+    * will use the warehouse to create proper OMGraphic.
+    */
+   protected OMGraphic drawFeature(int primitiveID, VPFFeatureWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
+                                   double dpplon, String currentFeature)
+         throws FormatException {
+
+      if (aft != null || tft != null || edg != null || ent != null || cnt != null) {
+         // OK, now check to see what table is being
+         // used. if the tile is being reused, the
+         // table will be reused.
+
+         if ((aft != null) && aft.getRow(primitiveVector, primitiveID)) {
+            return aft.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
+         }
+         if ((tft != null) && tft.getRow(primitiveVector, primitiveID)) {
+            return tft.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
+         }
+         if ((ent != null) && ent.getRow(primitiveVector, primitiveID)) {
+            return ent.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
+         }
+         if ((cnt != null) && cnt.getRow(primitiveVector, primitiveID)) {
+            return cnt.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
+         }
+         if ((edg != null) && edg.getRow(primitiveVector, primitiveID)) {
+            return edg.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature);
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Only call once per tile. It will parse all the needed data in the tile.
+    * Does not require setTables() or findYourself().
+    */
+   protected void drawTile(TileDirectory tile, VPFGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2, float dpplat,
+                           float dpplon) {
+
+      openTables(tile, warehouse);
+
+      boolean drawedge = warehouse.drawEdgeFeatures();
+      boolean drawtext = warehouse.drawTextFeatures();
+      boolean drawarea = warehouse.drawAreaFeatures();
+      boolean drawepoint = warehouse.drawEPointFeatures();
+      boolean drawcpoint = warehouse.drawCPointFeatures();
+
+      if ((aft != null) && drawarea) {
+         for (int i = 0; i < coverageTable.areainfo.length; i++) {
+            coverageTable.areainfo[i].findYourself(aft);
+         }
+         aft.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+      }
+      if ((tft != null) && drawtext) {
+         for (int i = 0; i < coverageTable.textinfo.length; i++) {
+            coverageTable.textinfo[i].findYourself(tft);
+         }
+         tft.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+      }
+      if ((edg != null) && drawedge) {
+         for (int i = 0; i < coverageTable.lineinfo.length; i++) {
+            coverageTable.lineinfo[i].findYourself(edg);
+         }
+         edg.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+      }
+      if ((ent != null) && drawepoint) {
+         for (int i = 0; i < coverageTable.epointinfo.length; i++) {
+            coverageTable.epointinfo[i].findYourself(ent);
+         }
+         ent.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+      }
+      if ((cnt != null) && drawcpoint) {
+         for (int i = 0; i < coverageTable.cpointinfo.length; i++) {
+            coverageTable.cpointinfo[i].findYourself(cnt);
+         }
+         cnt.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+      }
+      // if (Debug.On && Debug.debugging("vpf.tile"))
+      // Debug.output(drawtd.toString() + " " + edgecount[0] +
+      // " polys with " + edgecount[1] +
+      // " points (cumulative)\n" +
+      // drawtd.toString() + " " + textcount[0] +
+      // " texts with " + textcount[1] +
+      // " points (cumulative)\n" +
+      // drawtd.toString() + " " + areacount[0] +
+      // " areas with " + areacount[1] +
+      // " points (cumulative)");
+      close();
+   }
+
+   /**
+    * Read the primitives of a tile into a buffer instead of sending them to
+    * the warehouse, leaving the tables open. Doesn't touch anything shared
+    * with other tiles of the coverage, so tiles can be read on different
+    * threads. The buffer is drawn with drawBuffered().
+    */
+   protected void readTile(TileDirectory tile, VPFTileBuffer buffer, LatLonPoint ll1, LatLonPoint ll2, float dpplat, float dpplon) {
+
+      openTables(tile, buffer);
+
+      if ((aft != null) && buffer.drawAreaFeatures()) {
+         aft.drawTile(buffer, dpplat, dpplon, ll1, ll2);
+      }
+      if ((tft != null) && buffer.drawTextFeatures()) {
+         tft.drawTile(buffer, dpplat, dpplon, ll1, ll2);
+      }
+      if ((edg != null) && buffer.drawEdgeFeatures()) {
+         edg.drawTile(buffer, dpplat, dpplon, ll1, ll2);
+      }
+      if ((ent != null) && buffer.drawEPointFeatures()) {
+         ent.drawTile(buffer, dpplat, dpplon, ll1, ll2);
+      }
+      if ((cnt != null) && buffer.drawCPointFeatures()) {
+         cnt.drawTile(buffer, dpplat, dpplon, ll1, ll2);
+      }
+   }
+
+   /**
+    * Send the primitives read by readTile() to the warehouse, in the same
+    * order drawTile() would have. The FeatureClassInfo objects are shared by
+    * all the tiles of the coverage, so this has to be called on one thread at
+    * a time. Doesn't close the tables.
+    */
+   protected void drawBuffered(VPFTileBuffer buffer, VPFGraphicWarehouse warehouse) {
+      if ((aft != null) && warehouse.drawAreaFeatures()) {
+         for (int i = 0; i < coverageTable.areainfo.length; i++) {
+            coverageTable.areainfo[i].findYourself(aft);
+         }
+         buffer.drawAreas(warehouse);
+      }
+      if ((tft != null) && warehouse.drawTextFeatures()) {
+         for (int i = 0; i < coverageTable.textinfo.length; i++) {
+            coverageTable.textinfo[i].findYourself(tft);
+         }
+         buffer.drawTexts(warehouse);
+      }
+      if ((edg != null) && warehouse.drawEdgeFeatures()) {
+         for (int i = 0; i < coverageTable.lineinfo.length; i++) {
+            coverageTable.lineinfo[i].findYourself(edg);
+         }
+         buffer.drawEdges(warehouse);
+      }
+      if ((ent != null) && warehouse.drawEPointFeatures()) {
+         for (int i = 0; i < coverageTable.epointinfo.length; i++) {
+            coverageTable.epointinfo[i].findYourself(ent);
+         }
+         buffer.drawNodes(warehouse, true);
+      }
+      if ((cnt != null) && warehouse.drawCPointFeatures()) {
+         for (int i = 0; i < coverageTable.cpointinfo.length; i++) {
+            coverageTable.cpointinfo[i].findYourself(cnt);
+         }
+         buffer.drawNodes(warehouse, false);
+      }
+   }
+
+   /**
+    * Open the tables of a tile that the warehouse wants to draw, closing any
+    * open ones first.
+    */
+   protected void openTables(TileDirectory tile, VPFGraphicWarehouse warehouse) {
+
+      boolean drawedge = warehouse.drawEdgeFeatures();
+      boolean drawtext = warehouse.drawTextFeatures();
+      boolean drawarea = warehouse.drawAreaFeatures();
+      boolean drawepoint = warehouse.drawEPointFeatures();
+      boolean drawcpoint = warehouse.drawCPointFeatures();
+      close();
+
+      try {
+         if (drawedge || drawarea) {
+            edg = new EdgeTable(coverageTable, tile);
+         }
+      } catch (FormatException f) {
+         if (Debug.debugging("vpf.FormatException")) {
+            Debug.output("EdgeTable: " + f.getClass() + " " + f.getMessage());
+         }
+      }
+
+      try {
+         if (drawtext) {
+            tft = new TextTable(coverageTable, tile);
+         }
+      } catch (FormatException f) {
+         if (Debug.debugging("vpf.FormatException")) {
+            Debug.output("TextTable: " + f.getClass() + " " + f.getMessage());
+         }
+      }
+
+      try {
+         if (drawepoint) {
+            ent = new NodeTable(coverageTable, tile, true);
+         }
+      } catch (FormatException f) {
+         if (Debug.debugging("vpf.FormatException")) {
+            Debug.output("NodeTable: " + f.getClass() + " " + f.getMessage());
+         }
+      }
+
+      try {
+         if (drawcpoint) {
+            cnt = new NodeTable(coverageTable, tile, false);
+         }
+      } catch (FormatException f) {
+         if (Debug.debugging("vpf.FormatException")) {
+            Debug.output("NodeTable: " + f.getClass() + " " + f.getMessage());
+         }
+      }
+
+      try {
+         if (drawarea && (edg != null)) {
+            aft = new AreaTable(coverageTable, edg, tile);
+         }
+      } catch (FormatException f) {
+         if (Debug.debugging("vpf.FormatException")) {
+            Debug.output("AreaTable: " + f.getClass() + " " + f.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Close any of these tables that may be in use.
+    */
+   protected void close() {
+      if (Debug.debugging("vpf.tile")) {
+         Debug.output("CoverageTable closing tile tables");
+      }
+      if (edg != null) {
+         edg.close();
+      }
+      if (tft != null) {
+         tft.close();
+      }
+      if (aft != null) {
+         aft.close();
+      }
+      if (ent != null) {
+         ent.close();
+      }
+      if (cnt != null) {
+         cnt.close();
+      }
+      aft = null;
+      tft = null;
+      edg = null;
+      ent = null;
+      cnt = null;
+   }
+
+}
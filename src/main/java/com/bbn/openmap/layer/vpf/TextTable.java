@@ -83,14 +83,20 @@ public class TextTable
       double ll2lon = ll2.getX();
 
       try {
-         for (List<Object> text = new ArrayList<Object>(); parseRow(text);) {
-            String textval = (String) text.get(textColumn);
-            CoordFloatString coords = (CoordFloatString) text.get(coordColumn);
-            double lat = coords.getYasFloat(0);
-            double lon = coords.getXasFloat(0);
+         // Rows are only turned into lists for the warehouse if they're in
+         // the selection region.
+         DcwRowCursor row = new DcwRowCursor(this);
+         List<Object> text = new ArrayList<Object>(getColumnCount());
+         while (parseRow(row)) {
+            if (row.getTupleCount(coordColumn) == 0) {
+               continue;
+            }
+            double lat = row.getY(coordColumn, 0);
+            double lon = row.getX(coordColumn, 0);
 
             if ((lat > ll2lat) && (lat < ll1lat) && (lon > ll1lon) && (lon < ll2lon)) {
-               warehouse.createText(covtable, this, text, lat, lon, textval);
+               row.toList(text);
+               warehouse.createText(covtable, this, text, lat, lon, (String) text.get(textColumn));
             }
          }
       } catch (FormatException f) {
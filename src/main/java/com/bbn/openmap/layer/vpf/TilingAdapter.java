@@ -17,12 +17,15 @@
 
 package com.bbn.openmap.layer.vpf;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * An interface class for a set of adapter classes that hide the
  * tiling format of a VPF table. None of the methods taking a List
- * parameter may modify the passed in list.
+ * parameter may modify the passed in list. The methods taking a
+ * DcwRowCursor convert the row to a List by default, the adapters
+ * here read the column from the cursor directly.
  * 
  * @see DcwRecordFile#getTilingAdapter(String,String)
  */
@@ -59,6 +62,36 @@ public interface TilingAdapter {
      */
     public DcwCrossTileID getPrim(List<Object> l);
 
+    /**
+     * Get the tile identifier for the alternate tile
+     * 
+     * @param row a row of the table this adapter was created for
+     * @return the tile id of the alternate tile
+     */
+    public default int getTileId(DcwRowCursor row) {
+        return getTileId(row.toList(new ArrayList<Object>()));
+    }
+
+    /**
+     * Get the primitive identifier in the current tile
+     * 
+     * @param row a row of the table this adapter was created for
+     * @return the primitive id in the current tile
+     */
+    public default int getPrimId(DcwRowCursor row) {
+        return getPrimId(row.toList(new ArrayList<Object>()));
+    }
+
+    /**
+     * Get the primitive identifier in the alternate tile
+     * 
+     * @param row a row of the table this adapter was created for
+     * @return the primitive id in the alternate tile
+     */
+    public default int getTilePrimId(DcwRowCursor row) {
+        return getTilePrimId(row.toList(new ArrayList<Object>()));
+    }
+
     /**
      * A TilingAdapter for untiled data. (The tile_id column doesn't
      * exist, and the primitive column is not a cross-tile
@@ -87,6 +120,18 @@ public interface TilingAdapter {
         public DcwCrossTileID getPrim(List<Object> l) {
             return new DcwCrossTileID(getPrimId(l), -1, getTilePrimId(l));
         }
+
+        public int getTileId(DcwRowCursor row) {
+            return -1;
+        }
+
+        public int getPrimId(DcwRowCursor row) {
+            return row.getInt(column);
+        }
+
+        public int getTilePrimId(DcwRowCursor row) {
+            return row.getInt(column);
+        }
     }
 
     /**
@@ -116,6 +161,18 @@ public interface TilingAdapter {
         public DcwCrossTileID getPrim(List<Object> l) {
             return (DcwCrossTileID) l.get(column);
         }
+
+        public int getTileId(DcwRowCursor row) {
+            return row.getNextTileId(column);
+        }
+
+        public int getPrimId(DcwRowCursor row) {
+            return row.getCurrentTileKey(column);
+        }
+
+        public int getTilePrimId(DcwRowCursor row) {
+            return row.getNextTileKey(column);
+        }
     }
 
     /**
@@ -149,5 +206,17 @@ public interface TilingAdapter {
         public DcwCrossTileID getPrim(List<Object> l) {
             return new DcwCrossTileID(getPrimId(l), getTileId(l), getTilePrimId(l));
         }
+
+        public int getTileId(DcwRowCursor row) {
+            return row.getInt(tilecolumn);
+        }
+
+        public int getPrimId(DcwRowCursor row) {
+            return getTilePrimId(row);
+        }
+
+        public int getTilePrimId(DcwRowCursor row) {
+            return row.getInt(primcolumn);
+        }
     }
 }
\ No newline at end of file
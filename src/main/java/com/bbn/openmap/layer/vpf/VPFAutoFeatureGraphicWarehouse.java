@@ -29,12 +29,16 @@ import java.awt.Image;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
 
@@ -106,6 +110,15 @@ import com.bbn.openmap.util.PropUtils;
  * </pre>
  * 
  * The priority field really isn't important, the order of the overall file is.
+ * <P>
+ * 
+ * If the cacheDirectory property is set, the area and edge features of each
+ * tile are saved there by a VPFFeatureDiskCache, and read back instead of the
+ * VPF tables the next time. The index of the FeaturePriorityHolder each
+ * feature matched is saved with it, and the saved features are only used
+ * with the same priorities and isdm, idsm, ssdc, msdc and mssc settings. The
+ * attribute rows of the features aren't saved, so the disk cache isn't used
+ * when there's a featureInfoHandler.
  * 
  * @see com.bbn.openmap.omGraphics.OMGraphic
  */
@@ -120,6 +133,7 @@ public class VPFAutoFeatureGraphicWarehouse
     public final static String FEATURE_INFO_HANDLER_PROPERTY = "featureInfoHandler";
     public final static String FACC_DEBUG_PROPERTY = "debug";
     public final static String ICON_SIZE_PROPERTY = "iconSize";
+    public final static String CACHE_DIRECTORY_PROPERTY = "cacheDirectory";
 
     public final static int DEFAULT_ICON_SIZE = 20;
 
@@ -130,6 +144,16 @@ public class VPFAutoFeatureGraphicWarehouse
     protected String geoSymDirectory;
     protected VPFFeatureInfoHandler featInfoHandler;
     protected int iconSize = DEFAULT_ICON_SIZE;
+    /** Saves area and edge features between runs, null if they aren't. */
+    protected VPFFeatureDiskCache diskCache;
+    /** The index of each FeaturePriorityHolder in priorities. */
+    protected Map<FeaturePriorityHolder, Integer> priorityCodes;
+    /** A hash of the priorities, part of the key saved with the indexes. */
+    protected int prioritiesKey;
+    /** The tiles read or loaded during getFeatures(), by tile and feature. */
+    protected Map<String, TileFeatures> tileFeatures;
+    /** The tile the CoverageTable is creating features for. */
+    protected TileFeatures currentTileFeatures;
 
     protected String[] compositeFeatureFaccs = new String[] {
         "BC010",
@@ -518,6 +542,144 @@ public class VPFAutoFeatureGraphicWarehouse
         return true;
     }
 
+    /**
+     * Checks the disk cache for the area and edge features of a tile. If they
+     * were saved, they're added to their FeaturePriorityHolders and false is
+     * returned. Otherwise the features the CoverageTable creates for the tile
+     * are saved at the end of getFeatures().
+     */
+    public boolean needToFetchTileContents(CoverageTable covtable, String libraryName, String currentFeature,
+                                           TileDirectory currentTile) {
+        currentTileFeatures = null;
+        VPFFeatureDiskCache dc = diskCache;
+        if (dc == null || tileFeatures == null || featInfoHandler != null) {
+            return true;
+        }
+
+        String key = libraryName + "|" + covtable.covtype + "|" + currentFeature + "|" + currentTile.getPath();
+        TileFeatures tf = tileFeatures.get(key);
+        if (tf == null) {
+            FeatureClassInfo fci = covtable.getFeatureClassInfo(currentFeature);
+            char type = (fci == null) ? CoverageTable.SKIP_FEATURETYPE : fci.getFeatureType();
+            VPFFeatureDiskCache.Entry entry = null;
+            if (type == CoverageTable.AREA_FEATURETYPE || type == CoverageTable.EDGE_FEATURETYPE) {
+                entry = dc.getEntry(covtable, libraryName, currentFeature, currentTile);
+            }
+            tf = new TileFeatures(entry);
+            tf.loaded = (entry != null) && loadTileFeatures(dc, entry);
+            tileFeatures.put(key, tf);
+        }
+
+        if (tf.loaded) {
+            return false;
+        }
+        if (tf.entry != null) {
+            currentTileFeatures = tf;
+        }
+        return true;
+    }
+
+    /**
+     * Add the OMGraphic for a feature to the FeaturePriorityHolder it matched,
+     * keeping it for the disk cache if the tile's features are being saved.
+     */
+    protected void addFeature(FeaturePriorityHolder ph, OMGraphic omg) {
+        ph.add(omg);
+        TileFeatures tf = currentTileFeatures;
+        if (tf != null) {
+            tf.add(getPriorityCode(ph), omg);
+        }
+    }
+
+    /**
+     * @return the index of a FeaturePriorityHolder in the priorities, saved
+     *         in the disk cache with its features, or -1 if it's not one of
+     *         them.
+     */
+    protected int getPriorityCode(FeaturePriorityHolder ph) {
+        if (priorityCodes == null) {
+            Map<FeaturePriorityHolder, Integer> codes = new IdentityHashMap<FeaturePriorityHolder, Integer>();
+            int key = 1;
+            for (int i = 0; i < priorities.size(); i++) {
+                FeaturePriorityHolder holder = priorities.get(i);
+                codes.put(holder, i);
+                key = 31 * key + holder.toString().hashCode();
+            }
+            prioritiesKey = key;
+            priorityCodes = codes;
+        }
+        Integer code = priorityCodes.get(ph);
+        return (code == null) ? -1 : code.intValue();
+    }
+
+    /**
+     * The key the priority indexes are saved with in the disk cache. Which
+     * FeaturePriorityHolder a feature matches depends on the priorities and
+     * on the display mode and depth contour settings, through
+     * getExternalAttribute(), so features saved with other settings aren't
+     * used.
+     */
+    protected int getPriorityCodeKey() {
+        getPriorityCode(null);
+        int key = prioritiesKey;
+        key = 31 * key + Double.valueOf(isdm).hashCode();
+        key = 31 * key + Double.valueOf(idsm).hashCode();
+        key = 31 * key + Double.valueOf(ssdc).hashCode();
+        key = 31 * key + Double.valueOf(msdc).hashCode();
+        key = 31 * key + Double.valueOf(mssc).hashCode();
+        return key;
+    }
+
+    /**
+     * Add the features saved for a tile to their FeaturePriorityHolders.
+     * 
+     * @return true if they were there to add.
+     */
+    protected boolean loadTileFeatures(VPFFeatureDiskCache dc, VPFFeatureDiskCache.Entry entry) {
+        List<OMGraphic> graphics = new ArrayList<OMGraphic>();
+        int[] codes = dc.read(entry, getPriorityCodeKey(), graphics);
+        if (codes == null) {
+            return false;
+        }
+        for (int code : codes) {
+            if (code < 0 || code >= priorities.size()) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < codes.length; i++) {
+            OMGraphic omg = graphics.get(i);
+            if (omg instanceof OMPoly && !((OMPoly) omg).isPolygon()) {
+                // As createEdge leaves it.
+                omg.setFillPaint(OMColor.clear);
+            }
+            priorities.get(codes[i]).add(omg);
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("loaded " + codes.length + " features from " + entry.getFile());
+        }
+        return true;
+    }
+
+    /**
+     * Save the features of the tiles read during getFeatures() to the disk
+     * cache.
+     */
+    protected void saveTileFeatures() {
+        VPFFeatureDiskCache dc = diskCache;
+        if (dc != null && tileFeatures != null) {
+            int key = getPriorityCodeKey();
+            for (TileFeatures tf : tileFeatures.values()) {
+                if (tf.entry != null && !tf.loaded && tf.cacheable) {
+                    dc.write(tf.entry, key, tf.graphics, tf.codes);
+                }
+            }
+        }
+        tileFeatures = null;
+        currentTileFeatures = null;
+    }
+
     /**
      * This is where the magic happens.
      * 
@@ -554,6 +716,8 @@ public class VPFAutoFeatureGraphicWarehouse
 
         omgList.setTraverseMode(OMGraphicList.LAST_ADDED_ON_TOP);
 
+        tileFeatures = (diskCache != null) ? new HashMap<String, TileFeatures>() : null;
+
         int screenheight = proj.getHeight();
         int screenwidth = proj.getWidth();
         double dpplat = Math.abs((ll1.getY() - ll2.getY()) / screenheight);
@@ -614,6 +778,8 @@ public class VPFAutoFeatureGraphicWarehouse
             }
         }
 
+        saveTileFeatures();
+
         // Go through PriorityHolders and build up OMGraphicList, in order for
         // rendering to map. Moved this from inside the for loop above, so that
         // feature order is preserved across libraries.
@@ -754,6 +920,13 @@ public class VPFAutoFeatureGraphicWarehouse
         msdc = PropUtils.doubleFromProperties(props, prefix + EV_MSDC, msdc);
         mssc = PropUtils.doubleFromProperties(props, prefix + EV_MSSC, mssc);
         ssdc = PropUtils.doubleFromProperties(props, prefix + EV_SSDC, ssdc);
+
+        String cacheDirectory = props.getProperty(prefix + CACHE_DIRECTORY_PROPERTY);
+        if (cacheDirectory != null && cacheDirectory.trim().length() > 0) {
+            diskCache = new VPFFeatureDiskCache(new File(cacheDirectory.trim()));
+        } else {
+            diskCache = null;
+        }
     }
 
     /*
@@ -791,6 +964,8 @@ public class VPFAutoFeatureGraphicWarehouse
         getList.put(prefix + EV_MSSC, Double.toString(mssc));
         getList.put(prefix + EV_SSDC, Double.toString(ssdc));
 
+        getList.put(prefix + CACHE_DIRECTORY_PROPERTY, diskCache != null ? diskCache.getDirectory().getPath() : "");
+
         return getList;
     }
 
@@ -818,6 +993,9 @@ public class VPFAutoFeatureGraphicWarehouse
                                       "A FACC code to use to debug problems with data set", null);
         PropUtils.setI18NPropertyInfo(i18n, list, VPFAutoFeatureGraphicWarehouse.class, ICON_SIZE_PROPERTY, "Icon Size",
                                       "The pixel size of icons for point features", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, VPFAutoFeatureGraphicWarehouse.class, CACHE_DIRECTORY_PROPERTY,
+                                      "Cache Directory", "Directory to save area and edge features in between runs (optional)",
+                                      "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
         return list;
     }
 
@@ -891,6 +1069,53 @@ public class VPFAutoFeatureGraphicWarehouse
         this.featInfoHandler = featInfoHandler;
     }
 
+    /**
+     * Set the disk cache used to save area and edge features between runs.
+     * 
+     * @param diskCache VPFFeatureDiskCache, null to read the VPF tables every
+     *        time.
+     */
+    public void setDiskCache(VPFFeatureDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    public VPFFeatureDiskCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * The features of a tile, for the disk cache.
+     */
+    protected static class TileFeatures {
+        /** The cache file, null if the features aren't cached. */
+        protected final VPFFeatureDiskCache.Entry entry;
+        /** True if the features were read from the cache file. */
+        protected boolean loaded;
+        /** False if a feature went to a holder that isn't in the priorities. */
+        protected boolean cacheable = true;
+        protected final List<OMGraphic> graphics = new ArrayList<OMGraphic>();
+        protected int[] codes = new int[16];
+
+        protected TileFeatures(VPFFeatureDiskCache.Entry entry) {
+            this.entry = entry;
+        }
+
+        protected void add(int code, OMGraphic omg) {
+            if (code < 0) {
+                cacheable = false;
+                return;
+            }
+            int i = graphics.size();
+            if (i == codes.length) {
+                int[] tmp = new int[codes.length * 2];
+                System.arraycopy(codes, 0, tmp, 0, i);
+                codes = tmp;
+            }
+            codes[i] = code;
+            graphics.add(omg);
+        }
+    }
+
     /**
      * 
      * A FeaturePriorityHolder represents a rendering order slot in a list of
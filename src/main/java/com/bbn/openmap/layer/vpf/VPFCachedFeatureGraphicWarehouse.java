@@ -142,6 +142,10 @@ public class VPFCachedFeatureGraphicWarehouse
    }
 
    protected FeatureCacheGraphicList cacheList;
+   /** Where the features in the cacheList are being read from. */
+   protected CoverageTable cacheCoverage;
+   protected String cacheLibrary;
+   protected TileDirectory cacheTile;
 
    /**
     * Calls addToCachedList on the feature cache if it's available.
@@ -175,17 +179,35 @@ public class VPFCachedFeatureGraphicWarehouse
    }
 
    /**
-    * Calls VPFFeatureCache.needToFetchTileContents().
+    * Calls VPFFeatureCache.needToFetchTileContents(), without the disk cache
+    * since the tile's files can't be found.
     */
    public boolean needToFetchTileContents(String libraryName, String currentFeature, TileDirectory currentTile) {
+      return needToFetchTileContents(null, libraryName, currentFeature, currentTile);
+   }
+
+   /**
+    * Calls VPFFeatureCache.needToFetchTileContents().
+    */
+   public synchronized boolean needToFetchTileContents(CoverageTable covtable, String libraryName, String currentFeature,
+                                                       TileDirectory currentTile) {
       if (featureCache != null) {
+         // The CoverageTable is done with the last tile, so that list is
+         // full and can be saved.
+         saveCacheList();
+
          // The cached graphics list will be added to the graphics
          // list provided. If it was just created, it will also be passed
          // back from the needToFetchTileContents and should be loaded by the
          // CoverageTable. We're going to hold on to it inside the warehouse
          // and just add OMGraphics to it while it is set.
 
-         cacheList = featureCache.needToFetchTileContents(libraryName, currentFeature, currentTile, graphics);
+         cacheList = featureCache.needToFetchTileContents(covtable, libraryName, currentFeature, currentTile, graphics);
+         if (cacheList != null) {
+            cacheCoverage = covtable;
+            cacheLibrary = libraryName;
+            cacheTile = currentTile;
+         }
 
          return cacheList != null;
 
@@ -194,6 +216,20 @@ public class VPFCachedFeatureGraphicWarehouse
       }
    }
 
+   /**
+    * Hands the list the CoverageTable has been filling to the feature cache
+    * to be saved to disk, and lets go of it.
+    */
+   protected synchronized void saveCacheList() {
+      if (cacheList != null && featureCache != null) {
+         featureCache.saveTileContents(cacheCoverage, cacheLibrary, cacheTile, cacheList);
+      }
+      cacheList = null;
+      cacheCoverage = null;
+      cacheLibrary = null;
+      cacheTile = null;
+   }
+
    /**
     * Overridden method of VPFFeatureGraphicWarehouse, clones cached
     * OMGraphicLst and sets the proper DrawingAttributes settings for the
@@ -202,6 +238,8 @@ public class VPFCachedFeatureGraphicWarehouse
    public synchronized OMGraphicList getGraphics() {
       // Clone from the cache...
       if (featureCache != null) {
+         saveCacheList();
+
          // The main graphics object is made up of
          // FeatureCacheGraphicLists for features for applicable
          // tiles. All of the other warehouses are filling up the
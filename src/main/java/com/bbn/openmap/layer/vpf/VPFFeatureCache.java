@@ -24,7 +24,7 @@ package com.bbn.openmap.layer.vpf;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
-import com.bbn.openmap.util.cacheHandler.CacheHandler;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
 
 /**
@@ -33,7 +33,12 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * VPFCachedFeatureGraphicWarehouse, which in turn is used by the LibraryBean as
  * a central warehouse.
  */
-public class VPFFeatureCache extends CacheHandler {
+public class VPFFeatureCache extends ConcurrentCacheHandler {
+
+    /**
+     * Where the feature lists are saved between runs, null if they aren't.
+     */
+    protected VPFFeatureDiskCache diskCache;
 
     /**
      * Create a VPFFeatureCache of the default maximum size.
@@ -49,6 +54,19 @@ public class VPFFeatureCache extends CacheHandler {
         super(maxSize);
     }
 
+    /**
+     * Set the disk cache used to save feature lists between runs.
+     * 
+     * @param diskCache VPFFeatureDiskCache, null to only keep lists in memory.
+     */
+    public void setDiskCache(VPFFeatureDiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    public VPFFeatureDiskCache getDiskCache() {
+        return diskCache;
+    }
+
     /**
      * Adds an OMGraphic to a list, signified by the feature type and the table.
      * The PrimitiveTable provides an identifying tile path.
@@ -158,6 +176,62 @@ public class VPFFeatureCache extends CacheHandler {
         return listThatNeedsToBeLoaded;
     }
 
+    /**
+     * Query that the CoverageTable makes to decide whether to read the file
+     * contents or to used the cached version. If the list for the tile isn't
+     * in memory, it's filled from the disk cache if it has been saved there.
+     * 
+     * @param covtable the CoverageTable the features are read from, null to
+     *        skip the disk cache.
+     * @param libraryName the name of the library.
+     * @param currentFeature the feature type
+     * @param currentTile the tile directory
+     * @param requestor the OMGraphicList to add the cached list to.
+     * @return the list to fill if the CoverageTable needs to read the data
+     *         files, null if it doesn't.
+     * @see #saveTileContents(CoverageTable, String, TileDirectory,
+     *      FeatureCacheGraphicList)
+     */
+    public synchronized FeatureCacheGraphicList needToFetchTileContents(CoverageTable covtable, String libraryName,
+                                                                        String currentFeature,
+                                                                        TileDirectory currentTile,
+                                                                        OMGraphicList requestor) {
+        FeatureCacheGraphicList listThatNeedsToBeLoaded = needToFetchTileContents(libraryName, currentFeature,
+                currentTile, requestor);
+
+        if (listThatNeedsToBeLoaded != null && diskCache != null && covtable != null) {
+            VPFFeatureDiskCache.Entry entry = diskCache.getEntry(covtable, libraryName, currentFeature, currentTile);
+            if (entry != null && diskCache.read(entry, listThatNeedsToBeLoaded)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Loaded list from " + entry.getFile());
+                }
+                listThatNeedsToBeLoaded = null;
+            }
+        }
+
+        return listThatNeedsToBeLoaded;
+    }
+
+    /**
+     * Save a list filled by the CoverageTable to the disk cache, if there is
+     * one.
+     * 
+     * @param covtable the CoverageTable the features were read from.
+     * @param libraryName the name of the library.
+     * @param tile the tile directory
+     * @param list the list returned from needToFetchTileContents, filled.
+     */
+    public void saveTileContents(CoverageTable covtable, String libraryName, TileDirectory tile,
+                                 FeatureCacheGraphicList list) {
+        VPFFeatureDiskCache dc = diskCache;
+        if (dc != null && covtable != null) {
+            VPFFeatureDiskCache.Entry entry = dc.getEntry(covtable, libraryName, list.getFeatureName(), tile);
+            if (entry != null) {
+                dc.write(entry, list);
+            }
+        }
+    }
+
     /**
      * Additional get method that will call a load() method that takes into
      * account the featureType. The regular get() method will not be used,
@@ -0,0 +1,374 @@
+package com.bbn.openmap.layer.vpf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.omGraphics.OMText;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * Saves the contents of the FeatureCacheGraphicLists held by a VPFFeatureCache
+ * to files, so the VPF tables for a tile don't have to be read again the next
+ * time the application is started. There's one file for each library,
+ * coverage, feature and tile, holding the kind of each graphic, an attribute
+ * code for each graphic, a packed array of all of their coordinates, and the
+ * strings of any text. The files are read back through memory mapped buffers,
+ * and the coordinates of each graphic are copied straight from the buffer
+ * into the array the graphic keeps.
+ * <P>
+ * The attribute codes are whatever the warehouse that saved the graphics
+ * wants them to be, the VPFAutoFeatureGraphicWarehouse saves the index of the
+ * FeaturePriorityHolder each feature matched. The attribute rows of the
+ * features aren't saved. The warehouse also passes a key for its set of codes,
+ * and a file saved with a different key isn't used.
+ * <P>
+ * Each file remembers the latest modification time of the files in the
+ * coverage and tile directories it was made from, and it isn't used if any of
+ * them have changed since. VPF data that isn't in a local directory, like
+ * data read from a jar file, isn't saved.
+ */
+public class VPFFeatureDiskCache {
+
+    /** The suffix of the cache files. */
+    public final static String FILE_SUFFIX = ".vfc";
+
+    protected final static int MAGIC = 0x56504643; // VPFC
+    protected final static int VERSION = 2;
+    protected final static int HEADER_LENGTH = 24;
+
+    /** Graphic kinds, stored for each graphic in a file. */
+    protected final static byte POLYLINE = 0;
+    protected final static byte POLYGON = 1;
+    protected final static byte TEXT = 2;
+    protected final static byte POINT = 3;
+
+    protected final static Charset UTF8 = Charset.forName("UTF-8");
+
+    protected final File directory;
+
+    /**
+     * Create a disk cache.
+     *
+     * @param directory the directory to keep the cache files in, created if
+     *        it doesn't exist.
+     */
+    public VPFFeatureDiskCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the cache file for the features of a tile.
+     *
+     * @return the Entry describing the file, or null if the VPF data isn't in
+     *         a local directory.
+     */
+    public Entry getEntry(CoverageTable covtable, String libraryName, String featureName, TileDirectory tile) {
+        File coverageDir = new File(covtable.getDataPath());
+        File tileDir = new File(coverageDir, tile.getPath());
+        if (!coverageDir.isDirectory() || !tileDir.isDirectory()) {
+            return null;
+        }
+
+        long sourceTime = Math.max(getSourceTime(coverageDir), getSourceTime(tileDir));
+        String tileName = tile.getPath().length() == 0 ? "untiled" : toFileName(tile.getPath());
+        File file = new File(directory, toFileName(libraryName) + File.separator + toFileName(covtable.covtype)
+                + File.separator + toFileName(featureName) + "-" + tileName + FILE_SUFFIX);
+        return new Entry(file, sourceTime);
+    }
+
+    /**
+     * @return the latest modification time of the files in a directory.
+     */
+    protected static long getSourceTime(File dir) {
+        long time = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    time = Math.max(time, file.lastModified());
+                }
+            }
+        }
+        return time;
+    }
+
+    /**
+     * Replace anything that doesn't belong in a file name.
+     */
+    protected static String toFileName(String name) {
+        StringBuffer buf = new StringBuffer(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '.') {
+                buf.append(c);
+            } else if (c != '/' || i < name.length() - 1) {
+                buf.append('_');
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Fill a list with the graphics saved in a cache file.
+     *
+     * @param entry from getEntry().
+     * @param list the empty list to fill.
+     * @return true if the list was filled, false if the file doesn't exist, is
+     *         out of date or can't be read.
+     */
+    public boolean read(Entry entry, FeatureCacheGraphicList list) {
+        return read(entry, 0, list) != null;
+    }
+
+    /**
+     * Add the graphics saved in a cache file to a list.
+     *
+     * @param entry from getEntry().
+     * @param codeKey the key of the attribute codes the file was saved with.
+     * @param list the list to add the graphics to.
+     * @return the attribute codes of the graphics added, in the order they
+     *         were added, or null if the file doesn't exist, is out of date,
+     *         was saved with a different codeKey or can't be read. Nothing is
+     *         added to the list then.
+     */
+    public int[] read(Entry entry, int codeKey, List<OMGraphic> list) {
+        if (!entry.file.exists()) {
+            return null;
+        }
+
+        int size = list.size();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(entry.file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buf.limit() < HEADER_LENGTH || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                    throw new IOException("not a VPF feature cache file");
+                }
+                if (buf.getLong() != entry.sourceTime || buf.getInt() != codeKey) {
+                    return null;
+                }
+
+                int count = buf.getInt();
+                int kinds = buf.position();
+                buf.position(kinds + count);
+                int[] codes = new int[count];
+                buf.asIntBuffer().get(codes);
+                buf.position(buf.position() + count * 4);
+                IntBuffer offsets = buf.asIntBuffer();
+                buf.position(buf.position() + (count + 1) * 4);
+                DoubleBuffer coords = buf.asDoubleBuffer();
+                // The texts follow the coordinates.
+                buf.position(buf.position() + offsets.get(count) * 8);
+
+                for (int i = 0; i < count; i++) {
+                    int offset = offsets.get(i);
+                    byte kind = buf.get(kinds + i);
+                    switch (kind) {
+                    case POLYLINE:
+                    case POLYGON:
+                        double[] llpts = new double[offsets.get(i + 1) - offset];
+                        coords.position(offset);
+                        coords.get(llpts);
+                        OMPoly py = new OMPoly(llpts, OMGraphic.RADIANS, OMGraphic.LINETYPE_STRAIGHT);
+                        py.setIsPolygon(kind == POLYGON);
+                        list.add(py);
+                        break;
+                    case TEXT:
+                        byte[] text = new byte[buf.getInt()];
+                        buf.get(text);
+                        list.add(LayerGraphicWarehouseSupport.createOMText(new String(text, UTF8), coords.get(offset),
+                                coords.get(offset + 1)));
+                        break;
+                    case POINT:
+                        list.add(LayerGraphicWarehouseSupport.createOMPoint(coords.get(offset), coords.get(offset + 1)));
+                        break;
+                    default:
+                        throw new IOException("unknown graphic kind " + kind);
+                    }
+                }
+                return codes;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ioe) {
+            Debug.output("VPFFeatureDiskCache: couldn't read " + entry.file + ": " + ioe.getMessage());
+        } catch (RuntimeException re) {
+            // BufferUnderflowException and friends, from a truncated file.
+            Debug.output("VPFFeatureDiskCache: couldn't read " + entry.file + ": " + re);
+        }
+        while (list.size() > size) {
+            list.remove(list.size() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Save the graphics of a list to a cache file. Lists holding graphics
+     * that weren't created by the VPFCachedFeatureGraphicWarehouse aren't
+     * saved.
+     *
+     * @param entry from getEntry().
+     * @param list the filled list.
+     */
+    public void write(Entry entry, FeatureCacheGraphicList list) {
+        write(entry, 0, list, new int[list.size()]);
+    }
+
+    /**
+     * Save graphics to a cache file, with an attribute code for each of them.
+     * Nothing is saved if there are graphics that aren't polygons, polylines,
+     * text or points in lat/lon.
+     *
+     * @param entry from getEntry().
+     * @param codeKey a key for the set of attribute codes, read() has to be
+     *        called with the same key.
+     * @param list the graphics.
+     * @param attributeCodes a code for each graphic.
+     */
+    public void write(Entry entry, int codeKey, List<OMGraphic> list, int[] attributeCodes) {
+        int count = list.size();
+        byte[] kinds = new byte[count];
+        int[] offsets = new int[count + 1];
+        byte[][] texts = new byte[count][];
+
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            OMGraphic omg = list.get(i);
+            offsets[i] = length;
+            if (omg instanceof OMPoly && ((OMPoly) omg).getRenderType() == OMGraphic.RENDERTYPE_LATLON) {
+                OMPoly py = (OMPoly) omg;
+                kinds[i] = py.isPolygon() ? POLYGON : POLYLINE;
+                length += py.getLatLonArray().length;
+            } else if (omg instanceof OMText && ((OMText) omg).getRenderType() == OMGraphic.RENDERTYPE_LATLON) {
+                kinds[i] = TEXT;
+                texts[i] = ((OMText) omg).getData().getBytes(UTF8);
+                length += 2;
+            } else if (omg instanceof OMPoint && ((OMPoint) omg).getRenderType() == OMGraphic.RENDERTYPE_LATLON) {
+                kinds[i] = POINT;
+                length += 2;
+            } else {
+                return;
+            }
+        }
+        offsets[count] = length;
+
+        File parent = entry.file.getParentFile();
+        File tmpFile = new File(parent, entry.file.getName() + ".tmp");
+        try {
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("can't create " + parent);
+            }
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(entry.sourceTime);
+                out.writeInt(codeKey);
+                out.writeInt(count);
+                out.write(kinds);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(attributeCodes[i]);
+                }
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                for (int i = 0; i < count; i++) {
+                    OMGraphic omg = list.get(i);
+                    if (kinds[i] == TEXT) {
+                        out.writeDouble(((OMText) omg).getLat());
+                        out.writeDouble(((OMText) omg).getLon());
+                    } else if (kinds[i] == POINT) {
+                        out.writeDouble(((OMPoint) omg).getLat());
+                        out.writeDouble(((OMPoint) omg).getLon());
+                    } else {
+                        for (double d : ((OMPoly) omg).getLatLonArray()) {
+                            out.writeDouble(d);
+                        }
+                    }
+                }
+                for (byte[] text : texts) {
+                    if (text != null) {
+                        out.writeInt(text.length);
+                        out.write(text);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+
+            entry.file.delete();
+            if (!tmpFile.renameTo(entry.file)) {
+                throw new IOException("can't rename " + tmpFile);
+            }
+        } catch (IOException ioe) {
+            if (Debug.debugging("vpf")) {
+                Debug.output("VPFFeatureDiskCache: couldn't save " + entry.file + ": " + ioe.getMessage());
+            }
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Remove all of the cache files.
+     */
+    public void clear() {
+        delete(directory, false);
+    }
+
+    protected void delete(File dir, boolean self) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    delete(file, true);
+                } else if (file.getName().endsWith(FILE_SUFFIX)) {
+                    file.delete();
+                }
+            }
+        }
+        if (self) {
+            dir.delete();
+        }
+    }
+
+    /**
+     * A cache file, and the modification time of the VPF files its contents
+     * come from.
+     */
+    public static class Entry {
+        protected final File file;
+        protected final long sourceTime;
+
+        public Entry(File file, long sourceTime) {
+            this.file = file;
+            this.sourceTime = sourceTime;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getSourceTime() {
+            return sourceTime;
+        }
+    }
+}
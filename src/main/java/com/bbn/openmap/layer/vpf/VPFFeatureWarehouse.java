@@ -35,6 +35,24 @@ public interface VPFFeatureWarehouse
 
    public boolean needToFetchTileContents(String libraryName, String currentFeature, TileDirectory currentTile);
 
+   /**
+    * Asked by the CoverageTable before it reads the features of a tile. A
+    * warehouse that needs to find the files of the tile can override this,
+    * the default calls needToFetchTileContents(libraryName, currentFeature,
+    * currentTile).
+    * 
+    * @param covtable the CoverageTable the features would be read from.
+    * @param libraryName the name of the library.
+    * @param currentFeature the feature type.
+    * @param currentTile the tile directory.
+    * @return true if the features should be read, false if the warehouse
+    *         already has them.
+    */
+   public default boolean needToFetchTileContents(CoverageTable covtable, String libraryName, String currentFeature,
+                                                  TileDirectory currentTile) {
+      return needToFetchTileContents(libraryName, currentFeature, currentTile);
+   }
+
    /**
      *  
      */
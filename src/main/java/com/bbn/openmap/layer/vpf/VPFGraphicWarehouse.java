@@ -67,6 +67,38 @@ public interface VPFGraphicWarehouse extends VPFWarehouse {
                            LatLonPoint ll1, LatLonPoint ll2, double dpplat,
                            double dpplon, CoordFloatString coords);
 
+    /**
+     * Method called by the VPF reader code before an area row is
+     * turned into a list for createArea. A warehouse that skips some
+     * areas can say so here, so their rows don't get copied out of
+     * the table. The row is only good during the call.
+     * 
+     * @param c the coverage table for this area
+     * @param a the areatable being parsed
+     * @param row the record read from the area table
+     * @return false if createArea would skip the row, true by default.
+     */
+    public default boolean wantArea(CoverageTable c, AreaTable a,
+                                    DcwRowCursor row) {
+        return true;
+    }
+
+    /**
+     * Method called by the VPF reader code before an edge row is
+     * turned into a list for createEdge. A warehouse that skips some
+     * edges can say so here, so their rows don't get copied out of
+     * the table. The row is only good during the call.
+     * 
+     * @param c the coverage table for this edge
+     * @param e the edgetable being parsed
+     * @param row the record read from the edge table
+     * @return false if createEdge would skip the row, true by default.
+     */
+    public default boolean wantEdge(CoverageTable c, EdgeTable e,
+                                    DcwRowCursor row) {
+        return true;
+    }
+
     /**
      * Method called by the VPF reader code to construct a text
      * feature.
@@ -51,6 +51,7 @@ import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.PaletteHelper;
 import com.bbn.openmap.util.PropUtils;
+import com.bbn.openmap.util.cacheHandler.CacheStatistics;
 
 /**
  * Implement an OpenMap Layer for display of NIMA data sources in the VPF
@@ -586,6 +587,20 @@ public class VPFLayer
       return warehouse;
    }
 
+   /**
+    * @return the statistics of the shared feature cache, if the warehouse uses
+    *         one.
+    */
+   public CacheStatistics getCacheStatistics() {
+      if (warehouse instanceof VPFCachedFeatureGraphicWarehouse) {
+         VPFFeatureCache featureCache = ((VPFCachedFeatureGraphicWarehouse) warehouse).getFeatureCache();
+         if (featureCache != null) {
+            return featureCache.getStatistics();
+         }
+      }
+      return null;
+   }
+
    /**
     * If the warehouse gets set as a result of this method being called, the
     * properties will beed to be reset on it.
@@ -707,7 +722,7 @@ public class VPFLayer
             lst.drawFeatures((int) p.getScale(), p.getWidth(), p.getHeight(), currentCoverage, (VPFFeatureWarehouse) warehouse,
                              upperleft, lowerright);
          } else {
-            lst.drawTile((int) p.getScale(), p.getWidth(), p.getHeight(), currentCoverage, warehouse, upperleft, lowerright);
+            lst.drawTile((int) p.getScale(), p.getWidth(), p.getHeight(), currentCoverage, warehouse, upperleft, lowerright, this);
          }
       }
       long stop = System.currentTimeMillis();
@@ -250,6 +250,48 @@ public class VPFLayerGraphicWarehouse extends LayerGraphicWarehouseSupport {
         return false;
     }
 
+    /**
+     * Determine if this primitive should be drawn or skipped, before
+     * its row is turned into a list.
+     * 
+     * @param row the row for the primitive feature object.
+     * @param skipArray a list of columns.
+     * @return true if the object should be drawn.
+     */
+    protected boolean createFeature(DcwRowCursor row, int[] skipArray) {
+        if (skipArray.length == 0) {
+            return true;
+        }
+        for (int i = 0; i < skipArray.length; i++) {
+            if (VPFUtil.objectToInt(row, skipArray[i]) != Integer.MIN_VALUE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the rows createArea would skip.
+     */
+    public boolean wantArea(CoverageTable covtable, AreaTable areatable,
+                            DcwRowCursor row) {
+        if (areaSkipFeatures == null) {
+            areaSkipFeatures = getSkipArray(areaFeatures, areatable, ".aft_id");
+        }
+        return createFeature(row, areaSkipFeatures);
+    }
+
+    /**
+     * Skips the rows createEdge would skip.
+     */
+    public boolean wantEdge(CoverageTable c, EdgeTable edgetable,
+                            DcwRowCursor row) {
+        if (edgeSkipFeatures == null) {
+            edgeSkipFeatures = getSkipArray(edgeFeatures, edgetable, ".lft_id");
+        }
+        return createFeature(row, edgeSkipFeatures);
+    }
+
     final transient static java.awt.Color aaronscolor = new java.awt.Color(0xBDDE83);
 
     /**
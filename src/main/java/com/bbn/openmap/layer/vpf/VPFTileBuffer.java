@@ -0,0 +1,215 @@
+package com.bbn.openmap.layer.vpf;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Holds the primitives read from one tile so they can be handed to the real
+ * warehouse later. The LibrarySelectionTable reads tiles on several threads
+ * with one of these standing in for the warehouse, and then draws the buffers
+ * into the warehouse in tile order on its own thread, so the warehouse sees
+ * the same calls in the same order it would have if the tiles were read one at
+ * a time. The tile's tables stay open until the buffer is closed, because the
+ * warehouse may look up more rows from them.
+ * <p>
+ * The warehouses keep their state in fields that aren't safe to share between
+ * threads, and the FeatureClassInfo objects of the coverage are shared by all
+ * of its tiles, so the OMGraphics are still created on the drawing thread. The
+ * edges of the areas, which take most of the reading, are followed on the tile
+ * thread, and handed to the AreaTable when the warehouse gets the area.
+ */
+class VPFTileBuffer
+      implements VPFGraphicWarehouse {
+
+   /** The warehouse the primitives are for, asked what should be read. */
+   protected final VPFGraphicWarehouse warehouse;
+   /** The open tables of the tile. */
+   protected final TableHolder tables;
+
+   protected final List<Primitive> areas = new ArrayList<Primitive>();
+   protected final List<Primitive> texts = new ArrayList<Primitive>();
+   protected final List<Primitive> edges = new ArrayList<Primitive>();
+   protected final List<Primitive> epoints = new ArrayList<Primitive>();
+   protected final List<Primitive> cpoints = new ArrayList<Primitive>();
+
+   protected VPFTileBuffer(VPFGraphicWarehouse warehouse, TableHolder tables) {
+      this.warehouse = warehouse;
+      this.tables = tables;
+   }
+
+   /**
+    * Send the primitives to a warehouse, table by table in the order
+    * TableHolder.drawTile uses, and in the order they were read.
+    */
+   protected void draw(VPFGraphicWarehouse target) {
+      tables.drawBuffered(this, target);
+   }
+
+   /**
+    * Close the tile's tables.
+    */
+   protected void close() {
+      tables.close();
+   }
+
+   /**
+    * @return the number of primitives held.
+    */
+   protected int size() {
+      return areas.size() + texts.size() + edges.size() + epoints.size() + cpoints.size();
+   }
+
+   protected void drawAreas(VPFGraphicWarehouse target) {
+      for (Primitive p : areas) {
+         AreaTable a = (AreaTable) p.table;
+         if (p.edgePoints != null) {
+            a.setEdgePoints(p.row, p.edgePoints, p.edgeSize);
+         }
+         try {
+            target.createArea(p.covtable, a, p.row, p.ll1, p.ll2, p.dpplat, p.dpplon);
+         } finally {
+            a.setEdgePoints(null, null, 0);
+         }
+      }
+   }
+
+   protected void drawTexts(VPFGraphicWarehouse target) {
+      for (Primitive p : texts) {
+         target.createText(p.covtable, (TextTable) p.table, p.row, p.latitude, p.longitude, p.text);
+      }
+   }
+
+   protected void drawEdges(VPFGraphicWarehouse target) {
+      for (Primitive p : edges) {
+         target.createEdge(p.covtable, (EdgeTable) p.table, p.row, p.ll1, p.ll2, p.dpplat, p.dpplon, p.coords);
+      }
+   }
+
+   protected void drawNodes(VPFGraphicWarehouse target, boolean isEntityNode) {
+      for (Primitive p : isEntityNode ? epoints : cpoints) {
+         target.createNode(p.covtable, (NodeTable) p.table, p.row, p.latitude, p.longitude, isEntityNode);
+      }
+   }
+
+   /*
+    * The tables reuse their row lists, so the rows are copied. The warehouse
+    * can't be asked on this thread which rows it wants, so every row is taken
+    * and the edge points of every area are worked out here, even for the ones
+    * the warehouse will skip.
+    */
+
+   public void createArea(CoverageTable c, AreaTable a, List<Object> l, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
+                          double dpplon) {
+      Primitive p = new Primitive(c, a, l);
+      p.ll1 = ll1;
+      p.ll2 = ll2;
+      p.dpplat = dpplat;
+      p.dpplon = dpplon;
+      List<CoordFloatString> ipts = new ArrayList<CoordFloatString>();
+      try {
+         p.edgeSize = a.computeEdgePoints(p.row, ipts);
+         p.edgePoints = ipts;
+      } catch (FormatException f) {
+         // Left for the warehouse to run into and report.
+      }
+      areas.add(p);
+   }
+
+   public void createEdge(CoverageTable c, EdgeTable e, List<Object> l, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
+                          double dpplon, CoordFloatString coords) {
+      Primitive p = new Primitive(c, e, l);
+      p.ll1 = ll1;
+      p.ll2 = ll2;
+      p.dpplat = dpplat;
+      p.dpplon = dpplon;
+      p.coords = coords;
+      edges.add(p);
+   }
+
+   public void createText(CoverageTable c, TextTable t, List<Object> textprim, double latitude, double longitude, String text) {
+      Primitive p = new Primitive(c, t, textprim);
+      p.latitude = latitude;
+      p.longitude = longitude;
+      p.text = text;
+      texts.add(p);
+   }
+
+   public void createNode(CoverageTable c, NodeTable t, List<Object> nodeprim, double latitude, double longitude,
+                          boolean isEntityNode) {
+      Primitive p = new Primitive(c, t, nodeprim);
+      p.latitude = latitude;
+      p.longitude = longitude;
+      (isEntityNode ? epoints : cpoints).add(p);
+   }
+
+   public boolean drawEdgeFeatures() {
+      return warehouse.drawEdgeFeatures();
+   }
+
+   public boolean drawTextFeatures() {
+      return warehouse.drawTextFeatures();
+   }
+
+   public boolean drawAreaFeatures() {
+      return warehouse.drawAreaFeatures();
+   }
+
+   public boolean drawEPointFeatures() {
+      return warehouse.drawEPointFeatures();
+   }
+
+   public boolean drawCPointFeatures() {
+      return warehouse.drawCPointFeatures();
+   }
+
+   public void resetForCAT() {
+   }
+
+   public Component getGUI(LibrarySelectionTable lst) {
+      return null;
+   }
+
+   public List<String> getFeatures() {
+      return warehouse.getFeatures();
+   }
+
+   public List<String> getUseLibraries() {
+      return warehouse.getUseLibraries();
+   }
+
+   public void setUseLibraries(List<String> lib) {
+   }
+
+   public boolean checkLibraryForUsage(String libName) {
+      return warehouse.checkLibraryForUsage(libName);
+   }
+
+   /**
+    * The arguments of one create call.
+    */
+   protected static class Primitive {
+      final CoverageTable covtable;
+      final DcwRecordFile table;
+      final List<Object> row;
+      LatLonPoint ll1;
+      LatLonPoint ll2;
+      double dpplat;
+      double dpplon;
+      CoordFloatString coords;
+      List<CoordFloatString> edgePoints;
+      int edgeSize;
+      double latitude;
+      double longitude;
+      String text;
+
+      Primitive(CoverageTable covtable, DcwRecordFile table, List<Object> row) {
+         this.covtable = covtable;
+         this.table = table;
+         this.row = new ArrayList<Object>(row);
+      }
+   }
+}
@@ -83,6 +83,32 @@ public class VPFUtil {
       return v;
    }
 
+   /**
+    * Get the value of a column of a row, like objectToInt(row.getObject(column))
+    * does without creating the object.
+    * 
+    * @param row the row
+    * @param column the column in the row
+    * @return the value of short and int columns as an int. VPF null values get
+    *         returned as Integer.MIN_VALUE, as do all other types
+    */
+   public static final int objectToInt(DcwRowCursor row, int column) {
+      int v = Integer.MIN_VALUE;
+      char type = row.getFieldType(column);
+      if (type == DcwColumnInfo.VPF_COLUMN_INT) {
+         v = row.getInt(column);
+         if (v == Integer.MIN_VALUE + 1) {
+            v = Integer.MIN_VALUE;
+         }
+      } else if (type == DcwColumnInfo.VPF_COLUMN_SHORT) {
+         v = row.getInt(column);
+         if (v == Short.MIN_VALUE + 1) {
+            v = Integer.MIN_VALUE;
+         }
+      }
+      return v;
+   }
+
    /** some strings */
    public final static String Edge = "Edge";
    public final static String Edges = "Edges";
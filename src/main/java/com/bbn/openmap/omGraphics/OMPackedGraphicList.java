@@ -0,0 +1,722 @@
+package com.bbn.openmap.omGraphics;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.bbn.openmap.proj.ProjMath;
+import com.bbn.openmap.proj.Projection;
+
+/**
+ * An OMGraphicList that can hold a great many points and polylines without
+ * creating an OMGraphic for each one. The coordinates are packed into double
+ * arrays, and each point or polyline just keeps the index of its style, a
+ * DrawingAttributes shared with all of the others drawn the same way. The
+ * packed graphics are drawn under any OMGraphics added to the list the usual
+ * way.
+ * <P>
+ * An OMPoint or OMPoly view of a packed graphic is created when it's asked for
+ * with getPoint() or getPolyline(), or found with findClosest(), so it can be
+ * selected or edited like any other OMGraphic. The view is drawn instead of the
+ * packed graphic until it is released, and changes made to it are copied back
+ * into the packed arrays then. Only the released graphic is projected again.
+ * A view made by findClosest() is released when findClosest() finds something
+ * else, unless it has been selected or asked for with getPoint() or
+ * getPolyline(), so moving the mouse over the map doesn't pile up views. The
+ * indexes of the closest packed graphics can also be found without making a
+ * view, with findClosestPoint() and findClosestPolyline().
+ * <P>
+ * Points are drawn like OMPoints, using the point radius and oval setting of
+ * their style. Polylines are drawn with straight lines between their projected
+ * coordinates, with the line paint and stroke of their style, and aren't split
+ * where they cross the dateline. A polyline with a coordinate that can't be
+ * seen in the projection isn't drawn.
+ */
+public class OMPackedGraphicList extends OMGraphicList {
+
+    private static final long serialVersionUID = 1L;
+
+    protected List<DrawingAttributes> styles = new ArrayList<DrawingAttributes>();
+
+    /** lat, lon pairs for the points, in decimal degrees. */
+    protected double[] pointCoords = new double[0];
+    protected int[] pointStyles = new int[0];
+    protected int pointCount;
+
+    /** lat, lon pairs for all of the polylines, in decimal degrees. */
+    protected double[] polyCoords = new double[0];
+    protected int polyCoordCount;
+    /** Where each polyline's coordinates start, polyStarts[polyCount] is the end. */
+    protected int[] polyStarts = new int[1];
+    protected int[] polyStyles = new int[0];
+    protected int polyCount;
+
+    /** Projected point coordinates, x is NaN for points that can't be seen. */
+    protected transient float[] pointX;
+    protected transient float[] pointY;
+    /** Projected polyline coordinates. */
+    protected transient float[] polyX;
+    protected transient float[] polyY;
+    /** Polylines that can't be seen in the projection. */
+    protected transient BitSet polyHidden;
+    /**
+     * The number of polylines batched into the shapes of a chunk, so a chunk
+     * can be batched again when one of its polylines gets or loses a view.
+     */
+    public final static int POLYS_PER_SHAPE = 256;
+
+    /** The polylines of each chunk and style, batched for drawing. */
+    protected transient GeneralPath[][] polyShapes;
+    /** The projection of the projected coordinates, null if not projected. */
+    protected transient Projection projection;
+    /** The number of points and polylines that have been projected. */
+    protected transient int projectedPoints;
+    protected transient int projectedPolys;
+
+    protected Map<Integer, OMPoint> pointViews = new HashMap<Integer, OMPoint>();
+    protected Map<Integer, OMPoly> polyViews = new HashMap<Integer, OMPoly>();
+
+    /** The view findClosest() last made, until it's claimed or released. */
+    protected transient OMGraphic foundView;
+
+    public OMPackedGraphicList() {
+        super();
+    }
+
+    /**
+     * Add a style for packed graphics to use.
+     *
+     * @param da the DrawingAttributes for the graphics.
+     * @return the index of the style, to use when adding graphics.
+     */
+    public synchronized int addStyle(DrawingAttributes da) {
+        styles.add(da);
+        return styles.size() - 1;
+    }
+
+    public synchronized DrawingAttributes getStyle(int styleIndex) {
+        return styles.get(styleIndex);
+    }
+
+    public synchronized int getStyleCount() {
+        return styles.size();
+    }
+
+    /**
+     * Add a point.
+     *
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @param styleIndex the style index returned from addStyle().
+     * @return the index of the point.
+     */
+    public synchronized int addPoint(double lat, double lon, int styleIndex) {
+        checkStyle(styleIndex);
+        if (pointCount == pointStyles.length) {
+            int capacity = Math.max(16, pointCount * 3 / 2);
+            pointCoords = Arrays.copyOf(pointCoords, capacity * 2);
+            pointStyles = Arrays.copyOf(pointStyles, capacity);
+        }
+        pointCoords[pointCount * 2] = lat;
+        pointCoords[pointCount * 2 + 1] = lon;
+        pointStyles[pointCount] = styleIndex;
+        return pointCount++;
+    }
+
+    /**
+     * Add a polyline.
+     *
+     * @param llPoints lat, lon pairs in decimal degrees.
+     * @param styleIndex the style index returned from addStyle().
+     * @return the index of the polyline.
+     */
+    public int addPolyline(double[] llPoints, int styleIndex) {
+        return addPolyline(llPoints, 0, llPoints.length / 2, styleIndex);
+    }
+
+    /**
+     * Add a polyline from part of an array.
+     *
+     * @param llPoints lat, lon pairs in decimal degrees.
+     * @param offset the index in llPoints of the first latitude.
+     * @param numPoints the number of lat, lon pairs in the polyline.
+     * @param styleIndex the style index returned from addStyle().
+     * @return the index of the polyline.
+     */
+    public synchronized int addPolyline(double[] llPoints, int offset, int numPoints, int styleIndex) {
+        checkStyle(styleIndex);
+        if (polyCount == polyStyles.length) {
+            int capacity = Math.max(16, polyCount * 3 / 2);
+            polyStyles = Arrays.copyOf(polyStyles, capacity);
+            polyStarts = Arrays.copyOf(polyStarts, capacity + 1);
+        }
+        int needed = (polyCoordCount + numPoints) * 2;
+        if (needed > polyCoords.length) {
+            polyCoords = Arrays.copyOf(polyCoords, Math.max(needed, polyCoords.length * 3 / 2));
+        }
+        System.arraycopy(llPoints, offset, polyCoords, polyCoordCount * 2, numPoints * 2);
+        polyCoordCount += numPoints;
+        polyStyles[polyCount] = styleIndex;
+        polyStarts[polyCount + 1] = polyCoordCount;
+        return polyCount++;
+    }
+
+    protected void checkStyle(int styleIndex) {
+        if (styleIndex < 0 || styleIndex >= styles.size()) {
+            throw new IllegalArgumentException("no style " + styleIndex + ", add styles with addStyle()");
+        }
+    }
+
+    public synchronized int getPointCount() {
+        return pointCount;
+    }
+
+    public synchronized int getPolylineCount() {
+        return polyCount;
+    }
+
+    public synchronized int getPointStyle(int index) {
+        return pointStyles[index];
+    }
+
+    public synchronized int getPolylineStyle(int index) {
+        return polyStyles[index];
+    }
+
+    /**
+     * Remove all of the packed graphics and their views, the styles and the
+     * OMGraphics on the list are kept.
+     */
+    public synchronized void clearPacked() {
+        pointCount = 0;
+        polyCount = 0;
+        polyCoordCount = 0;
+        pointViews.clear();
+        polyViews.clear();
+        foundView = null;
+        projection = null;
+        projectedPoints = 0;
+        projectedPolys = 0;
+        polyShapes = null;
+    }
+
+    /**
+     * Get an OMPoint for a packed point. The same OMPoint is returned until it
+     * is released, and it's drawn instead of the packed point.
+     *
+     * @param index the index of the point.
+     * @return OMPoint
+     */
+    public synchronized OMPoint getPoint(int index) {
+        OMPoint view = pointView(index);
+        if (view == foundView) {
+            foundView = null;
+        }
+        return view;
+    }
+
+    protected OMPoint pointView(int index) {
+        if (index < 0 || index >= pointCount) {
+            throw new IndexOutOfBoundsException("point " + index + " of " + pointCount);
+        }
+        OMPoint view = pointViews.get(index);
+        if (view == null) {
+            view = new OMPoint(pointCoords[index * 2], pointCoords[index * 2 + 1]);
+            styles.get(pointStyles[index]).setTo(view);
+            if (projection != null) {
+                view.generate(projection);
+            }
+            pointViews.put(index, view);
+        }
+        return view;
+    }
+
+    /**
+     * Get an OMPoly for a packed polyline. The same OMPoly is returned until it
+     * is released, and it's drawn instead of the packed polyline.
+     *
+     * @param index the index of the polyline.
+     * @return OMPoly
+     */
+    public synchronized OMPoly getPolyline(int index) {
+        OMPoly view = polylineView(index);
+        if (view == foundView) {
+            foundView = null;
+        }
+        return view;
+    }
+
+    protected OMPoly polylineView(int index) {
+        if (index < 0 || index >= polyCount) {
+            throw new IndexOutOfBoundsException("polyline " + index + " of " + polyCount);
+        }
+        OMPoly view = polyViews.get(index);
+        if (view == null) {
+            int start = polyStarts[index] * 2;
+            double[] llPoints = new double[polyStarts[index + 1] * 2 - start];
+            System.arraycopy(polyCoords, start, llPoints, 0, llPoints.length);
+            view = new OMPoly(llPoints, OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT);
+            styles.get(polyStyles[index]).setOMGraphicEdgeAttributes(view);
+            polyViews.put(index, view);
+            if (projection != null) {
+                view.generate(projection);
+                if (index < projectedPolys) {
+                    createPolyShapes(index / POLYS_PER_SHAPE);
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Copy the location of a view back into the packed arrays, and go back to
+     * drawing the packed graphic.
+     *
+     * @param view an OMPoint or OMPoly from getPoint() or getPolyline().
+     * @return true if the view belonged to this list.
+     */
+    public synchronized boolean release(OMGraphic view) {
+        if (view == foundView) {
+            foundView = null;
+        }
+        for (Iterator<Map.Entry<Integer, OMPoint>> it = pointViews.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, OMPoint> entry = it.next();
+            if (entry.getValue() == view) {
+                int index = entry.getKey();
+                pointCoords[index * 2] = entry.getValue().getLat();
+                pointCoords[index * 2 + 1] = entry.getValue().getLon();
+                it.remove();
+                projectPoint(index);
+                return true;
+            }
+        }
+        for (Iterator<Map.Entry<Integer, OMPoly>> it = polyViews.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Integer, OMPoly> entry = it.next();
+            if (entry.getValue() == view) {
+                int index = entry.getKey();
+                double[] llPoints = entry.getValue().getLatLonArray();
+                if (!isPolylineAt(index, llPoints)) {
+                    llPoints = llPoints.clone();
+                    ProjMath.arrayRadToDeg(llPoints);
+                    setPolylineCoordinates(index, llPoints);
+                }
+                it.remove();
+                projectPolyline(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if a polyline's packed coordinates are the same as the
+     *         radian coordinates of its view.
+     */
+    protected boolean isPolylineAt(int index, double[] radPoints) {
+        int start = polyStarts[index] * 2;
+        if (radPoints.length != polyStarts[index + 1] * 2 - start) {
+            return false;
+        }
+        for (int i = 0; i < radPoints.length; i++) {
+            if (radPoints[i] != ProjMath.degToRad(polyCoords[start + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Project one point again with the same projection, after it changed.
+     */
+    protected void projectPoint(int index) {
+        if (projection != null && index < projectedPoints) {
+            projection.forwardArray(pointCoords, index * 2, pointX, pointY, index, 1);
+            if (!projection.isPlotable(pointCoords[index * 2], pointCoords[index * 2 + 1])) {
+                pointX[index] = Float.NaN;
+            }
+        }
+    }
+
+    /**
+     * Project one polyline again with the same projection, after it changed,
+     * and batch its chunk again.
+     */
+    protected void projectPolyline(int index) {
+        if (projection != null && index < projectedPolys) {
+            int start = polyStarts[index];
+            int end = polyStarts[index + 1];
+            projection.forwardArray(polyCoords, start * 2, polyX, polyY, start, end - start);
+            polyHidden.clear(index);
+            for (int j = start; j < end; j++) {
+                if (!projection.isPlotable(polyCoords[j * 2], polyCoords[j * 2 + 1])) {
+                    polyHidden.set(index);
+                    break;
+                }
+            }
+            createPolyShapes(index / POLYS_PER_SHAPE);
+        }
+    }
+
+    /**
+     * Release all of the views.
+     */
+    public synchronized void releaseAll() {
+        for (OMPoint view : new ArrayList<OMPoint>(pointViews.values())) {
+            release(view);
+        }
+        for (OMPoly view : new ArrayList<OMPoly>(polyViews.values())) {
+            release(view);
+        }
+    }
+
+    /**
+     * Replace the coordinates of a polyline, moving the ones after it if the
+     * number of coordinates changes.
+     */
+    protected void setPolylineCoordinates(int index, double[] llPoints) {
+        int start = polyStarts[index];
+        int oldCount = polyStarts[index + 1] - start;
+        int newCount = llPoints.length / 2;
+        int shift = newCount - oldCount;
+        if (shift != 0) {
+            if (shift > 0 && (polyCoordCount + shift) * 2 > polyCoords.length) {
+                polyCoords = Arrays.copyOf(polyCoords, (polyCoordCount + shift) * 2);
+            }
+            int end = polyStarts[index + 1];
+            System.arraycopy(polyCoords, end * 2, polyCoords, (end + shift) * 2, (polyCoordCount - end) * 2);
+            if (projection != null && index < projectedPolys) {
+                // Keep the projected coordinates of the polylines after it.
+                int projectedEnd = polyStarts[projectedPolys];
+                if (projectedEnd + shift > polyX.length) {
+                    polyX = Arrays.copyOf(polyX, projectedEnd + shift);
+                    polyY = Arrays.copyOf(polyY, projectedEnd + shift);
+                }
+                System.arraycopy(polyX, end, polyX, end + shift, projectedEnd - end);
+                System.arraycopy(polyY, end, polyY, end + shift, projectedEnd - end);
+            }
+            for (int i = index + 1; i <= polyCount; i++) {
+                polyStarts[i] += shift;
+            }
+            polyCoordCount += shift;
+        }
+        System.arraycopy(llPoints, 0, polyCoords, start * 2, newCount * 2);
+    }
+
+    /**
+     * Project the packed graphics and the OMGraphics on the list.
+     */
+    public boolean generate(Projection p, boolean forceProjectAll) {
+        synchronized (this) {
+            if (forceProjectAll || projection == null || !p.equals(projection) || projectedPoints != pointCount
+                    || projectedPolys != polyCount) {
+                generatePacked(p);
+            }
+            for (OMPoint view : pointViews.values()) {
+                view.generate(p);
+            }
+            for (OMPoly view : polyViews.values()) {
+                view.generate(p);
+            }
+        }
+        return super.generate(p, forceProjectAll);
+    }
+
+    protected void generatePacked(Projection p) {
+        if (pointX == null || pointX.length < pointCount) {
+            pointX = new float[pointCount];
+            pointY = new float[pointCount];
+        }
+        p.forwardArray(pointCoords, 0, pointX, pointY, 0, pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            if (!p.isPlotable(pointCoords[i * 2], pointCoords[i * 2 + 1])) {
+                pointX[i] = Float.NaN;
+            }
+        }
+
+        if (polyX == null || polyX.length < polyCoordCount) {
+            polyX = new float[polyCoordCount];
+            polyY = new float[polyCoordCount];
+        }
+        p.forwardArray(polyCoords, 0, polyX, polyY, 0, polyCoordCount);
+        polyHidden = new BitSet(polyCount);
+        for (int i = 0; i < polyCount; i++) {
+            for (int j = polyStarts[i]; j < polyStarts[i + 1]; j++) {
+                if (!p.isPlotable(polyCoords[j * 2], polyCoords[j * 2 + 1])) {
+                    polyHidden.set(i);
+                    break;
+                }
+            }
+        }
+
+        projection = p;
+        projectedPoints = pointCount;
+        projectedPolys = polyCount;
+        createPolyShapes();
+    }
+
+    /**
+     * Batch the projected polylines into a shape for each chunk and style,
+     * leaving out the ones that have views.
+     */
+    protected void createPolyShapes() {
+        polyShapes = new GeneralPath[(projectedPolys + POLYS_PER_SHAPE - 1) / POLYS_PER_SHAPE][];
+        for (int c = 0; c < polyShapes.length; c++) {
+            createPolyShapes(c);
+        }
+    }
+
+    /**
+     * Batch the projected polylines of one chunk.
+     */
+    protected void createPolyShapes(int chunk) {
+        GeneralPath[] shapes = new GeneralPath[styles.size()];
+        int last = Math.min(projectedPolys, (chunk + 1) * POLYS_PER_SHAPE);
+        for (int i = chunk * POLYS_PER_SHAPE; i < last; i++) {
+            int start = polyStarts[i];
+            int end = polyStarts[i + 1];
+            if (polyHidden.get(i) || end == start || polyViews.containsKey(i)) {
+                continue;
+            }
+
+            GeneralPath shape = shapes[polyStyles[i]];
+            if (shape == null) {
+                shape = new GeneralPath();
+                shapes[polyStyles[i]] = shape;
+            }
+            shape.moveTo(polyX[start], polyY[start]);
+            for (int j = start + 1; j < end; j++) {
+                shape.lineTo(polyX[j], polyY[j]);
+            }
+        }
+        polyShapes[chunk] = shapes;
+    }
+
+    /**
+     * Draw the packed graphics, then their views, then the OMGraphics on the
+     * list.
+     */
+    public void render(Graphics gr) {
+        if (isVague() && !isVisible()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (projection != null) {
+                renderPacked((Graphics2D) gr);
+            }
+            for (OMPoly view : polyViews.values()) {
+                view.render(gr);
+            }
+            for (OMPoint view : pointViews.values()) {
+                view.render(gr);
+            }
+        }
+        super.render(gr);
+    }
+
+    protected void renderPacked(Graphics2D g2) {
+        for (int s = 0; s < styles.size(); s++) {
+            DrawingAttributes da = null;
+            for (GeneralPath[] shapes : polyShapes) {
+                if (s < shapes.length && shapes[s] != null) {
+                    if (da == null) {
+                        da = styles.get(s);
+                        g2.setStroke(da.getStroke());
+                        g2.setPaint(da.getLinePaint());
+                    }
+                    g2.draw(shapes[s]);
+                }
+            }
+        }
+
+        int lastStyle = -1;
+        int radius = 0;
+        boolean oval = false;
+        Paint fillPaint = null;
+        Paint linePaint = null;
+        for (int i = 0; i < projectedPoints; i++) {
+            if (Float.isNaN(pointX[i]) || (!pointViews.isEmpty() && pointViews.containsKey(i))) {
+                continue;
+            }
+            if (pointStyles[i] != lastStyle) {
+                lastStyle = pointStyles[i];
+                DrawingAttributes da = styles.get(lastStyle);
+                radius = da.getPointRadius();
+                oval = da.isPointOval();
+                fillPaint = DrawingAttributes.isClear(da.getFillPaint()) ? null : da.getFillPaint();
+                linePaint = DrawingAttributes.isClear(da.getLinePaint()) ? null : da.getLinePaint();
+                g2.setStroke(da.getStroke());
+            }
+            int x = (int) pointX[i] - radius;
+            int y = (int) pointY[i] - radius;
+            int size = radius * 2;
+            if (fillPaint != null) {
+                g2.setPaint(fillPaint);
+                if (oval) {
+                    g2.fillOval(x, y, size, size);
+                } else {
+                    g2.fillRect(x, y, size, size);
+                }
+            }
+            if (linePaint != null) {
+                g2.setPaint(linePaint);
+                if (oval) {
+                    g2.drawOval(x, y, size, size);
+                } else {
+                    g2.drawRect(x, y, size, size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the closest graphic, packed or on the list. If it's a packed
+     * graphic, the view for it is returned. The view made for the graphic
+     * found last time is released if it wasn't selected or claimed.
+     */
+    public OMDist<OMGraphic> findClosest(double x, double y, float limit, boolean resetSelect) {
+        OMDist<OMGraphic> omd = super.findClosest(x, y, limit, resetSelect);
+
+        synchronized (this) {
+            if (resetSelect) {
+                for (OMPoint view : pointViews.values()) {
+                    view.deselect();
+                }
+                for (OMPoly view : polyViews.values()) {
+                    view.deselect();
+                }
+            }
+            if (projection == null || omd.d == 0) {
+                releaseFoundView(null);
+                return omd;
+            }
+
+            float[] distance = new float[] { Math.min(omd.d, limit) };
+            int closestPoint = findClosestPoint(x, y, distance);
+            int closestPoly = findClosestPolyline(x, y, distance);
+            if (closestPoly >= 0) {
+                closestPoint = -1;
+            }
+
+            OMGraphic view = null;
+            boolean made = false;
+            if (closestPoint >= 0 || closestPoly >= 0) {
+                if (isVague()) {
+                    omd.omg = this;
+                } else if (closestPoly >= 0) {
+                    made = !polyViews.containsKey(closestPoly);
+                    view = polylineView(closestPoly);
+                    omd.omg = view;
+                } else {
+                    made = !pointViews.containsKey(closestPoint);
+                    view = pointView(closestPoint);
+                    omd.omg = view;
+                }
+                omd.index = NONE;
+                omd.d = distance[0];
+            }
+            releaseFoundView(view);
+            if (made) {
+                foundView = view;
+            }
+        }
+        return omd;
+    }
+
+    /**
+     * Release the view findClosest() made last, unless it's the one given or
+     * has been selected.
+     */
+    protected void releaseFoundView(OMGraphic keep) {
+        if (foundView != null && foundView != keep) {
+            if (foundView.isSelected()) {
+                foundView = null;
+            } else {
+                release(foundView);
+            }
+        }
+    }
+
+    /**
+     * Find the closest projected packed point, without making a view for it.
+     *
+     * @param x the horizontal pixel location.
+     * @param y the vertical pixel location.
+     * @param limit the farthest the edge of the point can be, in pixels.
+     * @return the index of the point, -1 if there isn't one within the limit.
+     */
+    public synchronized int findClosestPoint(double x, double y, float limit) {
+        return projection == null ? -1 : findClosestPoint(x, y, new float[] { limit });
+    }
+
+    /**
+     * Find the closest projected packed polyline, without making a view for
+     * it.
+     *
+     * @param x the horizontal pixel location.
+     * @param y the vertical pixel location.
+     * @param limit the farthest the polyline can be, in pixels.
+     * @return the index of the polyline, -1 if there isn't one within the
+     *         limit.
+     */
+    public synchronized int findClosestPolyline(double x, double y, float limit) {
+        return projection == null ? -1 : findClosestPolyline(x, y, new float[] { limit });
+    }
+
+    /**
+     * @param distance holds the limit, and is set to the distance of the
+     *        point found.
+     */
+    protected int findClosestPoint(double x, double y, float[] distance) {
+        int closestPoint = -1;
+        int lastStyle = -1;
+        int radius = 0;
+        for (int i = 0; i < projectedPoints; i++) {
+            if (Float.isNaN(pointX[i])) {
+                continue;
+            }
+            if (pointStyles[i] != lastStyle) {
+                lastStyle = pointStyles[i];
+                radius = styles.get(lastStyle).getPointRadius();
+            }
+            float d = (float) Math.max(0, Math.hypot(pointX[i] - x, pointY[i] - y) - radius);
+            if (d < distance[0]) {
+                distance[0] = d;
+                closestPoint = i;
+            }
+        }
+        return closestPoint;
+    }
+
+    /**
+     * @param distance holds the limit, and is set to the distance of the
+     *        polyline found.
+     */
+    protected int findClosestPolyline(double x, double y, float[] distance) {
+        int closestPoly = -1;
+        for (int i = 0; i < projectedPolys; i++) {
+            if (polyHidden.get(i)) {
+                continue;
+            }
+            int end = polyStarts[i + 1];
+            for (int j = polyStarts[i] + 1; j < end; j++) {
+                float d = (float) Line2D.ptSegDist(polyX[j - 1], polyY[j - 1], polyX[j], polyY[j], x, y);
+                if (d < distance[0]) {
+                    distance[0] = d;
+                    closestPoly = i;
+                }
+            }
+        }
+        return closestPoly;
+    }
+
+}
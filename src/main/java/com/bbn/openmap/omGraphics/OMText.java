@@ -202,6 +202,13 @@ public class OMText
     */
    protected transient Stroke textMatteStroke = DEFAULT_TEXT_MATTE_STROKE;
 
+   /**
+    * Whether each line of text is rendered from an image kept in the
+    * TextMetricsCache, instead of drawing the string every time. Useful for
+    * lots of labels that repeat, like place names.
+    */
+   protected boolean renderFromImage = false;
+
    // ----------------------------------------------------------------------
    // Caches
    // These fields cache computed data.
@@ -577,6 +584,22 @@ public class OMText
       this.textMatteStroke = textMatteStroke;
    }
 
+   /**
+    * Set whether each line of text is rendered from an image kept in the
+    * TextMetricsCache, instead of drawing the string every time. Only used if
+    * the line paint is a Color. The default is false.
+    */
+   public void setRenderFromImage(boolean value) {
+      renderFromImage = value;
+   }
+
+   /**
+    * Whether each line of text is rendered from a cached image.
+    */
+   public boolean isRenderFromImage() {
+      return renderFromImage;
+   }
+
    /**
     * Return the string.
     * 
@@ -832,12 +855,13 @@ public class OMText
 
       setFont(proj.getScale());
 
-      // Compliance with Shape additions to OMGeometry/OMGraphic.
-      // If font metrics are set, we can take care of this now. If
-      // this is the first time this OMText is drawn, then we have
-      // to put this off until render. There will be a
-      // one-projection lag for font metrics to catch up with any
-      // change.
+      // Compliance with Shape additions to OMGeometry/OMGraphic. The
+      // font metrics come from the TextMetricsCache if the text hasn't
+      // been rendered yet, so the bounds are ready now instead of after
+      // the first render.
+      if (fm == null) {
+         fm = TextMetricsCache.getFontMetrics(getFont());
+      }
       computeBounds();
 
       setNeedToRegenerate(false);
@@ -990,7 +1014,7 @@ public class OMText
          int nLines = parsedData.length;
          widths = new int[nLines];
          for (int i = 0; i < nLines; i++) {
-            widths[i] = fm.stringWidth(parsedData[i]);
+            widths[i] = TextMetricsCache.stringWidth(fm, parsedData[i]);
          }
       }
    }
@@ -1008,12 +1032,27 @@ public class OMText
       parseData();
       g.setFont(getFont());
 
-      if (fm == null) {
-         fm = g.getFontMetrics();
-      }
+      setFontMetrics(g);
       computeBounds();
    }
 
+   /**
+    * Sets the cache field <code>fm</code> to the metrics of the Graphics the
+    * text is drawn on. Metrics from the TextMetricsCache used to generate the
+    * text before it was rendered are replaced if the Graphics measures text
+    * differently, flushing the widths and bounds figured out with them.
+    * 
+    * @param g the java.awt.Graphics, with the font set.
+    */
+   protected void setFontMetrics(Graphics g) {
+      FontMetrics gfm = TextMetricsCache.getFontMetrics(g);
+      if (fm != gfm) {
+         fm = gfm;
+         widths = null;
+         polyBounds = null;
+      }
+   }
+
    /**
     * Renders the text onto the given graphics. Sets the cache field
     * <code>fm</code>.
@@ -1033,9 +1072,7 @@ public class OMText
       g.setFont(getFont());
       setGraphicsForEdge(g);
 
-      if (fm == null) {
-         fm = g.getFontMetrics();
-      }
+      setFontMetrics(g);
 
       computeBounds();
 
@@ -1137,6 +1174,23 @@ public class OMText
    protected void renderString(Graphics g, String string, double x, double y) {
       if (g instanceof Graphics2D) {
          Graphics2D g2 = (Graphics2D) g;
+
+         if (renderFromImage && g2.getPaint() instanceof Color) {
+            TextMetricsCache.TextImage image =
+                  TextMetricsCache.getTextImage(string, g2.getFont(), (Color) g2.getPaint(), getTextMatteColor(),
+                                                getTextMatteStroke(), g2.getFontRenderContext());
+            if (image != null) {
+               // The image is in device space, already transformed.
+               AffineTransform transform = g2.getTransform();
+               Point2D origin = transform.transform(new Point2D.Double((int) x, (int) y), null);
+               g2.setTransform(new AffineTransform());
+               g2.drawImage(image.image, (int) Math.floor(origin.getX() + .5) + image.x,
+                            (int) Math.floor(origin.getY() + .5) + image.y, null);
+               g2.setTransform(transform);
+            }
+            return;
+         }
+
          if (getTextMatteColor() != null) {
             FontRenderContext context = g2.getFontRenderContext();
             GlyphVector glyphVector = g2.getFont().createGlyphVector(context, string);
@@ -1378,6 +1432,7 @@ public class OMText
          this.fmHeight = text.fmHeight;
          this.useMaxWidthForBounds = text.useMaxWidthForBounds;
          this.rotationAngle = text.rotationAngle;
+         this.renderFromImage = text.renderFromImage;
          if (text.pt != null) {
             this.pt = new Point2D.Double(text.pt.getX(), text.pt.getY());
          }
@@ -0,0 +1,310 @@
+package com.bbn.openmap.omGraphics;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of font metrics and string widths shared by all of the OMTexts, so
+ * text can be measured on any thread without a Graphics. Metrics are kept for
+ * each font and FontRenderContext, so text measured before it's rendered uses
+ * the default context, without antialiasing or fractional metrics, and text
+ * measured with a Graphics uses the metrics of that Graphics' context.
+ * <P>
+ * It also keeps images of strings drawn in a font and color, used by OMTexts
+ * set to render from images instead of drawing each string. The images are
+ * drawn with the FontRenderContext of the Graphics they're for, so they're
+ * drawn in device space with its transform, antialiasing and fractional
+ * metrics.
+ */
+public class TextMetricsCache {
+
+   /** The most fonts kept, the widths for all fonts are cleared past this. */
+   public static int maxFonts = 256;
+   /** The most string widths kept for a font. */
+   public static int maxStringsPerFont = 20000;
+   /** The most string images kept, the least recently used are dropped. */
+   public static int maxImages = 4096;
+
+   /**
+    * The context text is measured with before there's a Graphics, the same as
+    * an image Graphics with the default rendering hints.
+    */
+   public final static FontRenderContext DEFAULT_CONTEXT =
+         new FontRenderContext(null, RenderingHints.VALUE_TEXT_ANTIALIAS_DEFAULT,
+                               RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+
+   /** Used to get FontMetrics, synchronized. */
+   protected static Graphics2D metricsGraphics;
+
+   protected final static Map<MetricsKey, FontMetrics> metrics = new ConcurrentHashMap<MetricsKey, FontMetrics>();
+   protected final static Map<MetricsKey, Map<String, Integer>> widths =
+         new ConcurrentHashMap<MetricsKey, Map<String, Integer>>();
+
+   protected final static Map<ImageKey, TextImage> images = new LinkedHashMap<ImageKey, TextImage>(256, .75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      protected boolean removeEldestEntry(Map.Entry<ImageKey, TextImage> eldest) {
+         return size() > maxImages;
+      }
+   };
+
+   /**
+    * Get the FontMetrics for a font, without needing a Graphics.
+    *
+    * @param font the font.
+    * @return FontMetrics for the default context.
+    */
+   public static FontMetrics getFontMetrics(Font font) {
+      return getFontMetrics(font, DEFAULT_CONTEXT);
+   }
+
+   /**
+    * Get the FontMetrics for the current font of a Graphics, the same as
+    * g.getFontMetrics() but shared with other Graphics with the same
+    * FontRenderContext.
+    *
+    * @param g the Graphics.
+    * @return FontMetrics
+    */
+   public static FontMetrics getFontMetrics(Graphics g) {
+      if (g instanceof Graphics2D) {
+         return getFontMetrics(g.getFont(), ((Graphics2D) g).getFontRenderContext());
+      }
+      return g.getFontMetrics();
+   }
+
+   /**
+    * Get the FontMetrics for a font measured in a FontRenderContext.
+    *
+    * @param font the font.
+    * @param frc the context, with the transform, antialiasing and fractional
+    *        metrics of the Graphics the text is drawn on.
+    * @return FontMetrics
+    */
+   public static FontMetrics getFontMetrics(Font font, FontRenderContext frc) {
+      MetricsKey key = new MetricsKey(font, frc);
+      FontMetrics fm = metrics.get(key);
+      if (fm == null) {
+         synchronized (TextMetricsCache.class) {
+            if (metricsGraphics == null) {
+               metricsGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+            }
+            metricsGraphics.setTransform(frc.getTransform());
+            metricsGraphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, frc.getAntiAliasingHint());
+            metricsGraphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, frc.getFractionalMetricsHint());
+            fm = metricsGraphics.getFontMetrics(font);
+         }
+         if (metrics.size() >= maxFonts) {
+            metrics.clear();
+         }
+         metrics.put(key, fm);
+      }
+      return fm;
+   }
+
+   /**
+    * Get the advance width of a string, the same as fm.stringWidth(string)
+    * but remembered for the next time the string is measured with the same
+    * metrics.
+    *
+    * @param fm the FontMetrics to measure with.
+    * @param string the string to measure.
+    * @return width in pixels.
+    */
+   public static int stringWidth(FontMetrics fm, String string) {
+      MetricsKey key = new MetricsKey(fm.getFont(), fm.getFontRenderContext());
+      Map<String, Integer> fontWidths = widths.get(key);
+      if (fontWidths == null) {
+         if (widths.size() >= maxFonts) {
+            widths.clear();
+         }
+         fontWidths = new ConcurrentHashMap<String, Integer>();
+         widths.put(key, fontWidths);
+      }
+
+      Integer width = fontWidths.get(string);
+      if (width == null) {
+         width = fm.stringWidth(string);
+         if (fontWidths.size() >= maxStringsPerFont) {
+            fontWidths.clear();
+         }
+         fontWidths.put(string, width);
+      }
+      return width;
+   }
+
+   /**
+    * Get an image of a string, drawn the way OMText draws strings.
+    *
+    * @param string the text.
+    * @param font the font of the text.
+    * @param color the color of the text.
+    * @param matteColor the color of the outline around each character, null
+    *        for none.
+    * @param matteStroke the stroke for the outline, if there is a matte color.
+    * @param frc the FontRenderContext of the Graphics the image is for. The
+    *        image is in device space, drawn with the context's transform,
+    *        antialiasing and fractional metrics.
+    * @return TextImage, or null if the string doesn't cover any pixels.
+    */
+   public static TextImage getTextImage(String string, Font font, Color color, Color matteColor, Stroke matteStroke,
+                                        FontRenderContext frc) {
+      ImageKey key = new ImageKey(string, font, color, matteColor, matteStroke, frc);
+      synchronized (images) {
+         TextImage image = images.get(key);
+         if (image != null || images.containsKey(key)) {
+            return image;
+         }
+      }
+
+      TextImage image = createTextImage(key);
+      synchronized (images) {
+         images.put(key, image);
+      }
+      return image;
+   }
+
+   protected static TextImage createTextImage(ImageKey key) {
+      FontRenderContext frc = key.frc;
+      AffineTransform transform = frc.getTransform();
+      GlyphVector glyphVector = key.font.createGlyphVector(frc, key.string);
+
+      Rectangle bounds = glyphVector.getPixelBounds(frc, 0, 0);
+      if (key.matteColor != null) {
+         bounds =
+               bounds.union(transform.createTransformedShape(key.matteStroke.createStrokedShape(glyphVector.getOutline()))
+                                     .getBounds());
+      }
+      if (bounds.isEmpty()) {
+         return null;
+      }
+      bounds.grow(1, 1);
+
+      BufferedImage bi = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2 = bi.createGraphics();
+      g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, frc.getAntiAliasingHint());
+      g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, frc.getFractionalMetricsHint());
+      g2.translate(-bounds.x, -bounds.y);
+      g2.transform(transform);
+      if (key.matteColor != null) {
+         g2.setStroke(key.matteStroke);
+         g2.setColor(key.matteColor);
+         g2.draw(glyphVector.getOutline());
+      }
+      g2.setColor(key.color);
+      g2.setFont(key.font);
+      g2.drawString(key.string, 0, 0);
+      g2.dispose();
+
+      return new TextImage(bi, bounds.x, bounds.y);
+   }
+
+   /**
+    * Clear all of the cached metrics, widths and images.
+    */
+   public static void clear() {
+      metrics.clear();
+      widths.clear();
+      synchronized (images) {
+         images.clear();
+      }
+   }
+
+   /**
+    * An image of a string, with the offset of the upper left corner of the
+    * image from the start of the string's baseline, in device space.
+    */
+   public static class TextImage {
+      public final BufferedImage image;
+      public final int x;
+      public final int y;
+
+      public TextImage(BufferedImage image, int x, int y) {
+         this.image = image;
+         this.x = x;
+         this.y = y;
+      }
+   }
+
+   /**
+    * A font and the context it's measured in.
+    */
+   protected static class MetricsKey {
+      final Font font;
+      final FontRenderContext frc;
+
+      MetricsKey(Font font, FontRenderContext frc) {
+         this.font = font;
+         this.frc = frc;
+      }
+
+      public int hashCode() {
+         return 31 * font.hashCode() + frc.hashCode();
+      }
+
+      public boolean equals(Object obj) {
+         if (!(obj instanceof MetricsKey)) {
+            return false;
+         }
+         MetricsKey key = (MetricsKey) obj;
+         return font.equals(key.font) && frc.equals(key.frc);
+      }
+   }
+
+   protected static class ImageKey {
+      final String string;
+      final Font font;
+      final Color color;
+      final Color matteColor;
+      final Stroke matteStroke;
+      final FontRenderContext frc;
+      final int hash;
+
+      ImageKey(String string, Font font, Color color, Color matteColor, Stroke matteStroke, FontRenderContext frc) {
+         this.string = string;
+         this.font = font;
+         this.color = color;
+         this.matteColor = matteColor;
+         this.matteStroke = matteColor == null ? null : matteStroke;
+         this.frc = frc;
+
+         int h = string.hashCode();
+         h = 31 * h + font.hashCode();
+         h = 31 * h + color.hashCode();
+         h = 31 * h + (matteColor == null ? 0 : matteColor.hashCode());
+         h = 31 * h + (this.matteStroke == null ? 0 : this.matteStroke.hashCode());
+         h = 31 * h + frc.hashCode();
+         hash = h;
+      }
+
+      public int hashCode() {
+         return hash;
+      }
+
+      public boolean equals(Object obj) {
+         if (!(obj instanceof ImageKey)) {
+            return false;
+         }
+         ImageKey key = (ImageKey) obj;
+         return hash == key.hash && string.equals(key.string) && font.equals(key.font) && color.equals(key.color)
+               && equal(matteColor, key.matteColor) && equal(matteStroke, key.matteStroke) && frc.equals(key.frc);
+      }
+
+      static boolean equal(Object o1, Object o2) {
+         return o1 == null ? o2 == null : o1.equals(o2);
+      }
+   }
+}
@@ -24,7 +24,14 @@
 
 package com.bbn.openmap.omGraphics.time;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
@@ -34,9 +41,38 @@ import com.bbn.openmap.proj.Projection;
  * A TemporalOMGeometryList object contains OMGeometries that change over time.
  * The time is milliseconds, generally from the unix epoch. This list can also hold regular
  * OMGeometries.
+ * <p>
+ * Long lists are generated for a time on several threads, each taking a part
+ * of the list with its own copy of the projection. Each graphic is generated by
+ * one thread, so the graphics don't need to be thread safe, but they shouldn't
+ * share state with each other.
  */
 public class TemporalOMGraphicList extends OMGraphicList implements
         TemporalOMGraphic {
+
+    /**
+     * The default number of graphics a list needs before it's generated on
+     * several threads.
+     */
+    public final static int DEFAULT_PARALLEL_THRESHOLD = 1000;
+
+    /**
+     * Threads shared by all TemporalOMGraphicLists for generating parts of the
+     * lists.
+     */
+    protected static ThreadPoolExecutor generateExecutor;
+
+    /**
+     * The number of graphics a list needs before it's generated on several
+     * threads.
+     */
+    protected int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * The number of threads used to generate the list.
+     */
+    protected int numThreads = Runtime.getRuntime().availableProcessors();
+
     /**
      * Construct an TemporalOMGraphicList.
      */
@@ -67,10 +103,71 @@ public class TemporalOMGraphicList extends OMGraphicList implements
 
     /**
      * Calls generate(proj, time) on temporal geometries, regular generate(proj)
-     * on non-temporal OMGeometries.
+     * on non-temporal OMGeometries. Lists longer than the parallel threshold
+     * are split up among the generate threads.
      */
     public void generate(Projection proj, long time) {
-        for (OMGraphic geom : this) {
+        final OMGraphic[] geoms;
+        synchronized (graphics) {
+            geoms = graphics.toArray(new OMGraphic[graphics.size()]);
+        }
+
+        int threads = Math.min(numThreads, geoms.length / Math.max(1, parallelThreshold / 2));
+        // Lists inside lists being generated are done by the thread they're
+        // on, the others might all be busy.
+        if (geoms.length < parallelThreshold || threads <= 1 || Thread.currentThread() instanceof GenerateThread) {
+            generate(geoms, 0, geoms.length, proj, time);
+            return;
+        }
+
+        // This thread does the first part, the others get their own projection.
+        int partSize = (geoms.length + threads - 1) / threads;
+        ThreadPoolExecutor executor = getGenerateExecutor();
+        List<Future<?>> futures = new ArrayList<Future<?>>(threads - 1);
+        for (int start = partSize; start < geoms.length; start += partSize) {
+            final int from = start;
+            final int to = Math.min(start + partSize, geoms.length);
+            final Projection partProj = proj.makeClone();
+            final long partTime = time;
+            futures.add(executor.submit(new Runnable() {
+                public void run() {
+                    generate(geoms, from, to, partProj, partTime);
+                }
+            }));
+        }
+        generate(geoms, 0, partSize, proj, time);
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause);
+            } catch (InterruptedException ie) {
+                for (Future<?> f : futures) {
+                    f.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Generate part of the graphics for a time.
+     * 
+     * @param geoms the graphics.
+     * @param from index of the first graphic to generate.
+     * @param to index after the last graphic to generate.
+     * @param proj the projection.
+     * @param time the time.
+     */
+    protected void generate(OMGraphic[] geoms, int from, int to, Projection proj, long time) {
+        for (int i = from; i < to; i++) {
+            OMGraphic geom = geoms[i];
             if (geom instanceof TemporalOMGraphic) {
                 ((TemporalOMGraphic) geom).generate(proj, time);
             } else {
@@ -78,6 +175,59 @@ public class TemporalOMGraphicList extends OMGraphicList implements
             }
         }
     }
+
+    /**
+     * Get the threads shared for generating lists, creating them if needed.
+     */
+    protected static synchronized ThreadPoolExecutor getGenerateExecutor() {
+        if (generateExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            generateExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new GenerateThread(r);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Let the threads go when the clock isn't running.
+            generateExecutor.allowCoreThreadTimeOut(true);
+        }
+        return generateExecutor;
+    }
+
+    /**
+     * The threads generating parts of lists.
+     */
+    protected static class GenerateThread extends Thread {
+        GenerateThread(Runnable r) {
+            super(r, "TemporalOMGraphicList");
+        }
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Set the number of graphics the list needs before it's generated on
+     * several threads.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads used to generate the list, 1 to generate it on
+     * the calling thread.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
     
     /**
      * Add a location at a time to every TemporalGeometry contained within.
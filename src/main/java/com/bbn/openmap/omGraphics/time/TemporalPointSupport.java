@@ -92,16 +92,17 @@ public class TemporalPointSupport extends TemporalSupport {
                 nextLL = new LatLonPoint.Double(nextPt);
             }
 
-            double[] pts = GreatCircle.greatCircle(prevLL.getRadLat(),
-                    prevLL.getRadLon(),
-                    nextLL.getRadLat(),
-                    nextLL.getRadLon(),
-                    100,
-                    true);
+            double phi1 = prevLL.getRadLat();
+            double lambda0 = prevLL.getRadLon();
+            double phi = nextLL.getRadLat();
+            double lambda = nextLL.getRadLon();
 
-            int index = (int) (2 * Math.floor(100 * percent));
+            // Same point as the one in a 100 segment great circle line,
+            // without calculating the whole line.
+            double c = GreatCircle.sphericalDistance(phi1, lambda0, phi, lambda) * Math.floor(100 * percent) / 100;
+            double az = GreatCircle.sphericalAzimuth(phi1, lambda0, phi, lambda);
 
-            ret = new TemporalPoint(new LatLonPoint.Double(pts[index], pts[index + 1], true), time);
+            ret = new TemporalPoint(GreatCircle.sphericalBetween(phi1, lambda0, c, az), time);
         }
 
         return ret;
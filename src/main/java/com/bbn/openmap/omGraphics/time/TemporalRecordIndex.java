@@ -0,0 +1,103 @@
+package com.bbn.openmap.omGraphics.time;
+
+import java.util.Collection;
+
+/**
+ * A TemporalRecordIndex holds TemporalRecords sorted by time, with their times
+ * in a long[] for finding the records before and after a given time. Lookups
+ * start from where the last one ended, so a clock moving forward through the
+ * records finds each one in a step or two, and jumps in time fall back on a
+ * binary search. The index is a snapshot, it has to be rebuilt if the records
+ * change. It isn't thread safe, the cursor is updated on every lookup.
+ */
+public class TemporalRecordIndex {
+
+    protected final long[] times;
+    protected final TemporalRecord[] records;
+
+    /**
+     * Where the last lookup ended.
+     */
+    protected int cursor = -1;
+
+    /**
+     * Create an index of records.
+     *
+     * @param sortedRecords records in time order, like a TreeSet created by
+     *        TemporalSupport.
+     */
+    public TemporalRecordIndex(Collection<? extends TemporalRecord> sortedRecords) {
+        int size = sortedRecords.size();
+        times = new long[size];
+        records = new TemporalRecord[size];
+        int i = 0;
+        for (TemporalRecord record : sortedRecords) {
+            times[i] = record.getTime();
+            records[i++] = record;
+        }
+    }
+
+    public int size() {
+        return records.length;
+    }
+
+    public TemporalRecord get(int index) {
+        return records[index];
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Find the last record at or before a time.
+     *
+     * @param time in milliseconds
+     * @return index of the record, -1 if they are all after the time.
+     */
+    public int floor(long time) {
+        int n = times.length;
+        int i = cursor;
+
+        // Check the last spot and the next couple after it, the usual case
+        // when the clock is running.
+        if (i >= -1 && i < n && (i < 0 || times[i] <= time)) {
+            for (int step = 0; step < 3; step++) {
+                if (i + 1 >= n || times[i + 1] > time) {
+                    cursor = i;
+                    return i;
+                }
+                i++;
+            }
+        }
+
+        // Binary search for the first time after the given one.
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        cursor = low - 1;
+        return cursor;
+    }
+
+    /**
+     * Find the first record at or after a time.
+     *
+     * @param time in milliseconds
+     * @return index of the record, size() if they are all before the time.
+     */
+    public int ceiling(long time) {
+        int i = floor(time);
+        if (i >= 0 && times[i] == time) {
+            return i;
+        }
+        return i + 1;
+    }
+}
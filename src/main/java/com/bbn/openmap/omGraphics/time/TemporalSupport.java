@@ -39,6 +39,11 @@ import org.slf4j.LoggerFactory;
  * object from the start of time, so that an object's status can be observed and
  * calculated based on everything that might have changed in the TemporalRecord
  * list before a given time.
+ * <p>
+ * The records are kept in a TreeSet, and looked up through a
+ * TemporalRecordIndex built from it, so finding the records around a time
+ * doesn't mean walking through the set. The index is rebuilt after records are
+ * added or removed.
  */
 public abstract class TemporalSupport {
 
@@ -46,6 +51,17 @@ public abstract class TemporalSupport {
 
     protected TreeSet<? extends TemporalRecord> temporals;
 
+    /**
+     * The time index of the temporals, null when it needs to be rebuilt.
+     */
+    protected TemporalRecordIndex index;
+
+    /**
+     * Whether updateForTemporal needs to be called for the records before the
+     * time of every position, true if a subclass overrides it.
+     */
+    protected final boolean updatesForTemporals = overridesUpdateForTemporal(getClass());
+
     /**
      * 
      * @param time in milliseconds
@@ -57,31 +73,44 @@ public abstract class TemporalSupport {
         T previous = null;
         T next = null;
 
+        if (temporals == null) {
+            return null;
+        }
+
         // Find out where the timestamp is in relation to the reported
         // positions
         synchronized (temporals) {
 
-            Iterator<T> it = iterator();
-            while (it.hasNext()) {
-                T temporal = it.next();
-                long recTimeStamp = temporal.getTime();
+            TemporalRecordIndex index = getIndex();
+            int floor = index.floor(time);
 
-                if (logger.isDebugEnabled()) {
-                    logger.debug("evaluating: " + temporal + " vs " + time);
+            if (logger.isDebugEnabled()) {
+                logger.debug("time " + time + " at record " + floor + " of " + index.size());
+            }
+
+            if (updatesForTemporals) {
+                for (int i = 0; i <= floor; i++) {
+                    updateForTemporal(time, index.get(i));
                 }
+            }
 
-                if (recTimeStamp < time) {
-                    previous = temporal;
-                    updateForTemporal(time, temporal);
-                } else if (recTimeStamp > time) {
-                    next = temporal;
-                    break;
-                } else {
+            if (floor >= 0) {
+                // The records are of the type the caller asks for, the
+                // same assumption getTemporals() and iterator() make.
+                @SuppressWarnings("unchecked")
+                T record = (T) index.get(floor);
+                previous = record;
+                if (index.getTime(floor) == time) {
                     // Hit a time right at a position.
-                    updateForTemporal(time, temporal);
-                    return temporal;
+                    return previous;
                 }
             }
+
+            if (floor + 1 < index.size()) {
+                @SuppressWarnings("unchecked")
+                T record = (T) index.get(floor + 1);
+                next = record;
+            }
         }
 
         T pos = null;
@@ -132,6 +161,35 @@ public abstract class TemporalSupport {
         return pos;
     }
 
+    /**
+     * Get the time index of the temporals, building it if the temporals have
+     * changed. Should be called while synchronized on the temporals.
+     */
+    protected TemporalRecordIndex getIndex() {
+        // The size check catches most changes made directly to the set.
+        TemporalRecordIndex idx = index;
+        if (idx == null || idx.size() != temporals.size()) {
+            idx = new TemporalRecordIndex(temporals);
+            index = idx;
+        }
+        return idx;
+    }
+
+    /**
+     * Whether a class overrides updateForTemporal, so it needs to be called.
+     */
+    private static boolean overridesUpdateForTemporal(Class<?> c) {
+        for (; c != null && c != TemporalSupport.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("updateForTemporal", long.class, TemporalRecord.class);
+                return true;
+            } catch (NoSuchMethodException nsme) {
+                // Keep looking
+            }
+        }
+        return false;
+    }
+
     /**
      * Override this method to use the TemporalRecord's contents to affect the
      * status of whatever you like.
@@ -162,15 +220,21 @@ public abstract class TemporalSupport {
         return next;
     }
 
+    /**
+     * Get the set of temporals. The time index is rebuilt the next time it's
+     * used, in case the set gets changed.
+     */
     public <T extends TemporalRecord> TreeSet<T> getTemporals() {
         if (temporals == null) {
             temporals = createTemporalSet();
         }
+        index = null;
         return (TreeSet<T>) temporals;
     }
 
     public <T extends TemporalRecord> void setTemporals(TreeSet<T> temporals) {
         this.temporals = temporals;
+        index = null;
     }
 
     public abstract <T extends TemporalRecord> TreeSet<T> createTemporalSet();
@@ -193,5 +257,6 @@ public abstract class TemporalSupport {
 
     public void clear() {
         temporals.clear();
+        index = null;
     }
 }
@@ -29,6 +29,15 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.awt.image.PixelGrabber;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,11 +54,37 @@ import com.bbn.openmap.util.Debug;
 /**
  * The ImageTranslator is the object that takes a BufferedImage and creates an
  * OMRaster from it based on a Projection object.
+ * <p>
+ * By default every pixel of the warped image is inverse projected and
+ * transformed to find its source pixel, which is exact but slow for large
+ * images. With a grid spacing set, only the corners of a grid of cells are
+ * projected, and the source locations of the pixels inside each cell are
+ * interpolated from them. Cells where the interpolation is off by more than
+ * the max error are split into smaller cells, down to projecting each pixel,
+ * so edges of the projection and of the image stay sharp. The rows of cells
+ * are warped on several threads, and the pixel array is reused from one
+ * projection to the next.
  */
 public class ImageWarp {
 
    public static Logger logger = LoggerFactory.getLogger("com.bbn.openmap.omGraphics.util.ImageWarp");
 
+   /**
+    * A good grid spacing for most images, in pixels of the warped image.
+    */
+   public final static int DEFAULT_GRID_SPACING = 16;
+
+   /**
+    * The default max error, in source image pixels, for interpolated source
+    * locations.
+    */
+   public final static double DEFAULT_MAX_ERROR = 0.5;
+
+   /**
+    * Threads shared by all ImageWarps for warping rows of grid cells.
+    */
+   protected static ThreadPoolExecutor warpExecutor;
+
    /**
     * Source image pixels.
     */
@@ -97,6 +132,28 @@ public class ImageWarp {
     */
    protected DataBounds projectedImageBounds;
 
+   /**
+    * The pixel spacing of the grid of projected points, 0 to project every
+    * pixel.
+    */
+   protected int gridSpacing = 0;
+
+   /**
+    * How far, in source image pixels, an interpolated source location can be
+    * off before a grid cell is split.
+    */
+   protected double maxError = DEFAULT_MAX_ERROR;
+
+   /**
+    * The number of threads used to warp grid cells.
+    */
+   protected int numThreads = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * The warped pixels, reused when warping with a grid.
+    */
+   protected int[] warpedPixels;
+
    /**
     * Create an image warp for an image assumed to be world wide coverage, with
     * the top at 90 degrees, the bottom at -90, the left side at -180 and the
@@ -234,7 +291,8 @@ public class ImageWarp {
 
    /**
     * Given a projection, return the pixels for an image that will cover the
-    * projection area.
+    * projection area. When warping with a grid, the returned array is reused
+    * the next time this method is called, copy it if you need to keep it.
     * 
     * @param p map projection
     * @return int[] of ARGB pixels for an image covering the given projection.
@@ -252,6 +310,12 @@ public class ImageWarp {
          int projHeight = (int) Math.ceil(projectedImageBounds.getHeight());
          int projWidth = (int) Math.ceil(projectedImageBounds.getWidth());
 
+         if (gridSpacing > 0) {
+            int minx = (int) Math.floor(projectedImageBounds.getMin().getX());
+            int miny = (int) Math.floor(projectedImageBounds.getMin().getY());
+            return getGridImagePixels(p, minx, miny, projWidth, projHeight);
+         }
+
          // See if we can reuse the pixel array we have.
 
          int[] tmpPixels = new int[projWidth * projHeight];
@@ -284,7 +348,8 @@ public class ImageWarp {
                // index into the OMRaster pixel array
                int tmpIndex = (ix + (iy * projWidth));
 
-               if (tmpIndex >= numTmpPixels) {
+               // Don't wrap the extra column into the next row.
+               if (ix >= projWidth || tmpIndex >= numTmpPixels) {
                   continue;
                }
 
@@ -344,6 +409,285 @@ public class ImageWarp {
       return null;
    }
 
+   /**
+    * Warp the image by projecting a grid of points and interpolating between
+    * them, on several threads.
+    * 
+    * @param p map projection
+    * @param minx map pixel location of the left side of the warped image.
+    * @param miny map pixel location of the top of the warped image.
+    * @param width pixel width of the warped image.
+    * @param height pixel height of the warped image.
+    * @return int[] of ARGB pixels for the warped image.
+    */
+   protected int[] getGridImagePixels(Projection p, int minx, int miny, int width, int height) {
+      int numPixels = width * height;
+      if (warpedPixels == null || warpedPixels.length != numPixels) {
+         logger.debug("warpedPixels[" + numPixels + "]");
+         warpedPixels = new int[numPixels];
+      }
+      int[] warped = warpedPixels;
+
+      int numBands = (height + gridSpacing - 1) / gridSpacing;
+      int threads = Math.min(numThreads, numBands);
+      AtomicInteger nextBand = new AtomicInteger();
+
+      if (threads <= 1) {
+         new GridWarper(p, minx, miny, width, height, warped, nextBand).run();
+         return warped;
+      }
+
+      // This thread does its share, the others get their own projection.
+      ThreadPoolExecutor executor = getWarpExecutor();
+      List<Future<?>> futures = new ArrayList<Future<?>>(threads - 1);
+      for (int i = 1; i < threads; i++) {
+         futures.add(executor.submit(new GridWarper(p.makeClone(), minx, miny, width, height, warped, nextBand)));
+      }
+      new GridWarper(p, minx, miny, width, height, warped, nextBand).run();
+
+      for (Future<?> future : futures) {
+         try {
+            future.get();
+         } catch (ExecutionException ee) {
+            logger.error("problem warping image: " + ee.getCause());
+            return null;
+         } catch (InterruptedException ie) {
+            for (Future<?> f : futures) {
+               f.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            return null;
+         }
+      }
+
+      logger.debug("finished creating image");
+      return warped;
+   }
+
+   /**
+    * Get the threads shared for warping images, creating them if needed.
+    */
+   protected static synchronized ThreadPoolExecutor getWarpExecutor() {
+      if (warpExecutor == null) {
+         int threads = Runtime.getRuntime().availableProcessors();
+         warpExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+               new ThreadFactory() {
+                  public Thread newThread(Runnable r) {
+                     Thread thread = new Thread(r, "ImageWarp");
+                     thread.setDaemon(true);
+                     return thread;
+                  }
+               });
+         // Let the threads go when no images are being warped.
+         warpExecutor.allowCoreThreadTimeOut(true);
+      }
+      return warpExecutor;
+   }
+
+   /**
+    * The source image location found for a warped image pixel.
+    */
+   protected static class Sample {
+      /** Source image pixel location, not rounded. */
+      double x;
+      double y;
+      /** False if the pixel isn't on the map, or can't be transformed. */
+      boolean valid;
+   }
+
+   /**
+    * Warps rows of grid cells, taking the next row that hasn't been started
+    * until there aren't any left. Each thread needs its own GridWarper, with
+    * its own projection.
+    */
+   protected class GridWarper implements Runnable {
+
+      protected final Projection proj;
+      protected final int minx;
+      protected final int miny;
+      protected final int width;
+      protected final int height;
+      protected final int[] warped;
+      protected final AtomicInteger nextBand;
+
+      protected final Point2D center;
+      protected Point2D ddll = new Point2D.Double();
+      protected Point2D ctp = new Point2D.Double();
+      protected Point2D imageCoord = new Point2D.Double();
+
+      protected GridWarper(Projection proj, int minx, int miny, int width, int height, int[] warped, AtomicInteger nextBand) {
+         this.proj = proj;
+         this.minx = minx;
+         this.miny = miny;
+         this.width = width;
+         this.height = height;
+         this.warped = warped;
+         this.nextBand = nextBand;
+         center = proj.getCenter();
+      }
+
+      public void run() {
+         int spacing = gridSpacing;
+         int numCols = (width + spacing - 1) / spacing;
+         Sample[] top = new Sample[numCols + 1];
+         Sample[] bottom = new Sample[numCols + 1];
+
+         int band;
+         while ((band = nextBand.getAndIncrement()) * spacing < height) {
+            if (Thread.currentThread().isInterrupted()) {
+               return;
+            }
+
+            int y0 = band * spacing;
+            int y1 = Math.min(y0 + spacing, height);
+            for (int c = 0; c <= numCols; c++) {
+               int x = Math.min(c * spacing, width);
+               top[c] = sample(x, y0);
+               bottom[c] = sample(x, y1);
+            }
+
+            for (int c = 0; c < numCols; c++) {
+               int x0 = c * spacing;
+               int x1 = Math.min(x0 + spacing, width);
+               warpCell(x0, y0, x1, y1, top[c], top[c + 1], bottom[c], bottom[c + 1]);
+            }
+         }
+      }
+
+      /**
+       * Find the source image location for a warped image pixel.
+       */
+      protected Sample sample(int ix, int iy) {
+         Sample s = new Sample();
+         int i = ix + minx;
+         int j = iy + miny;
+
+         ddll = proj.inverse(i, j, ddll);
+
+         // If the llp calculated isn't on the map, don't bother drawing it.
+         // Could be a space point in Orthographic projection, for instance.
+         if (ddll.equals(center)) {
+            proj.forward(ddll, ctp);
+            if (ctp.getX() != i || ctp.getY() != j) {
+               return s;
+            }
+         }
+
+         Point2D coord = ddll;
+         if (geoTrans != null) {
+            // Some transformations use temporary points.
+            synchronized (geoTrans) {
+               geoTrans.forward(ddll.getY(), ddll.getX(), imageCoord);
+            }
+            coord = imageCoord;
+         }
+
+         s.x = horOrigin + (coord.getX() / hor_upp);
+         s.y = verOrigin + (coord.getY() / ver_upp);
+         s.valid = !Double.isNaN(s.x) && !Double.isNaN(s.y) && !Double.isInfinite(s.x) && !Double.isInfinite(s.y);
+         return s;
+      }
+
+      /**
+       * Fill the pixels of a cell, interpolating between the corners if that
+       * is close enough, otherwise splitting it into four.
+       * 
+       * @param x0 left side of the cell, in warped image pixels.
+       * @param y0 top of the cell.
+       * @param x1 right side of the cell, exclusive.
+       * @param y1 bottom of the cell, exclusive.
+       * @param s00 sample at x0, y0
+       * @param s10 sample at x1, y0
+       * @param s01 sample at x0, y1
+       * @param s11 sample at x1, y1
+       */
+      protected void warpCell(int x0, int y0, int x1, int y1, Sample s00, Sample s10, Sample s01, Sample s11) {
+         int w = x1 - x0;
+         int h = y1 - y0;
+
+         if (w <= 2 || h <= 2) {
+            // Too small to bother checking, project every pixel.
+            for (int y = y0; y < y1; y++) {
+               for (int x = x0; x < x1; x++) {
+                  Sample s = (x == x0 && y == y0) ? s00 : sample(x, y);
+                  if (s.valid) {
+                     setPixel(x, y, s.x, s.y);
+                  } else {
+                     warped[x + y * width] = 0;
+                  }
+               }
+            }
+            return;
+         }
+
+         int xm = x0 + w / 2;
+         int ym = y0 + h / 2;
+         Sample top = sample(xm, y0);
+         Sample left = sample(x0, ym);
+         Sample mid = sample(xm, ym);
+         Sample right = sample(x1, ym);
+         Sample bottom = sample(xm, y1);
+
+         boolean split = !(s00.valid && s10.valid && s01.valid && s11.valid);
+         if (!split) {
+            double u = (double) (xm - x0) / w;
+            double v = (double) (ym - y0) / h;
+            split = isOff(top, u, 0, s00, s10, s01, s11) || isOff(left, 0, v, s00, s10, s01, s11)
+                  || isOff(mid, u, v, s00, s10, s01, s11) || isOff(right, 1, v, s00, s10, s01, s11)
+                  || isOff(bottom, u, 1, s00, s10, s01, s11);
+         }
+
+         if (split) {
+            warpCell(x0, y0, xm, ym, s00, top, left, mid);
+            warpCell(xm, y0, x1, ym, top, s10, mid, right);
+            warpCell(x0, ym, xm, y1, left, mid, s01, bottom);
+            warpCell(xm, ym, x1, y1, mid, right, bottom, s11);
+            return;
+         }
+
+         // Step the interpolated location along each row.
+         for (int y = y0; y < y1; y++) {
+            double v = (double) (y - y0) / h;
+            double lx = s00.x + (s01.x - s00.x) * v;
+            double ly = s00.y + (s01.y - s00.y) * v;
+            double dx = (s10.x + (s11.x - s10.x) * v - lx) / w;
+            double dy = (s10.y + (s11.y - s10.y) * v - ly) / w;
+            for (int x = x0; x < x1; x++) {
+               setPixel(x, y, lx, ly);
+               lx += dx;
+               ly += dy;
+            }
+         }
+      }
+
+      /**
+       * Whether the interpolated location at u, v in a cell is too far from
+       * the sample found there.
+       */
+      protected boolean isOff(Sample s, double u, double v, Sample s00, Sample s10, Sample s01, Sample s11) {
+         if (!s.valid) {
+            return true;
+         }
+         double x = (1 - v) * ((1 - u) * s00.x + u * s10.x) + v * ((1 - u) * s01.x + u * s11.x);
+         double y = (1 - v) * ((1 - u) * s00.y + u * s10.y) + v * ((1 - u) * s01.y + u * s11.y);
+         return Math.abs(x - s.x) > maxError || Math.abs(y - s.y) > maxError;
+      }
+
+      /**
+       * Set a warped pixel from the source pixel at a location, clear if the
+       * location isn't on the source image.
+       */
+      protected void setPixel(int x, int y, double sx, double sy) {
+         int horIndex = (int) Math.round(sx);
+         int verIndex = (int) Math.round(sy);
+         if (horIndex < 0 || horIndex >= iwidth || verIndex < 0 || verIndex >= iheight) {
+            warped[x + y * width] = 0;
+         } else {
+            warped[x + y * width] = pixels[horIndex + verIndex * iwidth];
+         }
+      }
+   }
+
    protected DataBounds calculateProjectedImageBounds(Projection p) {
 
       // This doesn't seem to do anything but slow things down.
@@ -466,6 +810,42 @@ public class ImageWarp {
       this.horOrigin = horOrigin;
    }
 
+   public int getGridSpacing() {
+      return gridSpacing;
+   }
+
+   /**
+    * Set the pixel spacing of the grid of projected points, 0 (the default)
+    * to project every pixel. DEFAULT_GRID_SPACING works well for most images.
+    */
+   public void setGridSpacing(int gridSpacing) {
+      this.gridSpacing = Math.max(0, gridSpacing);
+   }
+
+   public double getMaxError() {
+      return maxError;
+   }
+
+   /**
+    * Set how far, in source image pixels, the interpolated source location of
+    * a pixel can be off before a grid cell is split.
+    */
+   public void setMaxError(double maxError) {
+      this.maxError = maxError;
+   }
+
+   public int getNumThreads() {
+      return numThreads;
+   }
+
+   /**
+    * Set the number of threads used to warp grid cells, 1 to warp them on the
+    * calling thread only.
+    */
+   public void setNumThreads(int numThreads) {
+      this.numThreads = numThreads;
+   }
+
    public GeoCoordTransformation getGeoTrans() {
       return geoTrans;
    }
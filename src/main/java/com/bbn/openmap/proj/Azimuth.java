@@ -437,6 +437,35 @@ public abstract class Azimuth
         return true;
     }
 
+    /**
+     * Forward project a packed array of lat, lon radian coordinates for
+     * _forwardPoly(), noting which points are not on the visible part of the
+     * projection. Those points are moved to the edge, like _forward() does.
+     * Subclasses can override this to project the points without going
+     * through _forward() for each of them.
+     * 
+     * @param llpts array of lat, lon, lat, lon... in radians
+     * @param lloff offset into llpts
+     * @param xcoords x coordinates
+     * @param ycoords y coordinates
+     * @param invalid set to true for points that are not visible
+     * @param xyoff offset into the xcoords, ycoords and invalid arrays
+     * @param count number of points to project
+     */
+    protected void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, boolean[] invalid, int xyoff,
+                                int count) {
+        Point2D temp = new Point2D.Double();
+        AzimuthVar azVar = new AzimuthVar();
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            azVar.invalid_forward = false;
+            _forward(llpts[j], llpts[j + 1], temp, azVar);
+            xcoords[i] = (float) temp.getX();
+            ycoords[i] = (float) temp.getY();
+            invalid[i] = azVar.invalid_forward;
+        }
+    }
+
     /**
      * Forward project a lat/lon Poly. This is a complex method. Please read the
      * in-code documentation for an explanation of the algorithm.
@@ -545,17 +574,22 @@ public abstract class Azimuth
         boolean curr_invalid, prev_invalid = false;// previous
         // invalid
         // forward
-        Point temp = new Point();
         AzimuthVar az_first = null, az_save = null, azVar = new AzimuthVar();
         ArrayList<AzimuthVar> sections = new ArrayList<AzimuthVar>(128);
         float[] x_, xs = new float[len];
         float[] y_, ys = new float[len];
+        boolean[] invalid = new boolean[len];
+
+        // project all the points at once, noting the ones that are not
+        // visible
+        double[] llpts = new double[len << 1];
+        for (int k = 0; k < llpts.length; k++) {
+            llpts[k] = rawllpts[k];
+        }
+        forwardArray(llpts, 0, xs, ys, invalid, 0, len);
 
         // handle first point
-        _forward(rawllpts[0], rawllpts[1], temp, azVar);
-        xs[0] = temp.x;
-        ys[0] = temp.y;
-        prev_invalid = azVar.invalid_forward;
+        prev_invalid = invalid[0];
         if (prev_invalid) {
             ++invalid_count;
         } else {
@@ -575,11 +609,7 @@ public abstract class Azimuth
         // iterate through all rawllpts
         int i = 0, j = 0;
         for (i = 1, j = 2; i < len; i++, j += 2) {
-            azVar.invalid_forward = false;// reset forward flag
-            _forward(rawllpts[j], rawllpts[j + 1], temp, azVar);
-            curr_invalid = azVar.invalid_forward;
-            xs[i] = temp.x;
-            ys[i] = temp.y;
+            curr_invalid = invalid[i];
             if (!curr_invalid && prev_invalid) {
                 // record transition (outside -> inside)
                 azVar.index = i - 1;// include outside point
@@ -593,6 +623,7 @@ public abstract class Azimuth
                 if (!prev_invalid) {
                     // record transition (inside -> outside)
                     azVar.index = i;// include outside point
+                    azVar.current_azimuth = GreatCircle.sphericalAzimuth((float) centerY, (float) centerX, rawllpts[j], rawllpts[j + 1]);
                     if (isFilled && (invalid_count == 0)) {
                         az_save = azVar;// save wrap-end
                     } else {
@@ -713,17 +744,18 @@ public abstract class Azimuth
         boolean curr_invalid, prev_invalid = false;// previous
         // invalid
         // forward
-        Point temp = new Point();
         AzimuthVar az_first = null, az_save = null, azVar = new AzimuthVar();
         ArrayList<AzimuthVar> sections = new ArrayList<AzimuthVar>(128);
         float[] x_, xs = new float[len];
         float[] y_, ys = new float[len];
+        boolean[] invalid = new boolean[len];
+
+        // project all the points at once, noting the ones that are not
+        // visible
+        forwardArray(rawllpts, 0, xs, ys, invalid, 0, len);
 
         // handle first point
-        _forward(rawllpts[0], rawllpts[1], temp, azVar);
-        xs[0] = temp.x;
-        ys[0] = temp.y;
-        prev_invalid = azVar.invalid_forward;
+        prev_invalid = invalid[0];
         if (prev_invalid) {
             ++invalid_count;
         } else {
@@ -743,11 +775,7 @@ public abstract class Azimuth
         // iterate through all rawllpts
         int i = 0, j = 0;
         for (i = 1, j = 2; i < len; i++, j += 2) {
-            azVar.invalid_forward = false;// reset forward flag
-            _forward(rawllpts[j], rawllpts[j + 1], temp, azVar);
-            curr_invalid = azVar.invalid_forward;
-            xs[i] = temp.x;
-            ys[i] = temp.y;
+            curr_invalid = invalid[i];
             if (!curr_invalid && prev_invalid) {
                 // record transition (outside -> inside)
                 azVar.index = i - 1;// include outside point
@@ -760,6 +788,7 @@ public abstract class Azimuth
                 if (!prev_invalid) {
                     // record transition (inside -> outside)
                     azVar.index = i;// include outside point
+                    azVar.current_azimuth = GreatCircle.sphericalAzimuth(centerY, centerX, rawllpts[j], rawllpts[j + 1]);
                     if (isFilled && (invalid_count == 0)) {
                         az_save = azVar;// save wrap-end
                     } else {
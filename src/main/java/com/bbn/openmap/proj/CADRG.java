@@ -419,6 +419,27 @@ public class CADRG
         return ret_val;
     }
 
+    /**
+     * Forward project a packed array of lat, lon coordinates, doing the same
+     * math as forward() without a Point2D for each point.
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                             boolean isRadians) {
+        int ulx = ul.x;
+        int uly = ul.y + oy;
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            double lat = llpts[j];
+            double lon = llpts[j + 1];
+            if (!isRadians) {
+                lon = Math.toRadians(lon);
+                lat = Math.toRadians(lat);
+            }
+            xcoords[i] = (int) ProjMath.roundAdjust(spps_x * wrapLongitude(lon - centerX)) - ulx;
+            ycoords[i] = (int) ProjMath.roundAdjust(-spps_y * normalizeLatitude(lat)) + uly;
+        }
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * <p>
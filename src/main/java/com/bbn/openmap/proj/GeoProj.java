@@ -1018,6 +1018,42 @@ public abstract class GeoProj
      */
     abstract public Point2D forward(double lat, double lon, Point2D pt, boolean isRadian);
 
+    /**
+     * Forward project a packed array of lat, lon decimal degree coordinates
+     * into the provided x and y arrays.
+     *
+     * @see #forwardArray(double[], int, float[], float[], int, int, boolean)
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count) {
+        forwardArray(llpts, lloff, xcoords, ycoords, xyoff, count, false);
+    }
+
+    /**
+     * Forward project a packed array of lat, lon coordinates into the provided
+     * x and y arrays, without creating any objects for each point. The
+     * projections override this to do their math right in the loop, this
+     * version just calls forward() for each point.
+     *
+     * @param llpts array of lat, lon, lat, lon, ...
+     * @param lloff offset into llpts.
+     * @param xcoords x projected horizontal map coordinates.
+     * @param ycoords y projected vertical map coordinates.
+     * @param xyoff offset into the x, y arrays.
+     * @param count number of coordinates (coordinate arrays should be at least
+     *        this long, llpts should be at least twice as long).
+     * @param isRadian true if lat/lon are radians instead of decimal degrees
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                             boolean isRadian) {
+        Point2D temp = new Point2D.Double();
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            forward(llpts[j], llpts[j + 1], temp, isRadian);
+            xcoords[i] = (float) temp.getX();
+            ycoords[i] = (float) temp.getY();
+        }
+    }
+
     /**
      * Inverse project a Point from x,y space to LatLon space.
      * 
@@ -184,6 +184,28 @@ public class LLXY
       return p;
    }
 
+   /**
+    * Forward project a packed array of lat, lon coordinates, doing the same
+    * math as forward() without a Point2D for each point.
+    */
+   public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                            boolean isRadian) {
+      int end = xyoff + count;
+      for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+         double lat;
+         double lon;
+         if (isRadian) {
+            lat = Math.toDegrees(normalizeLatitude(llpts[j]));
+            lon = Math.toDegrees(ProjMath.wrapLongitude(llpts[j + 1] - cLonRad));
+         } else {
+            lat = normalizeLatitudeDeg(llpts[j]);
+            lon = wrapLongitudeDeg(llpts[j + 1] - cLon);
+         }
+         xcoords[i] = (float) (wx + (lon * ppd));
+         ycoords[i] = (float) (hy - ((lat - cLat) * ppd));
+      }
+   }
+
    /**
     * Inverse project x,y coordinates into a LatLonPoint.
     * 
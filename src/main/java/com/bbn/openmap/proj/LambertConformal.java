@@ -395,6 +395,27 @@ public class LambertConformal
         return dlamda;
     } /* end of function LLToPixel */
 
+    /**
+     * Forward project a packed array of lat, lon coordinates, doing the same
+     * math as LLToPixel() with one world point for the whole array.
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                             boolean isRadian) {
+        Point2D lp = new Point2D.Double();
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            double lat = llpts[j];
+            double lon = llpts[j + 1];
+            if (isRadian) {
+                lat = ProjMath.radToDeg(lat);
+                lon = ProjMath.radToDeg(lon);
+            }
+            LLToWorldReturningLon(lat, lon, lp);
+            xcoords[i] = (float) (locationCenterXPixel + (lp.getX() - locationCenterXLambert) * locationPixelsPerLambert);
+            ycoords[i] = (float) (locationCenterYPixel - (lp.getY() - locationCenterYLambert) * locationPixelsPerLambert);
+        }
+    }
+
     //
     public Point worldToPixel(Point2D lp, Point p) {
         double x = locationCenterXPixel + (lp.getX() - locationCenterXLambert) * locationPixelsPerLambert;
@@ -657,14 +678,10 @@ public class LambertConformal
                               int copylen) {
         boolean visibleTotal = false;
         // HACK grabbed from Cylindrical. Might need fixing.
-        Point temp = new Point();
+        forwardArray(rawllpts, rawoff, xcoords, ycoords, copyoff, copylen, true);
         int end = copylen + copyoff;
-        for (int i = copyoff, j = rawoff; i < end; i++, j += 2) {
-            forward(rawllpts[j], rawllpts[j + 1], temp, true);
-            xcoords[i] = temp.x;
-            ycoords[i] = temp.y;
-
-            visible[i] = (0 <= temp.x && temp.x <= width) && (0 <= temp.y && temp.y <= height);
+        for (int i = copyoff; i < end; i++) {
+            visible[i] = (0 <= xcoords[i] && xcoords[i] <= width) && (0 <= ycoords[i] && ycoords[i] <= height);
 
             if (visible[i] == true && visibleTotal == false) {
                 visibleTotal = true;
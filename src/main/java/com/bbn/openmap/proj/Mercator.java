@@ -174,6 +174,27 @@ public class Mercator extends Cylindrical {
         return p;
     }
 
+    /**
+     * Forward project a packed array of lat, lon coordinates, doing the same
+     * math as forward() without a Point2D for each point.
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                             boolean isRadian) {
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            double lat = llpts[j];
+            double lon = llpts[j + 1];
+            if (!isRadian) {
+                lat = ProjMath.degToRad(lat);
+                lon = ProjMath.degToRad(lon);
+            }
+            lat = normalizeLatitude(lat);
+            lon = wrapLongitude(lon);
+            xcoords[i] = (float) ((scaled_radius * wrapLongitude(lon - centerX)) + wx);
+            ycoords[i] = (float) (hy - (scaled_radius * (MoreMath.asinh(Math.tan(lat)) - asinh_of_tanCtrLat)));
+        }
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * 
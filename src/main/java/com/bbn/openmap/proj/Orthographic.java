@@ -213,6 +213,67 @@ public class Orthographic extends Azimuth {
         return p;
     }
 
+    /**
+     * Forward project a packed array of lat, lon coordinates, doing the same
+     * math as forward() without a Point2D for each point. The visible
+     * hemisphere is checked with the sines and cosines needed for the
+     * projection anyway, points on the far side are moved to the edge like
+     * forward() does.
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                             boolean isRadian) {
+        forwardArray(llpts, lloff, xcoords, ycoords, null, xyoff, count, isRadian);
+    }
+
+    /**
+     * The bulk projection used by _forwardPoly(), with the same math as
+     * forwardArray().
+     */
+    protected void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, boolean[] invalid, int xyoff,
+                                int count) {
+        forwardArray(llpts, lloff, xcoords, ycoords, invalid, xyoff, count, true);
+    }
+
+    private void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, boolean[] invalid, int xyoff,
+                              int count, boolean isRadian) {
+        Point2D temp = null;
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            double phi = llpts[j];
+            double lambda = llpts[j + 1];
+            if (!isRadian) {
+                phi = Math.toRadians(phi);
+                lambda = Math.toRadians(lambda);
+            }
+            phi = normalizeLatitude(phi);
+            lambda = wrapLongitude(lambda);
+
+            double cosPhi = Math.cos(phi);
+            double sinPhi = Math.sin(phi);
+            double lambdaMinusCtrLon = lambda - centerX;
+            double cosLambda = Math.cos(lambdaMinusCtrLon);
+
+            // cosine of the distance from the center, negative on the far
+            // side of the sphere
+            boolean farSide = sinCtrLat * sinPhi + cosCtrLat * cosPhi * cosLambda < 0;
+            if (invalid != null) {
+                invalid[i] = farSide;
+            }
+            if (farSide) {
+                if (temp == null) {
+                    temp = new Point2D.Double();
+                }
+                _forward(phi, lambda, temp, null);
+                xcoords[i] = (float) temp.getX();
+                ycoords[i] = (float) temp.getY();
+                continue;
+            }
+
+            xcoords[i] = (float) ((scaled_radius * cosPhi * Math.sin(lambdaMinusCtrLon)) + wx);
+            ycoords[i] = (float) (hy - (scaled_radius * (cosCtrLat * sinPhi - sinCtrLat * cosPhi * cosLambda)));
+        }
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * 
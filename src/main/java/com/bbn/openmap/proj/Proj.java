@@ -619,6 +619,29 @@ public abstract class Proj
         return true;
     }
 
+    /**
+     * Forward project a packed array of world coordinates into the provided x
+     * and y arrays. Subclasses should override this with the projection math
+     * done right in the loop.
+     *
+     * @param llpts array of y, x world coordinates.
+     * @param lloff offset into llpts.
+     * @param xcoords x projected horizontal map coordinates.
+     * @param ycoords y projected vertical map coordinates.
+     * @param xyoff offset into the x, y arrays.
+     * @param count number of coordinates (coordinate arrays should be at least
+     *        this long, llpts should be at least twice as long).
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count) {
+        Point2D temp = new Point2D.Double();
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            forward(llpts[j], llpts[j + 1], temp);
+            xcoords[i] = (float) temp.getX();
+            ycoords[i] = (float) temp.getY();
+        }
+    }
+
     public ArrayList<float[]> forwardLine(Point2D ll1, Point2D ll2) {
         double[] rawllpts = {
             ll1.getY(),
@@ -435,6 +435,23 @@ public interface Projection
     public boolean forwardRaw(double[] rawllpts, int rawoff, float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
                               int copylen);
 
+    /**
+     * Forward project a packed array of world coordinates into the provided x
+     * and y arrays. No objects are created for each point, so this is the
+     * fastest way to project a lot of coordinates at once. Points that can't
+     * be seen are projected the same way forward() would project them.
+     *
+     * @param llpts array of y, x (lat, lon in decimal degrees for geographic
+     *        projections).
+     * @param lloff offset into llpts.
+     * @param xcoords x projected horizontal map coordinates.
+     * @param ycoords y projected vertical map coordinates.
+     * @param xyoff offset into the x, y arrays.
+     * @param count number of coordinates (coordinate arrays should be at least
+     *        this long, llpts should be at least twice as long).
+     */
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count);
+
     /**
      * Clone the projection.
      * 
@@ -99,6 +99,26 @@ public class UTMProjection extends GeoProj {
         return pt;
     }
 
+    /**
+     * Forward project a packed array of lat, lon coordinates, reusing the same
+     * LatLonPoint and UTMPoint for all of them.
+     */
+    @Override
+    public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count,
+                             boolean isRadian) {
+        UTMPoint tempUtm = new UTMPoint();
+        LatLonPoint tempLL = new LatLonPoint.Double();
+        double xcenter = xycenter.getX();
+        double ycenter = xycenter.getY();
+        int end = xyoff + count;
+        for (int i = xyoff, j = lloff; i < end; i++, j += 2) {
+            tempLL.setLatLon(llpts[j], llpts[j + 1], isRadian);
+            UTMPoint.LLtoUTM(tempLL, ellps, tempUtm, zoneNumber, northern);
+            xcoords[i] = (float) (wx + (ppu * (tempUtm.easting - xcenter)));
+            ycoords[i] = (float) (hy - (ppu * (tempUtm.northing - ycenter)));
+        }
+    }
+
     public <T extends Point2D> T inverse(double x, double y, T llpt) {
 
         double northing = xycenter.getY() + ((hy - y) / ppu);
@@ -266,7 +286,7 @@ public class UTMProjection extends GeoProj {
     protected ArrayList<float[]> _forwardPoly(double[] rawllpts, int ltype, int nsegs,
                                             boolean isFilled) {
         // TODO: copied from Cylindrical. may need to change.
-        int n, k, flag = 0, min = 0, max = 0, xp, xadj = 0;
+        int n, flag = 0, min = 0, max = 0, xadj = 0;
 
         // determine length of pairs list
         int len = rawllpts.length >> 1; // len/2, chop off extra
@@ -278,40 +298,24 @@ public class UTMProjection extends GeoProj {
             return doPolyDispatch(rawllpts, ltype, nsegs, isFilled);
         }
 
-        // determine when to stop
-        Point temp = new Point(0, 0);
+        // project all the points, then look for wrapping
         float[] xs = new float[len];
         float[] ys = new float[len];
+        forwardArray(rawllpts, 0, xs, ys, 0, len, true);
 
-        // more temp objects to limit number of new objects that needs to be
-        // created
-        UTMPoint tempUtm = new UTMPoint();
-        LatLonPoint tempLL = new LatLonPoint.Double();
-
-        // forward project the first point
-        tempLL.setLatLon(rawllpts[0], rawllpts[1], true);
-        forward(tempLL, temp, tempUtm);
-        // forward(rawllpts[0], rawllpts[1], temp, true, tempUtm);
-        xp = temp.x;
-        xs[0] = temp.x;
-        ys[0] = temp.y;
-        // forward project the other points
-        for (n = 1, k = 2; n < len; n++, k += 2) {
-            tempLL.setLatLon(rawllpts[k], rawllpts[k + 1], true);
-            forward(tempLL, temp, tempUtm);
-            // forward(rawllpts[k], rawllpts[k + 1], temp, true, tempUtm);
-            xs[n] = temp.x;
-            ys[n] = temp.y;
+        float xp = xs[0];
+        for (n = 1; n < len; n++) {
+            float x = xs[n];
             // segment crosses longitude along screen edge
-            if (Math.abs(xp - xs[n]) >= half_world) {
-                flag += (xp < xs[n]) ? -1 : 1;// inc/dec the wrap
+            if (Math.abs(xp - x) >= half_world) {
+                flag += (xp < x) ? -1 : 1;// inc/dec the wrap
                 // count
                 min = (flag < min) ? flag : min;// left wrap count
                 max = (flag > max) ? flag : max;// right wrap count
                 xadj = flag * world.x;// adjustment to x coordinates
                 // Debug.output("flag=" + flag + " xadj=" + xadj);
             }
-            xp = temp.x;// save previous unshifted x coordinate
+            xp = x;// save previous unshifted x coordinate
             if (flag != 0) {
                 xs[n] += xadj;// adjust x coordinates
             }
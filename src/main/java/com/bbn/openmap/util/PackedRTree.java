@@ -0,0 +1,422 @@
+package com.bbn.openmap.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A read-only R-tree bulk loaded with the Sort-Tile-Recursive (STR) algorithm.
+ * All nodes are packed full, and the tree is held in a few primitive arrays
+ * instead of node objects, so a tree over millions of bounding boxes is
+ * compact and quick to build. The tree can't be modified after it has been
+ * created, create a new one if the data changes.
+ * <p>
+ * Items are referred to by their index in the arrays used to create the tree.
+ * Searches return the indexes of the items whose bounding boxes intersect the
+ * search box, edges included, in ascending order.
+ * <p>
+ * A tree can be saved with {@link #write(DataOutput)} and read back with
+ * {@link #read(ByteBuffer)}, from a memory mapped file for instance, without
+ * being sorted again.
+ */
+public class PackedRTree {
+
+    /** The default maximum number of children for each node. */
+    public final static int DEFAULT_NODE_SIZE = 16;
+
+    protected final int nodeSize;
+    protected final int numItems;
+    protected final int numLeaves;
+
+    /** Item bounds, in tree order. */
+    protected final double[] itemBounds;
+    /** Original index of the items, in tree order. */
+    protected final int[] itemIds;
+
+    /**
+     * Node bounds (xmin, ymin, xmax, ymax for each node). The leaves come
+     * first, the root is the last node.
+     */
+    protected double[] nodeBounds;
+    /** Index of first child for each node, item index for leaves. */
+    protected int[] childStart;
+    /** Index after last child for each node. */
+    protected int[] childEnd;
+
+    /**
+     * Create a tree with the default node size.
+     *
+     * @param xmin the minimum x values of the item bounding boxes.
+     * @param ymin the minimum y values of the item bounding boxes.
+     * @param xmax the maximum x values of the item bounding boxes.
+     * @param ymax the maximum y values of the item bounding boxes.
+     */
+    public PackedRTree(double[] xmin, double[] ymin, double[] xmax, double[] ymax) {
+        this(xmin, ymin, xmax, ymax, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Create a tree.
+     *
+     * @param xmin the minimum x values of the item bounding boxes.
+     * @param ymin the minimum y values of the item bounding boxes.
+     * @param xmax the maximum x values of the item bounding boxes.
+     * @param ymax the maximum y values of the item bounding boxes.
+     * @param nodeSize the maximum number of children for each node, at least
+     *        2.
+     */
+    public PackedRTree(double[] xmin, double[] ymin, double[] xmax, double[] ymax, int nodeSize) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("node size must be at least 2, was " + nodeSize);
+        }
+        int n = xmin.length;
+        if (ymin.length != n || xmax.length != n || ymax.length != n) {
+            throw new IllegalArgumentException("bounding box arrays must have the same length");
+        }
+
+        this.nodeSize = nodeSize;
+        this.numItems = n;
+
+        double[] bounds = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            bounds[i * 4] = xmin[i];
+            bounds[i * 4 + 1] = ymin[i];
+            bounds[i * 4 + 2] = xmax[i];
+            bounds[i * 4 + 3] = ymax[i];
+        }
+
+        itemIds = strOrder(bounds, n);
+        itemBounds = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(bounds, itemIds[i] * 4, itemBounds, i * 4, 4);
+        }
+
+        numLeaves = (n + nodeSize - 1) / nodeSize;
+        build();
+    }
+
+    /**
+     * Create a tree from arrays that were already built, see
+     * {@link #read(ByteBuffer)}.
+     */
+    protected PackedRTree(int nodeSize, int numItems, int numLeaves, double[] itemBounds, int[] itemIds, double[] nodeBounds,
+                          int[] childStart, int[] childEnd) {
+        this.nodeSize = nodeSize;
+        this.numItems = numItems;
+        this.numLeaves = numLeaves;
+        this.itemBounds = itemBounds;
+        this.itemIds = itemIds;
+        this.nodeBounds = nodeBounds;
+        this.childStart = childStart;
+        this.childEnd = childEnd;
+    }
+
+    /**
+     * Build the node levels, bottom up. Each level is sorted with STR before
+     * the level above it is created, so the children of every node are
+     * consecutive.
+     */
+    private void build() {
+        int totalNodes = 0;
+        for (int count = numLeaves; count > 0; count = (count + nodeSize - 1) / nodeSize) {
+            totalNodes += count;
+            if (count == 1) {
+                break;
+            }
+        }
+
+        nodeBounds = new double[totalNodes * 4];
+        childStart = new int[totalNodes];
+        childEnd = new int[totalNodes];
+
+        if (numItems == 0) {
+            return;
+        }
+
+        // Leaves, grouping items that are already in STR order.
+        int levelCount = group(itemBounds, numItems, 0, 0);
+        int levelStart = 0;
+
+        while (levelCount > 1) {
+            // Sort this level so nodes that are close end up under the same
+            // parent. Only the nodes of this level move, the child ranges they
+            // point to are carried along.
+            double[] levelBounds = new double[levelCount * 4];
+            System.arraycopy(nodeBounds, levelStart * 4, levelBounds, 0, levelCount * 4);
+            int[] order = strOrder(levelBounds, levelCount);
+            int[] starts = new int[levelCount];
+            int[] ends = new int[levelCount];
+            System.arraycopy(childStart, levelStart, starts, 0, levelCount);
+            System.arraycopy(childEnd, levelStart, ends, 0, levelCount);
+            for (int i = 0; i < levelCount; i++) {
+                int o = order[i];
+                System.arraycopy(levelBounds, o * 4, nodeBounds, (levelStart + i) * 4, 4);
+                childStart[levelStart + i] = starts[o];
+                childEnd[levelStart + i] = ends[o];
+            }
+
+            int nextStart = levelStart + levelCount;
+            levelCount = group(nodeBounds, levelCount, levelStart, nextStart);
+            levelStart = nextStart;
+        }
+    }
+
+    /**
+     * Create parent nodes for groups of nodeSize consecutive children.
+     *
+     * @param bounds the bounds array holding the children.
+     * @param count the number of children.
+     * @param first the index of the first child.
+     * @param parentStart the node index of the first parent to create.
+     * @return the number of parents created.
+     */
+    private int group(double[] bounds, int count, int first, int parentStart) {
+        int parent = parentStart;
+        for (int i = 0; i < count; i += nodeSize, parent++) {
+            int start = first + i;
+            int end = Math.min(first + count, start + nodeSize);
+            double x1 = Double.POSITIVE_INFINITY;
+            double y1 = Double.POSITIVE_INFINITY;
+            double x2 = Double.NEGATIVE_INFINITY;
+            double y2 = Double.NEGATIVE_INFINITY;
+            for (int c = start; c < end; c++) {
+                x1 = Math.min(x1, bounds[c * 4]);
+                y1 = Math.min(y1, bounds[c * 4 + 1]);
+                x2 = Math.max(x2, bounds[c * 4 + 2]);
+                y2 = Math.max(y2, bounds[c * 4 + 3]);
+            }
+            nodeBounds[parent * 4] = x1;
+            nodeBounds[parent * 4 + 1] = y1;
+            nodeBounds[parent * 4 + 2] = x2;
+            nodeBounds[parent * 4 + 3] = y2;
+            childStart[parent] = start;
+            childEnd[parent] = end;
+        }
+        return parent - parentStart;
+    }
+
+    /**
+     * Figure out the Sort-Tile-Recursive order of boxes: sorted by center x
+     * into vertical slices, and each slice sorted by center y.
+     *
+     * @param bounds xmin, ymin, xmax, ymax for each box.
+     * @param count the number of boxes.
+     * @return the box indexes in STR order.
+     */
+    private int[] strOrder(double[] bounds, int count) {
+        int[] order = new int[count];
+        double[] cx = new double[count];
+        double[] cy = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            cx[i] = (bounds[i * 4] + bounds[i * 4 + 2]) / 2.0;
+            cy[i] = (bounds[i * 4 + 1] + bounds[i * 4 + 3]) / 2.0;
+        }
+
+        sort(order, cx, 0, count - 1);
+
+        int numParents = (count + nodeSize - 1) / nodeSize;
+        int numSlices = (int) Math.ceil(Math.sqrt(numParents));
+        int sliceSize = numSlices * nodeSize;
+        for (int start = 0; start < count; start += sliceSize) {
+            sort(order, cy, start, Math.min(count, start + sliceSize) - 1);
+        }
+        return order;
+    }
+
+    /**
+     * Quicksort the indexes in order[lo..hi] by their values.
+     */
+    private static void sort(int[] order, double[] values, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = values[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (values[order[i]] < pivot) {
+                    i++;
+                }
+                while (values[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            // Recurse into the smaller part, loop on the larger one.
+            if (j - lo < hi - i) {
+                sort(order, values, lo, j);
+                lo = i;
+            } else {
+                sort(order, values, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            int index = order[i];
+            double value = values[index];
+            int j = i - 1;
+            while (j >= lo && values[order[j]] > value) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+    }
+
+    /**
+     * @return the number of items in the tree.
+     */
+    public int size() {
+        return numItems;
+    }
+
+    /**
+     * @return the maximum number of children for each node.
+     */
+    public int getNodeSize() {
+        return nodeSize;
+    }
+
+    /**
+     * Find the items with bounding boxes intersecting the given box. Boxes
+     * that only touch the search box are included.
+     *
+     * @param xmin the smaller of the x coordinates
+     * @param ymin the smaller of the y coordinates
+     * @param xmax the larger of the x coordinates
+     * @param ymax the larger of the y coordinates
+     * @return the indexes of the items, in ascending order.
+     */
+    public int[] search(double xmin, double ymin, double xmax, double ymax) {
+        if (numItems == 0) {
+            return new int[0];
+        }
+
+        int[] hits = new int[16];
+        int numHits = 0;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = childStart.length - 1;
+
+        while (top > 0) {
+            int node = stack[--top];
+            if (!intersects(nodeBounds, node, xmin, ymin, xmax, ymax)) {
+                continue;
+            }
+
+            int start = childStart[node];
+            int end = childEnd[node];
+            if (node < numLeaves) {
+                for (int i = start; i < end; i++) {
+                    if (intersects(itemBounds, i, xmin, ymin, xmax, ymax)) {
+                        if (numHits == hits.length) {
+                            hits = Arrays.copyOf(hits, numHits * 2);
+                        }
+                        hits[numHits++] = itemIds[i];
+                    }
+                }
+            } else {
+                for (int c = start; c < end; c++) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = c;
+                }
+            }
+        }
+
+        int[] ret = Arrays.copyOf(hits, numHits);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * @return the number of bytes {@link #write(DataOutput)} writes.
+     */
+    public int getByteCount() {
+        return 16 + (itemBounds.length + nodeBounds.length) * 8 + (itemIds.length + childStart.length + childEnd.length) * 4;
+    }
+
+    /**
+     * Write the tree, big endian, so it can be read with
+     * {@link #read(ByteBuffer)}.
+     *
+     * @param out where to write the tree.
+     * @throws IOException
+     */
+    public void write(DataOutput out)
+            throws IOException {
+        out.writeInt(nodeSize);
+        out.writeInt(numItems);
+        out.writeInt(numLeaves);
+        out.writeInt(childStart.length);
+        for (double d : itemBounds) {
+            out.writeDouble(d);
+        }
+        for (int i : itemIds) {
+            out.writeInt(i);
+        }
+        for (double d : nodeBounds) {
+            out.writeDouble(d);
+        }
+        for (int i : childStart) {
+            out.writeInt(i);
+        }
+        for (int i : childEnd) {
+            out.writeInt(i);
+        }
+    }
+
+    /**
+     * Read a tree written by {@link #write(DataOutput)}, starting at the
+     * buffer's position. The buffer's position is moved past the tree.
+     *
+     * @param buf the buffer, big endian.
+     * @return PackedRTree
+     * @throws IOException if the buffer doesn't hold a tree.
+     */
+    public static PackedRTree read(ByteBuffer buf)
+            throws IOException {
+        try {
+            int nodeSize = buf.getInt();
+            int numItems = buf.getInt();
+            int numLeaves = buf.getInt();
+            int numNodes = buf.getInt();
+            if (nodeSize < 2 || numItems < 0 || numLeaves != (numItems + nodeSize - 1) / nodeSize || numNodes < numLeaves) {
+                throw new IOException("not a PackedRTree");
+            }
+
+            double[] itemBounds = new double[numItems * 4];
+            int[] itemIds = new int[numItems];
+            double[] nodeBounds = new double[numNodes * 4];
+            int[] childStart = new int[numNodes];
+            int[] childEnd = new int[numNodes];
+
+            buf.asDoubleBuffer().get(itemBounds);
+            buf.position(buf.position() + itemBounds.length * 8);
+            buf.asIntBuffer().get(itemIds);
+            buf.position(buf.position() + itemIds.length * 4);
+            buf.asDoubleBuffer().get(nodeBounds);
+            buf.position(buf.position() + nodeBounds.length * 8);
+            buf.asIntBuffer().get(childStart);
+            buf.position(buf.position() + childStart.length * 4);
+            buf.asIntBuffer().get(childEnd);
+            buf.position(buf.position() + childEnd.length * 4);
+
+            return new PackedRTree(nodeSize, numItems, numLeaves, itemBounds, itemIds, nodeBounds, childStart, childEnd);
+        } catch (RuntimeException re) {
+            // BufferUnderflowException, NegativeArraySizeException
+            throw new IOException("not a PackedRTree: " + re);
+        }
+    }
+
+    private static boolean intersects(double[] bounds, int i, double xmin, double ymin, double xmax, double ymax) {
+        int o = i * 4;
+        return !(bounds[o] > xmax || bounds[o + 1] > ymax || bounds[o + 2] < xmin || bounds[o + 3] < ymin);
+    }
+
+}
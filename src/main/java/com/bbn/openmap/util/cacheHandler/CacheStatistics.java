@@ -0,0 +1,69 @@
+package com.bbn.openmap.util.cacheHandler;
+
+/**
+ * A snapshot of the counters kept by a {@link ConcurrentCacheHandler}.
+ */
+public class CacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int entryCount;
+    private final long weight;
+
+    public CacheStatistics(long hitCount, long missCount, long evictionCount, int entryCount, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.weight = weight;
+    }
+
+    /**
+     * @return the number of lookups that found an entry.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that didn't find an entry.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the number of entries thrown out to make room for others.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the total weight of the entries in the cache.
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return hits divided by lookups, 1 if there haven't been any lookups.
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return (requests == 0) ? 1.0 : (double) hitCount / requests;
+    }
+
+    public String toString() {
+        return "CacheStatistics[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+                + ", entries=" + entryCount + ", weight=" + weight + "]";
+    }
+}
@@ -0,0 +1,15 @@
+package com.bbn.openmap.util.cacheHandler;
+
+/**
+ * Figures out the cost of holding an entry in a {@link ConcurrentCacheHandler}
+ * that has a weight limit, usually an estimate of the number of bytes used by
+ * the cached object.
+ */
+public interface CacheWeigher {
+
+    /**
+     * @param co the entry being added to the cache.
+     * @return the weight of the entry, zero or more.
+     */
+    long weigh(CacheObject co);
+}
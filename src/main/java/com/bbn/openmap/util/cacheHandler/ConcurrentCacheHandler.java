@@ -0,0 +1,392 @@
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A CacheHandler that can be used by several threads at the same time, and
+ * that doesn't slow down as it gets bigger. Entries are kept in hash maps
+ * instead of an array, so lookups don't scan the whole cache, and the cache is
+ * split into sections with their own lock, so threads working with different
+ * keys don't wait for each other. Subclasses implement
+ * {@link #load(Object)} just like they do for the CacheHandler, and can use
+ * searchCache and replaceLeastUsed the same way.
+ * <p>
+ * The entry thrown out when the cache is full is picked by an
+ * {@link EvictionPolicy}, least recently used by default. The size of the cache
+ * is limited by the number of entries, and can also be limited by the total
+ * weight of the entries, using a {@link CacheWeigher} to figure out how much
+ * each entry costs. Hits, misses and evictions are counted, see
+ * {@link #getStatistics()}.
+ * <p>
+ * Small caches are kept in one section, so the limits are exact. Bigger caches
+ * split the limits evenly between the sections, so an entry may be evicted a
+ * little before the whole cache is full.
+ * <p>
+ * Loading isn't done while holding a lock, a slow load doesn't block lookups.
+ * Two threads missing the same key at the same time will both load it, and the
+ * second one will replace the first one in the cache.
+ */
+public abstract class ConcurrentCacheHandler extends CacheHandler {
+
+    /** The maximum number of sections the cache is split into. */
+    public static int DEFAULT_CONCURRENCY_LEVEL = 16;
+    /**
+     * The minimum number of entries held by each section, caches smaller than
+     * twice this size aren't split.
+     */
+    protected static int MIN_SECTION_SIZE = 16;
+
+    protected volatile Section[] sections;
+    protected int maxSize;
+    protected long maxWeight;
+    protected CacheWeigher weigher;
+    protected EvictionPolicy evictionPolicy;
+
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong missCount = new AtomicLong();
+    protected final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Create a least recently used cache of the default maximum size.
+     */
+    public ConcurrentCacheHandler() {
+        this(DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    /**
+     * Create a least recently used cache.
+     *
+     * @param max_size the maximum number of entries.
+     */
+    public ConcurrentCacheHandler(int max_size) {
+        this(max_size, new LRUEvictionPolicy());
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param max_size the maximum number of entries.
+     * @param policy decides which entry to evict when the cache is full.
+     */
+    public ConcurrentCacheHandler(int max_size, EvictionPolicy policy) {
+        // The array in the CacheHandler isn't used.
+        super(0);
+        evictionPolicy = policy;
+        initSections(max_size);
+    }
+
+    /**
+     * Create the sections for the given size, dropping all current entries.
+     */
+    protected synchronized void initSections(int max_size) {
+        maxSize = Math.max(1, max_size);
+
+        int count = 1;
+        while (count * 2 <= DEFAULT_CONCURRENCY_LEVEL && maxSize / (count * 2) >= MIN_SECTION_SIZE) {
+            count *= 2;
+        }
+
+        Section[] newSections = new Section[count];
+        for (int i = 0; i < count; i++) {
+            int sectionSize = maxSize / count + (i < maxSize % count ? 1 : 0);
+            long sectionWeight = (maxWeight <= 0) ? 0 : Math.max(1, maxWeight / count);
+            newSections[i] = new Section(sectionSize, sectionWeight, evictionPolicy.newInstance());
+        }
+        sections = newSections;
+    }
+
+    /**
+     * Limit the cache by the total weight of its entries, in addition to the
+     * number of entries. Drops all current entries.
+     *
+     * @param maxWeight the maximum total weight, 0 or less to only limit the
+     *        number of entries.
+     * @param weigher figures out the weight of each entry.
+     */
+    public synchronized void setWeightLimit(long maxWeight, CacheWeigher weigher) {
+        this.maxWeight = (weigher == null) ? 0 : maxWeight;
+        this.weigher = weigher;
+        initSections(maxSize);
+    }
+
+    /**
+     * @return the maximum total weight of the entries, 0 if there isn't one.
+     */
+    public long getWeightLimit() {
+        return maxWeight;
+    }
+
+    /**
+     * Change the way entries are picked for eviction. Drops all current
+     * entries.
+     */
+    public synchronized void setEvictionPolicy(EvictionPolicy policy) {
+        evictionPolicy = policy;
+        initSections(maxSize);
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Remove all the objects from the cache.
+     */
+    public void clear() {
+        Section[] current = sections;
+        if (current != null) {
+            for (Section section : current) {
+                section.clear();
+            }
+        }
+    }
+
+    /**
+     * Need to clear memory, get gc moving, and ready for new objects.
+     */
+    public void resetCache() {
+        clear();
+    }
+
+    /**
+     * Need to clear memory, get gc moving, and ready for new objects, with a
+     * new maximum number of entries.
+     */
+    public void resetCache(int max_size) {
+        if (max_size == maxSize) {
+            clear();
+        } else {
+            initSections(max_size);
+        }
+    }
+
+    /**
+     * Get the maximum number of entries in the cache.
+     */
+    public int getCacheSize() {
+        return maxSize;
+    }
+
+    /**
+     * The main call to retrieve something from the cache.
+     */
+    public Object get(Object key) {
+        CacheObject ret = searchCache(key);
+        if (ret != null) {
+            return ret.obj;
+        }
+
+        ret = load(key);
+        if (ret == null) {
+            return null;
+        }
+
+        replaceLeastUsed(ret);
+        return ret.obj;
+    }
+
+    /**
+     * Search the cache for a match, return null if not found.
+     */
+    public CacheObject searchCache(Object key) {
+        if (key == null) {
+            return null;
+        }
+        CacheObject co = sectionFor(key).get(key);
+        if (co != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return co;
+    }
+
+    /**
+     * Put the object in the cache, replacing any entry with the same id, and
+     * evict entries chosen by the eviction policy if there isn't enough room.
+     */
+    protected void replaceLeastUsed(CacheObject newObj) {
+        if (newObj == null || newObj.id == null) {
+            return;
+        }
+        sectionFor(newObj.id).put(newObj);
+    }
+
+    /**
+     * Take an entry out of the cache.
+     *
+     * @return the removed entry, null if there wasn't one for the key.
+     */
+    public CacheObject remove(Object key) {
+        return (key == null) ? null : sectionFor(key).remove(key);
+    }
+
+    /**
+     * Take an entry out of the cache, if it hasn't been replaced by another
+     * entry for the same key.
+     *
+     * @return true if the entry was removed.
+     */
+    public boolean remove(CacheObject co) {
+        return co != null && co.id != null && sectionFor(co.id).remove(co.id, co);
+    }
+
+    /**
+     * @return the number of entries currently in the cache.
+     */
+    public int getEntryCount() {
+        int count = 0;
+        for (Section section : sections) {
+            count += section.getEntryCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the current hit, miss and eviction counts.
+     */
+    public CacheStatistics getStatistics() {
+        int entries = 0;
+        long weight = 0;
+        for (Section section : sections) {
+            synchronized (section) {
+                entries += section.entries.size();
+                weight += section.weight;
+            }
+        }
+        return new CacheStatistics(hitCount.get(), missCount.get(), evictionCount.get(), entries, weight);
+    }
+
+    /**
+     * Set the hit, miss and eviction counts back to zero.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+    /**
+     * Return a ListIterator over a copy of the cache objects.
+     */
+    public ListIterator<CacheObject> listIterator() {
+        List<CacheObject> list = new ArrayList<CacheObject>();
+        for (Section section : sections) {
+            synchronized (section) {
+                list.addAll(section.entries.values());
+            }
+        }
+        return list.listIterator();
+    }
+
+    protected Section sectionFor(Object key) {
+        Section[] current = sections;
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return current[h & (current.length - 1)];
+    }
+
+    /**
+     * One independently locked part of the cache.
+     */
+    protected class Section {
+        protected final Map<Object, CacheObject> entries = new HashMap<Object, CacheObject>();
+        protected final Map<CacheObject, Long> weights = new HashMap<CacheObject, Long>();
+        protected final int maxEntries;
+        protected final long maxSectionWeight;
+        protected final EvictionPolicy policy;
+        protected long weight;
+
+        protected Section(int maxEntries, long maxSectionWeight, EvictionPolicy policy) {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.maxSectionWeight = maxSectionWeight;
+            this.policy = policy;
+        }
+
+        protected synchronized CacheObject get(Object key) {
+            CacheObject co = entries.get(key);
+            if (co != null) {
+                policy.accessed(co);
+            }
+            return co;
+        }
+
+        protected synchronized void put(CacheObject co) {
+            CacheObject old = entries.put(co.id, co);
+            if (old == co) {
+                policy.accessed(co);
+                return;
+            }
+            if (old != null) {
+                forget(old);
+            }
+
+            if (maxSectionWeight > 0) {
+                long w = Math.max(0, weigher.weigh(co));
+                weights.put(co, w);
+                weight += w;
+            }
+            // Make room before the new entry is handed to the policy, so it's
+            // never picked to make room for itself. An entry heavier than the
+            // weight limit ends up alone in the section.
+            while (entries.size() > maxEntries || (maxSectionWeight > 0 && weight > maxSectionWeight)) {
+                CacheObject victim = policy.victim();
+                if (victim == null) {
+                    break;
+                }
+                entries.remove(victim.id);
+                forget(victim);
+                evictionCount.incrementAndGet();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Tossing " + victim.id + " from cache to add " + co.id);
+                }
+            }
+            policy.added(co);
+        }
+
+        protected synchronized CacheObject remove(Object key) {
+            CacheObject co = entries.remove(key);
+            if (co != null) {
+                forget(co);
+            }
+            return co;
+        }
+
+        /**
+         * Remove the entry for a key only if it's the given entry, and not
+         * one that replaced it.
+         */
+        protected synchronized boolean remove(Object key, CacheObject co) {
+            if (entries.get(key) != co) {
+                return false;
+            }
+            entries.remove(key);
+            forget(co);
+            return true;
+        }
+
+        protected synchronized int getEntryCount() {
+            return entries.size();
+        }
+
+        protected synchronized void clear() {
+            entries.clear();
+            weights.clear();
+            weight = 0;
+            policy.clear();
+        }
+
+        private void forget(CacheObject co) {
+            policy.removed(co);
+            Long w = weights.remove(co);
+            if (w != null) {
+                weight -= w;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.bbn.openmap.util.cacheHandler;
+
+/**
+ * Decides which entry a {@link ConcurrentCacheHandler} throws out when it is
+ * full. The cache tells the policy about every entry added, used and removed,
+ * and asks it for a victim when there is no more room.
+ * <p>
+ * A policy instance only keeps track of one section of the cache, and isn't
+ * thread safe on its own, the cache calls it while holding the lock for that
+ * section. The cache uses {@link #newInstance()} to create a policy for each
+ * section.
+ */
+public interface EvictionPolicy {
+
+    /**
+     * @return a new, empty policy of the same kind.
+     */
+    EvictionPolicy newInstance();
+
+    /**
+     * Called when an entry has been added to the cache.
+     */
+    void added(CacheObject co);
+
+    /**
+     * Called when an entry has been found in the cache.
+     */
+    void accessed(CacheObject co);
+
+    /**
+     * Called when an entry has been removed from the cache, evicted or
+     * replaced.
+     */
+    void removed(CacheObject co);
+
+    /**
+     * @return the entry that should be evicted next, or null if the policy
+     *         isn't tracking any entries.
+     */
+    CacheObject victim();
+
+    /**
+     * Forget about all entries.
+     */
+    void clear();
+}
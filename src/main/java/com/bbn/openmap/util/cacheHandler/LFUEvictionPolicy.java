@@ -0,0 +1,79 @@
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used entry. Entries used the same number of
+ * times are evicted in least recently used order. Good for data that is used
+ * over and over again, like the tiles around a frequently viewed area, that
+ * shouldn't be pushed out by a burst of one-time requests.
+ */
+public class LFUEvictionPolicy implements EvictionPolicy {
+
+    /** Use count of every entry. */
+    protected Map<CacheObject, Integer> counts = new HashMap<CacheObject, Integer>();
+    /** Entries grouped by use count, least recent first in each group. */
+    protected TreeMap<Integer, LinkedHashSet<CacheObject>> buckets = new TreeMap<Integer, LinkedHashSet<CacheObject>>();
+
+    public EvictionPolicy newInstance() {
+        return new LFUEvictionPolicy();
+    }
+
+    public void added(CacheObject co) {
+        counts.put(co, 1);
+        bucket(1, true).add(co);
+    }
+
+    public void accessed(CacheObject co) {
+        Integer count = counts.get(co);
+        if (count == null) {
+            return;
+        }
+        unbucket(co, count);
+        // Don't let the count wrap around for entries that stay forever.
+        int next = (count == Integer.MAX_VALUE) ? count : count + 1;
+        counts.put(co, next);
+        bucket(next, true).add(co);
+    }
+
+    public void removed(CacheObject co) {
+        Integer count = counts.remove(co);
+        if (count != null) {
+            unbucket(co, count);
+        }
+    }
+
+    public CacheObject victim() {
+        if (buckets.isEmpty()) {
+            return null;
+        }
+        return buckets.firstEntry().getValue().iterator().next();
+    }
+
+    public void clear() {
+        counts.clear();
+        buckets.clear();
+    }
+
+    private LinkedHashSet<CacheObject> bucket(int count, boolean create) {
+        LinkedHashSet<CacheObject> bucket = buckets.get(count);
+        if (bucket == null && create) {
+            bucket = new LinkedHashSet<CacheObject>();
+            buckets.put(count, bucket);
+        }
+        return bucket;
+    }
+
+    private void unbucket(CacheObject co, int count) {
+        LinkedHashSet<CacheObject> bucket = bucket(count, false);
+        if (bucket != null) {
+            bucket.remove(co);
+            if (bucket.isEmpty()) {
+                buckets.remove(count);
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts the least recently used entry. This is the default policy for the
+ * {@link ConcurrentCacheHandler}.
+ */
+public class LRUEvictionPolicy implements EvictionPolicy {
+
+    /** Entries in the order they were last used, least recent first. */
+    protected LinkedHashSet<CacheObject> order = new LinkedHashSet<CacheObject>();
+
+    public EvictionPolicy newInstance() {
+        return new LRUEvictionPolicy();
+    }
+
+    public void added(CacheObject co) {
+        order.add(co);
+    }
+
+    public void accessed(CacheObject co) {
+        if (order.remove(co)) {
+            order.add(co);
+        }
+    }
+
+    public void removed(CacheObject co) {
+        order.remove(co);
+    }
+
+    public CacheObject victim() {
+        Iterator<CacheObject> it = order.iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    public void clear() {
+        order.clear();
+    }
+}
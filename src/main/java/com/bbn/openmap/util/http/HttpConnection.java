@@ -29,21 +29,38 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.StringTokenizer;
 
 import com.bbn.openmap.util.Debug;
 
 /**
- * HttpConnection handles the communication with an HTTP client in its
- * own thread. An instance of this class is created by the
- * <code>HttpServer</code> each time a connection is made. The
- * instance exists only long enough to fulfill the request, then dies.
+ * HttpConnection handles the communication with an HTTP client, on one
+ * of the threads of the <code>HttpServer</code>. An instance of this
+ * class is created by the <code>HttpServer</code> each time a
+ * connection is made. The instance exists only long enough to fulfill
+ * the request, then dies, unless the client asked for the connection to
+ * be kept alive. Then it handles the following requests too, until the
+ * client closes the connection or stops sending requests.
+ * <p>
+ * A connection can only be kept alive if the response says how long it
+ * is, so the client knows where the next response starts. That's the
+ * case for responses written with the writeHttpResponse methods. If a
+ * listener writes its response some other way, the connection is
+ * closed after the response.
  * 
  * @author Tom Mitchell
  * @version 1.1, 06/17/97
  * @see HttpServer
  */
-public class HttpConnection extends Thread {
+public class HttpConnection implements Runnable {
+
+    /**
+     * The connection handling a request on the current thread, so the
+     * response headers written by the static methods can tell the
+     * client the connection is kept alive.
+     */
+    private final static ThreadLocal<HttpConnection> current = new ThreadLocal<HttpConnection>();
 
     protected HttpServer server;
     protected Socket client;
@@ -51,6 +68,13 @@ public class HttpConnection extends Thread {
     protected OutputStream out;
     protected boolean isConnectionOpen = true;
 
+    /** Whether the client asked to keep the connection open. */
+    protected boolean keepAlive = false;
+    /** Whether the current response told the client its length. */
+    protected boolean responseLengthSent = false;
+    /** The Content-Length of the current request. */
+    protected int contentLength = 0;
+
     public final static String CONTENT_JPEG = "image/jpeg";
     public final static String CONTENT_GIF = "image/gif";
     public final static String CONTENT_PPM = "image/ppm";
@@ -67,7 +91,7 @@ public class HttpConnection extends Thread {
 
     /**
      * Initialize the input <code>Reader</code> and output
-     * <code>Writer</code> and start the connection thread.
+     * <code>Writer</code>. The connection is handled when run is called.
      * 
      * @param client_socket the client's socket
      * @param server the server object
@@ -102,20 +126,58 @@ public class HttpConnection extends Thread {
     }
 
     /**
-     * The running thread simply reads all the lines of input and
-     * hands each line off to be parsed.
+     * Reads the requests from the client and hands each one off to be
+     * parsed, until the connection is closed.
      */
     public void run() {
         String line;
+        int requests = 0;
+
+        if (in == null) {
+            // Couldn't get the streams.
+            return;
+        }
 
         try {
+            // Don't let a client that doesn't send anything hold on to
+            // the connection slot.
+            client.setSoTimeout(Math.max(0, server.getRequestTimeout()));
+
             while (isConnectionOpen) {
                 // read in a line
                 line = in.readLine();
                 if (line == null)
                     break;
-                processLine(line);
+                if (line.length() == 0) {
+                    // Blank lines between requests
+                    continue;
+                }
+                if (requests > 0) {
+                    // Back from waiting for the next request on a
+                    // kept-alive connection.
+                    client.setSoTimeout(Math.max(0, server.getRequestTimeout()));
+                }
+
+                long start = System.nanoTime();
+                keepAlive = false;
+                responseLengthSent = false;
+                current.set(this);
+                try {
+                    processLine(line);
+                } finally {
+                    current.remove();
+                }
+                server.requestHandled(System.nanoTime() - start);
+
+                if (!isConnectionOpen || !keepAlive || !responseLengthSent
+                        || ++requests >= server.getMaxKeepAliveRequests()
+                        || server.getKeepAliveTimeout() <= 0 || server.isBusy()) {
+                    break;
+                }
+                client.setSoTimeout(server.getKeepAliveTimeout());
             }
+        } catch (SocketTimeoutException e) {
+            Debug.message("httpconnection", "Connection idle, closing");
         } catch (IOException e) {
         } finally {
             try {
@@ -139,45 +201,60 @@ public class HttpConnection extends Thread {
         }
 
         if (line.startsWith("GET")) {
+            readHeaders(line);
             processGetCommand(line);
         } else if (line.startsWith("POST")) {
             Debug.message("httpconnection", "handling POST");
+            readHeaders(line);
             handlePost();
+        } else {
+            // Not something we answer, don't try to find the next
+            // request in whatever follows.
+            close();
         }
     }
 
-    protected void handlePost() throws IOException {
-        Debug.message("httpconnection", "HttpConnection | handlePost");
-        String line;
-        int contentLength = 0;
-        try {
-            while (isConnectionOpen) {
-                // read in a line
-                line = in.readLine();
-                Debug.message("httpconnection", line);
-
-                if (line == null)
-                    break;
-
-                String lineupp = line.toUpperCase();
-                if (lineupp.startsWith("CONTENT-LENGTH")) {
-                    contentLength = readContentLength(line);
-                    Debug.message("httpconnection",
-                            "HttpConnection -- Contentlength = "
-                                    + contentLength);
-                }
+    /**
+     * Read the header lines following the request line, up to the
+     * blank line, noting the content length and whether the client
+     * wants the connection kept alive. HTTP/1.1 connections are kept
+     * alive unless the client says otherwise, HTTP/1.0 connections
+     * only when the client asks for it.
+     * 
+     * @param requestLine the first line of the request.
+     */
+    protected void readHeaders(String requestLine) throws IOException {
+        keepAlive = requestLine.endsWith("HTTP/1.1");
+        contentLength = 0;
 
-                if (line.length() == 0) {
-                    readContent(contentLength);
+        String line;
+        while ((line = in.readLine()) != null && line.length() > 0) {
+            Debug.message("httpconnection", line);
+
+            String lineupp = line.toUpperCase();
+            if (lineupp.startsWith("CONTENT-LENGTH")) {
+                contentLength = readContentLength(line);
+                Debug.message("httpconnection",
+                        "HttpConnection -- Contentlength = "
+                                + contentLength);
+            } else if (lineupp.startsWith("CONNECTION")) {
+                String value = lineupp.substring(lineupp.indexOf(':') + 1).trim();
+                if (value.startsWith("KEEP-ALIVE")) {
+                    keepAlive = true;
+                } else if (value.startsWith("CLOSE")) {
+                    keepAlive = false;
                 }
             }
-        } catch (IOException e) {
-        } finally {
-            try {
-                close();
-            } catch (IOException e2) {
-            }
         }
+
+        if (line == null) {
+            keepAlive = false;
+        }
+    }
+
+    protected void handlePost() throws IOException {
+        Debug.message("httpconnection", "HttpConnection | handlePost");
+        readContent(contentLength);
     }
 
     protected int readContentLength(String line) {
@@ -245,7 +322,6 @@ public class HttpConnection extends Thread {
         // of writing things back on their own,
 
         out.flush();
-        close();
     }
 
     /**
@@ -305,13 +381,14 @@ public class HttpConnection extends Thread {
         // of writing things back on their own,
 
         out.flush();
-        close();
     }
 
     /**
      * Can be used to write the header to an HttpResponse. You need to
      * create a Writer tied to the OutputStream in order to write this
-     * text.
+     * text. When called while an HttpConnection is handling a request
+     * from a client that wants the connection kept alive, the header
+     * tells the client it is.
      * 
      * @param out Writer to place text on the OutputStream.
      * @param contentType the mime type for your response.
@@ -324,6 +401,13 @@ public class HttpConnection extends Thread {
         out.write("HTTP/1.0 200 \n"); // return status
         out.write("Content-type: " + contentType + "\n"); // important!
         out.write("Content-Length: " + contentLength + "\n"); // important!
+        HttpConnection connection = current.get();
+        if (connection != null) {
+            connection.responseLengthSent = true;
+            if (connection.keepAlive) {
+                out.write("Connection: keep-alive\n");
+            }
+        }
         out.write("\n");
     }
 
@@ -336,11 +420,8 @@ public class HttpConnection extends Thread {
      */
     public static void writeHttpResponse(OutputStream out, String contentType,
                                          String response) throws IOException {
-
-        OutputStreamWriter osw = new OutputStreamWriter(out);
-        writeHttpResponseHeader(osw, contentType, response.length());
-        osw.write(response);
-        osw.flush();
+        // The length has to be in bytes, not characters.
+        writeHttpResponse(out, contentType, response.getBytes());
     }
 
     /**
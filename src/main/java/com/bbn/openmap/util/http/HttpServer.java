@@ -28,6 +28,17 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bbn.openmap.util.Debug;
 
 /**
  * A simple HTTP Server implementing HTTP/0.9 protocols.
@@ -38,6 +49,17 @@ import java.util.Vector;
  * 
  * Modified to use JDK 1.1 Readers, and Writers. Further modified to
  * use the JDK 1.1 Event model.
+ * <p>
+ * Connections are handled by a fixed number of threads. Connections
+ * accepted while all the threads are busy wait in a queue, and when
+ * the queue is full the client is told to come back later with a 503
+ * response, so a burst of requests can't create an unbounded number
+ * of threads. Clients asking for keep-alive get to send more requests
+ * over the same connection, as long as the server isn't busy.
+ * Connections that don't send a request line or headers within the
+ * request timeout are closed, so idle sockets can't fill the queue. The
+ * time spent handling each request is tracked, see
+ * {@link #getRequestCount()} and {@link #getAverageLatency()}.
  * 
  * @author Tom Mitchell
  * @version 1.0, 06/13/97
@@ -52,10 +74,50 @@ public class HttpServer extends Thread {
      */
     public final static int DEFAULT_PORT = 0;
 
+    /** The default number of threads handling connections. */
+    public final static int DEFAULT_MAX_THREADS = 16;
+
+    /**
+     * The default number of connections waiting for a thread before
+     * new connections are turned away.
+     */
+    public final static int DEFAULT_MAX_QUEUED = 64;
+
+    /**
+     * The default number of milliseconds a kept-alive connection waits
+     * for the next request.
+     */
+    public final static int DEFAULT_KEEP_ALIVE_TIMEOUT = 5000;
+
+    /** The default number of requests handled over one connection. */
+    public final static int DEFAULT_MAX_KEEP_ALIVE_REQUESTS = 100;
+
+    /**
+     * The default number of milliseconds a new connection waits for
+     * each line of the request line and headers.
+     */
+    public final static int DEFAULT_REQUEST_TIMEOUT = 10000;
+
     protected int port;
     protected ServerSocket listen_socket;
     protected Vector listeners;
 
+    protected final int maxThreads;
+    protected final int maxQueued;
+    protected int keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+    protected int maxKeepAliveRequests = DEFAULT_MAX_KEEP_ALIVE_REQUESTS;
+    protected int requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+    protected ExecutorService executor;
+    /** Permits for connections being handled or waiting for a thread. */
+    protected final Semaphore admitted;
+    protected final AtomicInteger connectionCount = new AtomicInteger();
+    protected volatile boolean shuttingDown = false;
+
+    protected final AtomicLong requestCount = new AtomicLong();
+    protected final AtomicLong totalLatency = new AtomicLong();
+    protected final AtomicLong maxLatency = new AtomicLong();
+    protected final AtomicLong rejectedCount = new AtomicLong();
+
     /**
      * Creates an Http Server on the indicated port, and then starts a
      * thread that listens to that port. The thread will not be a
@@ -78,8 +140,26 @@ public class HttpServer extends Thread {
      * @see java.net.ServerSocket
      */
     public HttpServer(int port, boolean asDaemon) throws IOException {
+        this(port, asDaemon, DEFAULT_MAX_THREADS, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Creates an Http Server on the indicated port, handling
+     * connections with a limited number of threads.
+     * 
+     * @param port the port to open
+     * @param asDaemon whether to make the threads daemons
+     * @param maxThreads the number of threads handling connections
+     * @param maxQueued the number of connections that can wait for a
+     *        thread, further connections get a 503 response.
+     * @see java.net.ServerSocket
+     */
+    public HttpServer(int port, boolean asDaemon, int maxThreads, int maxQueued) throws IOException {
         this.port = port;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.maxQueued = Math.max(0, maxQueued);
         listeners = new Vector();
+        admitted = new Semaphore(this.maxThreads + this.maxQueued);
         listen_socket = new ServerSocket(port);
         this.setDaemon(asDaemon);
     }
@@ -95,24 +175,123 @@ public class HttpServer extends Thread {
     }
 
     /**
-     * The body of the server thread. Loop forever, listening for and
-     * accepting connections from clients. For each connection, create
-     * a HttpConnection object to handle communication through the new
-     * Socket.
+     * The body of the server thread. Loop until shutdown, listening for
+     * and accepting connections from clients. For each connection,
+     * create a HttpConnection object to handle communication through
+     * the new Socket, and hand it to the connection threads.
      * 
      * @see HttpConnection
      * @see java.net.Socket
      */
     public void run() {
         try {
-            while (true) {
+            while (!shuttingDown) {
                 Socket client_socket = listen_socket.accept();
-                HttpConnection httpConnection = new HttpConnection(client_socket, this);
-                httpConnection.start();
+                handleConnection(client_socket);
             }
         } catch (IOException e) {
-            System.err.println("Exception while listening for connections");
-            e.printStackTrace();
+            if (!shuttingDown) {
+                System.err.println("Exception while listening for connections");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Hand a new connection to the connection threads, or turn it away
+     * if too many connections are waiting already.
+     */
+    protected void handleConnection(Socket client_socket) {
+        if (!admitted.tryAcquire()) {
+            reject(client_socket);
+            return;
+        }
+
+        final HttpConnection httpConnection = new HttpConnection(client_socket, this);
+        connectionCount.incrementAndGet();
+        try {
+            getExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        httpConnection.run();
+                    } finally {
+                        connectionCount.decrementAndGet();
+                        admitted.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            connectionCount.decrementAndGet();
+            admitted.release();
+            reject(client_socket);
+        }
+    }
+
+    /**
+     * Tell the client the server is too busy, and close the
+     * connection.
+     */
+    protected void reject(Socket client_socket) {
+        rejectedCount.incrementAndGet();
+        Debug.message("httpserver", "HttpServer: too busy, turning away connection");
+        try {
+            OutputStream out = client_socket.getOutputStream();
+            out.write("HTTP/1.0 503 Service Unavailable\nRetry-After: 1\nContent-Length: 0\n\n".getBytes("US-ASCII"));
+            out.flush();
+        } catch (IOException ioe) {
+            // Client is gone already
+        } finally {
+            try {
+                client_socket.close();
+            } catch (IOException ioe) {
+            }
+        }
+    }
+
+    /**
+     * Get the threads handling connections, creating them if needed.
+     */
+    protected synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            ThreadPoolExecutor tpe = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "HttpConnection");
+                            thread.setDaemon(isDaemon());
+                            return thread;
+                        }
+                    });
+            tpe.allowCoreThreadTimeOut(true);
+            executor = tpe;
+        }
+        return executor;
+    }
+
+    /**
+     * Set the ExecutorService running the connections, instead of the
+     * fixed thread pool created by default. This can be used to run
+     * connections on virtual threads, where available. The number of
+     * connections handled at once is still limited by the maximum
+     * number of threads and queued connections.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Stop accepting connections and let the connection threads go
+     * when they are done.
+     */
+    public void shutdown() {
+        shuttingDown = true;
+        try {
+            listen_socket.close();
+        } catch (IOException ioe) {
+        }
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+            }
         }
     }
 
@@ -125,6 +304,126 @@ public class HttpServer extends Thread {
         return listen_socket.getLocalPort();
     }
 
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * @return the number of milliseconds a kept-alive connection waits
+     *         for the next request.
+     */
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds a kept-alive connection waits for
+     * the next request, 0 to close connections after each request.
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * @return the number of milliseconds a connection waits for each
+     *         line of a request before it is closed.
+     */
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds a connection waits for each line
+     * of the request line and headers before it is closed, 0 to wait
+     * forever. Without it, clients that connect and send nothing hold
+     * on to a connection slot, and enough of them turn every other
+     * client away.
+     */
+    public void setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    /**
+     * Set the number of requests handled over one connection before it
+     * is closed.
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = maxKeepAliveRequests;
+    }
+
+    /**
+     * Whether connections are waiting for a thread. Kept-alive
+     * connections are closed after their current request when the
+     * server is busy, to give the thread to a waiting connection.
+     */
+    public boolean isBusy() {
+        return connectionCount.get() > maxThreads;
+    }
+
+    /**
+     * Record the time spent handling a request.
+     * 
+     * @param nanos nanoseconds from reading the request to sending the
+     *        response.
+     */
+    protected void requestHandled(long nanos) {
+        requestCount.incrementAndGet();
+        totalLatency.addAndGet(nanos);
+        long max;
+        while ((max = maxLatency.get()) < nanos && !maxLatency.compareAndSet(max, nanos)) {
+        }
+    }
+
+    /**
+     * @return the number of requests handled.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the average number of milliseconds spent handling a
+     *         request.
+     */
+    public double getAverageLatency() {
+        long count = requestCount.get();
+        return (count == 0) ? 0 : totalLatency.get() / (count * 1000000.0);
+    }
+
+    /**
+     * @return the longest number of milliseconds spent handling a
+     *         request.
+     */
+    public double getMaxLatency() {
+        return maxLatency.get() / 1000000.0;
+    }
+
+    /**
+     * @return the number of connections turned away because the server
+     *         was too busy.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Set the request counts and times back to zero.
+     */
+    public void resetStatistics() {
+        requestCount.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+        rejectedCount.set(0);
+    }
+
     /**
      * Creates a HttpRequestEvent and sends it to all registered
      * listeners.
@@ -164,6 +463,8 @@ public class HttpServer extends Thread {
      * calculated. You can add multiple Listeners that use the Writer
      * inside the HttpRequestEvent to concatenate a complete text
      * response.
+     * <p>
+     * Listeners are called by several threads at the same time.
      * 
      * @param l the listener
      * @see HttpRequestListener
@@ -24,16 +24,52 @@ import com.bbn.openmap.image.wms.WMSException;
 import com.bbn.openmap.image.wms.WmsRequestHandler;
 import com.bbn.openmap.util.Debug;
 
+import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * 
+ * A servlet handling OGC WMS requests with the layers defined in the
+ * openmap.properties file given by the "mapDefinition" context parameter.
+ * <p>
+ * By default, a new {@link WmsRequestHandler} with a fresh set of layers is
+ * created for every request. If the "poolRequestHandlers" context parameter is
+ * set to true, the map definition is only read once and the handlers are kept
+ * in a {@link WmsRequestHandlerPool} and reused by later requests with the same
+ * locale and base URL. The layers are reloaded when the map definition file
+ * changes. The "maxIdleRequestHandlers" context parameter sets how many idle
+ * handlers are kept for each locale and base URL, and the
+ * "maxTotalIdleRequestHandlers" context parameter how many are kept for all of
+ * them together.
  */
 public class OgcWmsServlet extends HttpServlet {
 
+    /**
+     * Context parameter to turn on reuse of {@link WmsRequestHandler}s
+     * between requests.
+     */
+    public static final String POOL_REQUEST_HANDLERS_PARAMETER = "poolRequestHandlers";
+
+    /**
+     * Context parameter for the number of idle handlers kept for each locale
+     * and base URL.
+     */
+    public static final String MAX_IDLE_REQUEST_HANDLERS_PARAMETER = "maxIdleRequestHandlers";
+
+    /**
+     * Context parameter for the number of idle handlers kept for all locales
+     * and base URLs together.
+     */
+    public static final String MAX_TOTAL_IDLE_REQUEST_HANDLERS_PARAMETER = "maxTotalIdleRequestHandlers";
+
+    /**
+     * The handler pool, or null if a new handler should be created for each
+     * request.
+     */
+    protected WmsRequestHandlerPool requestHandlerPool;
+
     /**
      * A do-nothing constructor - init does all the work.
      */
@@ -41,6 +77,50 @@ public class OgcWmsServlet extends HttpServlet {
         super();
     }
 
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+
+        String pool = config.getServletContext().getInitParameter(POOL_REQUEST_HANDLERS_PARAMETER);
+        if (pool != null && Boolean.valueOf(pool.trim()).booleanValue()) {
+            int maxIdle = getIntParameter(config, MAX_IDLE_REQUEST_HANDLERS_PARAMETER, WmsRequestHandlerPool.DEFAULT_MAX_IDLE);
+            int maxTotalIdle = getIntParameter(config, MAX_TOTAL_IDLE_REQUEST_HANDLERS_PARAMETER, Math.max(maxIdle, WmsRequestHandlerPool.DEFAULT_MAX_TOTAL_IDLE));
+            requestHandlerPool = new WmsRequestHandlerPool(getMapDefinition(config), maxIdle, maxTotalIdle);
+            Debug.message("wms", "OgcWmsServlet: pooling request handlers");
+        }
+    }
+
+    private int getIntParameter(ServletConfig config, String name, int defaultValue)
+            throws ServletException {
+        String value = config.getServletContext().getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            throw new ServletException("invalid " + name + ": " + value);
+        }
+    }
+
+    public void destroy() {
+        if (requestHandlerPool != null) {
+            requestHandlerPool.clear();
+        }
+        super.destroy();
+    }
+
+    /**
+     * @return the path to openmap.properties from the context parameter
+     *         "mapDefinition", defaults to "openmap.properties".
+     */
+    protected String getMapDefinition(ServletConfig config) {
+        String mapDefinition = config.getServletContext().getInitParameter("mapDefinition");
+        if (mapDefinition == null) {
+            mapDefinition = "openmap.properties";
+        }
+        return mapDefinition;
+    }
+
     /**
      * 
      */
@@ -72,11 +152,7 @@ public class OgcWmsServlet extends HttpServlet {
 
 		// use context parameter "mapDefinition" for path to openmap.properties.
 		// default to "openmap.properties".
-		String mapDefinition = getServletContext().getInitParameter(
-				"mapDefinition");
-		if (mapDefinition == null) {
-			mapDefinition = "openmap.properties";
-		}
+		String mapDefinition = getMapDefinition(getServletConfig());
 		Debug.message("wms", "Using map definition:" + mapDefinition);
 
 		PropertyHandler propHandler = new PropertyHandler(mapDefinition);
@@ -131,9 +207,12 @@ public class OgcWmsServlet extends HttpServlet {
         }
 
         try {
+            String urlPath = contextPath + servletPath + servletPathInfo;
+            if (requestHandlerPool != null) {
+                return requestHandlerPool.borrow(schema, hostName, serverPort, urlPath, locale);
+            }
             WmsRequestHandler wmsRequestHandler = new WmsRequestHandler(schema, hostName,
-                    serverPort, contextPath + servletPath + servletPathInfo, getProperties(),
-                    locale);
+                    serverPort, urlPath, getProperties(), locale);
             return wmsRequestHandler;
         } catch (java.net.MalformedURLException me) {
             Debug.message("wms", "MS: caught MalformedURLException - \n" + me.getMessage());
@@ -156,9 +235,15 @@ public class OgcWmsServlet extends HttpServlet {
         Debug.message("wms", "OgcWmsServlet.doGet");
         WmsRequestHandler wmsRequestHandler = createRequestHandler(request);
 
-        Properties properties = parsePropertiesFromRequest(request);
-        HttpResponse httpResponse = new HttpResponse(response);
-        wmsRequestHandler.handleRequest(properties, httpResponse);
+        try {
+            Properties properties = parsePropertiesFromRequest(request);
+            HttpResponse httpResponse = new HttpResponse(response);
+            wmsRequestHandler.handleRequest(properties, httpResponse);
+        } finally {
+            if (requestHandlerPool != null) {
+                requestHandlerPool.release(wmsRequestHandler);
+            }
+        }
     }
 
 }
@@ -0,0 +1,287 @@
+package com.bbn.openmap.wmsservlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bbn.openmap.PropertyHandler;
+import com.bbn.openmap.image.wms.WMSException;
+import com.bbn.openmap.image.wms.WmsRequestHandler;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * A pool of ready to use {@link WmsRequestHandler}s for the
+ * {@link OgcWmsServlet}. The map definition is parsed once and the resulting
+ * layer stacks are kept around between requests instead of being created for
+ * every GetMap, GetCapabilities or GetFeatureInfo request.
+ * <p>
+ * A WmsRequestHandler holds per request state (projection on the layers,
+ * request parameters), so a handler is only ever lent to one request at a
+ * time. Idle handlers are kept per locale and base URL, since both are baked
+ * into the handler when it is created. When the map definition file changes
+ * on disk, all idle handlers are dropped and handlers still in use are
+ * discarded when they are returned.
+ * <p>
+ * The base URL and locale come from the Host and Accept-Language headers of
+ * the request, so they are controlled by the client. The total number of idle
+ * handlers is capped, and when the cap is reached the handlers of the least
+ * recently used base URL and locale are dropped first.
+ */
+public class WmsRequestHandlerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(WmsRequestHandlerPool.class);
+
+    /**
+     * The default number of idle handlers kept for each locale and base URL.
+     */
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    /**
+     * The default number of idle handlers kept for all locales and base URLs
+     * together.
+     */
+    public static final int DEFAULT_MAX_TOTAL_IDLE = 16;
+
+    private final String mapDefinition;
+    private final int maxIdle;
+    private final int maxTotalIdle;
+    /** Idle handlers per key, in least recently used order. */
+    private final Map<Key, Deque<WmsRequestHandler>> idle = new LinkedHashMap<Key, Deque<WmsRequestHandler>>(16, 0.75f, true);
+    private int idleCount;
+    private final Map<WmsRequestHandler, Lease> leased = new IdentityHashMap<WmsRequestHandler, Lease>();
+
+    private Properties properties;
+    private File mapDefinitionFile;
+    private long lastModified;
+    private int generation;
+
+    /**
+     * @param mapDefinition the resource, file or URL of the openmap.properties
+     *        file describing the layers.
+     * @param maxIdle the maximum number of idle handlers kept for each locale
+     *        and base URL.
+     */
+    public WmsRequestHandlerPool(String mapDefinition, int maxIdle) {
+        this(mapDefinition, maxIdle, Math.max(maxIdle, DEFAULT_MAX_TOTAL_IDLE));
+    }
+
+    /**
+     * @param mapDefinition the resource, file or URL of the openmap.properties
+     *        file describing the layers.
+     * @param maxIdle the maximum number of idle handlers kept for each locale
+     *        and base URL.
+     * @param maxTotalIdle the maximum number of idle handlers kept for all
+     *        locales and base URLs together.
+     */
+    public WmsRequestHandlerPool(String mapDefinition, int maxIdle, int maxTotalIdle) {
+        this.mapDefinition = mapDefinition;
+        this.maxIdle = Math.max(1, maxIdle);
+        this.maxTotalIdle = Math.max(1, maxTotalIdle);
+    }
+
+    /**
+     * Get a handler for the given base URL and locale, creating one if there
+     * are no idle handlers available. The handler must be given back with
+     * {@link #release(WmsRequestHandler)} when the request has been handled.
+     *
+     * @param scheme for capabilities description
+     * @param hostName for capabilities description
+     * @param port for capabilities description
+     * @param urlPath for capabilities description
+     * @param locale the locale of the request
+     * @return WmsRequestHandler that is not used by any other request.
+     * @throws IOException
+     * @throws WMSException
+     */
+    public WmsRequestHandler borrow(String scheme, String hostName, int port, String urlPath,
+                                    Locale locale)
+            throws IOException, WMSException {
+        Key key = new Key(scheme, hostName, port, urlPath, locale);
+        Properties props;
+        int gen;
+
+        synchronized (this) {
+            checkForChanges();
+            Deque<WmsRequestHandler> handlers = idle.get(key);
+            WmsRequestHandler handler = (handlers == null) ? null : handlers.pollFirst();
+            if (handler != null) {
+                idleCount--;
+                if (handlers.isEmpty()) {
+                    idle.remove(key);
+                }
+                leased.put(handler, new Lease(key, generation));
+                return handler;
+            }
+            props = properties;
+            gen = generation;
+        }
+
+        // Create the handler outside of the lock, layer creation can take a
+        // while and should not block requests that can be served by idle
+        // handlers. Each handler get its own copy of the properties, since
+        // layers are allowed to modify them.
+        Properties handlerProps = new Properties();
+        handlerProps.putAll(props);
+        WmsRequestHandler handler = new WmsRequestHandler(scheme, hostName, port, urlPath, handlerProps, locale);
+
+        synchronized (this) {
+            leased.put(handler, new Lease(key, gen));
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("created new WmsRequestHandler for " + key);
+        }
+        return handler;
+    }
+
+    /**
+     * Give a handler back to the pool after the request has been handled. The
+     * handler is kept for the next request with the same locale and base URL,
+     * unless the map definition has changed or there are enough idle handlers
+     * for that key already. If the pool holds too many idle handlers after
+     * that, the oldest handlers of the least recently used keys are dropped.
+     *
+     * @param handler handler from {@link #borrow}.
+     */
+    public synchronized void release(WmsRequestHandler handler) {
+        Lease lease = leased.remove(handler);
+        if (lease == null || lease.generation != generation) {
+            return;
+        }
+
+        Deque<WmsRequestHandler> handlers = idle.get(lease.key);
+        if (handlers == null) {
+            handlers = new ArrayDeque<WmsRequestHandler>();
+            idle.put(lease.key, handlers);
+        }
+        if (handlers.size() < maxIdle) {
+            handlers.addFirst(handler);
+            idleCount++;
+        }
+
+        Iterator<Deque<WmsRequestHandler>> it = idle.values().iterator();
+        while (idleCount > maxTotalIdle && it.hasNext()) {
+            Deque<WmsRequestHandler> lru = it.next();
+            while (idleCount > maxTotalIdle && !lru.isEmpty()) {
+                lru.pollLast();
+                idleCount--;
+            }
+            if (lru.isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all idle handlers and force the map definition to be read again on
+     * the next request.
+     */
+    public synchronized void clear() {
+        idle.clear();
+        idleCount = 0;
+        properties = null;
+        generation++;
+    }
+
+    /**
+     * @return the number of idle handlers in the pool.
+     */
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * Read the map definition if it hasn't been read yet, or if the file has
+     * been modified since the last time it was read. Must be called while
+     * holding the lock on this pool.
+     */
+    protected void checkForChanges() throws IOException {
+        if (properties != null) {
+            if (mapDefinitionFile == null || mapDefinitionFile.lastModified() == lastModified) {
+                return;
+            }
+            logger.info("map definition " + mapDefinitionFile + " has changed, reloading layers");
+            idle.clear();
+            idleCount = 0;
+            generation++;
+        }
+
+        URL url = PropUtils.getResourceOrFileOrURL(mapDefinition);
+        mapDefinitionFile = null;
+        if (url != null && "file".equals(url.getProtocol())) {
+            try {
+                mapDefinitionFile = new File(url.toURI());
+            } catch (URISyntaxException e) {
+                mapDefinitionFile = new File(url.getPath());
+            }
+        }
+        lastModified = (mapDefinitionFile == null) ? 0L : mapDefinitionFile.lastModified();
+
+        PropertyHandler propHandler = new PropertyHandler(mapDefinition);
+        properties = propHandler.getProperties();
+    }
+
+    /**
+     * The handlers are bound to the base URL and locale they are created for.
+     */
+    private static class Key {
+        private final String scheme;
+        private final String hostName;
+        private final int port;
+        private final String urlPath;
+        private final Locale locale;
+
+        Key(String scheme, String hostName, int port, String urlPath, Locale locale) {
+            this.scheme = scheme;
+            this.hostName = hostName;
+            this.port = port;
+            this.urlPath = urlPath;
+            this.locale = locale;
+        }
+
+        public int hashCode() {
+            int result = scheme.hashCode();
+            result = 31 * result + hostName.hashCode();
+            result = 31 * result + port;
+            result = 31 * result + urlPath.hashCode();
+            result = 31 * result + (locale == null ? 0 : locale.hashCode());
+            return result;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return port == other.port && scheme.equals(other.scheme) && hostName.equals(other.hostName)
+                    && urlPath.equals(other.urlPath)
+                    && (locale == null ? other.locale == null : locale.equals(other.locale));
+        }
+
+        public String toString() {
+            return scheme + "://" + hostName + ":" + port + urlPath + " (" + locale + ")";
+        }
+    }
+
+    private static class Lease {
+        private final Key key;
+        private final int generation;
+
+        Lease(Key key, int generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+    }
+}
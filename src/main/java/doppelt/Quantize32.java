@@ -299,7 +299,12 @@ other %
         return cube.colormap;
     }
     
-    static class Cube {
+    /**
+     * The color description tree. Besides quantizing a whole image, colors
+     * can be classified one at a time with their pixel counts, and looked up
+     * in the reduced tree.
+     */
+    public static class Cube {
         int pixels[][];
         int max_colors;
         int colormap[];
@@ -315,9 +320,24 @@ other %
         int nodes;
 
         Cube(int pixels[][], int max_colors) {
+            this(max_colors);
             this.pixels = pixels;
+        }
+
+        /**
+         * A cube for classifying colors one at a time.
+         */
+        public Cube(int max_colors) {
             this.max_colors = max_colors;
+            depth = treeDepth(max_colors);
+            root = new Node(this);
+        }
 
+        /**
+         * The depth of the tree for the given number of colors.
+         */
+        public static int treeDepth(int max_colors) {
+            int depth;
             int i = max_colors;
             // tree_depth = log max_colors
             // 4
@@ -332,8 +352,7 @@ other %
             } else if (depth < 2) {
                 depth = 2;
             }
-            
-            root = new Node(this);
+            return depth;
         }
 
         /*
@@ -383,41 +402,59 @@ other %
             // convert to indexed color
             for (int x = width; x-- > 0; ) {
                 for (int y = height; y-- > 0; ) {
-                    int pixel = pixels[x][y];
-                    int alpha = (pixel >> 24) & 0xFF;
-                    int red = (pixel >> 16) & 0xFF;
-                    int green = (pixel >> 8) & 0xFF;
-                    int blue = (pixel >> 0) & 0xFF;
+                    classify(pixels[x][y], 1);
+                }
+            }
+        }
 
-                    // a hard limit on the number of nodes in the tree
-                    if (nodes > MAX_NODES) {
-                        System.out.println("pruning");
-                        root.pruneLevel();
-                        --depth;
-                    }
+        /**
+         * Classify a number of pixels of the same color.
+         */
+        public void classify(int pixel, int count) {
+            int alpha = (pixel >> 24) & 0xFF;
+            int red = (pixel >> 16) & 0xFF;
+            int green = (pixel >> 8) & 0xFF;
+            int blue = (pixel >> 0) & 0xFF;
+            classify(pixel, count, (long) alpha * count, (long) red * count,
+                     (long) green * count, (long) blue * count);
+        }
 
-                    // walk the tree to depth, increasing the
-                    // number_pixels count for each node
-                    Node node = root;
-                    for (int level = 1; level <= depth; ++level) {
-                        int id = (((red > node.mid_red ? 1 : 0) << 0) |
-                                  ((green > node.mid_green ? 1 : 0) << 1) |
-                                  ((blue > node.mid_blue ? 1 : 0) << 2) |
-                                  ((alpha > node.mid_alpha ? 1 : 0) << 3));
-                        if (node.child[id] == null) {
-                            new Node(node, id, level);
-                        }
-                        node = node.child[id];
-                        node.number_pixels += SHIFT[level];
-                    }
+        /**
+         * Classify a number of pixels whose colors all end up in the
+         * same leaf as the given color, with the sums of their color
+         * components.
+         */
+        public void classify(int pixel, int count, long total_alpha,
+                             long total_red, long total_green,
+                             long total_blue) {
+            int alpha = (pixel >> 24) & 0xFF;
+            int red = (pixel >> 16) & 0xFF;
+            int green = (pixel >> 8) & 0xFF;
+            int blue = (pixel >> 0) & 0xFF;
+
+            // a hard limit on the number of nodes in the tree
+            if (nodes > MAX_NODES) {
+                root.pruneLevel();
+                --depth;
+            }
 
-                    ++node.unique;
-                    node.total_alpha += alpha;
-                    node.total_red += red;
-                    node.total_green += green;
-                    node.total_blue += blue;
+            // walk the tree to depth, increasing the
+            // number_pixels count for each node
+            Node node = root;
+            for (int level = 1; level <= depth; ++level) {
+                int id = node.childId(alpha, red, green, blue);
+                if (node.child[id] == null) {
+                    new Node(node, id, level);
                 }
+                node = node.child[id];
+                node.number_pixels += (long) SHIFT[level] * count;
             }
+
+            node.unique += count;
+            node.total_alpha += total_alpha;
+            node.total_red += total_red;
+            node.total_green += total_green;
+            node.total_blue += total_blue;
         }
 
         /*
@@ -432,7 +469,7 @@ other %
          * that node's parent. This retains the pruned node's color
          * characteristics for later averaging.
          */
-        void reduction() {
+        public void reduction() {
             long threshold = 1;
             while (colors > max_colors) {
                 colors = 0;
@@ -469,10 +506,7 @@ other %
          * the index of this node's mean color in the color map.
          */
         void assignment() {
-            colormap = new int[colors];
-
-            colors = 0;
-            root.colormap();
+            colormap();
   
             int pixels[][] = this.pixels;
 
@@ -491,17 +525,7 @@ other %
                     int blue = (pixel >> 0) & 0xFF;
 
                     // walk the tree to find the cube containing that color
-                    Node node = root;
-                    for ( ; ; ) {
-                        int id = (((red > node.mid_red ? 1 : 0) << 0) |
-                                  ((green > node.mid_green ? 1 : 0) << 1) |
-                                  ((blue > node.mid_blue ? 1 : 0) << 2) |
-                                  ((alpha > node.mid_alpha ? 1 : 0) << 3));
-                        if (node.child[id] == null) {
-                            break;
-                        }
-                        node = node.child[id];
-                    }
+                    Node node = find(alpha, red, green, blue);
 
                     if (QUICK) {
                         // if QUICK is set, just use that
@@ -518,6 +542,41 @@ other %
             }
         }
 
+        /**
+         * Build the color map from the reduced tree.
+         * @return The color palette.
+         */
+        public int[] colormap() {
+            colormap = new int[colors];
+
+            colors = 0;
+            root.colormap();
+            return colormap;
+        }
+
+        /**
+         * The color map index of the deepest node containing a color,
+         * after the color map is built.
+         */
+        public int colorNumber(int pixel) {
+            return find((pixel >> 24) & 0xFF, (pixel >> 16) & 0xFF,
+                        (pixel >> 8) & 0xFF, (pixel >> 0) & 0xFF).color_number;
+        }
+
+        /**
+         * Walk the tree to find the deepest node containing a color.
+         */
+        Node find(int alpha, int red, int green, int blue) {
+            Node node = root;
+            for ( ; ; ) {
+                int id = node.childId(alpha, red, green, blue);
+                if (node.child[id] == null) {
+                    return node;
+                }
+                node = node.child[id];
+            }
+        }
+
         /**
          * A single Node in the tree.
          */
@@ -545,12 +604,12 @@ other %
             long number_pixels;
             
             // the pixel count for this node
-            int unique;
+            long unique;
             // the sum of all pixels contained in this node
-            int total_alpha;
-            int total_red;
-            int total_green;
-            int total_blue;
+            long total_alpha;
+            long total_red;
+            long total_green;
+            long total_blue;
 
             // used to build the colormap
             int color_number;
@@ -595,6 +654,16 @@ other %
                 mid_alpha = parent.mid_alpha + ((id & 8) > 0 ? bi : -bi);
             }
 
+            /**
+             * The index of the child containing a color.
+             */
+            int childId(int alpha, int red, int green, int blue) {
+                return (((red > mid_red ? 1 : 0) << 0) |
+                        ((green > mid_green ? 1 : 0) << 1) |
+                        ((blue > mid_blue ? 1 : 0) << 2) |
+                        ((alpha > mid_alpha ? 1 : 0) << 3));
+            }
+
             /**
              * Remove this child node, and make sure our parent
              * absorbs our pixel statistics.
@@ -672,10 +741,10 @@ next_threshold);
                     }
                 }
                 if (unique != 0) {
-                    int a = ((total_alpha + (unique >> 1)) / unique);
-                    int r = ((total_red + (unique >> 1)) / unique);
-                    int g = ((total_green + (unique >> 1)) / unique);
-                    int b = ((total_blue + (unique >> 1)) / unique);
+                    int a = (int) ((total_alpha + (unique >> 1)) / unique);
+                    int r = (int) ((total_red + (unique >> 1)) / unique);
+                    int g = (int) ((total_green + (unique >> 1)) / unique);
+                    int b = (int) ((total_blue + (unique >> 1)) / unique);
                     cube.colormap[cube.colors] = (((a & 0xFF) << 24) |
                                                   ((r & 0xFF) << 16) |
                                                   ((g & 0xFF) << 8) |
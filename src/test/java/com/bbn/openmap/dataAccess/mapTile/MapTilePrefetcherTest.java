@@ -0,0 +1,87 @@
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+import com.bbn.openmap.util.cacheHandler.CacheObject;
+
+import junit.framework.TestCase;
+
+public class MapTilePrefetcherTest extends TestCase {
+
+    /**
+     * An EmptyTileHandler that, like the ShpFileEmptyTileHandler, isn't safe
+     * to use from more than one thread at a time.
+     */
+    static class RecordingEmptyTileHandler implements EmptyTileHandler {
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger prefetchCalls = new AtomicInteger();
+
+        public BufferedImage getImageForEmptyTile(String imagePath, int x, int y, int zoomLevel,
+                                                  MapTileCoordinateTransform mtcTransform, Projection proj) {
+            calls.incrementAndGet();
+            if (Thread.currentThread().getName().startsWith("MapTilePrefetcher")) {
+                prefetchCalls.incrementAndGet();
+            }
+            if (inside.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inside.decrementAndGet();
+            }
+            return new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        }
+    }
+
+    public void testPrefetchDoesNotCreateEmptyTiles() throws Exception {
+        File rootDir = File.createTempFile("tiles", "");
+        rootDir.delete();
+        rootDir.mkdirs();
+
+        final AtomicInteger prefetchLoads = new AtomicInteger();
+        StandardMapTileFactory factory = new StandardMapTileFactory(null, rootDir.getPath(), ".png") {
+            public CacheObject load(Object key, int x, int y, int zoomLevel, Projection proj) {
+                if (prefetching.get() != null) {
+                    prefetchLoads.incrementAndGet();
+                }
+                return super.load(key, x, y, zoomLevel, proj);
+            }
+        };
+        RecordingEmptyTileHandler handler = new RecordingEmptyTileHandler();
+        factory.setEmptyTileHandler(handler);
+        factory.setPrefetch(true);
+        factory.setPrefetchThreads(4);
+
+        try {
+            // Pan around while the tiles around each view are prefetched.
+            for (int i = 0; i < 20; i++) {
+                Projection proj = new Mercator(new LatLonPoint.Double(40, -100 + i * 5), 20000000f, 640, 480);
+                factory.getTiles(proj);
+            }
+
+            ThreadPoolExecutor executor = factory.getPrefetcher().getExecutor();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        } finally {
+            factory.getPrefetcher().shutdown();
+            rootDir.delete();
+        }
+
+        assertTrue("foreground fetch should create empty tiles", handler.calls.get() > 0);
+        assertTrue("prefetch threads should have tried to load tiles", prefetchLoads.get() > 0);
+        assertEquals(0, handler.prefetchCalls.get());
+        assertEquals(0, handler.overlaps.get());
+    }
+}
@@ -0,0 +1,98 @@
+package com.bbn.openmap.image;
+
+import java.awt.Graphics;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.event.ProjectionEvent;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+import junit.framework.TestCase;
+
+public class ImageServerTest extends TestCase {
+
+    /**
+     * A layer that, like most layers, ignores interrupts while rendering, and
+     * can be made to hang until released.
+     */
+    static class CountingLayer extends Layer {
+        final AtomicInteger renders = new AtomicInteger();
+        final AtomicInteger rendering = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        volatile CountDownLatch hang;
+
+        public void renderDataForProjection(Projection proj, Graphics g) {
+            renders.incrementAndGet();
+            if (rendering.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                CountDownLatch latch = hang;
+                while (latch != null) {
+                    try {
+                        latch.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // keep going, like a layer in the middle of reading
+                        // its data would.
+                    }
+                }
+            } finally {
+                rendering.decrementAndGet();
+            }
+        }
+
+        public void projectionChanged(ProjectionEvent e) {
+        }
+    }
+
+    public void testTimedOutLayerIsNotRenderedTwice() throws Exception {
+        CountingLayer slow = new CountingLayer();
+        slow.setName("slow");
+        CountingLayer fast = new CountingLayer();
+        fast.setName("fast");
+
+        ImageServer server = new ImageServer(new Layer[] { slow, fast }, new PNGImageIOFormatter());
+        server.setLayerThreads(2);
+        server.setLayerTimeout(200);
+
+        Projection proj = new Mercator(new LatLonPoint.Double(0, 0), 100000000f, 64, 64);
+        CountDownLatch release = new CountDownLatch(1);
+        slow.hang = release;
+
+        try {
+            long start = System.currentTimeMillis();
+            assertTrue(server.createImage(proj, -1, -1, 0x3).length > 0);
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(1, slow.renders.get());
+            assertEquals(1, fast.renders.get());
+            assertTrue(server.isStuck(slow));
+
+            // The slow layer is still hanging on to a thread, it's left out
+            // while the other layer still gets the other thread.
+            assertTrue(server.createImage(proj, -1, -1, 0x3).length > 0);
+            assertEquals(1, slow.renders.get());
+            assertEquals(2, fast.renders.get());
+
+            slow.hang = null;
+            release.countDown();
+            long wait = System.currentTimeMillis() + 5000;
+            while (server.isStuck(slow) && System.currentTimeMillis() < wait) {
+                Thread.sleep(10);
+            }
+            assertFalse(server.isStuck(slow));
+
+            // Done with the old render, the layer is back in the image.
+            assertTrue(server.createImage(proj, -1, -1, 0x3).length > 0);
+            assertEquals(2, slow.renders.get());
+            assertEquals(3, fast.renders.get());
+            assertEquals(0, slow.overlaps.get());
+        } finally {
+            release.countDown();
+            server.setLayerThreads(0);
+        }
+    }
+}
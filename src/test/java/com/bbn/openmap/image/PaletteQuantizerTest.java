@@ -0,0 +1,141 @@
+package com.bbn.openmap.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PaletteQuantizerTest extends TestCase {
+
+    private BufferedImage fewColors(int type) {
+        BufferedImage bi = new BufferedImage(300, 200, type);
+        int[] colors = new int[] {
+            0xff102030,
+            0xffbdde83,
+            0x80ff0000,
+            0x00000000,
+            0xff000000
+        };
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                bi.setRGB(x, y, colors[(x / 7 + y / 5) % colors.length]);
+            }
+        }
+        return bi;
+    }
+
+    private BufferedImage gradient() {
+        BufferedImage bi = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(5);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                int r = x * 255 / bi.getWidth();
+                int g = y * 255 / bi.getHeight();
+                int b = random.nextInt(32);
+                bi.setRGB(x, y, 0xff000000 | (r << 16) | (g << 8) | b);
+            }
+        }
+        return bi;
+    }
+
+    private double error(BufferedImage original, BufferedImage reduced) {
+        double total = 0;
+        for (int y = 0; y < original.getHeight(); y++) {
+            for (int x = 0; x < original.getWidth(); x++) {
+                int c1 = original.getRGB(x, y);
+                int c2 = reduced.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    total += Math.abs(((c1 >>> shift) & 0xff) - ((c2 >>> shift) & 0xff));
+                }
+            }
+        }
+        return total / (original.getWidth() * original.getHeight());
+    }
+
+    public void testExactPalette32() {
+        BufferedImage bi = fewColors(BufferedImage.TYPE_INT_ARGB);
+        BufferedImage reduced = new PaletteQuantizer().reduce32(bi, 256);
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, reduced.getType());
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                assertEquals(x + "," + y, bi.getRGB(x, y), reduced.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testTransparent24() {
+        BufferedImage bi = fewColors(BufferedImage.TYPE_INT_ARGB);
+        BufferedImage reduced = new PaletteQuantizer().reduce24(bi, 256);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                int argb = bi.getRGB(x, y);
+                int sample = reduced.getRaster().getSample(x, y, 0);
+                if ((argb >>> 24) < 128) {
+                    assertEquals(0, sample);
+                } else {
+                    assertTrue(sample > 0);
+                    assertEquals(argb | 0xff000000, reduced.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    public void testRGB() {
+        BufferedImage bi = fewColors(BufferedImage.TYPE_INT_RGB);
+        BufferedImage reduced = new PaletteQuantizer().reduce24(bi, 256);
+        assertEquals(0, error(bi, reduced), 0);
+    }
+
+    public void testQuantized() {
+        BufferedImage bi = gradient();
+        PaletteQuantizer quantizer = new PaletteQuantizer();
+        quantizer.setNumThreads(1);
+        BufferedImage reduced = quantizer.reduce32(bi, 256);
+        assertTrue(((java.awt.image.IndexColorModel) reduced.getColorModel()).getMapSize() <= 256);
+
+        // Not worse than the ColorReducer
+        double error = error(bi, reduced);
+        double colorReducerError = error(bi, ColorReducer.reduce32(gradient(), 256));
+        assertTrue(error + " vs " + colorReducerError, error <= colorReducerError * 1.05);
+
+        // Same result on several threads
+        quantizer.setNumThreads(4);
+        quantizer.setParallelThreshold(1000);
+        BufferedImage parallel = quantizer.reduce32(bi, 256);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                assertEquals(reduced.getRGB(x, y), parallel.getRGB(x, y));
+            }
+        }
+    }
+
+    public void testFixedPalette() {
+        BufferedImage bi = gradient();
+        PaletteQuantizer quantizer = new PaletteQuantizer(PaletteQuantizer.parsePalette("ff000000 ffff0000 ff00ff00 ffffff00"));
+        BufferedImage reduced = quantizer.reduce24(bi, 256);
+        assertEquals(0xff000000, reduced.getRGB(0, 0));
+        assertEquals(0xffffff00, reduced.getRGB(bi.getWidth() - 1, bi.getHeight() - 1));
+        assertEquals(0xffff0000, reduced.getRGB(bi.getWidth() - 1, 0));
+    }
+
+    public void testFixedPaletteTransparent() {
+        BufferedImage bi = fewColors(BufferedImage.TYPE_INT_ARGB);
+        int[] palette = PaletteQuantizer.parsePalette("ff000000 ffff0000 ff00ff00 ffffff00");
+        PaletteQuantizer quantizer = new PaletteQuantizer(palette);
+        quantizer.setNumThreads(4);
+        quantizer.setParallelThreshold(1000);
+        BufferedImage reduced = quantizer.reduce24(bi, 256);
+        for (int y = 0; y < bi.getHeight(); y++) {
+            for (int x = 0; x < bi.getWidth(); x++) {
+                int argb = bi.getRGB(x, y);
+                int sample = reduced.getRaster().getSample(x, y, 0);
+                if ((argb >>> 24) < 128) {
+                    assertEquals(0, sample);
+                } else {
+                    int expected = palette[PaletteQuantizer.closest(argb | 0xff000000, palette, 0)];
+                    assertEquals(expected, reduced.getRGB(x, y));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.bbn.openmap.io;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class MappedByteBufferInputReaderTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("mapped", ".bin");
+        file.deleteOnExit();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        for (int i = 0; i < 1000; i++) {
+            out.writeInt(i * 31);
+            out.writeFloat(i / 4f);
+            out.writeShort(-i);
+            out.writeLong(i * 1234567L);
+            out.writeByte(i);
+        }
+        out.close();
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /**
+     * Reads the same values through a FileInputReader and a mapped reader with
+     * a small, odd chunk size so values are split across chunks.
+     */
+    public void testMatchesFileInputReader() throws IOException, FormatException {
+        for (boolean msbFirst : new boolean[] { true, false }) {
+            BinaryFile expected = new BinaryFile(file);
+            BinaryFile mapped = new BinaryFile(file);
+            mapped.setInputReader(new MappedByteBufferInputReader(file, 13));
+            expected.byteOrder(msbFirst);
+            mapped.byteOrder(msbFirst);
+
+            assertEquals(expected.length(), mapped.length());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(expected.readInteger(), mapped.readInteger());
+                assertEquals(expected.readFloat(), mapped.readFloat(), 0);
+                assertEquals(expected.readShort(), mapped.readShort());
+                assertEquals(expected.readLong(), mapped.readLong());
+                assertEquals(expected.read(), mapped.read());
+            }
+            assertEquals(-1, mapped.read());
+
+            int[] ints1 = new int[100];
+            int[] ints2 = new int[100];
+            expected.seek(3);
+            mapped.seek(3);
+            expected.readIntegerArray(ints1, 0, 100);
+            mapped.readIntegerArray(ints2, 0, 100);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(ints1[i], ints2[i]);
+            }
+            assertEquals(expected.getFilePointer(), mapped.getFilePointer());
+
+            float[] floats1 = new float[50];
+            float[] floats2 = new float[50];
+            expected.readFloatArray(floats1, 0, 50);
+            mapped.readFloatArray(floats2, 0, 50);
+            for (int i = 0; i < 50; i++) {
+                assertEquals(floats1[i], floats2[i], 0);
+            }
+
+            expected.seek(4);
+            mapped.seek(4);
+            assertEquals(expected.readShortData(), mapped.readShortData());
+            expected.close();
+            mapped.close();
+        }
+    }
+
+    public void testBufferedFileUsesMapping() throws IOException, FormatException {
+        BinaryBufferedFile expected = new BinaryBufferedFile(file);
+        BinaryBufferedFile mapped = new BinaryBufferedFile(file);
+        mapped.setInputReader(new MappedByteBufferInputReader(file, 64));
+        expected.byteOrder(true);
+        mapped.byteOrder(true);
+
+        expected.seek(1000);
+        mapped.seek(1000);
+        short[] s1 = new short[200];
+        short[] s2 = new short[200];
+        expected.readShortArray(s1, 0, 200);
+        mapped.readShortArray(s2, 0, 200);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(s1[i], s2[i]);
+        }
+        assertEquals(expected.getFilePointer(), mapped.getFilePointer());
+        assertEquals(expected.readFixedLengthString(20), mapped.readFixedLengthString(20));
+
+        // reads past the end
+        mapped.seek(mapped.length() - 2);
+        try {
+            mapped.readInteger();
+            fail("expected FormatException");
+        } catch (FormatException fe) {
+        }
+        mapped.close();
+        expected.close();
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.bbn.openmap.layer;
+
+import java.awt.Point;
+import java.awt.geom.Point2D;
+
+import junit.framework.TestCase;
+
+public class DeclutterMatrixTest extends TestCase {
+
+   public void testRowSpans() {
+      DeclutterMatrix dm = new DeclutterMatrix(300, 10);
+      dm.setRowSpanTaken(5, 60, 130);
+      assertFalse(dm.isRowSpanTaken(5, 0, 59));
+      assertTrue(dm.isRowSpanTaken(5, 0, 60));
+      assertTrue(dm.isRowSpanTaken(5, 64, 127));
+      assertTrue(dm.isRowSpanTaken(5, 130, 299));
+      assertFalse(dm.isRowSpanTaken(5, 131, 299));
+      assertFalse(dm.isRowSpanTaken(4, 0, 299));
+
+      assertTrue(dm.isMatrixLocationTaken(100, 0, 10));
+      assertFalse(dm.isMatrixLocationTaken(100, 0, 5));
+      assertFalse(dm.isMatrixLocationTaken(131, 0, 10));
+   }
+
+   public void testNextOpen() {
+      DeclutterMatrix dm = new DeclutterMatrix(400, 200);
+      Point2D first = dm.setNextOpen(new Point(100, 100), 50, 10, 40);
+      assertEquals(new Point(100, 100), first);
+
+      // The same place is taken, the next label gets moved out of the way.
+      Point2D second = dm.setNextOpen(new Point(100, 100), 50, 10, 40);
+      assertFalse(second.equals(first));
+      assertTrue(second.getX() >= 0);
+      boolean overlaps = second.getX() < 151 && second.getX() + 50 > 100 && second.getY() < 111 && second.getY() + 10 > 100;
+      assertFalse(overlaps);
+   }
+
+   public void testReuse() {
+      DeclutterMatrix dm = new DeclutterMatrix(400, 200);
+      long[] matrix = dm.matrix;
+      dm.setTaken(new Point(10, 10), 100, 10);
+      assertTrue(dm.isRowSpanTaken(15, 0, 399));
+
+      // Same size, cleared and reused.
+      dm.setWidth(400);
+      dm.create();
+      assertSame(matrix, dm.matrix);
+      assertFalse(dm.isRowSpanTaken(15, 0, 399));
+
+      dm.setWidth(800);
+      dm.create();
+      assertNotSame(matrix, dm.matrix);
+      assertFalse(dm.isRowSpanTaken(15, 0, 799));
+   }
+}
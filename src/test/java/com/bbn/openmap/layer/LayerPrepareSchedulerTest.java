@@ -0,0 +1,136 @@
+package com.bbn.openmap.layer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+
+public class LayerPrepareSchedulerTest extends TestCase {
+
+   static AtomicInteger preparing = new AtomicInteger();
+   static AtomicInteger mostPreparing = new AtomicInteger();
+
+   /**
+    * Counts its prepare() calls, which take a while.
+    */
+   static class SlowLayer
+         extends OMGraphicHandlerLayer {
+      AtomicInteger prepares = new AtomicInteger();
+      long sleep;
+
+      SlowLayer(long sleep) {
+         this.sleep = sleep;
+      }
+
+      public OMGraphicList prepare() {
+         prepares.incrementAndGet();
+         int now = preparing.incrementAndGet();
+         synchronized (mostPreparing) {
+            mostPreparing.set(Math.max(mostPreparing.get(), now));
+         }
+         try {
+            Thread.sleep(sleep);
+         } catch (InterruptedException ie) {
+         }
+         preparing.decrementAndGet();
+         return new OMGraphicList();
+      }
+   }
+
+   protected void waitUntilDone(LayerPrepareScheduler scheduler, SlowLayer... layers) throws InterruptedException {
+      long end = System.currentTimeMillis() + 10000;
+      for (SlowLayer layer : layers) {
+         while (scheduler.isWorking(layer) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+         }
+      }
+   }
+
+   public void testCoalesce() throws InterruptedException {
+      LayerPrepareScheduler scheduler = new LayerPrepareScheduler();
+      scheduler.setDebounceDelay(50);
+      scheduler.setMaxDelay(10000);
+      SlowLayer layer = new SlowLayer(10);
+      layer.setPrepareScheduler(scheduler);
+
+      for (int i = 0; i < 20; i++) {
+         layer.doPrepare();
+         Thread.sleep(2);
+      }
+      assertTrue(layer.isWorking());
+      waitUntilDone(scheduler, layer);
+
+      assertEquals(1, layer.prepares.get());
+      LayerPrepareScheduler.Statistics stats = scheduler.getStatistics(layer);
+      assertEquals(20, stats.getRequestCount());
+      assertEquals(19, stats.getCoalescedCount());
+      assertEquals(1, stats.getPrepareCount());
+      assertTrue(stats.getAverageQueueTime() >= 50);
+      assertNotNull(layer.getList());
+      scheduler.dispose();
+   }
+
+   public void testMaxDelay() throws InterruptedException {
+      LayerPrepareScheduler scheduler = new LayerPrepareScheduler();
+      scheduler.setDebounceDelay(50);
+      scheduler.setMaxDelay(100);
+      SlowLayer layer = new SlowLayer(1);
+      layer.setPrepareScheduler(scheduler);
+
+      // Requests keep coming faster than the debounce delay, the layer still
+      // gets prepared every so often.
+      long end = System.currentTimeMillis() + 600;
+      while (System.currentTimeMillis() < end) {
+         layer.doPrepare();
+         Thread.sleep(10);
+      }
+      waitUntilDone(scheduler, layer);
+
+      int prepares = layer.prepares.get();
+      assertTrue("prepares " + prepares, prepares >= 3 && prepares <= 10);
+      scheduler.dispose();
+   }
+
+   public void testCancel() throws InterruptedException {
+      LayerPrepareScheduler scheduler = new LayerPrepareScheduler();
+      scheduler.setDebounceDelay(0);
+      SlowLayer layer = new SlowLayer(300);
+      layer.setPrepareScheduler(scheduler);
+
+      layer.doPrepare();
+      Thread.sleep(100);
+      assertFalse(layer.isCancelled());
+      layer.doPrepare();
+      assertTrue(layer.isCancelled());
+      waitUntilDone(scheduler, layer);
+
+      assertEquals(2, layer.prepares.get());
+      LayerPrepareScheduler.Statistics stats = scheduler.getStatistics(layer);
+      assertEquals(1, stats.getCancelledCount());
+      assertEquals(1, stats.getDiscardedCount());
+      scheduler.dispose();
+   }
+
+   public void testMaxConcurrent() throws InterruptedException {
+      LayerPrepareScheduler scheduler = new LayerPrepareScheduler();
+      scheduler.setDebounceDelay(0);
+      scheduler.setMaxConcurrent(2);
+      preparing.set(0);
+      mostPreparing.set(0);
+
+      SlowLayer[] layers = new SlowLayer[6];
+      for (int i = 0; i < layers.length; i++) {
+         layers[i] = new SlowLayer(50);
+         layers[i].setPrepareScheduler(scheduler);
+         layers[i].doPrepare();
+      }
+      waitUntilDone(scheduler, layers);
+
+      for (SlowLayer layer : layers) {
+         assertEquals(1, layer.prepares.get());
+      }
+      assertEquals(2, mostPreparing.get());
+      scheduler.dispose();
+   }
+}
@@ -0,0 +1,60 @@
+package com.bbn.openmap.layer;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class OMGraphicHandlerLayerTest extends TestCase {
+
+   protected OMGraphicHandlerLayer createLayer() {
+      OMGraphicHandlerLayer layer = new OMGraphicHandlerLayer();
+      layer.setProjection(new Mercator(new LatLonPoint.Double(40, -100), 100000f, 400, 400));
+      return layer;
+   }
+
+   public void testPublish() {
+      OMGraphicHandlerLayer layer = createLayer();
+      layer.publish(new OMPoint(40, -100));
+      // Nothing is running prepare().
+      assertNull(layer.getProgressList());
+
+      layer.startProgress();
+      layer.publish(new OMPoint(40, -100));
+      OMGraphicList chunk = new OMGraphicList();
+      chunk.add(new OMPoint(41, -100));
+      chunk.add(new OMPoint(42, -100));
+      layer.publish(chunk);
+      assertEquals(2, layer.getProgressList().size());
+
+      layer.finishProgress();
+      assertNull(layer.getProgressList());
+   }
+
+   public void testProjectionChange() {
+      OMGraphicHandlerLayer layer = createLayer();
+      layer.startProgress();
+      layer.publish(new OMPoint(40, -100));
+      assertNotNull(layer.getProgressList());
+
+      // The published graphics were generated for the old projection.
+      layer.setProjection(new Mercator(new LatLonPoint.Double(40, -90), 100000f, 400, 400));
+      assertNull(layer.getProgressList());
+      layer.publish(new OMPoint(40, -100));
+      assertNull(layer.getProgressList());
+
+      layer.startProgress();
+      layer.publish(new OMPoint(40, -90));
+      assertEquals(1, layer.getProgressList().size());
+   }
+
+   public void testTurnedOff() {
+      OMGraphicHandlerLayer layer = createLayer();
+      layer.setProgressInterval(-1);
+      layer.startProgress();
+      layer.publish(new OMPoint(40, -100));
+      assertNull(layer.getProgressList());
+   }
+}
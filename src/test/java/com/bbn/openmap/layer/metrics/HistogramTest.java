@@ -0,0 +1,62 @@
+package com.bbn.openmap.layer.metrics;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+   public void testBuckets() {
+      assertEquals(0, Histogram.getBucket(0));
+      assertEquals(1, Histogram.getBucket(1));
+      assertEquals(2, Histogram.getBucket(2));
+      assertEquals(2, Histogram.getBucket(3));
+      assertEquals(3, Histogram.getBucket(4));
+      assertEquals(10, Histogram.getBucket(1000));
+      assertEquals(Histogram.NUM_BUCKETS - 1, Histogram.getBucket(Long.MAX_VALUE / 1000));
+
+      Histogram histogram = new Histogram();
+      histogram.record(500);
+      histogram.record(1500);
+      histogram.record(-5);
+      long[] buckets = histogram.getBuckets();
+      assertEquals(2, buckets[0]);
+      assertEquals(1, buckets[1]);
+      assertEquals(3, histogram.getCount());
+      assertEquals(2000, histogram.getTotal());
+      assertEquals(1500, histogram.getMax());
+   }
+
+   public void testPercentiles() {
+      Histogram histogram = new Histogram();
+      assertEquals(0, histogram.getPercentileMillis(.95), 0);
+      assertEquals(0, histogram.getMeanMillis(), 0);
+
+      // 90 times of 1ms, 10 of 100ms
+      for (int i = 0; i < 90; i++) {
+         histogram.record(1000000);
+      }
+      for (int i = 0; i < 10; i++) {
+         histogram.record(100000000);
+      }
+      assertEquals(100, histogram.getCount());
+      assertEquals(10.9, histogram.getMeanMillis(), 1e-9);
+
+      // 1000us is in the bucket up to 1024us, 100000us up to 131072us,
+      // but never more than the max.
+      assertEquals(1.024, histogram.getPercentileMillis(.5), 1e-9);
+      assertEquals(1.024, histogram.getPercentileMillis(.9), 1e-9);
+      assertEquals(100, histogram.getPercentileMillis(.95), 1e-9);
+      assertEquals(100, histogram.getPercentileMillis(1), 1e-9);
+
+      // The percentile is within a factor of two of the real time
+      histogram.reset();
+      histogram.record(3000000);
+      histogram.record(70000000);
+      double p50 = histogram.getPercentileMillis(.5);
+      assertTrue(String.valueOf(p50), p50 >= 3 && p50 <= 6);
+
+      histogram.reset();
+      assertEquals(0, histogram.getCount());
+      assertEquals(0, histogram.getMax());
+      assertEquals(0, histogram.getPercentileMillis(.5), 0);
+   }
+}
@@ -0,0 +1,48 @@
+package com.bbn.openmap.layer.metrics;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
+
+public class LayerMetricsTest extends TestCase {
+
+   protected OMGraphicHandlerLayer createLayer(String name) {
+      OMGraphicHandlerLayer layer = new OMGraphicHandlerLayer();
+      layer.setName(name);
+      return layer;
+   }
+
+   public void testStatsForEachLayer() {
+      OMGraphicHandlerLayer layer1 = createLayer("LayerMetricsTest");
+      OMGraphicHandlerLayer layer2 = createLayer("LayerMetricsTest");
+
+      LayerMetrics.prepared(layer1, 2000000, 10, false);
+      LayerMetrics.prepared(layer1, 4000000, 20, false);
+      LayerMetrics.prepared(layer2, 1000000, 5, true);
+      LayerMetrics.rendered(layer2, 1000000);
+
+      LayerStats stats1 = LayerMetrics.getStats(layer1);
+      LayerStats stats2 = LayerMetrics.getStats(layer2);
+      assertNotSame(stats1, stats2);
+      assertSame(stats1, LayerMetrics.getStats(layer1));
+      assertEquals("LayerMetricsTest", stats1.getLayerName());
+      assertEquals("LayerMetricsTest #2", stats2.getLayerName());
+
+      assertEquals(2, stats1.getPrepareCount());
+      assertEquals(0, stats1.getCancelledCount());
+      assertEquals(15, stats1.getMeanGraphicCount(), 0);
+      assertEquals(20, stats1.getLastGraphicCount());
+      assertEquals(3, stats1.getMeanPrepareTime(), 1e-9);
+      assertEquals(0, stats1.getRenderCount());
+
+      assertEquals(1, stats2.getPrepareCount());
+      assertEquals(1, stats2.getCancelledCount());
+      assertEquals(1, stats2.getRenderCount());
+
+      assertTrue(LayerMetrics.getAllStats().contains(stats1));
+      assertTrue(LayerMetrics.getAllStats().contains(stats2));
+
+      // Named stats are kept apart from the layers'
+      assertNotSame(stats1, LayerMetrics.getStats("LayerMetricsTest"));
+   }
+}
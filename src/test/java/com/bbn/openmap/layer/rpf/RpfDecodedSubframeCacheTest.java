@@ -0,0 +1,118 @@
+package com.bbn.openmap.layer.rpf;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.util.cacheHandler.CacheStatistics;
+
+public class RpfDecodedSubframeCacheTest extends TestCase {
+
+   /** The cache splits its budget among sections, each gets two of these. */
+   static final int PIXELS = 500;
+   static final long BUDGET = 16 * 2 * PIXELS * 4;
+
+   static class TestCache
+         extends RpfDecodedSubframeCache {
+      TestCache(long byteBudget) {
+         super(byteBudget);
+      }
+
+      boolean sameSection(Object key1, Object key2) {
+         return sectionFor(key1) == sectionFor(key2);
+      }
+   }
+
+   protected Object key(int i) {
+      return RpfDecodedSubframeCache.createKey("/rpf/frame" + i, 1, 2, true, 255, 216);
+   }
+
+   public void testByteBudget() {
+      TestCache cache = new TestCache(BUDGET);
+      assertEquals(BUDGET, cache.getByteBudget());
+      for (int i = 0; i < 200; i++) {
+         cache.putDecoded(key(i), new int[PIXELS]);
+         assertNotNull(cache.getDecoded(key(i)));
+         assertTrue(cache.getStatistics().getWeight() <= BUDGET);
+      }
+      CacheStatistics stats = cache.getStatistics();
+      assertTrue(stats.getEntryCount() <= 32);
+      assertEquals(200 - stats.getEntryCount(), stats.getEvictionCount());
+      assertEquals(stats.getEntryCount() * PIXELS * 4L, stats.getWeight());
+
+      // Too big for its section, it's kept alone
+      cache.putDecoded(key(1000), new int[(int) BUDGET]);
+      assertNotNull(cache.getDecoded(key(1000)));
+   }
+
+   public void testLeastRecentlyUsedEvicted() {
+      TestCache cache = new TestCache(BUDGET);
+      Object first = key(0);
+      List<Object> same = new ArrayList<Object>();
+      for (int i = 1; same.size() < 2; i++) {
+         if (cache.sameSection(first, key(i))) {
+            same.add(key(i));
+         }
+      }
+
+      cache.putDecoded(first, new int[PIXELS]);
+      cache.putDecoded(same.get(0), new int[PIXELS]);
+      assertNotNull(cache.getDecoded(first));
+      cache.putDecoded(same.get(1), new int[PIXELS]);
+
+      assertNotNull(cache.getDecoded(first));
+      assertNull(cache.getDecoded(same.get(0)));
+      assertNotNull(cache.getDecoded(same.get(1)));
+      assertEquals(1, cache.getStatistics().getEvictionCount());
+   }
+
+   public void testByteCount() {
+      assertEquals(4000, RpfDecodedSubframeCache.getByteCount(new int[1000]));
+      RpfIndexedImageData riid = new RpfIndexedImageData();
+      riid.imageData = new byte[256 * 256];
+      riid.colortable = new Color[216];
+      assertEquals(256 * 256 + 216 * 32, RpfDecodedSubframeCache.getByteCount(riid));
+      assertEquals(0, RpfDecodedSubframeCache.getByteCount("not a subframe"));
+   }
+
+   public void testRemoveOwnedBy() {
+      TestCache cache = new TestCache(BUDGET * 10);
+      Object owner1 = new Object();
+      Object owner2 = new Object();
+      cache.putDecoded(key(1), new int[10], owner1);
+      cache.putDecoded(key(2), new int[10], owner2);
+      cache.putDecoded(key(3), new int[10], owner1);
+      cache.putDecoded(key(4), new int[10]);
+
+      cache.removeOwnedBy(owner1);
+      assertNull(cache.getDecoded(key(1)));
+      assertNotNull(cache.getDecoded(key(2)));
+      assertNull(cache.getDecoded(key(3)));
+      assertNotNull(cache.getDecoded(key(4)));
+      assertEquals(2, cache.getStatistics().getEntryCount());
+   }
+
+   public void testDecodeWaitsAfterFailure() {
+      final AtomicBoolean finished = new AtomicBoolean();
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+      tasks.add(new Callable<Object>() {
+         public Object call() {
+            throw new IllegalStateException("bad frame");
+         }
+      });
+      tasks.add(new Callable<Object>() {
+         public Object call()
+               throws Exception {
+            Thread.sleep(200);
+            finished.set(true);
+            return null;
+         }
+      });
+      RpfDecodedSubframeCache.decode(tasks);
+      assertTrue(finished.get());
+   }
+}
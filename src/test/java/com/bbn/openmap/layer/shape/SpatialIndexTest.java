@@ -0,0 +1,60 @@
+package com.bbn.openmap.layer.shape;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class SpatialIndexTest extends TestCase {
+
+    private static final String SHAPE_FILE = "share/data/shape/vmap_area_thin.shp";
+
+    private static final double[][] QUERIES = {
+        { -180, -90, 180, 90 },
+        { -10, 30, 40, 60 },
+        { -80, 20, -60, 45 },
+        { 100, -50, 101, -49 },
+        { 12.5, 41.9, 12.5, 41.9 }
+    };
+
+    public void testRTreeMatchesLinearScan() throws Exception {
+        if (!new File(SHAPE_FILE).exists()) {
+            return;
+        }
+
+        SpatialIndex linear = new SpatialIndex(SHAPE_FILE);
+        SpatialIndex rTree = new SpatialIndex(SHAPE_FILE);
+        rTree.setUseRTree(true);
+
+        try {
+            for (double[] q : QUERIES) {
+                int[] expected = recordNumbers(linear.locateRecords(q[0], q[1], q[2], q[3]));
+                int[] actual = recordNumbers(rTree.locateRecords(q[0], q[1], q[2], q[3]));
+                if (q == QUERIES[0]) {
+                    assertTrue(expected.length > 0);
+                }
+                assertEquals(Arrays.toString(q), Arrays.toString(expected), Arrays.toString(actual));
+            }
+
+            // Both paths gather the bounds of all records on the first query.
+            ESRIBoundingBox linearBounds = linear.getBounds();
+            ESRIBoundingBox rTreeBounds = rTree.getBounds();
+            assertNotNull(rTreeBounds);
+            assertEquals(linearBounds.min.x, rTreeBounds.min.x, 0.0);
+            assertEquals(linearBounds.min.y, rTreeBounds.min.y, 0.0);
+            assertEquals(linearBounds.max.x, rTreeBounds.max.x, 0.0);
+            assertEquals(linearBounds.max.y, rTreeBounds.max.y, 0.0);
+        } finally {
+            rTree.close(true);
+        }
+    }
+
+    private static int[] recordNumbers(ESRIRecord[] records) {
+        int[] numbers = new int[records.length];
+        for (int i = 0; i < records.length; i++) {
+            numbers[i] = records[i].getRecordNumber();
+        }
+        Arrays.sort(numbers);
+        return numbers;
+    }
+}
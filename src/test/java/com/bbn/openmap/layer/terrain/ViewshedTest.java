@@ -0,0 +1,84 @@
+package com.bbn.openmap.layer.terrain;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class ViewshedTest extends TestCase {
+
+    final static int RADIUS = 100;
+    final static int[] COLORS = new int[] { 0, 1, 2 };
+
+    Projection proj = new Mercator(new LatLonPoint.Double(40, -100), 100000f, 400, 400);
+    Point center = new Point(200, 200);
+
+    /**
+     * A Viewshed over flat ground at sea level, with a wall 500 meters high
+     * from 30 to 33 pixels east of the center.
+     */
+    protected Viewshed createViewshed() {
+        LatLonPoint centerLLP = proj.inverse(center.x, center.y, new LatLonPoint.Double());
+        Viewshed viewshed = new Viewshed(proj, center, centerLLP, 10, RADIUS, null);
+
+        LatLonPoint ul = proj.inverse(center.x - RADIUS - 5, center.y - RADIUS - 5, new LatLonPoint.Double());
+        LatLonPoint lr = proj.inverse(center.x + RADIUS + 5, center.y + RADIUS + 5, new LatLonPoint.Double());
+        double wallLeft = proj.inverse(center.x + 30, center.y, new LatLonPoint.Double()).getX();
+        double wallRight = proj.inverse(center.x + 33, center.y, new LatLonPoint.Double()).getX();
+
+        short[][] posts = new short[801][801];
+        for (int x = 0; x < posts.length; x++) {
+            double lon = ul.getX() + (lr.getX() - ul.getX()) * x / (posts.length - 1);
+            if (lon >= wallLeft && lon <= wallRight) {
+                Arrays.fill(posts[x], (short) 500);
+            }
+        }
+        viewshed.grid = new Viewshed.ElevationGrid(posts, ul.getX(), lr.getY(), lr.getX(), ul.getY());
+        return viewshed;
+    }
+
+    protected int get(int[] pixels, int dx, int dy) {
+        int edge = 2 * RADIUS + 1;
+        return pixels[(RADIUS + dy) * edge + RADIUS + dx];
+    }
+
+    public void testWall() {
+        Viewshed viewshed = createViewshed();
+        int[] pixels = new int[viewshed.getEdge() * viewshed.getEdge()];
+        assertTrue(viewshed.compute(pixels, COLORS));
+
+        assertEquals(LOSGenerator.MAYBEVISIBLE, get(pixels, 0, 0));
+        assertEquals(LOSGenerator.VISIBLE, get(pixels, -60, 0));
+        assertEquals(LOSGenerator.VISIBLE, get(pixels, 0, 80));
+        assertEquals(LOSGenerator.VISIBLE, get(pixels, 20, 0));
+        assertEquals(LOSGenerator.VISIBLE, get(pixels, 31, 0));
+        assertEquals(LOSGenerator.INVISIBLE, get(pixels, 60, 0));
+        assertEquals(LOSGenerator.INVISIBLE, get(pixels, 60, 20));
+        assertEquals(LOSGenerator.INVISIBLE, get(pixels, 90, -30));
+        // Outside the circle
+        assertEquals(LOSGenerator.INVISIBLE, get(pixels, -RADIUS, -RADIUS));
+    }
+
+    public void testThreads() {
+        Viewshed viewshed = createViewshed();
+        viewshed.setNumThreads(1);
+        int[] pixels = new int[viewshed.getEdge() * viewshed.getEdge()];
+        assertTrue(viewshed.compute(pixels, COLORS));
+
+        viewshed = createViewshed();
+        viewshed.setNumThreads(8);
+        int[] parallel = new int[pixels.length];
+        assertTrue(viewshed.compute(parallel, COLORS));
+        assertTrue(Arrays.equals(pixels, parallel));
+    }
+
+    public void testCancel() {
+        Viewshed viewshed = createViewshed();
+        viewshed.cancel();
+        assertFalse(viewshed.compute(new int[viewshed.getEdge() * viewshed.getEdge()], COLORS));
+    }
+}
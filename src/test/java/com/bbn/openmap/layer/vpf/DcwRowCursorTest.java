@@ -0,0 +1,227 @@
+package com.bbn.openmap.layer.vpf;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.io.BinaryFile;
+
+public class DcwRowCursorTest extends TestCase {
+
+   /** A column of each type, fixed and variable length where allowed. */
+   static final String COLUMNS = "id=I,1,P,Row id:" + "s=S,1,N,short:" + "f=F,1,N,float:" + "r=R,1,N,double:"
+         + "t=T,8,N,fixed text:" + "tv=T,*,N,text:" + "te=T,*,N,empty text:" + "l1=L,6,N,fixed latin1:"
+         + "l1v=L,*,N,latin1:" + "l2=M,*,N,level 2:" + "l3=N,4,N,level 3:" + "c=C,*,N,float 2d:" + "b=B,2,N,double 2d:"
+         + "z=Z,*,N,float 3d:" + "y=Y,1,N,double 3d:" + "d=D,1,N,date:" + "x=X,1,N,null:" + "k=K,1,N,triplet:" + ";";
+
+   static final int ROWS = 3;
+
+   File file;
+
+   protected void setUp() throws IOException {
+      file = File.createTempFile("dcwrowcursor", ".tab");
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+      try {
+         out.writeBytes(COLUMNS);
+         for (int row = 0; row < ROWS; row++) {
+            writeRow(out, row);
+         }
+      } finally {
+         out.close();
+      }
+   }
+
+   protected void tearDown() {
+      file.delete();
+   }
+
+   /**
+    * Write a row, with a different number of tuples and text lengths for each
+    * row so the cursor has to move things around in its buffers.
+    */
+   void writeRow(DataOutputStream out, int row) throws IOException {
+      out.writeInt(row + 1);
+      out.writeShort(-row - 7);
+      out.writeFloat(1.5f * row);
+      out.writeDouble(-2.25 * row);
+      out.writeBytes("abc" + row + "    ");
+      writeText(out, "variable " + row);
+      writeText(out, "");
+      out.writeBytes("\u00e9t\u00e9 " + row + " ");
+      writeText(out, "caf\u00e9" + row);
+      writeText(out, "level2-" + row);
+      out.write(new byte[] { 1, (byte) row, -3, 4 });
+      out.writeInt(row + 1);
+      for (int i = 0; i < (row + 1) * 2; i++) {
+         out.writeFloat(i * 0.5f + row);
+      }
+      for (int i = 0; i < 4; i++) {
+         out.writeDouble(i * 0.125 - row);
+      }
+      out.writeInt(row + 2);
+      for (int i = 0; i < (row + 2) * 3; i++) {
+         out.writeFloat(-i - row);
+      }
+      for (int i = 0; i < 3; i++) {
+         out.writeDouble(i * 1.0e10 + row);
+      }
+      out.writeBytes("20260101120000      ");
+      // Current tile key in a byte, next tile id in a short, next tile key
+      // in an int, no unused key.
+      out.write((1 << 6) | (2 << 4) | (3 << 2));
+      out.write(row + 3);
+      out.writeShort(row + 300);
+      out.writeInt(row + 70000);
+   }
+
+   void writeText(DataOutputStream out, String text) throws IOException {
+      out.writeInt(text.length());
+      for (int i = 0; i < text.length(); i++) {
+         out.write(text.charAt(i));
+      }
+   }
+
+   BinaryFile open(List<DcwColumnInfo> columns) throws Exception {
+      BinaryFile in = new BinaryFile(file);
+      in.byteOrder(true);
+      try {
+         while (true) {
+            columns.add(new DcwColumnInfo(in));
+         }
+      } catch (EOFException e) {
+         // Hit the ';' after the last column.
+      }
+      return in;
+   }
+
+   public void testRoundTrip() throws Exception {
+      List<DcwColumnInfo> columns = new ArrayList<DcwColumnInfo>();
+      BinaryFile in = open(columns);
+      DcwColumnInfo[] info = columns.toArray(new DcwColumnInfo[columns.size()]);
+      assertEquals(18, info.length);
+      DcwRowCursor cursor = new DcwRowCursor(info);
+      long start = in.getFilePointer();
+
+      // Parse the file the way DcwRecordFile.parseRow(List) does.
+      List<List<Object>> parsed = new ArrayList<List<Object>>();
+      for (int row = 0; row < ROWS; row++) {
+         List<Object> fields = new ArrayList<Object>();
+         for (DcwColumnInfo column : info) {
+            fields.add(column.parseField(in));
+         }
+         parsed.add(fields);
+      }
+
+      in.seek(start);
+      List<Object> list = new ArrayList<Object>();
+      for (int row = 0; row < ROWS; row++) {
+         assertTrue(cursor.read(in));
+         List<Object> expected = parsed.get(row);
+         for (int i = 0; i < info.length; i++) {
+            assertSameValue(row + " " + info[i].getColumnName(), expected.get(i), cursor.getObject(i));
+         }
+         assertSame(list, cursor.toList(list));
+         assertEquals(expected.size(), list.size());
+         for (int i = 0; i < info.length; i++) {
+            assertSameValue(row + " " + info[i].getColumnName(), expected.get(i), list.get(i));
+         }
+      }
+      in.close();
+   }
+
+   public void testPrimitiveAccess() throws Exception {
+      List<DcwColumnInfo> columns = new ArrayList<DcwColumnInfo>();
+      BinaryFile in = open(columns);
+      DcwRowCursor cursor = new DcwRowCursor(columns.toArray(new DcwColumnInfo[columns.size()]));
+      assertTrue(cursor.read(in));
+      assertTrue(cursor.read(in));
+      in.close();
+
+      assertEquals(2, cursor.getInt(0));
+      assertEquals(-8, cursor.getInt(1));
+      assertEquals(1.5, cursor.getDouble(2), 0);
+      assertEquals(-2.25, cursor.getDouble(3), 0);
+      assertEquals("abc1", cursor.getString(4));
+      assertEquals("variable 1", cursor.getString(5));
+      assertEquals(2, cursor.getTupleCount(11));
+      assertEquals(2, cursor.getTupleSize(11));
+      assertEquals(2.0, cursor.getX(11, 1), 0);
+      assertEquals(2.5, cursor.getY(11, 1), 0);
+      assertEquals(3, cursor.getTupleSize(13));
+      assertEquals(-5.0, cursor.getY(13, 1), 0);
+      assertEquals(4, cursor.getCurrentTileKey(17));
+      assertEquals(301, cursor.getNextTileId(17));
+      assertEquals(70001, cursor.getNextTileKey(17));
+      assertEquals(2, VPFUtil.objectToInt(cursor, 0));
+      assertEquals(-8, VPFUtil.objectToInt(cursor, 1));
+      assertEquals(Integer.MIN_VALUE, VPFUtil.objectToInt(cursor, 2));
+   }
+
+   public void testListOnlyTilingAdapter() throws Exception {
+      List<DcwColumnInfo> columns = new ArrayList<DcwColumnInfo>();
+      BinaryFile in = open(columns);
+      DcwRowCursor cursor = new DcwRowCursor(columns.toArray(new DcwColumnInfo[columns.size()]));
+      assertTrue(cursor.read(in));
+      assertTrue(cursor.read(in));
+      in.close();
+
+      // An adapter written before the cursor methods existed.
+      TilingAdapter adapter = new TilingAdapter() {
+         public int getTileId(List<Object> l) {
+            return ((Number) l.get(1)).intValue();
+         }
+
+         public int getPrimId(List<Object> l) {
+            return ((Number) l.get(0)).intValue();
+         }
+
+         public int getTilePrimId(List<Object> l) {
+            return getPrim(l).nextTileKey;
+         }
+
+         public DcwCrossTileID getPrim(List<Object> l) {
+            return (DcwCrossTileID) l.get(17);
+         }
+      };
+      assertEquals(-8, adapter.getTileId(cursor));
+      assertEquals(2, adapter.getPrimId(cursor));
+      assertEquals(70001, adapter.getTilePrimId(cursor));
+      assertEquals(70001, new TilingAdapter.CrossTileAdapter(17).getTilePrimId(cursor));
+   }
+
+   void assertSameValue(String msg, Object expected, Object actual) {
+      assertNotNull(msg, actual);
+      assertEquals(msg, expected.getClass(), actual.getClass());
+      if (expected instanceof byte[]) {
+         assertTrue(msg, Arrays.equals((byte[]) expected, (byte[]) actual));
+      } else if (expected instanceof CoordFloatString) {
+         CoordFloatString e = (CoordFloatString) expected;
+         CoordFloatString a = (CoordFloatString) actual;
+         assertEquals(msg, e.tcount, a.tcount);
+         assertEquals(msg, e.tsize, a.tsize);
+         assertTrue(msg, Arrays.equals(e.vals, a.vals));
+      } else if (expected instanceof CoordDoubleString) {
+         CoordDoubleString e = (CoordDoubleString) expected;
+         CoordDoubleString a = (CoordDoubleString) actual;
+         assertEquals(msg, e.maxIndex(), a.maxIndex());
+         for (int i = 0; i < e.maxIndex(); i++) {
+            assertTrue(msg, Arrays.equals(e.getasDouble(i), a.getasDouble(i)));
+         }
+      } else if (expected instanceof DcwCrossTileID) {
+         DcwCrossTileID e = (DcwCrossTileID) expected;
+         DcwCrossTileID a = (DcwCrossTileID) actual;
+         assertEquals(msg, e.currentTileKey, a.currentTileKey);
+         assertEquals(msg, e.nextTileID, a.nextTileID);
+         assertEquals(msg, e.nextTileKey, a.nextTileKey);
+      } else {
+         assertEquals(msg, expected, actual);
+      }
+   }
+}
@@ -0,0 +1,188 @@
+package com.bbn.openmap.layer.vpf;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class LibrarySelectionTableTest extends TestCase {
+
+   static final int TILES = 40;
+
+   List<TileDirectory> tiles;
+   FakeCoverageTable coverage;
+   FakeWarehouse warehouse;
+   LibrarySelectionTable lst;
+
+   protected void setUp() {
+      tiles = new ArrayList<TileDirectory>();
+      for (int i = 0; i < TILES; i++) {
+         tiles.add(new TileDirectory("tile" + i, i, 1, 0, 1, 0));
+      }
+      coverage = new FakeCoverageTable();
+      warehouse = new FakeWarehouse();
+      lst = new LibrarySelectionTable();
+      lst.setTileThreads(4);
+   }
+
+   protected void drawTiles(OMGraphicHandlerLayer layer) {
+      lst.drawTiles(coverage, tiles, warehouse, new LatLonPoint.Double(1, 0), new LatLonPoint.Double(0, 1), 0f, 0f, layer);
+   }
+
+   public void testTileOrder() {
+      drawTiles(null);
+
+      assertEquals(TILES, warehouse.texts.size());
+      for (int i = 0; i < TILES; i++) {
+         assertEquals("tile" + i + "/", warehouse.texts.get(i));
+      }
+      assertEquals(TILES, coverage.opened.get());
+      assertEquals(TILES, coverage.closed.get());
+   }
+
+   public void testSerialTileOrder() {
+      lst.setTileThreads(1);
+      drawTiles(null);
+
+      assertEquals(TILES, warehouse.texts.size());
+      for (int i = 0; i < TILES; i++) {
+         assertEquals("tile" + i + "/", warehouse.texts.get(i));
+      }
+   }
+
+   public void testCancel() {
+      final int drawn = 5;
+      OMGraphicHandlerLayer layer = new OMGraphicHandlerLayer() {
+         public boolean isCancelled() {
+            return warehouse.texts.size() >= drawn;
+         }
+      };
+      drawTiles(layer);
+
+      // Nothing is drawn after the layer is cancelled, and every tile that
+      // got read has its tables closed.
+      assertEquals(drawn, warehouse.texts.size());
+      for (int i = 0; i < drawn; i++) {
+         assertEquals("tile" + i + "/", warehouse.texts.get(i));
+      }
+      assertTrue(coverage.opened.get() < TILES);
+      assertEquals(coverage.opened.get(), coverage.closed.get());
+   }
+
+   /**
+    * Reads one text per tile, taking longer for the earlier tiles so they
+    * finish out of order.
+    */
+   class FakeCoverageTable
+         extends CoverageTable {
+
+      final AtomicInteger opened = new AtomicInteger();
+      final AtomicInteger closed = new AtomicInteger();
+
+      FakeCoverageTable() {
+         super("nonexistent", "none");
+      }
+
+      protected TableHolder createTableHolder() {
+         return new TableHolder(this) {
+            protected void readTile(TileDirectory tile, VPFTileBuffer buffer, LatLonPoint ll1, LatLonPoint ll2, float dpplat,
+                                    float dpplon) {
+               opened.incrementAndGet();
+               try {
+                  Thread.sleep((TILES - tile.getTileID()) % 4);
+               } catch (InterruptedException ie) {
+                  Thread.currentThread().interrupt();
+               }
+               buffer.createText(coverageTable, null, Collections.<Object> singletonList(tile.getTileID()), 0, 0, tile.getPath());
+            }
+
+            protected void drawTile(TileDirectory tile, VPFGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2,
+                                    float dpplat, float dpplon) {
+               warehouse.createText(coverageTable, null, Collections.<Object> singletonList(tile.getTileID()), 0, 0,
+                                    tile.getPath());
+            }
+
+            protected void drawBuffered(VPFTileBuffer buffer, VPFGraphicWarehouse warehouse) {
+               buffer.drawTexts(warehouse);
+            }
+
+            protected void close() {
+               closed.incrementAndGet();
+            }
+         };
+      }
+   }
+
+   /**
+    * Keeps the text of the text features.
+    */
+   static class FakeWarehouse
+         implements VPFGraphicWarehouse {
+
+      final List<String> texts = Collections.synchronizedList(new ArrayList<String>());
+
+      public void createArea(CoverageTable c, AreaTable a, List<Object> l, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
+                             double dpplon) {
+      }
+
+      public void createEdge(CoverageTable c, EdgeTable e, List<Object> l, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
+                             double dpplon, CoordFloatString coords) {
+      }
+
+      public void createText(CoverageTable c, TextTable t, List<Object> textprim, double latitude, double longitude, String text) {
+         texts.add(text);
+      }
+
+      public void createNode(CoverageTable c, NodeTable t, List<Object> nodeprim, double latitude, double longitude,
+                             boolean isEntityNode) {
+      }
+
+      public boolean drawEdgeFeatures() {
+         return false;
+      }
+
+      public boolean drawTextFeatures() {
+         return true;
+      }
+
+      public boolean drawAreaFeatures() {
+         return false;
+      }
+
+      public boolean drawEPointFeatures() {
+         return false;
+      }
+
+      public boolean drawCPointFeatures() {
+         return false;
+      }
+
+      public void resetForCAT() {
+      }
+
+      public Component getGUI(LibrarySelectionTable lst) {
+         return null;
+      }
+
+      public List<String> getFeatures() {
+         return Collections.emptyList();
+      }
+
+      public List<String> getUseLibraries() {
+         return null;
+      }
+
+      public void setUseLibraries(List<String> lib) {
+      }
+
+      public boolean checkLibraryForUsage(String libName) {
+         return true;
+      }
+   }
+}
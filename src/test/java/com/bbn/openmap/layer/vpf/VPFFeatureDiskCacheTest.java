@@ -0,0 +1,135 @@
+package com.bbn.openmap.layer.vpf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.omGraphics.OMText;
+
+public class VPFFeatureDiskCacheTest extends TestCase {
+
+   static final long SOURCE_TIME = 1234567890000L;
+   static final int CODE_KEY = 42;
+
+   File dir;
+   VPFFeatureDiskCache cache;
+   VPFFeatureDiskCache.Entry entry;
+
+   protected void setUp() throws IOException {
+      dir = File.createTempFile("vpffeaturecache", "");
+      dir.delete();
+      cache = new VPFFeatureDiskCache(dir);
+      entry = new VPFFeatureDiskCache.Entry(new File(dir, "lib/cov/feature/tile" + VPFFeatureDiskCache.FILE_SUFFIX),
+                                            SOURCE_TIME);
+   }
+
+   protected void tearDown() {
+      cache.clear();
+      dir.delete();
+   }
+
+   List<OMGraphic> createGraphics() {
+      List<OMGraphic> list = new ArrayList<OMGraphic>();
+      OMPoly area = new OMPoly(new double[] { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.1, 0.2 }, OMGraphic.RADIANS,
+                               OMGraphic.LINETYPE_STRAIGHT);
+      area.setIsPolygon(true);
+      list.add(area);
+      list.add(new OMPoly(new double[] { -0.5, 1.0, -0.25, 1.5 }, OMGraphic.RADIANS, OMGraphic.LINETYPE_STRAIGHT));
+      list.add(LayerGraphicWarehouseSupport.createOMText("caf\u00e9", 10.5, -20.25));
+      list.add(LayerGraphicWarehouseSupport.createOMPoint(-30.5, 40.75));
+      return list;
+   }
+
+   public void testRoundTrip() {
+      List<OMGraphic> written = createGraphics();
+      int[] codes = { 3, 0, 7, 1 };
+      cache.write(entry, CODE_KEY, written, codes);
+      assertTrue(entry.getFile().isFile());
+
+      List<OMGraphic> read = new ArrayList<OMGraphic>();
+      int[] readCodes = cache.read(entry, CODE_KEY, read);
+      assertNotNull(readCodes);
+      assertTrue(Arrays.equals(codes, readCodes));
+      assertEquals(written.size(), read.size());
+
+      for (int i = 0; i < 2; i++) {
+         OMPoly expected = (OMPoly) written.get(i);
+         OMPoly actual = (OMPoly) read.get(i);
+         assertEquals(expected.isPolygon(), actual.isPolygon());
+         assertEquals(OMGraphic.RENDERTYPE_LATLON, actual.getRenderType());
+         assertTrue(Arrays.equals(expected.getLatLonArray(), actual.getLatLonArray()));
+      }
+
+      OMText text = (OMText) read.get(2);
+      assertEquals("caf\u00e9", text.getData());
+      assertEquals(10.5, text.getLat(), 0);
+      assertEquals(-20.25, text.getLon(), 0);
+
+      OMPoint point = (OMPoint) read.get(3);
+      assertEquals(-30.5, point.getLat(), 0);
+      assertEquals(40.75, point.getLon(), 0);
+   }
+
+   public void testFeatureCacheGraphicList() {
+      FeatureCacheGraphicList written = FeatureCacheGraphicList.createForType(VPFUtil.Area);
+      written.addAll(createGraphics());
+      cache.write(entry, written);
+
+      FeatureCacheGraphicList read = FeatureCacheGraphicList.createForType(VPFUtil.Area);
+      assertTrue(cache.read(entry, read));
+      assertEquals(written.size(), read.size());
+   }
+
+   public void testStaleSourceTime() {
+      cache.write(entry, CODE_KEY, createGraphics(), new int[4]);
+
+      VPFFeatureDiskCache.Entry newer = new VPFFeatureDiskCache.Entry(entry.getFile(), SOURCE_TIME + 1000);
+      List<OMGraphic> read = new ArrayList<OMGraphic>();
+      assertNull(cache.read(newer, CODE_KEY, read));
+      assertTrue(read.isEmpty());
+
+      FeatureCacheGraphicList list = FeatureCacheGraphicList.createForType(VPFUtil.Area);
+      assertFalse(cache.read(newer, list));
+      assertTrue(list.isEmpty());
+   }
+
+   public void testCodeKeyMismatch() {
+      cache.write(entry, CODE_KEY, createGraphics(), new int[4]);
+
+      List<OMGraphic> read = new ArrayList<OMGraphic>();
+      assertNull(cache.read(entry, CODE_KEY + 1, read));
+      assertTrue(read.isEmpty());
+   }
+
+   public void testWarehouseSettingsChangeKey() {
+      String[] settings = { VPFAutoFeatureGraphicWarehouse.EV_ISDM, VPFAutoFeatureGraphicWarehouse.EV_IDSM,
+            VPFAutoFeatureGraphicWarehouse.EV_SSDC, VPFAutoFeatureGraphicWarehouse.EV_MSDC,
+            VPFAutoFeatureGraphicWarehouse.EV_MSSC };
+      for (String setting : settings) {
+         VPFAutoFeatureGraphicWarehouse warehouse = new VPFAutoFeatureGraphicWarehouse();
+         warehouse.priorities = new ArrayList<VPFAutoFeatureGraphicWarehouse.FeaturePriorityHolder>();
+         int key = warehouse.getPriorityCodeKey();
+         cache.write(entry, key, createGraphics(), new int[4]);
+         assertNotNull(setting, cache.read(entry, warehouse.getPriorityCodeKey(), new ArrayList<OMGraphic>()));
+
+         Properties props = new Properties();
+         props.setProperty("vpf." + setting, "12");
+         warehouse.setProperties("vpf", props);
+         List<OMGraphic> read = new ArrayList<OMGraphic>();
+         assertNull(setting, cache.read(entry, warehouse.getPriorityCodeKey(), read));
+         assertTrue(read.isEmpty());
+      }
+   }
+
+   public void testMissingFile() {
+      assertNull(cache.read(entry, CODE_KEY, new ArrayList<OMGraphic>()));
+   }
+}
@@ -0,0 +1,159 @@
+package com.bbn.openmap.omGraphics;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class OMPackedGraphicListTest extends TestCase {
+
+   protected Projection proj = new Mercator(new LatLonPoint.Double(0, 0), 50000000f, 400, 400);
+
+   protected OMPackedGraphicList createList() {
+      OMPackedGraphicList list = new OMPackedGraphicList();
+      DrawingAttributes red = new DrawingAttributes();
+      red.setLinePaint(Color.red);
+      red.setPointRadius(3);
+      list.addStyle(red);
+      list.addPoint(10, 10, 0);
+      list.addPoint(-10, -10, 0);
+      list.addPolyline(new double[] { 0, -20, 0, 20 }, 0);
+      return list;
+   }
+
+   public void testRender() {
+      OMPackedGraphicList list = createList();
+      list.generate(proj);
+      BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+      list.render(image.createGraphics());
+
+      Point2D pt = proj.forward(0, 10);
+      assertEquals(Color.red.getRGB(), image.getRGB((int) pt.getX(), (int) pt.getY()));
+      pt = proj.forward(10, 10);
+      assertEquals(Color.red.getRGB(), image.getRGB((int) pt.getX() - 3, (int) pt.getY()));
+      assertEquals(0, image.getRGB(5, 5));
+   }
+
+   public void testFindClosest() {
+      OMPackedGraphicList list = createList();
+      list.generate(proj);
+
+      Point2D pt = proj.forward(10, 10);
+      OMGraphic found = list.findClosest(pt.getX(), pt.getY(), 4);
+      assertTrue(found instanceof OMPoint);
+      assertSame(found, list.getPoint(0));
+      assertEquals(10d, ((OMPoint) found).getLat(), .0001);
+
+      pt = proj.forward(0, 5);
+      assertTrue(list.findClosest(pt.getX(), pt.getY() + 2, 4) instanceof OMPoly);
+      assertNull(list.findClosest(5, 5, 4));
+   }
+
+   public void testRelease() {
+      OMPackedGraphicList list = createList();
+      list.generate(proj);
+
+      OMPoint point = list.getPoint(1);
+      point.setLat(-20);
+      assertTrue(list.release(point));
+      assertNotSame(point, list.getPoint(1));
+      assertEquals(-20d, list.getPoint(1).getLat(), .0001);
+
+      OMPoly poly = list.getPolyline(0);
+      poly.setLocation(new double[] { 5, -20, 5, 0, 5, 20 }, OMGraphic.DECIMAL_DEGREES);
+      list.addPolyline(new double[] { -5, 0, -5, 1 }, 0);
+      assertTrue(list.release(poly));
+      assertFalse(list.release(poly));
+      assertEquals(3, list.getPolyline(0).getLatLonArray().length / 2);
+      assertEquals(2, list.getPolyline(1).getLatLonArray().length / 2);
+      assertEquals(-5d, Math.toDegrees(list.getPolyline(1).getLatLonArray()[0]), .0001);
+   }
+
+   /** A list of short polylines across the map, more than one chunk's worth. */
+   protected OMPackedGraphicList createPolylines(int count) {
+      OMPackedGraphicList list = new OMPackedGraphicList();
+      DrawingAttributes red = new DrawingAttributes();
+      red.setLinePaint(Color.red);
+      list.addStyle(red);
+      for (int i = 0; i < count; i++) {
+         double lat = -60 + 120d * i / count;
+         list.addPolyline(new double[] { lat, -20, lat, 20 }, 0);
+      }
+      return list;
+   }
+
+   public void testFindClosestReleasesViews() {
+      OMPackedGraphicList list = createPolylines(600);
+      list.generate(proj);
+
+      Point2D pt = proj.forward(list.polyCoords[10 * 4], 0);
+      assertEquals(10, list.findClosestPolyline(pt.getX(), pt.getY(), 2));
+      assertTrue(list.polyViews.isEmpty());
+
+      // Hovering over one polyline after another keeps one view
+      OMGraphic first = list.findClosest(pt.getX(), pt.getY(), 2);
+      assertSame(first, list.polyViews.get(10));
+      pt = proj.forward(list.polyCoords[500 * 4], 0);
+      OMGraphic second = list.findClosest(pt.getX(), pt.getY(), 2);
+      assertNotSame(first, second);
+      assertEquals(1, list.polyViews.size());
+      assertSame(second, list.polyViews.get(500));
+      assertNull(list.findClosest(5, 5, 2));
+      assertTrue(list.polyViews.isEmpty());
+
+      // Selected and claimed views are kept
+      second = list.findClosest(pt.getX(), pt.getY(), 2);
+      second.select();
+      pt = proj.forward(list.polyCoords[10 * 4], 0);
+      first = list.findClosest(pt.getX(), pt.getY(), 2);
+      assertSame(first, list.getPolyline(10));
+      assertNull(list.findClosest(5, 5, 2));
+      assertEquals(2, list.polyViews.size());
+   }
+
+   public void testReleaseProjectsOnlyChanged() {
+      final int[] projected = new int[1];
+      Projection counting = new Mercator(new LatLonPoint.Double(0, 0), 50000000f, 400, 400) {
+         private static final long serialVersionUID = 1L;
+
+         public void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, int xyoff, int count) {
+            projected[0] += count;
+            super.forwardArray(llpts, lloff, xcoords, ycoords, xyoff, count);
+         }
+      };
+      OMPackedGraphicList list = createPolylines(600);
+      list.generate(counting);
+
+      // A polyline with a new number of coordinates
+      OMPoly poly = list.getPolyline(100);
+      poly.setLocation(new double[] { 10, -30, 10, 0, 12, 30 }, OMGraphic.DECIMAL_DEGREES);
+      projected[0] = 0;
+      assertTrue(list.release(poly));
+      assertEquals(3, projected[0]);
+
+      // An unchanged point
+      list.addPoint(10, 10, 0);
+      list.generate(counting);
+      projected[0] = 0;
+      assertTrue(list.release(list.getPoint(0)));
+      assertEquals(1, projected[0]);
+
+      // The same as projecting everything again
+      float[] polyX = Arrays.copyOf(list.polyX, list.polyCoordCount);
+      float[] polyY = Arrays.copyOf(list.polyY, list.polyCoordCount);
+      list.generate(counting, true);
+      assertTrue(Arrays.equals(Arrays.copyOf(list.polyX, list.polyCoordCount), polyX));
+      assertTrue(Arrays.equals(Arrays.copyOf(list.polyY, list.polyCoordCount), polyY));
+
+      BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB);
+      list.render(image.createGraphics());
+      Point2D pt = counting.forward(11, 15);
+      assertEquals(Color.red.getRGB(), image.getRGB((int) pt.getX(), (int) pt.getY()));
+   }
+}
@@ -0,0 +1,89 @@
+package com.bbn.openmap.omGraphics;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class TextMetricsCacheTest extends TestCase {
+
+   protected Font font = new Font("SansSerif", Font.PLAIN, 13);
+
+   protected void setUp() {
+      TextMetricsCache.clear();
+   }
+
+   protected Graphics2D createGraphics(double scale, boolean fractional) {
+      Graphics2D g2 = new BufferedImage(400, 400, BufferedImage.TYPE_INT_ARGB).createGraphics();
+      g2.scale(scale, scale);
+      g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, fractional ? RenderingHints.VALUE_FRACTIONALMETRICS_ON
+            : RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+      g2.setFont(font);
+      return g2;
+   }
+
+   public void testMetricsForContext() {
+      Graphics2D g2 = createGraphics(1.5, true);
+      FontMetrics fm = TextMetricsCache.getFontMetrics(g2);
+      assertEquals(g2.getFontRenderContext(), fm.getFontRenderContext());
+      assertSame(fm, TextMetricsCache.getFontMetrics(g2));
+      assertSame(fm, TextMetricsCache.getFontMetrics(createGraphics(1.5, true)));
+
+      FontMetrics plain = TextMetricsCache.getFontMetrics(font);
+      assertEquals(TextMetricsCache.DEFAULT_CONTEXT, plain.getFontRenderContext());
+      assertNotSame(fm, plain);
+      assertNotSame(plain, TextMetricsCache.getFontMetrics(createGraphics(1, true)));
+      assertSame(plain, TextMetricsCache.getFontMetrics(createGraphics(1, false)));
+
+      // Widths are kept apart for each context
+      String string = "Lorem ipsum dolor sit amet";
+      assertEquals(g2.getFontMetrics().stringWidth(string), TextMetricsCache.stringWidth(fm, string));
+      assertEquals(plain.stringWidth(string), TextMetricsCache.stringWidth(plain, string));
+   }
+
+   public void testTextMetricsReplaced() {
+      Projection proj = new Mercator(new LatLonPoint.Double(0, 0), 50000000f, 400, 400);
+      OMText text = new OMText(0, 0, "Lorem ipsum dolor sit amet", font, OMText.JUSTIFY_CENTER);
+      text.generate(proj);
+      assertSame(TextMetricsCache.getFontMetrics(font), text.fm);
+
+      Graphics2D g2 = createGraphics(1, true);
+      text.render(g2);
+      assertEquals(g2.getFontRenderContext(), text.fm.getFontRenderContext());
+      assertEquals(g2.getFontMetrics().stringWidth("Lorem ipsum dolor sit amet"), text.widths[0]);
+
+      // Same metrics with the same context, widths are kept
+      int[] widths = text.widths;
+      text.render(createGraphics(1, true));
+      assertSame(widths, text.widths);
+   }
+
+   public void testTextImageContext() {
+      String string = "Lorem ipsum";
+      FontRenderContext plain = TextMetricsCache.DEFAULT_CONTEXT;
+      FontRenderContext scaled = new FontRenderContext(AffineTransform.getScaleInstance(2, 2), false, false);
+      FontRenderContext fractional = new FontRenderContext(null, false, true);
+
+      TextMetricsCache.TextImage image = TextMetricsCache.getTextImage(string, font, Color.black, null, null, plain);
+      TextMetricsCache.TextImage scaledImage =
+            TextMetricsCache.getTextImage(string, font, Color.black, null, null, scaled);
+      assertSame(image, TextMetricsCache.getTextImage(string, font, Color.black, null, null, plain));
+      assertNotSame(image, TextMetricsCache.getTextImage(string, font, Color.black, null, null, fractional));
+
+      // Drawn in device space
+      int width = image.image.getWidth() - 2;
+      int scaledWidth = scaledImage.image.getWidth() - 2;
+      assertTrue(width + " " + scaledWidth, Math.abs(scaledWidth - 2 * width) <= 4);
+      assertTrue(scaledImage.y < image.y);
+   }
+}
@@ -0,0 +1,75 @@
+package com.bbn.openmap.omGraphics.time;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+
+public class TemporalSupportTest extends TestCase {
+
+    private TemporalPointSupport support(int count) {
+        TemporalPointSupport support = new TemporalPointSupport(OMGraphic.RENDERTYPE_XY);
+        for (int i = 0; i < count; i++) {
+            support.add(new TemporalPoint(new Point2D.Double(i, i), 1000 + i * 10));
+        }
+        return support;
+    }
+
+    private void checkPosition(TemporalPointSupport support, long time) {
+        TemporalPoint tp = support.getPosition(time, false);
+        if (time < 1000) {
+            assertNull("before first " + time, tp);
+        } else {
+            long expected = Math.min(1000 + (time - 1000) / 10 * 10, 1000 + (support.getTemporals().size() - 1) * 10);
+            assertEquals("time " + time, expected, tp.getTime());
+        }
+
+        TemporalPoint closest = support.getPosition(time, true);
+        if (time >= 1000 && time < 1000 + (support.getTemporals().size() - 1) * 10) {
+            long previous = 1000 + (time - 1000) / 10 * 10;
+            long expected = (time - previous < 5) ? previous : previous + 10;
+            assertEquals("closest " + time, expected, closest.getTime());
+        }
+    }
+
+    public void testForward() {
+        TemporalPointSupport support = support(100);
+        for (long time = 900; time < 2100; time += 3) {
+            checkPosition(support, time);
+        }
+    }
+
+    public void testRandomJumps() {
+        TemporalPointSupport support = support(100);
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            checkPosition(support, 900 + random.nextInt(1200));
+        }
+    }
+
+    public void testChanges() {
+        TemporalPointSupport support = support(10);
+        checkPosition(support, 1200);
+        support.add(new TemporalPoint(new Point2D.Double(10, 10), 1100));
+        checkPosition(support, 1200);
+        assertEquals(1100, support.getPosition(1200, false).getTime());
+        support.clear();
+        assertNull(support.getPosition(1200, false));
+    }
+
+    public void testUpdateForTemporal() {
+        final int[] updates = new int[1];
+        TemporalPointSupport support = new TemporalPointSupport(OMGraphic.RENDERTYPE_XY) {
+            protected void updateForTemporal(long time, TemporalRecord temporal) {
+                updates[0]++;
+            }
+        };
+        for (int i = 0; i < 10; i++) {
+            support.add(new TemporalPoint(new Point2D.Double(i, i), i * 10));
+        }
+        support.getPosition(45, false);
+        assertEquals(5, updates[0]);
+    }
+}
@@ -0,0 +1,68 @@
+package com.bbn.openmap.omGraphics.util;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Orthographic;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class ImageWarpTest extends TestCase {
+
+    private final static int WIDTH = 720;
+    private final static int HEIGHT = 360;
+
+    /**
+     * A world image where each pixel holds its own location, so the warped
+     * pixels tell where in the source image they came from.
+     */
+    private int[] indexImage() {
+        int[] pix = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pix.length; i++) {
+            pix[i] = 0xff000000 | i;
+        }
+        return pix;
+    }
+
+    private void checkGrid(Projection proj) {
+        int[] pix = indexImage();
+        int[] exact = new ImageWarp(pix, WIDTH, HEIGHT).getImagePixels(proj);
+
+        ImageWarp warp = new ImageWarp(pix, WIDTH, HEIGHT);
+        warp.setGridSpacing(ImageWarp.DEFAULT_GRID_SPACING);
+        warp.setNumThreads(3);
+        int[] grid = warp.getImagePixels(proj);
+        assertEquals(exact.length, grid.length);
+
+        int mismatched = 0;
+        for (int i = 0; i < exact.length; i++) {
+            if ((exact[i] == 0) != (grid[i] == 0)) {
+                mismatched++;
+                continue;
+            }
+            if (exact[i] == 0) {
+                continue;
+            }
+            int e = exact[i] & 0xffffff;
+            int g = grid[i] & 0xffffff;
+            int dx = Math.abs(e % WIDTH - g % WIDTH);
+            int dy = Math.abs(e / WIDTH - g / WIDTH);
+            // Off by one pixel from rounding, or wrapped around the dateline.
+            if ((dx > 1 && dx < WIDTH - 1) || dy > 1) {
+                mismatched++;
+            }
+        }
+        assertTrue(mismatched + " of " + exact.length + " pixels off", mismatched < exact.length / 1000);
+
+        // The same array comes back for the next projection.
+        assertSame(grid, warp.getImagePixels(proj));
+    }
+
+    public void testMercator() {
+        checkGrid(new Mercator(new LatLonPoint.Double(20, 170), 100000000f, 800, 600));
+    }
+
+    public void testOrthographic() {
+        checkGrid(new Orthographic(new LatLonPoint.Double(40, -75), 90000000f, 800, 600));
+    }
+}
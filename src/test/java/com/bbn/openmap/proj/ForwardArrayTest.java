@@ -0,0 +1,143 @@
+package com.bbn.openmap.proj;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+public class ForwardArrayTest extends TestCase {
+
+    private double[] llpts(int count, boolean radians) {
+        Random random = new Random(7);
+        double[] llpts = new double[count * 2];
+        for (int i = 0; i < llpts.length; i += 2) {
+            llpts[i] = random.nextDouble() * 170 - 85;
+            llpts[i + 1] = random.nextDouble() * 360 - 180;
+            if (radians) {
+                llpts[i] = Math.toRadians(llpts[i]);
+                llpts[i + 1] = Math.toRadians(llpts[i + 1]);
+            }
+        }
+        return llpts;
+    }
+
+    private void checkProjection(GeoProj proj) {
+        int count = 500;
+        for (int r = 0; r < 2; r++) {
+            boolean radians = r == 1;
+            double[] llpts = llpts(count, radians);
+            float[] xs = new float[count + 3];
+            float[] ys = new float[count + 3];
+            // project everything but the first point, at an offset
+            proj.forwardArray(llpts, 2, xs, ys, 3, count - 1, radians);
+
+            Point2D pt = new Point2D.Double();
+            for (int i = 1; i < count; i++) {
+                proj.forward(llpts[i * 2], llpts[i * 2 + 1], pt, radians);
+                assertEquals(proj.getName() + " x " + i, (float) pt.getX(), xs[i + 2], 0.01f);
+                assertEquals(proj.getName() + " y " + i, (float) pt.getY(), ys[i + 2], 0.01f);
+            }
+        }
+    }
+
+    public void testMercator() {
+        checkProjection(new Mercator(new LatLonPoint.Double(30, -70), 50000000f, 800, 600));
+    }
+
+    public void testLLXY() {
+        checkProjection(new LLXY(new LatLonPoint.Double(30, -70), 50000000f, 800, 600));
+    }
+
+    public void testCADRG() {
+        checkProjection(new CADRG(new LatLonPoint.Double(30, -70), 50000000f, 800, 600));
+    }
+
+    public void testOrthographic() {
+        checkProjection(new Orthographic(new LatLonPoint.Double(30, -70), 50000000f, 800, 600));
+    }
+
+    public void testLambertConformal() {
+        checkProjection(new LambertConformal(new LatLonPoint.Double(40, -100), 50000000f, 800, 600, -100, 33, 45, 23,
+                0, 0, Ellipsoid.WGS_84));
+    }
+
+    public void testUTMProjection() {
+        checkProjection(new UTMProjection(new LatLonPoint.Double(40, -75), 5000000f, 800, 600, 18, true,
+                Ellipsoid.WGS_84));
+    }
+
+    public void testProjectionDegrees() {
+        Projection proj = new Mercator(new LatLonPoint.Double(0, 0), 100000000f, 640, 480);
+        double[] llpts = llpts(50, false);
+        float[] xs = new float[50];
+        float[] ys = new float[50];
+        proj.forwardArray(llpts, 0, xs, ys, 0, 50);
+        for (int i = 0; i < 50; i++) {
+            Point2D pt = proj.forward(llpts[i * 2], llpts[i * 2 + 1]);
+            assertEquals((float) pt.getX(), xs[i], 0.01f);
+            assertEquals((float) pt.getY(), ys[i], 0.01f);
+        }
+    }
+
+    public void testOrthographicPolyAcrossHorizon() {
+        Orthographic bulk = new Orthographic(new LatLonPoint.Double(30, -70), 50000000f, 800, 600);
+        // Projects each point with _forward(), the way _forwardPoly used to.
+        Orthographic pointByPoint = new Orthographic(new LatLonPoint.Double(30, -70), 50000000f, 800, 600) {
+            protected void forwardArray(double[] llpts, int lloff, float[] xcoords, float[] ycoords, boolean[] invalid,
+                                        int xyoff, int count) {
+                for (int i = xyoff, j = lloff; i < xyoff + count; i++, j += 2) {
+                    AzimuthVar azVar = new AzimuthVar();
+                    Point2D pt = _forward(llpts[j], llpts[j + 1], new Point2D.Double(), azVar);
+                    xcoords[i] = (float) pt.getX();
+                    ycoords[i] = (float) pt.getY();
+                    invalid[i] = azVar.invalid_forward;
+                }
+            }
+        };
+
+        // A line running around the globe, in and out of view.
+        double[] llpts = new double[2 * 73];
+        for (int i = 0; i < 73; i++) {
+            llpts[2 * i] = Math.toRadians(20 + 10 * Math.sin(i / 5.0));
+            llpts[2 * i + 1] = Math.toRadians(-180 + i * 5);
+        }
+
+        for (int f = 0; f < 2; f++) {
+            boolean filled = f == 1;
+            ArrayList<float[]> expected = pointByPoint.forwardPoly(llpts, LineType.Straight, -1, filled);
+            ArrayList<float[]> actual = bulk.forwardPoly(llpts, LineType.Straight, -1, filled);
+            assertTrue(expected.size() > 0);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                float[] e = expected.get(i);
+                float[] a = actual.get(i);
+                assertEquals(e.length, a.length);
+                for (int j = 0; j < e.length; j++) {
+                    assertEquals("filled " + filled + " section " + i + " point " + j, e[j], a[j], 0.01f);
+                }
+            }
+        }
+    }
+
+    public void testLambertConformalForwardRaw() {
+        LambertConformal proj = new LambertConformal(new LatLonPoint.Double(40, -100), 50000000f, 800, 600, -100, 33, 45,
+                23, 0, 0, Ellipsoid.WGS_84);
+        int count = 200;
+        double[] llpts = llpts(count, true);
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        boolean[] visible = new boolean[count];
+        proj.forwardRaw(llpts, 0, xs, ys, visible, 0, count);
+
+        Point2D pt = new Point2D.Double();
+        for (int i = 0; i < count; i++) {
+            proj.forward(llpts[i * 2], llpts[i * 2 + 1], pt, true);
+            assertEquals((float) pt.getX(), xs[i], 0.01f);
+            assertEquals((float) pt.getY(), ys[i], 0.01f);
+            assertEquals(pt.getX() >= 0 && pt.getX() <= 800 && pt.getY() >= 0 && pt.getY() <= 600, visible[i]);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.bbn.openmap.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class PackedRTreeTest extends TestCase {
+
+    public void testSearchMatchesLinearScan() {
+        Random random = new Random(42);
+        int n = 5000;
+        double[] xmin = new double[n];
+        double[] ymin = new double[n];
+        double[] xmax = new double[n];
+        double[] ymax = new double[n];
+        for (int i = 0; i < n; i++) {
+            xmin[i] = random.nextDouble() * 360 - 180;
+            ymin[i] = random.nextDouble() * 180 - 90;
+            // some points, some boxes
+            xmax[i] = xmin[i] + (i % 3 == 0 ? 0 : random.nextDouble() * 5);
+            ymax[i] = ymin[i] + (i % 3 == 0 ? 0 : random.nextDouble() * 5);
+        }
+
+        PackedRTree tree = new PackedRTree(xmin, ymin, xmax, ymax, 8);
+        assertEquals(n, tree.size());
+
+        for (int q = 0; q < 200; q++) {
+            double qx = random.nextDouble() * 360 - 180;
+            double qy = random.nextDouble() * 180 - 90;
+            double qw = random.nextDouble() * 40;
+            double qh = random.nextDouble() * 20;
+
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                if (!(xmin[i] > qx + qw || ymin[i] > qy + qh || xmax[i] < qx || ymax[i] < qy)) {
+                    expected.add(i);
+                }
+            }
+
+            int[] hits = tree.search(qx, qy, qx + qw, qy + qh);
+            assertEquals(expected.size(), hits.length);
+            for (int i = 0; i < hits.length; i++) {
+                assertEquals(expected.get(i).intValue(), hits[i]);
+            }
+        }
+    }
+
+    public void testSmallTrees() {
+        PackedRTree empty = new PackedRTree(new double[0], new double[0], new double[0], new double[0]);
+        assertEquals(0, empty.search(-180, -90, 180, 90).length);
+
+        PackedRTree one = new PackedRTree(new double[] { 1 }, new double[] { 1 }, new double[] { 2 }, new double[] { 2 });
+        assertEquals(1, one.search(0, 0, 1, 1).length);
+        assertEquals(0, one.search(3, 3, 4, 4).length);
+    }
+
+    public void testWriteAndRead()
+            throws IOException {
+        Random random = new Random(7);
+        int n = 1000;
+        double[] xmin = new double[n];
+        double[] ymin = new double[n];
+        double[] xmax = new double[n];
+        double[] ymax = new double[n];
+        for (int i = 0; i < n; i++) {
+            xmin[i] = random.nextDouble() * 100;
+            ymin[i] = random.nextDouble() * 100;
+            xmax[i] = xmin[i] + random.nextDouble();
+            ymax[i] = ymin[i] + random.nextDouble();
+        }
+        PackedRTree tree = new PackedRTree(xmin, ymin, xmax, ymax);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tree.write(new DataOutputStream(bytes));
+        assertEquals(tree.getByteCount(), bytes.size());
+
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        PackedRTree read = PackedRTree.read(buf);
+        assertEquals(bytes.size(), buf.position());
+        assertEquals(n, read.size());
+        for (int q = 0; q < 50; q++) {
+            double qx = random.nextDouble() * 100;
+            double qy = random.nextDouble() * 100;
+            assertTrue(Arrays.equals(tree.search(qx, qy, qx + 10, qy + 10), read.search(qx, qy, qx + 10, qy + 10)));
+        }
+
+        try {
+            PackedRTree.read(ByteBuffer.wrap(new byte[8]));
+            fail("read a tree from a short buffer");
+        } catch (IOException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ConcurrentCacheHandlerTest extends TestCase {
+
+    static class CountingCache extends ConcurrentCacheHandler {
+        AtomicInteger loads = new AtomicInteger();
+
+        CountingCache(int size, EvictionPolicy policy) {
+            super(size, policy);
+        }
+
+        public CacheObject load(Object key) {
+            loads.incrementAndGet();
+            return new CacheObject(key, "value-" + key);
+        }
+    }
+
+    public void testLRU() {
+        CountingCache cache = new CountingCache(3, new LRUEvictionPolicy());
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+        cache.get("a");
+        cache.get("d"); // evicts b
+
+        assertNotNull(cache.searchCache("a"));
+        assertNull(cache.searchCache("b"));
+        assertEquals(3, cache.getEntryCount());
+
+        CacheStatistics stats = cache.getStatistics();
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(4, cache.loads.get());
+    }
+
+    public void testLFU() {
+        CountingCache cache = new CountingCache(3, new LFUEvictionPolicy());
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        cache.get("b");
+        cache.get("c");
+        cache.get("d"); // evicts c, the only one used once
+        cache.get("e"); // evicts d
+
+        assertNotNull(cache.searchCache("a"));
+        assertNotNull(cache.searchCache("b"));
+        assertNull(cache.searchCache("c"));
+        assertNull(cache.searchCache("d"));
+        assertEquals(3, cache.getEntryCount());
+    }
+
+    public void testWeightLimit() {
+        CountingCache cache = new CountingCache(20, new LRUEvictionPolicy());
+        cache.setWeightLimit(10, new CacheWeigher() {
+            public long weigh(CacheObject co) {
+                return ((String) co.id).length();
+            }
+        });
+        cache.get("aaaa");
+        cache.get("bbbb");
+        cache.get("cccc"); // 12 > 10, evicts aaaa
+        assertNull(cache.searchCache("aaaa"));
+        assertEquals(8, cache.getStatistics().getWeight());
+
+        cache.get("dddddddddddd"); // heavier than the limit, alone
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final CountingCache cache = new CountingCache(256, new LRUEvictionPolicy());
+        Thread[] threads = new Thread[8];
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        Integer key = Integer.valueOf((i * 31 + seed) % 1000);
+                        if (!("value-" + key).equals(cache.get(key))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+        assertTrue(cache.getEntryCount() <= 256);
+
+        CacheStatistics stats = cache.getStatistics();
+        assertEquals(8 * 20000, stats.getHitCount() + stats.getMissCount());
+    }
+
+    public void testResetCache() {
+        CountingCache cache = new CountingCache(5, new LRUEvictionPolicy());
+        cache.get("a");
+        cache.resetCache(50);
+        assertEquals(50, cache.getCacheSize());
+        assertEquals(0, cache.getEntryCount());
+    }
+}
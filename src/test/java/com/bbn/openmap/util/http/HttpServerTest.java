@@ -0,0 +1,68 @@
+package com.bbn.openmap.util.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+
+public class HttpServerTest extends TestCase {
+
+    private HttpServer server;
+
+    protected void setUp() throws Exception {
+        // One thread and no queue, so a single idle client fills the server.
+        server = new HttpServer(0, true, 1, 0);
+        server.setRequestTimeout(200);
+        server.addHttpRequestListener(new HttpRequestListener() {
+            public void httpRequest(HttpRequestEvent e) throws IOException {
+                HttpConnection.writeHttpResponse(e.getOutputStream(), HttpConnection.CONTENT_PLAIN, "hello");
+            }
+        });
+        server.start();
+    }
+
+    protected void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    public void testIdleConnectionDoesNotStarveRequests() throws Exception {
+        Socket idle = new Socket("localhost", server.getPort());
+        try {
+            long start = System.currentTimeMillis();
+            String status = null;
+            while (System.currentTimeMillis() - start < 5000) {
+                status = get();
+                if (status.contains(" 200")) {
+                    break;
+                }
+                Thread.sleep(50);
+            }
+            assertNotNull(status);
+            assertTrue(status, status.contains(" 200"));
+
+            // The server gave up on the idle client.
+            idle.setSoTimeout(5000);
+            assertEquals(-1, idle.getInputStream().read());
+        } finally {
+            idle.close();
+        }
+    }
+
+    private String get() throws IOException {
+        Socket socket = new Socket("localhost", server.getPort());
+        try {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write("GET /test HTTP/1.0\r\n\r\n".getBytes("US-ASCII"));
+            out.flush();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            String status = in.readLine();
+            return status == null ? "" : status;
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.bbn.openmap.wmsservlet;
+
+import java.awt.Graphics;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.event.ProjectionEvent;
+import com.bbn.openmap.image.wms.IWmsLayerStyle;
+import com.bbn.openmap.image.wms.IWmsNestedLayer;
+import com.bbn.openmap.image.wms.LayerFeatureInfoResponse;
+import com.bbn.openmap.image.wms.Legend;
+import com.bbn.openmap.image.wms.WmsRequestHandler;
+import com.bbn.openmap.proj.Projection;
+
+import junit.framework.TestCase;
+
+public class WmsRequestHandlerPoolTest extends TestCase {
+
+    private File mapDefinition;
+
+    protected void setUp() throws Exception {
+        mapDefinition = File.createTempFile("wmspool", ".properties");
+        FileWriter writer = new FileWriter(mapDefinition);
+        writer.write("formatters=png\npng.class=com.bbn.openmap.image.PNGImageIOFormatter\nlayers=\n");
+        writer.close();
+    }
+
+    protected void tearDown() throws Exception {
+        mapDefinition.delete();
+    }
+
+    public void testReuseForSameKey() throws Exception {
+        WmsRequestHandlerPool pool = new WmsRequestHandlerPool(mapDefinition.getPath(), 2, 8);
+        WmsRequestHandler first = pool.borrow("http", "localhost", 80, "/wms", Locale.ENGLISH);
+        pool.release(first);
+        assertEquals(1, pool.getIdleCount());
+
+        WmsRequestHandler second = pool.borrow("http", "localhost", 80, "/wms", Locale.ENGLISH);
+        assertSame(first, second);
+        assertEquals(0, pool.getIdleCount());
+
+        WmsRequestHandler other = pool.borrow("http", "localhost", 80, "/wms", Locale.GERMAN);
+        assertNotSame(first, other);
+        pool.release(second);
+        pool.release(other);
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    public void testTotalIdleIsCappedAcrossKeys() throws Exception {
+        WmsRequestHandlerPool pool = new WmsRequestHandlerPool(mapDefinition.getPath(), 2, 3);
+
+        // Every client chosen host name creates a new key.
+        List<WmsRequestHandler> handlers = new ArrayList<WmsRequestHandler>();
+        for (int i = 0; i < 10; i++) {
+            handlers.add(pool.borrow("http", "host" + i, 80, "/wms", Locale.ENGLISH));
+        }
+        for (WmsRequestHandler handler : handlers) {
+            pool.release(handler);
+        }
+        assertEquals(3, pool.getIdleCount());
+
+        // The most recently released keys are kept, the oldest were evicted.
+        assertSame(handlers.get(9), pool.borrow("http", "host9", 80, "/wms", Locale.ENGLISH));
+        assertNotSame(handlers.get(0), pool.borrow("http", "host0", 80, "/wms", Locale.ENGLISH));
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    public void testNestedLayersAreResetBetweenRequests() throws Exception {
+        FileWriter writer = new FileWriter(mapDefinition);
+        writer.write("formatters=png\npng.class=com.bbn.openmap.image.PNGImageIOFormatter\n"
+                + "layers=nested\nnested.class=" + NestedLayer.class.getName() + "\n");
+        writer.close();
+
+        WmsRequestHandlerPool pool = new WmsRequestHandlerPool(mapDefinition.getPath(), 2, 8);
+        WmsRequestHandler handler = pool.borrow("http", "localhost", 80, "/wms", Locale.ENGLISH);
+        handler.handleGetMapRequest(getMap("nested_a"));
+        pool.release(handler);
+
+        assertSame(handler, pool.borrow("http", "localhost", 80, "/wms", Locale.ENGLISH));
+        handler.handleGetMapRequest(getMap("nested_b"));
+        pool.release(handler);
+
+        NestedLayer layer = (NestedLayer) handler.getLayers()[0];
+        assertEquals(2, layer.rendered.size());
+        assertEquals("nested_a", layer.rendered.get(0));
+        assertEquals("nested_b", layer.rendered.get(1));
+    }
+
+    private Properties getMap(String layers) {
+        Properties request = new Properties();
+        request.setProperty("VERSION", "1.1.1");
+        request.setProperty("REQUEST", "GetMap");
+        request.setProperty("FORMAT", "image/png");
+        request.setProperty("SRS", "EPSG:4326");
+        request.setProperty("BBOX", "-10,-10,10,10");
+        request.setProperty("WIDTH", "16");
+        request.setProperty("HEIGHT", "16");
+        request.setProperty("LAYERS", layers);
+        request.setProperty("STYLES", "");
+        return request;
+    }
+
+    /**
+     * A layer with two nested wms layers, remembering which of them were
+     * active each time it was rendered.
+     */
+    public static class NestedLayer extends Layer implements IWmsNestedLayer {
+
+        final List<String> rendered = new ArrayList<String>();
+        final SubLayer[] nested = { new SubLayer(this, "a"), new SubLayer(this, "b") };
+
+        public void renderDataForProjection(Projection proj, Graphics g) {
+            StringBuilder names = new StringBuilder();
+            for (SubLayer sub : nested) {
+                if (sub.active) {
+                    names.append(names.length() == 0 ? "" : ",").append(sub.getWmsName());
+                }
+            }
+            rendered.add(names.toString());
+        }
+
+        public void projectionChanged(ProjectionEvent e) {
+        }
+
+        public String getTitle() {
+            return getWmsName();
+        }
+
+        public String getWmsName() {
+            return getPropertyPrefix();
+        }
+
+        public String getAbstract() {
+            return null;
+        }
+
+        public boolean isQueryable() {
+            return false;
+        }
+
+        public LayerFeatureInfoResponse query(int x, int y) {
+            return null;
+        }
+
+        public IWmsLayerStyle[] getStyles() {
+            return new IWmsLayerStyle[0];
+        }
+
+        public void setStyle(String name) {
+        }
+
+        public boolean isStyleSupported(String name) {
+            return false;
+        }
+
+        public void setDefaultStyle() {
+        }
+
+        public void setRequestParameters(Properties requestParameters) {
+        }
+
+        public Legend getLegend() {
+            return null;
+        }
+
+        public IWmsNestedLayer[] getNestedLayers() {
+            return nested;
+        }
+
+        public IWmsNestedLayer getTopLayer() {
+            return this;
+        }
+
+        public void setIsActive(boolean active) {
+        }
+    }
+
+    static class SubLayer implements IWmsNestedLayer {
+
+        final NestedLayer top;
+        final String name;
+        boolean active;
+
+        SubLayer(NestedLayer top, String name) {
+            this.top = top;
+            this.name = name;
+        }
+
+        public String getTitle() {
+            return getWmsName();
+        }
+
+        public String getWmsName() {
+            return top.getWmsName() + "_" + name;
+        }
+
+        public String getPropertyPrefix() {
+            return top.getPropertyPrefix();
+        }
+
+        public String getAbstract() {
+            return null;
+        }
+
+        public boolean isQueryable() {
+            return false;
+        }
+
+        public LayerFeatureInfoResponse query(int x, int y) {
+            return null;
+        }
+
+        public IWmsLayerStyle[] getStyles() {
+            return new IWmsLayerStyle[0];
+        }
+
+        public void setStyle(String name) {
+        }
+
+        public boolean isStyleSupported(String name) {
+            return false;
+        }
+
+        public void setDefaultStyle() {
+        }
+
+        public void setRequestParameters(Properties requestParameters) {
+        }
+
+        public Legend getLegend() {
+            return null;
+        }
+
+        public IWmsNestedLayer[] getNestedLayers() {
+            return null;
+        }
+
+        public IWmsNestedLayer getTopLayer() {
+            return top;
+        }
+
+        public void setIsActive(boolean active) {
+            this.active = active;
+        }
+    }
+}